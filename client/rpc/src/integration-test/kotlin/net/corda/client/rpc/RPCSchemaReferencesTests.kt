@@ -0,0 +1,120 @@
+package net.corda.client.rpc
+
+import net.corda.core.messaging.RPCOps
+import net.corda.core.serialization.CordaSerializable
+import net.corda.core.serialization.SerializationDefaults
+import net.corda.core.utilities.Try
+import net.corda.core.utilities.getOrThrow
+import net.corda.core.utilities.seconds
+import net.corda.nodeapi.RPCApi
+import net.corda.serialization.internal.amqp.SentSchemaCache
+import net.corda.serialization.internal.amqp.withSchemaReferences
+import net.corda.testing.common.internal.eventually
+import net.corda.testing.common.internal.succeeds
+import net.corda.testing.core.SerializationEnvironmentRule
+import net.corda.testing.node.internal.rpcDriver
+import net.corda.testing.node.internal.startRpcClient
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import rx.Observable
+import java.util.concurrent.atomic.AtomicLong
+
+class RPCSchemaReferencesTests {
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule(true)
+
+    @CordaSerializable
+    data class Item(val name: String, val quantity: Int)
+
+    interface ItemOps : RPCOps {
+        fun item(quantity: Int): Item
+        fun items(count: Int): Observable<Item>
+    }
+
+    private class ItemOpsImpl : ItemOps {
+        override val protocolVersion = 1000
+        override fun item(quantity: Int) = Item("item", quantity)
+        override fun items(count: Int): Observable<Item> = Observable.range(1, count).map { item(it) }
+    }
+
+    private val clientConfiguration = CordaRPCClientConfiguration.DEFAULT.copy(schemaReferences = true, connectionRetryInterval = 1.seconds)
+
+    @Test
+    fun `replies and observations are read when their schemas are sent by reference`() {
+        rpcDriver {
+            val server = startRpcServer<ItemOps>(ops = ItemOpsImpl()).getOrThrow()
+            val client = startRpcClient<ItemOps>(server.broker.hostAndPort!!, configuration = clientConfiguration).getOrThrow()
+            (1..3).forEach { assertEquals(Item("item", it), client.item(it)) }
+            assertEquals((1..10).map { Item("item", it) }, client.items(10).toList().toBlocking().single())
+            assertEquals((1..10).map { Item("item", it) }, client.items(10).toList().toBlocking().single())
+        }
+    }
+
+    @Test
+    fun `client reconnects to rebooted server which has not sent it any schemas`() {
+        rpcDriver {
+            val serverFollower = shutdownManager.follower()
+            val serverPort = startRpcServer<ItemOps>(ops = ItemOpsImpl()).getOrThrow().broker.hostAndPort!!
+            serverFollower.unfollow()
+            val clientFollower = shutdownManager.follower()
+            val client = startRpcClient<ItemOps>(serverPort, configuration = clientConfiguration).getOrThrow()
+            clientFollower.unfollow()
+            assertEquals(Item("item", 1), client.item(1))
+            serverFollower.shutdown()
+            startRpcServer<ItemOps>(ops = ItemOpsImpl(), customPort = serverPort).getOrThrow()
+            val response = eventually {
+                succeeds { client.item(2) }
+            }
+            assertEquals(Item("item", 2), response)
+            assertEquals(Item("item", 3), client.item(3))
+            clientFollower.shutdown() // Driver would do this after the new server, causing hang.
+        }
+    }
+
+    @Test
+    fun `client asks for a schema it has not received to be resent`() {
+        rpcDriver {
+            val broker = startRpcBroker().getOrThrow()
+
+            // Construct an RPC server session manually, which loses the reply which carries the schema in full.
+            val session = startArtemisSession(broker.hostAndPort!!)
+            val consumer = session.createConsumer(RPCApi.RPC_SERVER_QUEUE_NAME)
+            val producer = session.createProducer()
+            val dedupeId = AtomicLong(0)
+            val sentSchemas = SentSchemaCache()
+            val context = SerializationDefaults.RPC_SERVER_CONTEXT.withSchemaReferences(sentSchemas)
+            consumer.setMessageHandler {
+                it.acknowledge()
+                val request = RPCApi.ClientToServer.fromClientMessage(it)
+                when (request) {
+                    is RPCApi.ClientToServer.RpcRequest -> {
+                        val message = session.createMessage(false)
+                        if (request.methodName == ItemOps::protocolVersion.name) {
+                            val reply = RPCApi.ServerToClient.RpcReply(request.replyId, Try.Success(1000), "server")
+                            reply.writeToClientMessage(SerializationDefaults.RPC_SERVER_CONTEXT, message)
+                        } else {
+                            val lost = RPCApi.ServerToClient.RpcReply(request.replyId, Try.Success(Item("lost", 0)), "server")
+                            lost.writeToClientMessage(context, session.createMessage(false))
+                            val reply = RPCApi.ServerToClient.RpcReply(request.replyId, Try.Success(Item("item", 1)), "server")
+                            reply.writeToClientMessage(context, message)
+                        }
+                        message.putLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME, dedupeId.getAndIncrement())
+                        producer.send(request.clientAddress, message)
+                    }
+                    is RPCApi.ClientToServer.SchemaRequest -> {
+                        val reply = RPCApi.ServerToClient.SchemaReply(request.fingerprint, "server")
+                        val message = session.createMessage(false)
+                        reply.writeToClientMessage(context, message)
+                        producer.send(request.clientAddress, message)
+                    }
+                }
+            }
+            session.start()
+
+            val client = startRpcClient<ItemOps>(broker.hostAndPort!!, configuration = clientConfiguration).getOrThrow()
+            assertEquals(Item("item", 1), client.item(1))
+        }
+    }
+}
@@ -173,7 +173,14 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
         /**
          * The cache expiry of a deduplication watermark per client. Default is 1 day.
          */
-        open val deduplicationCacheExpiry: Duration = 1.days
+        open val deduplicationCacheExpiry: Duration = 1.days,
+
+        /**
+         * If set to true the client asks the node to send each schema of RPC replies and observations in full only once,
+         * and to refer to it by fingerprint afterwards. This makes small replies considerably smaller. Nodes which do
+         * not support this ignore the request. The default is false.
+         */
+        open val schemaReferences: Boolean = false
 
 ) {
 
@@ -205,7 +212,8 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
             connectionRetryIntervalMultiplier: Double = this.connectionRetryIntervalMultiplier,
             maxReconnectAttempts: Int = this.maxReconnectAttempts,
             maxFileSize: Int = this.maxFileSize,
-            deduplicationCacheExpiry: Duration = this.deduplicationCacheExpiry
+            deduplicationCacheExpiry: Duration = this.deduplicationCacheExpiry,
+            schemaReferences: Boolean = this.schemaReferences
     ): CordaRPCClientConfiguration {
         return CordaRPCClientConfiguration(
                 connectionMaxRetryInterval,
@@ -218,7 +226,8 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
                 connectionRetryIntervalMultiplier,
                 maxReconnectAttempts,
                 maxFileSize,
-                deduplicationCacheExpiry
+                deduplicationCacheExpiry,
+                schemaReferences
         )
     }
 
@@ -239,6 +248,7 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
         if (maxReconnectAttempts != other.maxReconnectAttempts) return false
         if (maxFileSize != other.maxFileSize) return false
         if (deduplicationCacheExpiry != other.deduplicationCacheExpiry) return false
+        if (schemaReferences != other.schemaReferences) return false
 
         return true
     }
@@ -256,6 +266,7 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
         result = 31 * result + maxReconnectAttempts
         result = 31 * result + maxFileSize
         result = 31 * result + deduplicationCacheExpiry.hashCode()
+        result = 31 * result + schemaReferences.hashCode()
         return result
     }
 
@@ -268,7 +279,7 @@ open class CordaRPCClientConfiguration @JvmOverloads constructor(
                 "cacheConcurrencyLevel=$cacheConcurrencyLevel, connectionRetryInterval=$connectionRetryInterval, " +
                 "connectionRetryIntervalMultiplier=$connectionRetryIntervalMultiplier, " +
                 "maxReconnectAttempts=$maxReconnectAttempts, maxFileSize=$maxFileSize, " +
-                "deduplicationCacheExpiry=$deduplicationCacheExpiry)"
+                "deduplicationCacheExpiry=$deduplicationCacheExpiry, schemaReferences=$schemaReferences)"
     }
 
     // Left in for backwards compatibility with version 3.1
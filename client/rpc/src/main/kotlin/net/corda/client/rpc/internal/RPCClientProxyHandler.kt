@@ -15,6 +15,7 @@ import net.corda.client.rpc.internal.serialization.amqp.RpcClientObservableDeSer
 import net.corda.core.context.Actor
 import net.corda.core.context.Trace
 import net.corda.core.context.Trace.InvocationId
+import net.corda.core.crypto.SecureHash
 import net.corda.core.identity.CordaX500Name
 import net.corda.core.internal.LazyStickyPool
 import net.corda.core.internal.LifeCycle
@@ -33,6 +34,9 @@ import net.corda.core.utilities.getOrThrow
 import net.corda.nodeapi.RPCApi
 import net.corda.nodeapi.RPCApi.CLASS_METHOD_DIVIDER
 import net.corda.nodeapi.internal.DeduplicationChecker
+import net.corda.serialization.internal.amqp.ReceivedSchemaCache
+import net.corda.serialization.internal.amqp.UnknownSchemaReferenceException
+import net.corda.serialization.internal.amqp.withSchemaReferences
 import org.apache.activemq.artemis.api.core.ActiveMQException
 import org.apache.activemq.artemis.api.core.ActiveMQNotConnectedException
 import org.apache.activemq.artemis.api.core.RoutingType
@@ -174,8 +178,13 @@ class RPCClientProxyHandler(
     private val observablesToReap = ThreadBox(object {
         var observables = ArrayList<InvocationId>()
     })
+    // Schemas are content addressed, so those already received stay valid across reconnects to the server.
     private val serializationContextWithObservableContext = RpcClientObservableDeSerializer
             .createContext(serializationContext, observableContext)
+            .let { if (rpcConfiguration.schemaReferences) it.withSchemaReferences(ReceivedSchemaCache()) else it }
+    // Messages which refer to a schema the server has to resend, followed by those received after them. They are held
+    // back so that they are still handled in the order they were sent.
+    private val messagesAwaitingSchema = ThreadBox(ArrayDeque<ClientMessage>())
 
     private fun createRpcObservableMap(): RpcObservableMap {
         val onObservableRemove = RemovalListener<InvocationId, UnicastSubject<Notification<*>>> { key, _, cause ->
@@ -292,7 +301,8 @@ class RPCClientProxyHandler(
                     replyId,
                     sessionId,
                     externalTrace,
-                    impersonatedActor
+                    impersonatedActor,
+                    rpcConfiguration.schemaReferences
             )
             val replyFuture = SettableFuture.create<Any>()
             require(rpcReplyMap.put(replyId, replyFuture) == null) {
@@ -340,71 +350,128 @@ class RPCClientProxyHandler(
 
     // The handler for Artemis messages.
     private fun artemisMessageHandler(message: ClientMessage) {
+        try {
+            if (RPCApi.ServerToClient.isSchemaReply(message)) {
+                val schemaReply = RPCApi.ServerToClient.fromClientMessage(serializationContextWithObservableContext, message)
+                log.debug { "Got message from RPC server $schemaReply" }
+                handleMessagesAwaitingSchema((schemaReply as RPCApi.ServerToClient.SchemaReply).fingerprint)
+                return
+            }
+            val awaitingSchema = messagesAwaitingSchema.locked { isNotEmpty() && add(message) }
+            if (!awaitingSchema) {
+                val unknownSchema = handleMessage(message, awaitSchema = true)
+                if (unknownSchema != null) {
+                    messagesAwaitingSchema.locked { add(message) }
+                    requestSchema(unknownSchema)
+                }
+            }
+        } finally {
+            message.acknowledge()
+        }
+    }
+
+    /**
+     * Handles the messages held back for the schema with the given [fingerprint], which the server has just resent if it
+     * still held it, until one refers to another schema this client doesn't hold.
+     */
+    private fun handleMessagesAwaitingSchema(fingerprint: SecureHash) {
+        while (true) {
+            val message = messagesAwaitingSchema.locked { peekFirst() } ?: return
+            message.bodyBuffer.resetReaderIndex()
+            val unknownSchema = handleMessage(message, awaitSchema = true)
+            if (unknownSchema == fingerprint) {
+                // The server no longer holds the schema, so the message cannot be read.
+                message.bodyBuffer.resetReaderIndex()
+                try {
+                    handleMessage(message, awaitSchema = false)
+                } catch (e: Exception) {
+                    log.error("Failed to deserialize RPC message", e)
+                }
+            } else if (unknownSchema != null) {
+                requestSchema(unknownSchema)
+                return
+            }
+            messagesAwaitingSchema.locked { pollFirst() }
+        }
+    }
+
+    private fun requestSchema(fingerprint: SecureHash) {
+        log.warn("Received a message which refers to schema $fingerprint which this client doesn't hold, asking for it to be resent")
+        sendMessage(RPCApi.ClientToServer.SchemaRequest(clientAddress, fingerprint))
+    }
+
+    /**
+     * Deserializes and dispatches [message]. If [awaitSchema] is set and the message refers to a schema this client
+     * doesn't hold then the message is left alone and the fingerprint of the schema is returned instead.
+     */
+    private fun handleMessage(message: ClientMessage, awaitSchema: Boolean): SecureHash? {
         fun completeExceptionally(id: InvocationId, e: Throwable, future: SettableFuture<Any?>?) {
             val rpcCallSite: CallSite? = callSiteMap?.get(id)
             if (rpcCallSite != null) addRpcCallSiteToThrowable(e, rpcCallSite)
             future?.setException(e.cause ?: e)
         }
 
-        try {
-            // Deserialize the reply from the server, both the wrapping metadata and the actual body of the return value.
-            val serverToClient: RPCApi.ServerToClient = try {
-                RPCApi.ServerToClient.fromClientMessage(serializationContextWithObservableContext, message)
-            } catch (e: RPCApi.ServerToClient.FailedToDeserializeReply) {
-                // Might happen if something goes wrong during mapping the response to classes, evolution, class synthesis etc.
-                log.error("Failed to deserialize RPC body", e)
-                completeExceptionally(e.id, e, rpcReplyMap.remove(e.id))
-                return
-            }
-            val deduplicationSequenceNumber = message.getLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME)
-            if (deduplicationChecker.checkDuplicateMessageId(serverToClient.deduplicationIdentity, deduplicationSequenceNumber)) {
-                log.info("Message duplication detected, discarding message")
-                return
+        // Deserialize the reply from the server, both the wrapping metadata and the actual body of the return value.
+        val serverToClient: RPCApi.ServerToClient = try {
+            RPCApi.ServerToClient.fromClientMessage(serializationContextWithObservableContext, message)
+        } catch (e: Exception) {
+            if (awaitSchema) {
+                val unknownSchema = generateSequence<Throwable>(e) { it.cause }.filterIsInstance<UnknownSchemaReferenceException>().firstOrNull()
+                if (unknownSchema != null) return unknownSchema.fingerprint
             }
-            log.debug { "Got message from RPC server $serverToClient" }
-            when (serverToClient) {
-                is RPCApi.ServerToClient.RpcReply -> {
-                    val replyFuture = rpcReplyMap.remove(serverToClient.id)
-                    if (replyFuture == null) {
-                        log.error("RPC reply arrived to unknown RPC ID ${serverToClient.id}, this indicates an internal RPC error.")
-                    } else {
-                        val result: Try<Any?> = serverToClient.result
-                        when (result) {
-                            is Try.Success -> replyFuture.set(result.value)
-                            is Try.Failure -> {
-                                completeExceptionally(serverToClient.id, result.exception, replyFuture)
-                            }
+            if (e !is RPCApi.ServerToClient.FailedToDeserializeReply) throw e
+            // Might happen if something goes wrong during mapping the response to classes, evolution, class synthesis etc.
+            log.error("Failed to deserialize RPC body", e)
+            completeExceptionally(e.id, e, rpcReplyMap.remove(e.id))
+            return null
+        }
+        val deduplicationSequenceNumber = message.getLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME)
+        if (deduplicationChecker.checkDuplicateMessageId(serverToClient.deduplicationIdentity, deduplicationSequenceNumber)) {
+            log.info("Message duplication detected, discarding message")
+            return null
+        }
+        log.debug { "Got message from RPC server $serverToClient" }
+        when (serverToClient) {
+            is RPCApi.ServerToClient.RpcReply -> {
+                val replyFuture = rpcReplyMap.remove(serverToClient.id)
+                if (replyFuture == null) {
+                    log.error("RPC reply arrived to unknown RPC ID ${serverToClient.id}, this indicates an internal RPC error.")
+                } else {
+                    val result: Try<Any?> = serverToClient.result
+                    when (result) {
+                        is Try.Success -> replyFuture.set(result.value)
+                        is Try.Failure -> {
+                            completeExceptionally(serverToClient.id, result.exception, replyFuture)
                         }
                     }
                 }
-                is RPCApi.ServerToClient.Observation -> {
-                    val observable: UnicastSubject<Notification<*>>? = observableContext.observableMap.getIfPresent(serverToClient.id)
-                    if (observable == null) {
-                        log.debug("Observation ${serverToClient.content} arrived to unknown Observable with ID ${serverToClient.id}. " +
-                                "This may be due to an observation arriving before the server was " +
-                                "notified of observable shutdown")
-                    } else {
-                        // We schedule the onNext() on an executor sticky-pooled based on the Observable ID.
-                        observationExecutorPool.run(serverToClient.id) { executor ->
-                            executor.submit {
-                                val content = serverToClient.content
-                                if (content.isOnCompleted || content.isOnError) {
-                                    observableContext.observableMap.invalidate(serverToClient.id)
-                                }
-                                // Add call site information on error
-                                if (content.isOnError) {
-                                    val rpcCallSite = callSiteMap?.get(serverToClient.id)
-                                    if (rpcCallSite != null) addRpcCallSiteToThrowable(content.throwable, rpcCallSite)
-                                }
-                                observable.onNext(content)
+            }
+            is RPCApi.ServerToClient.Observation -> {
+                val observable: UnicastSubject<Notification<*>>? = observableContext.observableMap.getIfPresent(serverToClient.id)
+                if (observable == null) {
+                    log.debug("Observation ${serverToClient.content} arrived to unknown Observable with ID ${serverToClient.id}. " +
+                            "This may be due to an observation arriving before the server was " +
+                            "notified of observable shutdown")
+                } else {
+                    // We schedule the onNext() on an executor sticky-pooled based on the Observable ID.
+                    observationExecutorPool.run(serverToClient.id) { executor ->
+                        executor.submit {
+                            val content = serverToClient.content
+                            if (content.isOnCompleted || content.isOnError) {
+                                observableContext.observableMap.invalidate(serverToClient.id)
+                            }
+                            // Add call site information on error
+                            if (content.isOnError) {
+                                val rpcCallSite = callSiteMap?.get(serverToClient.id)
+                                if (rpcCallSite != null) addRpcCallSiteToThrowable(content.throwable, rpcCallSite)
                             }
+                            observable.onNext(content)
                         }
                     }
                 }
             }
-        } finally {
-            message.acknowledge()
         }
+        return null
     }
 
     /**
@@ -630,6 +697,8 @@ class RPCClientProxyHandler(
             }
         }
         observableContext.observableMap.invalidateAll()
+        // The observables and replies these are for have failed anyway.
+        messagesAwaitingSchema.locked { clear() }
 
         rpcReplyMap.forEach { _, replyFuture ->
             replyFuture.setException(ConnectionFailureException())
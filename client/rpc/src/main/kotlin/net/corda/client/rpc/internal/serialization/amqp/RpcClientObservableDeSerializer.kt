@@ -8,7 +8,6 @@ import net.corda.core.serialization.SerializationContext
 import net.corda.core.utilities.loggerFor
 import net.corda.nodeapi.RPCApi
 import net.corda.serialization.internal.amqp.*
-import org.apache.qpid.proton.codec.Data
 import rx.Notification
 import rx.Observable
 import rx.subjects.UnicastSubject
@@ -121,7 +120,7 @@ object RpcClientObservableDeSerializer : CustomSerializer.Implements<Observable<
 
     override fun writeDescribedObject(
             obj: Observable<*>,
-            data: Data,
+            data: AMQPWriter,
             type: Type,
             output: SerializationOutput,
             context: SerializationContext
@@ -1,12 +1,15 @@
 package net.corda.coretests.crypto
 
 import net.corda.core.crypto.*
+import net.corda.core.crypto.internal.VerifiedSignature
+import net.corda.core.crypto.internal.verifiedSignatures
 import net.corda.testing.core.SerializationEnvironmentRule
 import org.junit.Rule
 import org.junit.Test
 import java.math.BigInteger
 import java.security.KeyPair
 import java.security.SignatureException
+import kotlin.test.assertEquals
 import kotlin.test.assertFailsWith
 import kotlin.test.assertNull
 import kotlin.test.assertTrue
@@ -113,6 +116,54 @@ class TransactionSignatureTest {
         assertFailsWith<SignatureException> { Crypto.doVerify(txId.sha256(), txSignature) }
     }
 
+    @Test
+    fun `batch of signatures verifies`() {
+        val txId = "aTransaction".toByteArray().sha256()
+        val keyPairs = (1..5).map { Crypto.generateKeyPair(Crypto.EDDSA_ED25519_SHA512) } +
+                (1..5).map { Crypto.generateKeyPair(Crypto.ECDSA_SECP256R1_SHA256) }
+        val signatures = keyPairs.map { signOneTx(txId, it) }
+        assertTrue(Crypto.batchVerify(txId, signatures))
+        assertTrue(Crypto.batchVerify(txId, signatures.take(2)))
+
+        val corrupted = signatures[7].let { TransactionSignature(it.bytes.copyOf().apply { this[10] = (this[10] + 1).toByte() }, it.by, it.signatureMetadata) }
+        assertFailsWith<SignatureException> { Crypto.batchVerify(txId, signatures - signatures[7] + corrupted) }
+        assertFailsWith<SignatureException> { Crypto.batchVerify(txId.sha256(), signatures) }
+    }
+
+    @Test
+    fun `batch reports the first bad signature`() {
+        val txId = "aTransaction".toByteArray().sha256()
+        val signatures = (1..10).map { signOneTx(txId, Crypto.generateKeyPair(Crypto.EDDSA_ED25519_SHA512)) }.toMutableList()
+        signatures[2] = signatures[2].let { TransactionSignature(it.bytes.copyOf().apply { this[10] = (this[10] + 1).toByte() }, it.by, it.signatureMetadata) }
+        // An EdDSA signature claimed by an ECDSA key fails to decode, with a different message.
+        signatures[8] = signatures[8].let { TransactionSignature(it.bytes, Crypto.generateKeyPair(Crypto.ECDSA_SECP256R1_SHA256).public, it.signatureMetadata) }
+        repeat(10) {
+            val e = assertFailsWith<SignatureException> { Crypto.batchVerify(txId, signatures) }
+            assertEquals("Signature Verification failed!", e.message)
+        }
+    }
+
+    @Test
+    fun `verified signatures are recorded and reused`() {
+        val keyPair = Crypto.deriveKeyPairFromEntropy(Crypto.EDDSA_ED25519_SHA512, BigInteger.valueOf(1234567890L))
+        val txId = "aTransaction".toByteArray().sha256()
+        val txSignature = signOneTx(txId, keyPair)
+        val verified = HashMap<VerifiedSignature, Boolean>()
+        verifiedSignatures = verified
+        try {
+            assertTrue(txSignature.verify(txId))
+            assertEquals(setOf(VerifiedSignature(txId, txSignature)), verified.keys)
+            assertTrue(txSignature.verify(txId))
+            assertEquals(1, verified.size)
+
+            // A failed verification is not recorded, and a recorded signature does not verify against any other id.
+            assertFailsWith<SignatureException> { Crypto.doVerify(txId.sha256(), txSignature) }
+            assertEquals(1, verified.size)
+        } finally {
+            verifiedSignatures = null
+        }
+    }
+
     // Returns a TransactionSignature over the Merkle root, but the partial tree is null.
     private fun signMultipleTx(txIds: List<SecureHash>, keyPair: KeyPair): TransactionSignature {
         val merkleTreeRoot = MerkleTree.getMerkleTree(txIds.map { it.sha256() }).hash
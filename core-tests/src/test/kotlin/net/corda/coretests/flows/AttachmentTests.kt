@@ -5,6 +5,7 @@ import com.natpryce.hamkrest.*
 import com.natpryce.hamkrest.assertion.assertThat
 import net.corda.core.contracts.Attachment
 import net.corda.core.crypto.SecureHash
+import net.corda.core.flows.DataVendingFlow
 import net.corda.core.flows.FlowLogic
 import net.corda.core.flows.FlowSession
 import net.corda.core.flows.InitiatedBy
@@ -13,8 +14,15 @@ import net.corda.core.identity.CordaX500Name
 import net.corda.core.identity.Party
 import net.corda.core.internal.FetchAttachmentsFlow
 import net.corda.core.internal.FetchDataFlow
+import net.corda.core.internal.RetrieveAnyTransactionPayload
+import net.corda.core.internal.ServiceHubCoreInternal
 import net.corda.core.internal.cordapp.CordappImpl.Companion.DEFAULT_CORDAPP_VERSION
+import net.corda.core.internal.div
+import net.corda.core.internal.exists
 import net.corda.core.internal.hash
+import net.corda.core.internal.list
+import net.corda.core.utilities.UntrustworthyData
+import net.corda.core.utilities.unwrap
 import net.corda.node.services.persistence.NodeAttachmentService
 import net.corda.testing.core.ALICE_NAME
 import net.corda.testing.core.BOB_NAME
@@ -27,12 +35,22 @@ import net.corda.testing.node.internal.InternalMockNetwork
 import net.corda.testing.node.internal.InternalMockNodeParameters
 import net.corda.testing.node.internal.TestStartedNode
 import org.junit.AfterClass
+import org.junit.Before
 import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.util.*
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
 
 class AttachmentTests : WithMockNet {
     companion object {
         val classMockNet = InternalMockNetwork()
 
+        // The requests the responding nodes have received.
+        private val vendorRequests: MutableList<FetchDataFlow.Request> = Collections.synchronizedList(ArrayList())
+
         @JvmStatic
         @AfterClass
         fun cleanUp() = classMockNet.stopNodes()
@@ -45,6 +63,9 @@ class AttachmentTests : WithMockNet {
     private val bobNode = makeNode(BOB_NAME)
     private val alice = aliceNode.info.singleIdentity()
 
+    @Before
+    fun clearVendorRequests() = vendorRequests.clear()
+
     @Test
     fun `download and store`() {
         // Insert an attachment into node zero's store directly.
@@ -104,12 +125,49 @@ class AttachmentTests : WithMockNet {
                 bobNode.startAttachmentFlow(id, badAlice),
                 willThrow<FetchDataFlow.DownloadedVsRequestedDataMismatch>()
         )
+        assertTrue(bobNode.partialAttachmentsDirectory().let { !it.exists() || it.list().isEmpty() })
+    }
+
+    @Test
+    fun `large attachments are fetched in chunks`() {
+        val attachment = largeAttachment(FetchAttachmentsFlow.MAX_CHUNK_SIZE * 5 / 2)
+        val id = aliceNode.importAttachment(attachment)
+
+        assertThat(
+                bobNode.startAttachmentFlow(id, alice),
+                willReturn(noAttachments()))
+
+        assertThat(bobNode.getAttachmentWithId(id), hashesTo(id))
+        assertEquals(listOf(0L, 1L, 2L).map { it * FetchAttachmentsFlow.MAX_CHUNK_SIZE }, chunkOffsetsRequested())
+        assertTrue(bobNode.partialAttachmentsDirectory().let { !it.exists() || it.list().isEmpty() })
+    }
+
+    @Test
+    fun `fetch picks up from the chunks already held`() {
+        val attachment = largeAttachment(FetchAttachmentsFlow.MAX_CHUNK_SIZE * 5 / 2)
+        val id = aliceNode.importAttachment(attachment)
+        val held = attachment.copyOf(FetchAttachmentsFlow.MAX_CHUNK_SIZE + 10)
+
+        assertThat(
+                bobNode.startFlowAndRunNetwork(InitiatingFetchAttachmentsFlow(alice, setOf(id), held)),
+                willReturn(noAttachments()))
+
+        assertThat(bobNode.getAttachmentWithId(id), hashesTo(id))
+        assertEquals(listOf(held.size.toLong(), held.size.toLong() + FetchAttachmentsFlow.MAX_CHUNK_SIZE), chunkOffsetsRequested())
+        assertTrue(bobNode.partialAttachmentsDirectory().let { !it.exists() || it.list().isEmpty() })
     }
 
+    /**
+     * Fetches the attachments, having first stored [held] as the start of the content of the first of them as if it had
+     * been fetched before the flow was restarted.
+     */
     @InitiatingFlow
-    private class InitiatingFetchAttachmentsFlow(val otherSide: Party, val hashes: Set<SecureHash>) : FlowLogic<FetchDataFlow.Result<Attachment>>() {
+    private class InitiatingFetchAttachmentsFlow(val otherSide: Party, val hashes: Set<SecureHash>, val held: ByteArray? = null) : FlowLogic<FetchDataFlow.Result<Attachment>>() {
         @Suspendable
         override fun call(): FetchDataFlow.Result<Attachment> {
+            if (held != null) {
+                (serviceHub as ServiceHubCoreInternal).partialAttachmentStorage!!.write(runId, hashes.first(), 0, held)
+            }
             val session = initiateFlow(otherSide)
             return subFlow(FetchAttachmentsFlow(hashes, session))
         }
@@ -118,7 +176,22 @@ class AttachmentTests : WithMockNet {
     @InitiatedBy(InitiatingFetchAttachmentsFlow::class)
     private class FetchAttachmentsResponse(val otherSideSession: FlowSession) : FlowLogic<Void?>() {
         @Suspendable
-        override fun call() = subFlow(TestNoSecurityDataVendingFlow(otherSideSession))
+        override fun call() = subFlow(RecordingDataVendingFlow(otherSideSession))
+    }
+
+    // Like TestNoSecurityDataVendingFlow, but records the requests it receives.
+    private class RecordingDataVendingFlow(otherSideSession: FlowSession) : DataVendingFlow(otherSideSession, RetrieveAnyTransactionPayload) {
+        @Suspendable
+        override fun sendPayloadAndReceiveDataRequest(otherSideSession: FlowSession, payload: Any): UntrustworthyData<FetchDataFlow.Request> {
+            val request = if (payload is List<*> && payload.isEmpty()) {
+                // Hack to not send the first message.
+                otherSideSession.receive()
+            } else {
+                super.sendPayloadAndReceiveDataRequest(otherSideSession, payload)
+            }
+            request.unwrap { vendorRequests.add(it) }
+            return request
+        }
     }
 
     //region Generators
@@ -136,6 +209,17 @@ class AttachmentTests : WithMockNet {
                 }
             }).apply { registerInitiatedFlow(FetchAttachmentsResponse::class.java) }
 
+    private fun largeAttachment(size: Int): ByteArray {
+        val content = ByteArray(size).apply { Random(0).nextBytes(this) }
+        val bs = ByteArrayOutputStream()
+        JarOutputStream(bs).use { js ->
+            js.putNextEntry(ZipEntry("content.bin"))
+            js.write(content)
+            js.closeEntry()
+        }
+        return bs.toByteArray()
+    }
+
     //endregion
 
     //region Operations
@@ -152,6 +236,10 @@ class AttachmentTests : WithMockNet {
 
     private fun TestStartedNode.getAttachmentWithId(id: SecureHash) =
             attachments.openAttachment(id)!!
+
+    private fun TestStartedNode.partialAttachmentsDirectory() = internals.configuration.baseDirectory / "partial-attachments"
+
+    private fun chunkOffsetsRequested() = vendorRequests.filterIsInstance<FetchDataFlow.Request.Chunk>().map { it.offset }
     //endregion
 
     //region Matchers
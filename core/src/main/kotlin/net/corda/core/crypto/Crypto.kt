@@ -5,12 +5,14 @@ import net.corda.core.DeleteForDJVM
 import net.corda.core.KeepForDJVM
 import net.corda.core.StubOutForDJVM
 import net.corda.core.crypto.internal.AliasPrivateKey
+import net.corda.core.crypto.internal.VerifiedSignature
 import net.corda.core.crypto.internal.Instances.withSignature
 import net.corda.core.crypto.internal.`id-Curve25519ph`
 import net.corda.core.crypto.internal.bouncyCastlePQCProvider
 import net.corda.core.crypto.internal.cordaBouncyCastleProvider
 import net.corda.core.crypto.internal.cordaSecurityProvider
 import net.corda.core.crypto.internal.providerMap
+import net.corda.core.crypto.internal.verifiedSignatures
 import net.corda.core.serialization.serialize
 import net.i2p.crypto.eddsa.EdDSAEngine
 import net.i2p.crypto.eddsa.EdDSAPrivateKey
@@ -600,8 +602,14 @@ object Crypto {
     @JvmStatic
     @Throws(InvalidKeyException::class, SignatureException::class)
     fun doVerify(txId: SecureHash, transactionSignature: TransactionSignature): Boolean {
-        val signableData = SignableData(originalSignedHash(txId, transactionSignature.partialMerkleTree), transactionSignature.signatureMetadata)
-        return Crypto.doVerify(transactionSignature.by, transactionSignature.bytes, signableData.serialize().bytes)
+        val signedHash = originalSignedHash(txId, transactionSignature.partialMerkleTree)
+        val verified = verifiedSignatures
+        val key = VerifiedSignature(signedHash, transactionSignature)
+        if (verified != null && key in verified) return true
+        val signableData = SignableData(signedHash, transactionSignature.signatureMetadata)
+        return Crypto.doVerify(transactionSignature.by, transactionSignature.bytes, signableData.serialize().bytes).also {
+            verified?.put(key, true)
+        }
     }
 
     /**
@@ -619,12 +627,72 @@ object Crypto {
     @JvmStatic
     @Throws(SignatureException::class)
     fun isValid(txId: SecureHash, transactionSignature: TransactionSignature): Boolean {
-        val signableData = SignableData(originalSignedHash(txId, transactionSignature.partialMerkleTree), transactionSignature.signatureMetadata)
+        val signedHash = originalSignedHash(txId, transactionSignature.partialMerkleTree)
+        val verified = verifiedSignatures
+        val key = VerifiedSignature(signedHash, transactionSignature)
+        if (verified != null && key in verified) return true
+        val signableData = SignableData(signedHash, transactionSignature.signatureMetadata)
         return isValid(
                 findSignatureScheme(transactionSignature.by),
                 transactionSignature.by,
                 transactionSignature.bytes,
-                signableData.serialize().bytes)
+                signableData.serialize().bytes).also {
+            if (it) verified?.put(key, true)
+        }
+    }
+
+    /**
+     * Verify all of the given [TransactionSignature]s over the transaction with the given id, throwing if any of them
+     * fails, as [doVerify] would for each of them in turn.
+     *
+     * Larger batches are verified in parallel on the common fork-join pool, grouped by [SignatureScheme] so that each
+     * scheme's pooled [java.security.Signature] instances are reused back to back. If any of them fails, the batch is
+     * verified again in the given order, so that the exception reported is always that of the first bad signature.
+     * Signatures which have already been verified are not verified again.
+     * @param txId transaction's id.
+     * @param transactionSignatures the signatures on the transaction.
+     * @return true if verification passes or throw exception if verification fails.
+     * @throws InvalidKeyException if a key is invalid.
+     * @throws SignatureException if a signature fails to verify, or if verification is not possible.
+     * @throws IllegalArgumentException if a signature scheme is not supported or if any of the clear or signature data is empty.
+     */
+    @JvmStatic
+    @Throws(InvalidKeyException::class, SignatureException::class)
+    fun batchVerify(txId: SecureHash, transactionSignatures: Collection<TransactionSignature>): Boolean {
+        val verified = verifiedSignatures
+        val pending = transactionSignatures
+                .map { VerifiedSignature(originalSignedHash(txId, it.partialMerkleTree), it) }
+                .filter { verified == null || it !in verified }
+        // The clear data is serialised up front, as the serialisation environment may not be available to other threads.
+        val clearData = pending.map { SignableData(it.signedHash, it.signature.signatureMetadata).serialize().bytes }
+        val verifyOne = { index: Int -> doVerify(pending[index].signature.by, pending[index].signature.bytes, clearData[index]) }
+        val verifiedInParallel = pending.size >= MIN_PARALLEL_BATCH_SIZE && try {
+            val bySchemeOrder = pending.indices.sortedBy { findSignatureScheme(pending[it].signature.by).schemeNumberID }
+            verifyInParallel(bySchemeOrder, verifyOne)
+        } catch (e: UnsupportedOperationException) {
+            // Thrown by the DJVM for the stubbed out function.
+            false
+        } catch (e: Exception) {
+            // Which of several bad signatures fails first in parallel is down to timing, so leave it to the
+            // sequential pass below to report the first one.
+            false
+        }
+        if (!verifiedInParallel) {
+            pending.indices.forEach { verifyOne(it) }
+        }
+        if (verified != null) {
+            pending.forEach { verified[it] = true }
+        }
+        return true
+    }
+
+    // The smallest number of signatures which batchVerify will verify in parallel.
+    private const val MIN_PARALLEL_BATCH_SIZE = 8
+
+    @StubOutForDJVM
+    private fun verifyInParallel(order: List<Int>, verifyOne: (Int) -> Boolean): Boolean {
+        order.parallelStream().forEach { verifyOne(it) }
+        return true
     }
 
     /**
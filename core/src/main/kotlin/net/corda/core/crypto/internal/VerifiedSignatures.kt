@@ -0,0 +1,22 @@
+package net.corda.core.crypto.internal
+
+import net.corda.core.KeepForDJVM
+import net.corda.core.crypto.Crypto
+import net.corda.core.crypto.SecureHash
+import net.corda.core.crypto.TransactionSignature
+
+/**
+ * Identifies a transaction signature which has verified successfully, by the hash it signed (the transaction id, or the
+ * root of its partial Merkle tree), along with its metadata, its bytes and the key which made it.
+ */
+@KeepForDJVM
+data class VerifiedSignature(val signedHash: SecureHash, val signature: TransactionSignature)
+
+/**
+ * Where [Crypto.doVerify] and [Crypto.isValid] record the transaction signatures they have verified, so that checking the
+ * same signature again skips the curve arithmetic. A transaction's signatures are checked repeatedly as it passes through
+ * resolution, notarisation, finality and the vault. Nothing is recorded unless a bounded map has been installed here,
+ * which the node does when it starts.
+ */
+@Volatile
+var verifiedSignatures: MutableMap<VerifiedSignature, Boolean>? = null
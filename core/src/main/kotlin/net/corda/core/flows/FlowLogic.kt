@@ -18,6 +18,7 @@ import net.corda.core.internal.ServiceHubCoreInternal
 import net.corda.core.internal.WaitForStateConsumption
 import net.corda.core.internal.abbreviate
 import net.corda.core.internal.checkPayloadIs
+import net.corda.core.internal.payloadReceiveContext
 import net.corda.core.internal.concurrent.asCordaFuture
 import net.corda.core.internal.uncheckedCast
 import net.corda.core.messaging.DataFeed
@@ -265,11 +266,12 @@ abstract class FlowLogic<out T> {
 
     @Suspendable
     internal fun <R : Any> FlowSession.sendAndReceiveWithRetry(receiveType: Class<R>, payload: Any): UntrustworthyData<R> {
+        // The message may be retried to another member of a notary cluster, so it has to carry its schema in full.
         val request = FlowIORequest.SendAndReceive(
                 sessionToMessage = mapOf(this to payload.serialize(context = SerializationDefaults.P2P_CONTEXT)),
                 shouldRetrySend = true
         )
-        return stateMachine.suspend(request, maySkipCheckpoint = false)[this]!!.checkPayloadIs(receiveType)
+        return stateMachine.suspend(request, maySkipCheckpoint = false)[this]!!.checkPayloadIs(receiveType, payloadReceiveContext)
     }
 
     @Suspendable
@@ -295,7 +297,7 @@ abstract class FlowLogic<out T> {
                 ioRequest = FlowIORequest.Receive(sessions.keys.toNonEmptySet()),
                 maySkipCheckpoint = maySkipCheckpoint
         )
-        return replies.mapValues { (session, payload) -> payload.checkPayloadIs(sessions[session]!!) }
+        return replies.mapValues { (session, payload) -> payload.checkPayloadIs(sessions[session]!!, session.payloadReceiveContext) }
     }
 
     /**
@@ -12,6 +12,8 @@ import net.corda.core.serialization.serialize
 import net.corda.core.transactions.SignedTransaction
 import net.corda.core.utilities.unwrap
 import net.corda.core.utilities.trace
+import java.io.DataInputStream
+import java.io.EOFException
 
 /**
  * In the words of Matt working code is more important then pretty code. This class that contains code that may
@@ -132,6 +134,7 @@ open class DataVendingFlow(val otherSideSession: FlowSession, val payload: Any)
                         verifyDataRequest(request)
                         request
                     }
+                    is FetchDataFlow.Request.Chunk -> request
                     FetchDataFlow.Request.End -> {
                         logger.trace { "DataVendingFlow: END" }
                         return null
@@ -139,6 +142,12 @@ open class DataVendingFlow(val otherSideSession: FlowSession, val payload: Any)
                 }
             }
 
+            if (dataRequest is FetchDataFlow.Request.Chunk) {
+                payload = readAttachmentChunk(dataRequest, maxPayloadSize)
+                continue
+            }
+            dataRequest as FetchDataFlow.Request.Data
+
             logger.trace { "Sending data (Type = ${dataRequest.dataType.name})" }
             var totalByteCount = 0
             var firstItem = true
@@ -222,6 +231,26 @@ open class DataVendingFlow(val otherSideSession: FlowSession, val payload: Any)
         }
     }
 
+    private fun readAttachmentChunk(request: FetchDataFlow.Request.Chunk, maxPayloadSize: Int): FetchDataFlow.AttachmentChunk {
+        logger.trace { "Sending: Chunk of attachment '${request.id}' at ${request.offset}" }
+        val attachment = serviceHub.attachments.openAttachment(request.id) ?: throw FetchDataFlow.HashNotFound(request.id)
+        val totalSize = attachment.size.toLong()
+        if (request.offset !in 0..totalSize || request.maxLength !in 1..maxPayloadSize) {
+            throw FetchDataFlow.IllegalAttachmentChunkRequest(request.id)
+        }
+        val bytes = ByteArray(Math.min(request.maxLength.toLong(), totalSize - request.offset).toInt())
+        attachment.open().use { input ->
+            var skipped = 0L
+            while (skipped < request.offset) {
+                val count = input.skip(request.offset - skipped)
+                if (count <= 0) throw EOFException("Attachment ${request.id} is shorter than its size")
+                skipped += count
+            }
+            DataInputStream(input).readFully(bytes)
+        }
+        return FetchDataFlow.AttachmentChunk(request.id, request.offset, totalSize, bytes)
+    }
+
     @Suspendable
     private fun getInputTransactions(tx: SignedTransaction): Set<SecureHash> {
         return tx.inputs.map { it.txhash }.toSet() + tx.references.map { it.txhash }.toSet()
@@ -24,6 +24,7 @@ import net.corda.core.utilities.UntrustworthyData
 import net.corda.core.utilities.debug
 import net.corda.core.utilities.unwrap
 import net.corda.core.utilities.trace
+import java.io.InputStream
 import java.nio.file.FileAlreadyExistsException
 import java.util.*
 
@@ -62,15 +63,32 @@ sealed class FetchDataFlow<T : NamedByHash, in W : Any>(
     class IllegalTransactionRequest(val requested: SecureHash) : FlowException("Illegal attempt to request a transaction ($requested)"
             + " that is not in the transitive dependency graph of the sent transaction.")
 
+    class IllegalAttachmentChunkRequest(val requested: SecureHash) : FlowException("Illegal attempt to request a chunk of attachment"
+            + " $requested which lies outside of it, or is too large to send.")
+
     @CordaSerializable
     data class Result<out T : NamedByHash>(val fromDisk: List<T>, val downloaded: List<T>)
 
     @CordaSerializable
     sealed class Request {
         data class Data(val hashes: NonEmptySet<SecureHash>, val dataType: DataType) : Request()
+
+        /**
+         * Asks for up to [maxLength] bytes of the attachment [id], starting at [offset]. Only sent to peers on platform version
+         * [FetchAttachmentsFlow.CHUNKED_FETCH_PLATFORM_VERSION] or later.
+         */
+        data class Chunk(val id: SecureHash, val offset: Long, val maxLength: Int) : Request()
+
         object End : Request()
     }
 
+    /**
+     * Part of the content of an attachment, sent in reply to a [Request.Chunk]. It holds as many of the bytes asked for as
+     * the attachment has from [offset] onwards.
+     */
+    @CordaSerializable
+    class AttachmentChunk(val id: SecureHash, val offset: Long, val totalSize: Long, val bytes: ByteArray)
+
     // https://docs.corda.net/serialization-enum-evolution.html
     // Below annotations added to map two new enum values (BATCH_TRANSACTION and UNKNOWN) onto  TRANSACTION. The effect of this is that
     // if a that does not have these enum values receives it will not throw an error during deserialization. The purpose of adding
@@ -99,33 +117,7 @@ sealed class FetchDataFlow<T : NamedByHash, in W : Any>(
             logger.trace { "FetchDataFlow.call(): loadWhatWeHave(): From disk size = ${fromDisk.size}, To-fetch size = ${toFetch.size}" }
             logger.debug { "Requesting ${toFetch.size} dependency(s) for verification from ${otherSideSession.counterparty.name}" }
 
-            // TODO: Support "large message" response streaming so response sizes are not limited by RAM.
-            // We can then switch to requesting items in large batches to minimise the latency penalty.
-            // This is blocked by bugs ARTEMIS-1278 and ARTEMIS-1279. For now we limit attachments and txns to 10mb each
-            // and don't request items in batch, which is a performance loss, but works around the issue. We have
-            // configured Artemis to not fragment messages up to 10mb so we can send 10mb messages without problems.
-            // Above that, we start losing authentication data on the message fragments and take exceptions in the
-            // network layer.
-            val maybeItems = ArrayList<W>()
-            if (toFetch.size == 1) {
-                val hash = toFetch.single()
-                // We skip the validation here (with unwrap { it }) because we will do it below in validateFetchResponse.
-                // The only thing checked is the object type.
-                // TODO We need to page here after large messages will work.
-                logger.trace { "[Single fetch]: otherSideSession.sendAndReceive($hash): Fetch type: ${dataType.name}" }
-                // should only pass single item dataType below.
-                maybeItems += otherSideSession.sendAndReceive<List<W>>(Request.Data(NonEmptySet.of(hash), dataType)).unwrap { it }
-            } else {
-                logger.trace { "[Batch fetch]: otherSideSession.sendAndReceive(set of ${toFetch.size}): Fetch type: ${dataType.name})" }
-                maybeItems += otherSideSession.sendAndReceive<List<W>>(Request.Data(NonEmptySet.copyOf(toFetch), dataType))
-                        .unwrap { it }
-                logger.trace { "[Batch fetch]: otherSideSession.sendAndReceive Done: count= ${maybeItems.size})" }
-            }
-
-            // Check for a buggy/malicious peer answering with something that we didn't ask for.
-            val downloaded = validateFetchResponse(UntrustworthyData(maybeItems), toFetch)
-            logger.trace { "Fetched ${downloaded.size} elements from ${otherSideSession.counterparty.name}, maybeItems.size = ${maybeItems.size}" }
-            maybeWriteToDisk(downloaded)
+            val downloaded = download(toFetch)
 
             // Re-load items already present before the download procedure. This ensures these objects are not unnecessarily checkpointed.
             val loadedFromDisk = loadExpected(fromDisk)
@@ -133,6 +125,52 @@ sealed class FetchDataFlow<T : NamedByHash, in W : Any>(
         }
     }
 
+    /**
+     * Fetch the items which aren't held locally, check them against the hashes they were requested by and write them to
+     * disk, returning them in the same order as [toFetch].
+     */
+    @Suspendable
+    protected open fun download(toFetch: Set<SecureHash>): List<T> {
+        val maybeItems = ArrayList<W>()
+        maybeItems += fetchItems(toFetch)
+
+        // Check for a buggy/malicious peer answering with something that we didn't ask for.
+        val downloaded = validateFetchResponse(UntrustworthyData(maybeItems), toFetch)
+        logger.trace { "Fetched ${downloaded.size} elements from ${otherSideSession.counterparty.name}, maybeItems.size = ${maybeItems.size}" }
+        maybeWriteToDisk(downloaded)
+        return downloaded
+    }
+
+    /**
+     * Ask the other side for the items which aren't held locally, in the same order as [toFetch]. They are checked against
+     * the hashes they were requested by once they have all arrived.
+     */
+    @Suspendable
+    protected open fun fetchItems(toFetch: Set<SecureHash>): List<@UnsafeVariance W> {
+        // TODO: Support "large message" response streaming so response sizes are not limited by RAM.
+        // We can then switch to requesting items in large batches to minimise the latency penalty.
+        // This is blocked by bugs ARTEMIS-1278 and ARTEMIS-1279. For now we limit attachments and txns to 10mb each
+        // and don't request items in batch, which is a performance loss, but works around the issue. We have
+        // configured Artemis to not fragment messages up to 10mb so we can send 10mb messages without problems.
+        // Above that, we start losing authentication data on the message fragments and take exceptions in the
+        // network layer.
+        return if (toFetch.size == 1) {
+            val hash = toFetch.single()
+            // We skip the validation here (with unwrap { it }) because we will do it below in validateFetchResponse.
+            // The only thing checked is the object type.
+            // TODO We need to page here after large messages will work.
+            logger.trace { "[Single fetch]: otherSideSession.sendAndReceive($hash): Fetch type: ${dataType.name}" }
+            // should only pass single item dataType below.
+            otherSideSession.sendAndReceive<List<W>>(Request.Data(NonEmptySet.of(hash), dataType)).unwrap { it }
+        } else {
+            logger.trace { "[Batch fetch]: otherSideSession.sendAndReceive(set of ${toFetch.size}): Fetch type: ${dataType.name})" }
+            val items = otherSideSession.sendAndReceive<List<W>>(Request.Data(NonEmptySet.copyOf(toFetch), dataType))
+                    .unwrap { it }
+            logger.trace { "[Batch fetch]: otherSideSession.sendAndReceive Done: count= ${items.size})" }
+            items
+        }
+    }
+
     protected open fun maybeWriteToDisk(downloaded: List<T>) {
         // Do nothing by default.
     }
@@ -218,30 +256,151 @@ sealed class FetchDataFlow<T : NamedByHash, in W : Any>(
 /**
  * Given a set of hashes either loads from local storage or requests them from the other peer. Downloaded
  * attachments are saved to local storage automatically.
+ *
+ * Peers on platform version [CHUNKED_FETCH_PLATFORM_VERSION] or later are asked for attachments in chunks, several of
+ * which are requested ahead of time so that the peer is reading the next while the last is in transit. The chunks are
+ * written to the node's [PartialAttachmentStorage] as they arrive, so that a flow restarted part way through a fetch
+ * doesn't ask for them again, and each attachment is imported from there once it's complete without being read into
+ * memory. Older peers are asked for each attachment whole.
  */
 class FetchAttachmentsFlow(requests: Set<SecureHash>,
                            otherSide: FlowSession) : FetchDataFlow<Attachment, ByteArray>(requests, otherSide, DataType.ATTACHMENT) {
+    companion object {
+        /** The platform version from which peers serve attachments in chunks. */
+        const val CHUNKED_FETCH_PLATFORM_VERSION = 6
+
+        /** The largest chunk asked for, should the network's maximum message size allow it. */
+        const val MAX_CHUNK_SIZE = 1024 * 1024
+
+        /** How many chunks are asked for before waiting for the first of them. */
+        const val MAX_CHUNKS_IN_FLIGHT = 4
+    }
 
     private val uploader = "$P2P_UPLOADER:${otherSideSession.counterparty.name}"
 
+    // Looked up each time rather than held, as the storage is not part of the flow's checkpoint.
+    private val partialAttachmentStorage: PartialAttachmentStorage?
+        get() = (serviceHub as? ServiceHubCoreInternal)?.partialAttachmentStorage
+
     override fun load(txid: SecureHash): Attachment? = serviceHub.attachments.openAttachment(txid)
 
     override fun convert(wire: ByteArray): Attachment = FetchedAttachment({ wire }, uploader)
 
+    @Suspendable
+    override fun download(toFetch: Set<SecureHash>): List<Attachment> {
+        val counterpartyPlatformVersion = serviceHub.networkMapCache.getNodeByLegalIdentity(otherSideSession.counterparty)?.platformVersion
+        if (partialAttachmentStorage == null || counterpartyPlatformVersion == null || counterpartyPlatformVersion < CHUNKED_FETCH_PLATFORM_VERSION) {
+            return super.download(toFetch)
+        }
+        try {
+            fetchInChunks(toFetch)
+        } catch (e: FlowException) {
+            discardChunks(toFetch)
+            throw e
+        } catch (e: IllegalArgumentException) {
+            discardChunks(toFetch)
+            throw e
+        }
+        return toFetch.map { id ->
+            val hash = partialAttachmentStorage!!.hash(runId, id)
+            if (hash != id) {
+                // Content which doesn't hash to what was asked for must not be resumed from.
+                discardChunks(toFetch)
+                logger.error("Throwing DownloadedVsRequestedDataMismatch due to bad verification on: ID = $id, chunks hash to $hash")
+                throw DownloadedVsRequestedDataMismatch(id, hash)
+            }
+            importAttachment(id) { partialAttachmentStorage!!.open(runId, id) }
+            partialAttachmentStorage!!.delete(runId, id)
+            serviceHub.attachments.openAttachment(id)!!
+        }
+    }
+
+    @Suspendable
+    private fun fetchInChunks(toFetch: Set<SecureHash>) {
+        val chunkSize = Math.min(MAX_CHUNK_SIZE, serviceHub.networkParameters.maxMessageSize / 2)
+        logger.debug { "Fetching ${toFetch.size} attachment(s) from ${otherSideSession.counterparty.name} in chunks of $chunkSize bytes" }
+        // Pick up from the content already held, should the flow have been restarted part way through the fetch.
+        val nextOffsets = toFetch.associateTo(LinkedHashMap()) { it to partialAttachmentStorage!!.size(runId, it) }
+        val totalSizes = HashMap<SecureHash, Long>()
+        val inFlight = ArrayDeque<Request.Chunk>()
+        while (true) {
+            while (inFlight.size < MAX_CHUNKS_IN_FLIGHT) {
+                val request = nextChunkRequest(nextOffsets, totalSizes, inFlight, chunkSize) ?: break
+                otherSideSession.send(request)
+                inFlight.addLast(request)
+            }
+            // The peer answers the requests in the order they were sent.
+            val request = inFlight.pollFirst() ?: break
+            totalSizes[request.id] = receiveChunk(request, totalSizes[request.id])
+        }
+    }
+
+    /**
+     * The next chunk to ask for, taking each attachment in turn. Only one chunk of an attachment is asked for until its
+     * size is known.
+     */
+    private fun nextChunkRequest(nextOffsets: MutableMap<SecureHash, Long>,
+                                 totalSizes: Map<SecureHash, Long>,
+                                 inFlight: Collection<Request.Chunk>,
+                                 chunkSize: Int): Request.Chunk? {
+        for ((id, offset) in nextOffsets) {
+            val totalSize = totalSizes[id]
+            val length = if (totalSize != null) {
+                Math.min(chunkSize.toLong(), totalSize - offset).toInt()
+            } else {
+                if (inFlight.any { it.id == id }) continue
+                chunkSize
+            }
+            if (length <= 0) continue
+            nextOffsets[id] = offset + length
+            return Request.Chunk(id, offset, length)
+        }
+        return null
+    }
+
+    /**
+     * Receive the chunk asked for by [request] and write it to the [PartialAttachmentStorage], returning the size of the
+     * attachment. The chunk's bytes aren't held once this returns, so they don't end up in the flow's checkpoint.
+     */
+    @Suspendable
+    private fun receiveChunk(request: Request.Chunk, knownTotalSize: Long?): Long {
+        val chunk = otherSideSession.receive<AttachmentChunk>().unwrap { chunk ->
+            if (chunk.id != request.id) throw DownloadedVsRequestedDataMismatch(request.id, chunk.id)
+            require(chunk.offset == request.offset) { "Chunk of attachment ${request.id} is at ${chunk.offset} not ${request.offset}" }
+            require(knownTotalSize == null || chunk.totalSize == knownTotalSize) { "Size of attachment ${request.id} has changed" }
+            require(chunk.totalSize in request.offset..serviceHub.networkParameters.maxTransactionSize) {
+                "Attachment ${request.id} of ${chunk.totalSize} bytes is too large, or too small for the chunk asked for"
+            }
+            val expectedLength = Math.min(request.maxLength.toLong(), chunk.totalSize - request.offset).toInt()
+            if (chunk.bytes.size != expectedLength) throw DownloadedVsRequestedSizeMismatch(expectedLength, chunk.bytes.size)
+            chunk
+        }
+        partialAttachmentStorage!!.write(runId, chunk.id, chunk.offset, chunk.bytes)
+        return chunk.totalSize
+    }
+
+    private fun discardChunks(ids: Set<SecureHash>) {
+        for (id in ids) partialAttachmentStorage?.delete(runId, id)
+    }
+
     override fun maybeWriteToDisk(downloaded: List<Attachment>) {
         for (attachment in downloaded) {
-            with(serviceHub.attachments) {
-                if (!hasAttachment(attachment.id)) {
-                    try {
-                        importAttachment(attachment.open(), uploader, null)
-                    } catch (e: FileAlreadyExistsException) {
-                        // This can happen when another transaction will insert the same attachment during this transaction.
-                        // The outcome is the same (the attachment is imported), so we can ignore this exception.
-                        logger.debug { "Attachment ${attachment.id} already inserted." }
-                    }
-                } else {
-                    logger.debug { "Attachment ${attachment.id} already exists, skipping." }
+            importAttachment(attachment.id, attachment::open)
+        }
+    }
+
+    private fun importAttachment(id: SecureHash, open: () -> InputStream) {
+        with(serviceHub.attachments) {
+            if (!hasAttachment(id)) {
+                try {
+                    open().use { importAttachment(it, uploader, null) }
+                } catch (e: FileAlreadyExistsException) {
+                    // This can happen when another transaction will insert the same attachment during this transaction.
+                    // The outcome is the same (the attachment is imported), so we can ignore this exception.
+                    logger.debug { "Attachment $id already inserted." }
                 }
+            } else {
+                logger.debug { "Attachment $id already exists, skipping." }
             }
         }
     }
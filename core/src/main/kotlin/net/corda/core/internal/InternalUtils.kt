@@ -5,6 +5,7 @@ package net.corda.core.internal
 import net.corda.core.DeleteForDJVM
 import net.corda.core.KeepForDJVM
 import net.corda.core.crypto.*
+import net.corda.core.serialization.SerializationContext
 import net.corda.core.serialization.SerializationDefaults
 import net.corda.core.serialization.SerializedBytes
 import net.corda.core.serialization.deserialize
@@ -530,10 +531,13 @@ val PublicKey.hash: SecureHash get() = encoded.sha256()
  */
 fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long = this.map { selector(it) }.sum()
 
-fun <T : Any> SerializedBytes<Any>.checkPayloadIs(type: Class<T>): UntrustworthyData<T> {
+fun <T : Any> SerializedBytes<Any>.checkPayloadIs(
+        type: Class<T>,
+        context: SerializationContext = SerializationDefaults.P2P_CONTEXT
+): UntrustworthyData<T> {
     val payloadData: T = try {
         val serializer = SerializationDefaults.SERIALIZATION_FACTORY
-        serializer.deserialize(this, type, SerializationDefaults.P2P_CONTEXT)
+        serializer.deserialize(this, type, context)
     } catch (ex: Exception) {
         throw IllegalArgumentException("Payload invalid", ex)
     }
@@ -2,8 +2,11 @@ package net.corda.core.internal
 
 import co.paralleluniverse.fibers.Suspendable
 import net.corda.core.DeleteForDJVM
+import net.corda.core.crypto.SecureHash
+import net.corda.core.flows.StateMachineRunId
 import net.corda.core.node.ServiceHub
 import net.corda.core.node.StatesToRecord
+import java.io.InputStream
 import java.util.concurrent.ExecutorService
 
 // TODO: This should really be called ServiceHubInternal but that name is already taken by net.corda.node.services.api.ServiceHubInternal.
@@ -14,6 +17,12 @@ interface ServiceHubCoreInternal : ServiceHub {
 
     val attachmentTrustCalculator: AttachmentTrustCalculator
 
+    /**
+     * Where [FetchAttachmentsFlow] keeps the attachment content it has fetched so far, or null if attachments are only to
+     * be fetched whole.
+     */
+    val partialAttachmentStorage: PartialAttachmentStorage?
+
     fun createTransactionsResolver(flow: ResolveTransactionsFlow): TransactionsResolver
 }
 
@@ -22,4 +31,26 @@ interface TransactionsResolver {
     fun downloadDependencies(batchMode: Boolean)
 
     fun recordDependencies(usedStatesToRecord: StatesToRecord)
-}
\ No newline at end of file
+}
+/**
+ * Holds the content of attachments as it is fetched from a peer in chunks, so that a flow which is restarted part way
+ * through a fetch picks up from where it was interrupted. Content is kept per flow, so that flows fetching the same
+ * attachment don't interfere with one another.
+ */
+@DeleteForDJVM
+interface PartialAttachmentStorage {
+    /** The number of bytes held of the attachment with the given [id] that the flow [runId] is fetching. */
+    fun size(runId: StateMachineRunId, id: SecureHash): Long
+
+    /** Write [bytes] of the attachment at the given [offset]. Writing the same bytes again has no effect. */
+    fun write(runId: StateMachineRunId, id: SecureHash, offset: Long, bytes: ByteArray)
+
+    /** The SHA-256 hash of all the bytes held of the attachment. */
+    fun hash(runId: StateMachineRunId, id: SecureHash): SecureHash
+
+    /** Open the bytes held of the attachment for reading, without holding them all in memory. */
+    fun open(runId: StateMachineRunId, id: SecureHash): InputStream
+
+    /** Discard the bytes held of the attachment, once it has been imported or the fetch has failed. */
+    fun delete(runId: StateMachineRunId, id: SecureHash)
+}
@@ -0,0 +1,24 @@
+package net.corda.core.internal
+
+import net.corda.core.DeleteForDJVM
+import net.corda.core.flows.FlowSession
+import net.corda.core.serialization.SerializationContext
+import net.corda.core.serialization.SerializationDefaults
+
+/**
+ * Implemented by [FlowSession]s which serialise the payloads exchanged with their counterparty with contexts of their
+ * own, for example so that the schema of each payload type is only sent in full once to each counterparty.
+ */
+@DeleteForDJVM
+interface SessionSerializationContexts {
+    /** The context with which to serialise the next payload sent to the counterparty. */
+    val sendContext: SerializationContext
+
+    /** The context with which to deserialise the next payload received from the counterparty. */
+    val receiveContext: SerializationContext
+}
+
+/** The context with which to deserialise the next payload received on this session. */
+@DeleteForDJVM
+val FlowSession.payloadReceiveContext: SerializationContext
+    get() = (this as? SessionSerializationContexts)?.receiveContext ?: SerializationDefaults.P2P_CONTEXT
@@ -8,7 +8,9 @@ import net.corda.core.contracts.TransactionVerificationException.TransactionCont
 import net.corda.core.crypto.CompositeKey
 import net.corda.core.crypto.SecureHash
 import net.corda.core.internal.rules.StateContractValidationEnforcementRule
+import net.corda.core.node.ServiceHub
 import net.corda.core.transactions.LedgerTransaction
+import net.corda.core.transactions.SignedTransaction
 import net.corda.core.utilities.contextLogger
 import java.util.function.Function
 
@@ -22,6 +24,14 @@ interface TransactionVerifierServiceInternal {
  */
 fun LedgerTransaction.prepareVerify(attachments: List<Attachment>) = internalPrepareVerify(attachments)
 
+/**
+ * Defined here for visibility reasons. Starts verifying this transaction without waiting for its contracts to be run.
+ */
+@DeleteForDJVM
+fun SignedTransaction.startVerification(services: ServiceHub, checkSufficientSignatures: Boolean = true): CordaFuture<*> {
+    return internalStartVerification(services, checkSufficientSignatures)
+}
+
 /**
  * Because we create a separate [LedgerTransaction] onto which we need to perform verification, it becomes important we don't verify the
  * wrong object instance. This class helps avoid that.
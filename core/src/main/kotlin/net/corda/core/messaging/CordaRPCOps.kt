@@ -152,6 +152,29 @@ interface CordaRPCOps : RPCOps {
     fun <T : ContractState> vaultQueryByWithSorting(contractStateType: Class<out T>, criteria: QueryCriteria, sorting: Sort): Vault.Page<T>
     // DOCEND VaultQueryAPIHelpers
 
+    /**
+     * Returns the results of a vault query as an [Observable] of [Vault.Page]s, each holding at most [batchSize] states.
+     *
+     * Unlike [vaultQueryBy], which returns a single page, this is intended for retrieving result sets too large to hold in memory at once.
+     * The node only reads the next page once the previous one has been sent to the client, completing the observable after the last page.
+     * Each page is read by a query of its own, so no database resources are held between pages.
+     *
+     * Notes
+     *   The pages do not report the total number of states available ([Vault.Page.totalStatesAvailable] is -1).
+     *   Without a sort specification pages carry on after the last state of the previous page, as with keyset pagination
+     *   ([PageSpecification.keyset]). Sorted results are read by page number, so states recorded while they are being streamed may
+     *   shift them between pages.
+     *   Aggregate functions cannot be used in a streamed query.
+     *
+     * @throws VaultQueryException if [batchSize] is outside the range 1 to [MAX_PAGE_SIZE]. Errors executing the query itself are
+     *         reported through the returned [Observable].
+     */
+    @RPCReturnsObservables
+    fun <T : ContractState> vaultStreamBy(criteria: QueryCriteria,
+                                          sorting: Sort,
+                                          batchSize: Int,
+                                          contractStateType: Class<out T>): Observable<Vault.Page<T>>
+
     /**
      * Returns a snapshot (as per queryBy) and an observable of future updates to the vault for the given query criteria.
      *
@@ -466,6 +489,12 @@ inline fun <reified T : ContractState> CordaRPCOps.vaultQueryBy(criteria: QueryC
     return vaultQueryBy(criteria, paging, sorting, T::class.java)
 }
 
+inline fun <reified T : ContractState> CordaRPCOps.vaultStreamBy(criteria: QueryCriteria = QueryCriteria.VaultQueryCriteria(),
+                                                                 sorting: Sort = Sort(emptySet()),
+                                                                 batchSize: Int = DEFAULT_PAGE_SIZE): Observable<Vault.Page<T>> {
+    return vaultStreamBy(criteria, sorting, batchSize, T::class.java)
+}
+
 inline fun <reified T : ContractState> CordaRPCOps.vaultTrackBy(criteria: QueryCriteria = QueryCriteria.VaultQueryCriteria(),
                                                                 paging: PageSpecification = PageSpecification(),
                                                                 sorting: Sort = Sort(emptySet())): DataFeed<Vault.Page<T>, Vault.Update<T>> {
@@ -3,15 +3,19 @@
 package net.corda.core.node.services.vault
 
 import net.corda.core.DoNotImplement
+import net.corda.core.contracts.StateRef
 import net.corda.core.internal.declaredField
 import net.corda.core.internal.uncheckedCast
+import net.corda.core.node.services.Vault
 import net.corda.core.node.services.vault.CollectionOperator.*
 import net.corda.core.node.services.vault.ColumnPredicate.*
 import net.corda.core.node.services.vault.EqualityComparisonOperator.*
 import net.corda.core.node.services.vault.LikenessOperator.*
 import net.corda.core.schemas.StatePersistable
 import net.corda.core.serialization.CordaSerializable
+import net.corda.core.serialization.DeprecatedConstructorForDeserialization
 import java.lang.reflect.Field
+import java.time.Instant
 import kotlin.jvm.internal.CallableReference
 import kotlin.reflect.KClass
 import kotlin.reflect.KProperty1
@@ -148,12 +152,55 @@ const val MAX_PAGE_SIZE = Int.MAX_VALUE - 1
  * Note: we default the page number to [DEFAULT_PAGE_SIZE] to enable queries without requiring a page specification
  * but enabling detection of large results sets that fall out of the [DEFAULT_PAGE_SIZE] requirement.
  * [MAX_PAGE_SIZE] should be used with extreme caution as results may exceed your JVM memory footprint.
+ *
+ * Setting [keyset] selects keyset (seek) pagination instead of page numbers: results are ordered by the time they were
+ * recorded in the vault and then by [StateRef], and the page starts straight after the state identified by [after], or
+ * with the first result if [after] is null. [pageNumber] is ignored, and no sort specification may be given. Unlike
+ * page numbers, whose cost grows with the offset of the page, every page then costs the same to query. Use [after] to
+ * obtain the specification of the page following a given one.
+ *
+ * Setting [countTotalStates] to false skips the query counting the total number of results, in which case
+ * [Vault.Page.totalStatesAvailable] is -1.
  */
 @CordaSerializable
-data class PageSpecification(val pageNumber: Int = -1, val pageSize: Int = DEFAULT_PAGE_SIZE) {
-    val isDefault = (pageSize == DEFAULT_PAGE_SIZE && pageNumber == -1)
+data class PageSpecification(
+        val pageNumber: Int = -1,
+        val pageSize: Int = DEFAULT_PAGE_SIZE,
+        val keyset: Boolean = false,
+        val after: PageCursor? = null,
+        val countTotalStates: Boolean = true
+) {
+    @DeprecatedConstructorForDeserialization(version = 1)
+    constructor(pageNumber: Int, pageSize: Int) : this(pageNumber, pageSize, false, null, true)
+
+    init {
+        require(after == null || keyset) { "A page cursor can only be used with keyset pagination" }
+    }
+
+    val isDefault = (pageSize == DEFAULT_PAGE_SIZE && pageNumber == -1 && !keyset)
+
+    /**
+     * Returns the keyset page specification for the page following [page], which must be the result of a query using
+     * this specification.
+     */
+    fun after(page: Vault.Page<*>): PageSpecification {
+        require(keyset) { "Only keyset page specifications can be continued after a page" }
+        val last = page.statesMetadata.lastOrNull() ?: return this
+        return copy(after = PageCursor(last.recordedTime, last.ref))
+    }
+
+    fun copy(pageNumber: Int = this.pageNumber, pageSize: Int = this.pageSize): PageSpecification {
+        return PageSpecification(pageNumber, pageSize, keyset, after, countTotalStates)
+    }
 }
 
+/**
+ * The position of a state in the order used by keyset pagination: by the time the state was recorded in the vault, and
+ * then by its [StateRef].
+ */
+@CordaSerializable
+data class PageCursor(val recordedTime: Instant, val stateRef: StateRef)
+
 abstract class BaseSort
 
 /**
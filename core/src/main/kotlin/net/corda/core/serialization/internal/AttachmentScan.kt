@@ -0,0 +1,177 @@
+package net.corda.core.serialization.internal
+
+import net.corda.core.contracts.Attachment
+import net.corda.core.contracts.ContractAttachment
+import net.corda.core.crypto.SecureHash
+import net.corda.core.crypto.sha256
+import net.corda.core.internal.JarSignatureCollector
+import net.corda.core.internal.cordapp.targetPlatformVersion
+import java.io.ByteArrayOutputStream
+import java.security.PublicKey
+import java.util.*
+import java.util.jar.JarInputStream
+
+/**
+ * What the [AttachmentsClassLoader] needs to know about a single attachment to enforce the no-overlap and package
+ * ownership rules. None of it depends on the other attachments of a transaction or on the network parameters, so it
+ * only needs to be read once for each attachment.
+ *
+ * @property isJar Whether the attachment is a valid JAR or ZIP file.
+ * @property containsClasses Whether the attachment contains any class files.
+ * @property classPackages The lower cased packages of the attachment's class files, each mapped to one of those files.
+ * @property entryHashes The content hashes of the files that must not overlap with those of other attachments, by lower cased path.
+ * @property overlappingPath A path that appears more than once in the attachment with different contents, if any.
+ * @property signers The keys that signed the attachment.
+ */
+internal class AttachmentScan(val isJar: Boolean,
+                              val containsClasses: Boolean,
+                              val classPackages: Map<String, String>,
+                              val entryHashes: Map<String, SecureHash>,
+                              val overlappingPath: String?,
+                              val signers: List<PublicKey>) {
+    companion object {
+        fun of(attachment: Attachment): AttachmentScan {
+            val index = ((if (attachment is ContractAttachment) attachment.attachment else attachment) as? AttachmentWithEntryIndex)?.entryIndex
+            if (index != null) return fromIndex(attachment, index)
+
+            val isJar = attachment.openAsJAR().use { it.nextEntry != null }
+            if (!isJar) return AttachmentScan(false, false, emptyMap(), emptyMap(), null, emptyList())
+
+            val signers = if (attachment is ContractAttachment) {
+                // An attachment loaded from the database already knows its signers.
+                attachment.signerKeys
+            } else {
+                // The call below reads the entire JAR and calculates all the public keys that signed the JAR.
+                // It also verifies that there are no mismatches, like a JAR with two signers where some files
+                // are signed by key A and others only by key B.
+                //
+                // The process of iterating every file of an attachment is important because JAR signature
+                // checks are only applied during a file read. Merely opening a signed JAR does not imply
+                // the files within it are correctly signed, but, we wish to verify package ownership
+                // at this point during construction because otherwise we may conclude a JAR is properly
+                // signed by the owners of the packages, even if it's not. We'd eventually discover that fact
+                // when trying to read the class file to use it, but if we'd made any decisions based on
+                // perceived correctness of the signatures or package ownership already, that would be too late.
+                attachment.openAsJAR().use { JarSignatureCollector.collectSigners(it) }
+            }
+
+            // Now open it again to compute the overlap and package ownership data.
+            return attachment.openAsJAR().use { jar ->
+                val (entries, overlappingPath) = hashEntries(jar)
+                fromEntries(entries, overlappingPath, signers) { jar.manifest?.targetPlatformVersion ?: 1 }
+            }
+        }
+
+        private fun fromIndex(attachment: Attachment, index: Map<String, SecureHash>): AttachmentScan {
+            // The index was built when the attachment was imported, which also checked it was a valid JAR and
+            // collected its signers.
+            return fromEntries(index, null, attachment.signerKeys) {
+                attachment.openAsJAR().use { it.manifest?.targetPlatformVersion ?: 1 }
+            }
+        }
+
+        private fun fromEntries(entries: Map<String, SecureHash>,
+                                overlappingPath: String?,
+                                signers: List<PublicKey>,
+                                targetPlatformVersion: () -> Int): AttachmentScan {
+            // The target platform version only matters to files in the ignored directories, so only read the
+            // manifest for it if there are any.
+            val ignoresDirectories = entries.keys.any { path -> AttachmentsClassLoader.ignoreDirectories.any { path.startsWith(it) } } &&
+                    targetPlatformVersion() < 4
+            val classPackages = LinkedHashMap<String, String>()
+            val entryHashes = LinkedHashMap<String, SecureHash>()
+            for ((path, hash) in entries) {
+                if (path.endsWith(".class")) {
+                    // Get the package name from the file name. Inner classes separate their names with $ not /
+                    // in file names so they are not a problem.
+                    val pkgName = path
+                            .dropLast(".class".length)
+                            .replace('/', '.')
+                            .split('.')
+                            .dropLast(1)
+                            .joinToString(".")
+                    classPackages.putIfAbsent(pkgName, path)
+                }
+
+                // Some files don't need overlap checking because they don't affect the way the code runs.
+                if (shouldCheckForNoOverlap(path, ignoresDirectories)) entryHashes[path] = hash
+            }
+            val containsClasses = classPackages.isNotEmpty()
+            return AttachmentScan(true, containsClasses, classPackages, entryHashes, overlappingPath, signers)
+        }
+
+        // This function attempts to strike a balance between security and usability when it comes to the no-overlap rule.
+        // TODO - investigate potential exploits.
+        private fun shouldCheckForNoOverlap(path: String, ignoresDirectories: Boolean): Boolean {
+            require(path.toLowerCase() == path)
+            require(!path.contains("\\"))
+
+            return when {
+                path.endsWith("/") -> false                     // Directories (packages) can overlap.
+                ignoresDirectories && AttachmentsClassLoader.ignoreDirectories.any { path.startsWith(it) } -> false    // Ignore jolokia and json-simple for old cordapps.
+                path.endsWith(".class") -> true                 // All class files need to be unique.
+                !path.startsWith("meta-inf") -> true            // All files outside of META-INF need to be unique.
+                (path == "meta-inf/services/net.corda.core.serialization.serializationwhitelist") -> false // Allow overlapping on the SerializationWhitelist.
+                path.startsWith("meta-inf/services") -> true    // Services can't overlap to prevent a malicious party from injecting additional implementations of an interface used by a contract.
+                else -> false                                          // This allows overlaps over any non-class files in "META-INF" - except 'services'.
+            }
+        }
+    }
+}
+
+/**
+ * Hashes each file of the JAR by its lower cased path. Also returns a path that appears more than once
+ * with different contents, if any, in which case only the first of its files is hashed.
+ */
+private fun hashEntries(jar: JarInputStream): Pair<Map<String, SecureHash>, String?> {
+    val entries = LinkedHashMap<String, SecureHash>()
+    var overlappingPath: String? = null
+    while (true) {
+        val entry = jar.nextJarEntry ?: break
+        if (entry.isDirectory) continue
+
+        // We already verified that paths are not strange/game playing when we inserted the attachment
+        // into the storage service. So we don't need to repeat it here.
+        //
+        // We forbid files that differ only in case, or path separator to avoid issues for Windows/Mac developers where the
+        // filesystem tries to be case insensitive. This may break developers who attempt to use ProGuard.
+        //
+        // Also convert to Unix path separators as all resource/class lookups will expect this.
+        val path = entry.name.toLowerCase(Locale.US).replace('\\', '/')
+
+        // This calculates the hash of the current entry because the JarInputStream returns only the current entry.
+        val currentHash = ByteArrayOutputStream().use {
+            jar.copyTo(it)
+            it.toByteArray()
+        }.sha256()
+        val previousFileHash = entries.putIfAbsent(path, currentHash)
+        if (previousFileHash != null && previousFileHash != currentHash && overlappingPath == null) {
+            overlappingPath = path
+        }
+    }
+    return Pair(entries, overlappingPath)
+}
+
+/**
+ * Reads the index of an attachment's files that [AttachmentsClassLoader] needs to build a classloader with it
+ * without decompressing it. Returns null if the JAR holds different files under the same path, as those
+ * can't be indexed by path.
+ *
+ * @see AttachmentWithEntryIndex
+ */
+fun readAttachmentEntryIndex(jar: JarInputStream): Map<String, SecureHash>? {
+    val (entries, overlappingPath) = hashEntries(jar)
+    return if (overlappingPath == null) entries else null
+}
+
+/**
+ * An [Attachment] whose store keeps an index of its files, so that classloaders can be built with it without
+ * decompressing it.
+ */
+interface AttachmentWithEntryIndex {
+    /**
+     * The content hashes of the attachment's files by lower cased path, as read by [readAttachmentEntryIndex],
+     * or null if the store has no index for it.
+     */
+    val entryIndex: Map<String, SecureHash>?
+}
@@ -1,7 +1,6 @@
 package net.corda.core.serialization.internal
 
 import net.corda.core.contracts.Attachment
-import net.corda.core.contracts.ContractAttachment
 import net.corda.core.contracts.TransactionVerificationException
 import net.corda.core.contracts.TransactionVerificationException.OverlappingAttachmentsException
 import net.corda.core.contracts.TransactionVerificationException.PackageOwnershipException
@@ -49,7 +48,7 @@ class AttachmentsClassLoader(attachments: List<Attachment>,
 
         // Jolokia and Json-simple are dependencies that were bundled by mistake within contract jars.
         // In the AttachmentsClassLoader we just block any class in those 2 packages.
-        private val ignoreDirectories = listOf("org/jolokia/", "org/json/simple/")
+        internal val ignoreDirectories = listOf("org/jolokia/", "org/json/simple/")
         private val ignorePackages = ignoreDirectories.map { it.replace("/", ".") }
 
         @VisibleForTesting
@@ -60,6 +59,16 @@ class AttachmentsClassLoader(attachments: List<Attachment>,
             }
         }
 
+        private const val SCAN_CACHE_WEIGHT = 250_000L
+
+        // Attachments are identified by the hash of their content, so their scans can be shared by every classloader they are part
+        // of. Scans are weighted by the number of entries they record.
+        internal val scanCache = WeightedLruCache<SecureHash, AttachmentScan>(SCAN_CACHE_WEIGHT) { it.entryHashes.size + 1L }
+
+        private fun scan(attachment: Attachment): AttachmentScan {
+            return scanCache[attachment.id] ?: scanCache.putIfAbsent(attachment.id, AttachmentScan.of(attachment))
+        }
+
         /**
          * Apply our custom factory either directly, if `URL.setURLStreamHandlerFactory` has not been called yet,
          * or use a decorator and reflection to bypass the single-call-per-JVM restriction otherwise.
@@ -106,17 +115,19 @@ class AttachmentsClassLoader(attachments: List<Attachment>,
     }
 
     init {
+        val scans = attachments.map(::scan)
 
         // Make some preliminary checks to ensure that we're not loading invalid attachments.
 
         // All attachments need to be valid JAR or ZIP files.
-        for (attachment in attachments) {
-            if (!isZipOrJar(attachment)) throw TransactionVerificationException.InvalidAttachmentException(sampleTxId, attachment.id)
+        for ((attachment, scan) in attachments.zip(scans)) {
+            if (!scan.isJar) throw TransactionVerificationException.InvalidAttachmentException(sampleTxId, attachment.id)
         }
 
         // Until we have a sandbox to run untrusted code we need to make sure that any loaded class file was whitelisted by the node administrator.
-        val untrusted = attachments
-                .filter(::containsClasses)
+        val untrusted = attachments.zip(scans)
+                .filter { (_, scan) -> scan.containsClasses }
+                .map { (attachment, _) -> attachment }
                 .filterNot(isAttachmentTrusted)
                 .map(Attachment::id)
 
@@ -128,41 +139,10 @@ class AttachmentsClassLoader(attachments: List<Attachment>,
         }
 
         // Enforce the no-overlap and package ownership rules.
-        checkAttachments(attachments)
+        checkAttachments(attachments, scans)
     }
 
-    private fun isZipOrJar(attachment: Attachment) = attachment.openAsJAR().use { jar ->
-        jar.nextEntry != null
-    }
-
-    private fun containsClasses(attachment: Attachment): Boolean {
-        attachment.openAsJAR().use { jar ->
-            while (true) {
-                val entry = jar.nextJarEntry ?: return false
-                if (entry.name.endsWith(".class", ignoreCase = true)) return true
-            }
-        }
-        return false
-    }
-
-    // This function attempts to strike a balance between security and usability when it comes to the no-overlap rule.
-    // TODO - investigate potential exploits.
-    private fun shouldCheckForNoOverlap(path: String, targetPlatformVersion: Int): Boolean {
-        require(path.toLowerCase() == path)
-        require(!path.contains("\\"))
-
-        return when {
-            path.endsWith("/") -> false                     // Directories (packages) can overlap.
-            targetPlatformVersion < 4 && ignoreDirectories.any { path.startsWith(it) } -> false    // Ignore jolokia and json-simple for old cordapps.
-            path.endsWith(".class") -> true                 // All class files need to be unique.
-            !path.startsWith("meta-inf") -> true            // All files outside of META-INF need to be unique.
-            (path == "meta-inf/services/net.corda.core.serialization.serializationwhitelist") -> false // Allow overlapping on the SerializationWhitelist.
-            path.startsWith("meta-inf/services") -> true    // Services can't overlap to prevent a malicious party from injecting additional implementations of an interface used by a contract.
-            else -> false                                          // This allows overlaps over any non-class files in "META-INF" - except 'services'.
-        }
-    }
-
-    private fun checkAttachments(attachments: List<Attachment>) {
+    private fun checkAttachments(attachments: List<Attachment>, scans: List<AttachmentScan>) {
         require(attachments.isNotEmpty()) { "attachments list is empty" }
 
         // Here is where we enforce the no-overlap and package ownership rules.
@@ -189,87 +169,39 @@ class AttachmentsClassLoader(attachments: List<Attachment>,
         // then the origin of the code may be lost and only the fully qualified class name may remain. To avoid
         // attacks on externally connected systems that only consider type names, we allow people to formally
         // claim their parts of the Java package namespace via registration with the zone operator.
-
-        val classLoaderEntries = mutableMapOf<String, SecureHash.SHA256>()
-        for (attachment in attachments) {
-            // We may have been given an attachment loaded from the database in which case, important info like
-            // signers is already calculated.
-            val signers = if (attachment is ContractAttachment) {
-                attachment.signerKeys
-            } else {
-                // The call below reads the entire JAR and calculates all the public keys that signed the JAR.
-                // It also verifies that there are no mismatches, like a JAR with two signers where some files
-                // are signed by key A and others only by key B.
-                //
-                // The process of iterating every file of an attachment is important because JAR signature
-                // checks are only applied during a file read. Merely opening a signed JAR does not imply
-                // the files within it are correctly signed, but, we wish to verify package ownership
-                // at this point during construction because otherwise we may conclude a JAR is properly
-                // signed by the owners of the packages, even if it's not. We'd eventually discover that fact
-                // when trying to read the class file to use it, but if we'd made any decisions based on
-                // perceived correctness of the signatures or package ownership already, that would be too late.
-                attachment.openAsJAR().use { JarSignatureCollector.collectSigners(it) }
-            }
-            // Now open it again to compute the overlap and package ownership data.
-            attachment.openAsJAR().use { jar ->
-                val targetPlatformVersion = jar.manifest?.targetPlatformVersion ?: 1
-                while (true) {
-                    val entry = jar.nextJarEntry ?: break
-                    if (entry.isDirectory) continue
-
-                    // We already verified that paths are not strange/game playing when we inserted the attachment
-                    // into the storage service. So we don't need to repeat it here.
-                    //
-                    // We forbid files that differ only in case, or path separator to avoid issues for Windows/Mac developers where the
-                    // filesystem tries to be case insensitive. This may break developers who attempt to use ProGuard.
-                    //
-                    // Also convert to Unix path separators as all resource/class lookups will expect this.
-                    val path = entry.name.toLowerCase(Locale.US).replace('\\', '/')
-
-                    // Namespace ownership. We only check class files: resources are loaded relative to a JAR anyway.
-                    if (path.endsWith(".class")) {
-                        // Get the package name from the file name. Inner classes separate their names with $ not /
-                        // in file names so they are not a problem.
-                        val pkgName = path
-                                .dropLast(".class".length)
-                                .replace('/', '.')
-                                .split('.')
-                                .dropLast(1)
-                                .joinToString(".")
-                        for ((namespace, pubkey) in params.packageOwnership) {
-                            // Note that due to the toLowerCase() call above, we'll be comparing against a lowercased
-                            // version of the ownership claim.
-                            val ns = namespace.toLowerCase(Locale.US)
-                            // We need an additional . to avoid matching com.foo.Widget against com.foobar.Zap
-                            if (pkgName == ns || pkgName.startsWith("$ns.")) {
-                                if (pubkey !in signers)
-                                    throw PackageOwnershipException(sampleTxId, attachment.id, path, pkgName)
-                            }
+        //
+        // Both checks work from the attachments' scans, which record the packages of their class files and the
+        // content hashes of the files that must not overlap.
+
+        val classLoaderEntries = mutableMapOf<String, SecureHash>()
+        for ((attachment, scan) in attachments.zip(scans)) {
+            scan.overlappingPath?.let { throw OverlappingAttachmentsException(sampleTxId, it) }
+
+            // Namespace ownership. We only check class files: resources are loaded relative to a JAR anyway.
+            if (params.packageOwnership.isNotEmpty() && scan.classPackages.isNotEmpty()) {
+                val signers = scan.signers
+                for ((namespace, pubkey) in params.packageOwnership) {
+                    // Note that package names are lower cased by the scan, so we compare against a lower cased
+                    // version of the ownership claim.
+                    val ns = namespace.toLowerCase(Locale.US)
+                    for ((pkgName, path) in scan.classPackages) {
+                        // We need an additional . to avoid matching com.foo.Widget against com.foobar.Zap
+                        if ((pkgName == ns || pkgName.startsWith("$ns.")) && pubkey !in signers) {
+                            throw PackageOwnershipException(sampleTxId, attachment.id, path, pkgName)
                         }
                     }
+                }
+            }
 
-                    // Some files don't need overlap checking because they don't affect the way the code runs.
-                    if (!shouldCheckForNoOverlap(path, targetPlatformVersion)) continue
-
-                    // This calculates the hash of the current entry because the JarInputStream returns only the current entry.
-                    fun entryHash() = ByteArrayOutputStream().use {
-                        jar.copyTo(it)
-                        it.toByteArray()
-                    }.sha256()
-
-                    // If 2 entries are identical, it means the same file is present in both attachments, so that is ok.
-                    val currentHash = entryHash()
-                    val previousFileHash = classLoaderEntries[path]
-                    when {
-                        previousFileHash == null -> {
-                            log.debug { "Adding new entry for $path" }
-                            classLoaderEntries[path] = currentHash
-                        }
-                        currentHash == previousFileHash -> log.debug { "Duplicate entry $path has same content hash $currentHash" }
-                        else -> {
-                            log.debug { "Content hash differs for $path" }
-                            throw OverlappingAttachmentsException(sampleTxId, path)
-                        }
+            for ((path, currentHash) in scan.entryHashes) {
+                // If 2 entries are identical, it means the same file is present in both attachments, so that is ok.
+                val previousFileHash = classLoaderEntries.putIfAbsent(path, currentHash)
+                when (previousFileHash) {
+                    null -> log.debug { "Adding new entry for $path" }
+                    currentHash -> log.debug { "Duplicate entry $path has same content hash $currentHash" }
+                    else -> {
+                        log.debug { "Content hash differs for $path" }
+                        throw OverlappingAttachmentsException(sampleTxId, path)
                     }
                 }
             }
@@ -295,7 +227,9 @@ class AttachmentsClassLoader(attachments: List<Attachment>,
  */
 @VisibleForTesting
 object AttachmentsClassLoaderBuilder {
-    private const val CACHE_SIZE = 1000
+    // Bounds the total size of the attachments held by cached classloaders, rather than their number, as a
+    // handful of large CorDapps can otherwise pin far more memory than many small ones.
+    private const val CACHE_WEIGHT = 128L * 1024 * 1024
 
     // We use a set here because the ordering of attachments doesn't affect code execution, due to the no
     // overlap rule, and attachments don't have any particular ordering enforced by the builders. So we
@@ -303,8 +237,25 @@ object AttachmentsClassLoaderBuilder {
     // may behave differently, so that has to be a part of the cache key.
     private data class Key(val hashes: Set<SecureHash>, val params: NetworkParameters)
 
+    private class CacheEntry(val context: SerializationContext, val weight: Long)
+
     // This runs in the DJVM so it can't use caffeine.
-    private val cache: MutableMap<Key, SerializationContext> = createSimpleCache<Key, SerializationContext>(CACHE_SIZE).toSynchronised()
+    private val cache = WeightedLruCache<Key, CacheEntry>(CACHE_WEIGHT) { it.weight }
+
+    /** The number of requests served by an already constructed classloader. */
+    val classLoaderCacheHits: Long get() = cache.hits
+
+    /** The number of requests that had to construct a new classloader. */
+    val classLoaderCacheMisses: Long get() = cache.misses
+
+    /** The number of classloaders dropped from the cache to stay within its weight bound. */
+    val classLoaderCacheEvictions: Long get() = cache.evictions
+
+    /** The number of attachments whose no-overlap and package ownership data was reused when building a classloader. */
+    val attachmentScanCacheHits: Long get() = AttachmentsClassLoader.scanCache.hits
+
+    /** The number of attachments that had to be read in full when building a classloader. */
+    val attachmentScanCacheMisses: Long get() = AttachmentsClassLoader.scanCache.misses
 
     /**
      * Runs the given block with serialization execution context set up with a (possibly cached) attachments classloader.
@@ -318,31 +269,44 @@ object AttachmentsClassLoaderBuilder {
                                               parent: ClassLoader = ClassLoader.getSystemClassLoader(),
                                               block: (ClassLoader) -> T): T {
         val attachmentIds = attachments.map(Attachment::id).toSet()
+        val key = Key(attachmentIds, params)
 
-        val serializationContext = cache.computeIfAbsent(Key(attachmentIds, params)) {
-            // Create classloader and load serializers, whitelisted classes
-            val transactionClassLoader = AttachmentsClassLoader(attachments, params, txId, isAttachmentTrusted, parent)
-            val serializers = createInstancesOfClassesImplementing(transactionClassLoader, SerializationCustomSerializer::class.java)
-            val whitelistedClasses = ServiceLoader.load(SerializationWhitelist::class.java, transactionClassLoader)
-                    .flatMap(SerializationWhitelist::whitelist)
-
-            // Create a new serializationContext for the current transaction. In this context we will forbid
-            // deserialization of objects from the future, i.e. disable forwards compatibility. This is to ensure
-            // that app logic doesn't ignore newly added fields or accidentally downgrade data from newer state
-            // schemas to older schemas by discarding fields.
-            SerializationFactory.defaultFactory.defaultContext
-                    .withPreventDataLoss()
-                    .withClassLoader(transactionClassLoader)
-                    .withWhitelist(whitelistedClasses)
-                    .withCustomSerializers(serializers)
-                    .withoutCarpenter()
-        }
+        // The classloader is built outside the cache's lock so that verifying a transaction with a new set of
+        // attachments doesn't hold up all the others. Should two threads race to build the same one, the first
+        // one cached wins.
+        val serializationContext = (cache[key] ?: cache.putIfAbsent(key, CacheEntry(
+                createSerializationContext(attachments, params, txId, isAttachmentTrusted, parent),
+                attachments.sumBy(Attachment::size).toLong()
+        ))).context
 
         // Deserialize all relevant classes in the transaction classloader.
         return SerializationFactory.defaultFactory.withCurrentContext(serializationContext) {
             block(serializationContext.deserializationClassLoader)
         }
     }
+
+    private fun createSerializationContext(attachments: List<Attachment>,
+                                           params: NetworkParameters,
+                                           txId: SecureHash,
+                                           isAttachmentTrusted: (Attachment) -> Boolean,
+                                           parent: ClassLoader): SerializationContext {
+        // Create classloader and load serializers, whitelisted classes
+        val transactionClassLoader = AttachmentsClassLoader(attachments, params, txId, isAttachmentTrusted, parent)
+        val serializers = createInstancesOfClassesImplementing(transactionClassLoader, SerializationCustomSerializer::class.java)
+        val whitelistedClasses = ServiceLoader.load(SerializationWhitelist::class.java, transactionClassLoader)
+                .flatMap(SerializationWhitelist::whitelist)
+
+        // Create a new serializationContext for the current transaction. In this context we will forbid
+        // deserialization of objects from the future, i.e. disable forwards compatibility. This is to ensure
+        // that app logic doesn't ignore newly added fields or accidentally downgrade data from newer state
+        // schemas to older schemas by discarding fields.
+        return SerializationFactory.defaultFactory.defaultContext
+                .withPreventDataLoss()
+                .withClassLoader(transactionClassLoader)
+                .withWhitelist(whitelistedClasses)
+                .withCustomSerializers(serializers)
+                .withoutCarpenter()
+    }
 }
 
 /**
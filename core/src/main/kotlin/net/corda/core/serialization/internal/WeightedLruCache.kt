@@ -0,0 +1,48 @@
+package net.corda.core.serialization.internal
+
+/**
+ * A least recently used cache bounded by the total weight of its values rather than their number. It is used instead of
+ * caffeine by code that has to run in the DJVM.
+ *
+ * Values are computed by the caller outside of the cache's lock, and offered with [putIfAbsent].
+ */
+internal class WeightedLruCache<K : Any, V : Any>(private val maxWeight: Long, private val weigher: (V) -> Long) {
+    private class Weighted<out V>(val value: V, val weight: Long)
+
+    private val entries = LinkedHashMap<K, Weighted<V>>(16, 0.75f, true)
+    private var totalWeight = 0L
+
+    @Volatile
+    var hits = 0L
+        private set
+    @Volatile
+    var misses = 0L
+        private set
+    @Volatile
+    var evictions = 0L
+        private set
+
+    @Synchronized
+    operator fun get(key: K): V? {
+        val entry = entries[key]
+        if (entry == null) misses++ else hits++
+        return entry?.value
+    }
+
+    /** Caches [value] unless there is already a value for [key], and returns whichever value is now cached. */
+    @Synchronized
+    fun putIfAbsent(key: K, value: V): V {
+        entries[key]?.let { return it.value }
+        val weight = weigher(value)
+        entries[key] = Weighted(value, weight)
+        totalWeight += weight
+        // Always keep the newest entry, even if it is heavier than the cache on its own.
+        val iterator = entries.values.iterator()
+        while (totalWeight > maxWeight && entries.size > 1) {
+            totalWeight -= iterator.next().weight
+            iterator.remove()
+            evictions++
+        }
+        return value
+    }
+}
@@ -1,15 +1,18 @@
 package net.corda.core.transactions
 
 import net.corda.core.CordaException
+import net.corda.core.CordaInternal
 import net.corda.core.CordaThrowable
 import net.corda.core.DeleteForDJVM
 import net.corda.core.KeepForDJVM
+import net.corda.core.concurrent.CordaFuture
 import net.corda.core.contracts.*
 import net.corda.core.crypto.*
 import net.corda.core.identity.Party
 import net.corda.core.internal.TransactionDeserialisationException
 import net.corda.core.internal.TransactionVerifierServiceInternal
 import net.corda.core.internal.VisibleForTesting
+import net.corda.core.internal.concurrent.doneFuture
 import net.corda.core.node.ServiceHub
 import net.corda.core.node.ServicesForResolution
 import net.corda.core.serialization.CordaSerializable
@@ -186,6 +189,24 @@ data class SignedTransaction(val txBits: SerializedBytes<CoreTransaction>,
         }
     }
 
+    /**
+     * Performs the same checks as [verify], except that the contract verification of a regular transaction is only
+     * submitted to the [ServiceHub.transactionVerifierService] rather than waited for. The signatures, the network
+     * parameters and the resolution of the inputs are still checked on the calling thread, as they need the database.
+     *
+     * The returned future does not attempt the fix-ups of [verify], so a caller should fall back to [verify] if it fails.
+     */
+    @CordaInternal
+    @DeleteForDJVM
+    internal fun internalStartVerification(services: ServiceHub, checkSufficientSignatures: Boolean): CordaFuture<*> {
+        resolveAndCheckNetworkParameters(services)
+        return when (coreTransaction) {
+            is NotaryChangeWireTransaction -> doneFuture(verifyNotaryChangeTransaction(services, checkSufficientSignatures))
+            is ContractUpgradeWireTransaction -> doneFuture(verifyContractUpgradeTransaction(services, checkSufficientSignatures))
+            else -> services.transactionVerifierService.verify(toLedgerTransaction(services, checkSufficientSignatures))
+        }
+    }
+
     @DeleteForDJVM
     private fun resolveAndCheckNetworkParameters(services: ServiceHub) {
         val hashOrDefault = networkParametersHash ?: services.networkParametersService.defaultHash
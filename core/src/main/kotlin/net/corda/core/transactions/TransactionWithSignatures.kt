@@ -3,6 +3,7 @@ package net.corda.core.transactions
 import net.corda.core.DoNotImplement
 import net.corda.core.KeepForDJVM
 import net.corda.core.contracts.NamedByHash
+import net.corda.core.crypto.Crypto
 import net.corda.core.crypto.TransactionSignature
 import net.corda.core.crypto.isFulfilledBy
 import net.corda.core.transactions.SignedTransaction.SignaturesMissingException
@@ -88,9 +89,7 @@ interface TransactionWithSignatures : NamedByHash {
     @JvmDefault
     @Throws(InvalidKeyException::class, SignatureException::class)
     fun checkSignaturesAreValid() {
-        for (sig in sigs) {
-            sig.verify(id)
-        }
+        Crypto.batchVerify(id, sigs)
     }
 
     /**
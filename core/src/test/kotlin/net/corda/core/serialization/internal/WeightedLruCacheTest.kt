@@ -0,0 +1,40 @@
+package net.corda.core.serialization.internal
+
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class WeightedLruCacheTest {
+    private val cache = WeightedLruCache<String, String>(10) { it.length.toLong() }
+
+    @Test
+    fun `evicts the least recently used entries once over weight`() {
+        cache.putIfAbsent("a", "aaaa")
+        cache.putIfAbsent("b", "bbbb")
+        assertEquals("aaaa", cache["a"])
+        cache.putIfAbsent("c", "cccc")
+
+        assertNull(cache["b"])
+        assertEquals("aaaa", cache["a"])
+        assertEquals("cccc", cache["c"])
+        assertEquals(1, cache.evictions)
+        assertEquals(3, cache.hits)
+        assertEquals(1, cache.misses)
+    }
+
+    @Test
+    fun `keeps the first value put for a key`() {
+        assertEquals("first", cache.putIfAbsent("a", "first"))
+        assertEquals("first", cache.putIfAbsent("a", "second"))
+        assertEquals("first", cache["a"])
+    }
+
+    @Test
+    fun `keeps an entry heavier than the cache until the next one`() {
+        cache.putIfAbsent("a", "a".repeat(20))
+        assertEquals(20, cache["a"]?.length)
+        cache.putIfAbsent("b", "b")
+        assertNull(cache["a"])
+        assertEquals("b", cache["b"])
+    }
+}
@@ -5,6 +5,7 @@ import net.corda.core.context.AuthServiceId
 import net.corda.core.context.Trace
 import net.corda.core.context.Trace.InvocationId
 import net.corda.core.context.Trace.SessionId
+import net.corda.core.crypto.SecureHash
 import net.corda.core.identity.CordaX500Name
 import net.corda.core.serialization.SerializationContext
 import net.corda.core.serialization.deserialize
@@ -12,6 +13,11 @@ import net.corda.core.serialization.serialize
 import net.corda.core.utilities.Id
 import net.corda.core.utilities.OpaqueBytes
 import net.corda.core.utilities.Try
+import net.corda.core.utilities.sequence
+import net.corda.serialization.internal.amqp.FingerprintedSchema
+import net.corda.serialization.internal.amqp.SentSchemaCache
+import net.corda.serialization.internal.amqp.receivedSchemas
+import net.corda.serialization.internal.amqp.sentSchemas
 import org.apache.activemq.artemis.api.core.ActiveMQBuffer
 import org.apache.activemq.artemis.api.core.SimpleString
 import org.apache.activemq.artemis.api.core.client.ClientMessage
@@ -54,6 +60,10 @@ import java.util.*
 //
 // Note that multiple sessions like the above may interleave in an arbitrary fashion.
 //
+// A client which accepts schema references may receive a message referring to a schema it doesn't hold, if the message
+// which carried the schema in full was lost, for example while it reconnected. It then sends a SchemaRequest for it, and
+// the server resends the schema in a SchemaReply.
+//
 // Additionally the server may listen on client binding removals for cleanup using RPC_CLIENT_BINDING_REMOVALS. This
 // requires the server to create a filter on the Artemis notification address using RPC_CLIENT_BINDING_REMOVAL_FILTER_EXPRESSION
 
@@ -96,7 +106,8 @@ object RPCApi {
     sealed class ClientToServer {
         private enum class Tag {
             RPC_REQUEST,
-            OBSERVABLES_CLOSED
+            OBSERVABLES_CLOSED,
+            SCHEMA_REQUEST
         }
 
         abstract fun writeToClientMessage(message: ClientMessage)
@@ -108,6 +119,8 @@ object RPCApi {
          * @param replyId a unique ID for the request, which the server will use to identify its response with.
          * @param methodName name of the method (procedure) to be called.
          * @param serialisedArguments Serialised arguments to pass to the method, if any.
+         * @param acceptsSchemaReferences whether the client can read replies whose schemas are sent by reference, see
+         * [net.corda.serialization.internal.amqp.SentSchemaCache].
          */
         data class RpcRequest(
                 val clientAddress: SimpleString,
@@ -116,7 +129,8 @@ object RPCApi {
                 val replyId: InvocationId,
                 val sessionId: SessionId,
                 val externalTrace: Trace? = null,
-                val impersonatedActor: Actor? = null
+                val impersonatedActor: Actor? = null,
+                val acceptsSchemaReferences: Boolean = false
         ) : ClientToServer() {
             override fun writeToClientMessage(message: ClientMessage) {
                 MessageUtil.setJMSReplyTo(message, clientAddress)
@@ -129,6 +143,9 @@ object RPCApi {
                 impersonatedActor?.mapToImpersonated(message)
 
                 message.putStringProperty(METHOD_NAME_FIELD_NAME, methodName)
+                if (acceptsSchemaReferences) {
+                    message.putBooleanProperty(SCHEMA_REFERENCES_FIELD_NAME, true)
+                }
                 message.bodyBuffer.writeBytes(serialisedArguments.bytes)
             }
         }
@@ -144,6 +161,19 @@ object RPCApi {
             }
         }
 
+        /**
+         * Request to a server to resend the schema with the given [fingerprint], which the client doesn't hold.
+         *
+         * @param clientAddress return address to contact the client at.
+         */
+        data class SchemaRequest(val clientAddress: SimpleString, val fingerprint: SecureHash) : ClientToServer() {
+            override fun writeToClientMessage(message: ClientMessage) {
+                MessageUtil.setJMSReplyTo(message, clientAddress)
+                message.putIntProperty(TAG_FIELD_NAME, Tag.SCHEMA_REQUEST.ordinal)
+                message.bodyBuffer.writeBytes(fingerprint.bytes)
+            }
+        }
+
         companion object {
             fun fromClientMessage(message: ClientMessage): ClientToServer {
                 val tag = Tag.values()[message.getIntProperty(TAG_FIELD_NAME)]
@@ -155,7 +185,8 @@ object RPCApi {
                             replyId = message.replyId(),
                             sessionId = message.sessionId(),
                             externalTrace = message.externalTrace(),
-                            impersonatedActor = message.impersonatedActor()
+                            impersonatedActor = message.impersonatedActor(),
+                            acceptsSchemaReferences = message.containsProperty(SCHEMA_REFERENCES_FIELD_NAME)
                     )
                     RPCApi.ClientToServer.Tag.OBSERVABLES_CLOSED -> {
                         val ids = ArrayList<InvocationId>()
@@ -166,6 +197,10 @@ object RPCApi {
                         }
                         ObservablesClosed(ids)
                     }
+                    RPCApi.ClientToServer.Tag.SCHEMA_REQUEST -> SchemaRequest(
+                            clientAddress = MessageUtil.getJMSReplyTo(message),
+                            fingerprint = SecureHash.SHA256(message.getBodyAsByteArray())
+                    )
                 }
             }
         }
@@ -177,7 +212,8 @@ object RPCApi {
     sealed class ServerToClient {
         private enum class Tag {
             RPC_REPLY,
-            OBSERVATION
+            OBSERVATION,
+            SCHEMA_REPLY
         }
 
         abstract fun writeToClientMessage(context: SerializationContext, message: ClientMessage)
@@ -214,6 +250,23 @@ object RPCApi {
             }
         }
 
+        /**
+         * Reply to a [ClientToServer.SchemaRequest]. The server resends the schema with the given [fingerprint] if it
+         * still holds it, and the client records it on receipt. If the server no longer holds it then the client cannot
+         * read the messages which refer to it.
+         */
+        data class SchemaReply(
+                val fingerprint: SecureHash,
+                override val deduplicationIdentity: String
+        ) : ServerToClient() {
+            override fun writeToClientMessage(context: SerializationContext, message: ClientMessage) {
+                message.putIntProperty(TAG_FIELD_NAME, Tag.SCHEMA_REPLY.ordinal)
+                message.putStringProperty(DEDUPLICATION_IDENTITY_FIELD_NAME, deduplicationIdentity)
+                message.bodyBuffer.writeBytes(fingerprint.bytes)
+                (context.sentSchemas as? SentSchemaCache)?.resend(fingerprint)?.let { message.bodyBuffer.writeBytes(it) }
+            }
+        }
+
         /**
          * Thrown if the RPC reply body couldn't be deserialized.
          */
@@ -226,6 +279,11 @@ object RPCApi {
                 wrap(e).serialize(context = context)
             }
 
+            /** Whether [message] is a [SchemaReply], which may be read ahead of the messages received before it. */
+            fun isSchemaReply(message: ClientMessage): Boolean {
+                return message.getIntProperty(TAG_FIELD_NAME) == Tag.SCHEMA_REPLY.ordinal
+            }
+
             fun fromClientMessage(context: SerializationContext, message: ClientMessage): ServerToClient {
                 val tag = Tag.values()[message.getIntProperty(TAG_FIELD_NAME)]
                 val deduplicationIdentity = message.getStringProperty(DEDUPLICATION_IDENTITY_FIELD_NAME)
@@ -257,6 +315,15 @@ object RPCApi {
                                 content = payload
                         )
                     }
+                    RPCApi.ServerToClient.Tag.SCHEMA_REPLY -> {
+                        val body = message.getBodyAsByteArray()
+                        val fingerprint = SecureHash.SHA256(body.copyOf(SCHEMA_FINGERPRINT_SIZE))
+                        if (body.size > SCHEMA_FINGERPRINT_SIZE) {
+                            val schema = FingerprintedSchema.decode(body.sequence(SCHEMA_FINGERPRINT_SIZE, body.size - SCHEMA_FINGERPRINT_SIZE))
+                            context.receivedSchemas?.receivedInFull(schema)
+                        }
+                        SchemaReply(fingerprint, deduplicationIdentity)
+                    }
                 }
             }
         }
@@ -279,6 +346,9 @@ private const val DEDUPLICATION_IDENTITY_FIELD_NAME = "deduplication-identity"
 private const val OBSERVABLE_ID_FIELD_NAME = "observable-id"
 private const val OBSERVABLE_ID_TIMESTAMP_FIELD_NAME = "observable-id-timestamp"
 private const val METHOD_NAME_FIELD_NAME = "method-name"
+private const val SCHEMA_REFERENCES_FIELD_NAME = "schema-references"
+// The size of a SHA-256 schema fingerprint.
+private const val SCHEMA_FINGERPRINT_SIZE = 32
 
 fun ClientMessage.replyId(): InvocationId {
 
@@ -43,6 +43,14 @@ class ContractsJarFile(private val file: Path) : ContractsJar {
 private val logger = LoggerFactory.getLogger("ClassloaderUtils")
 
 fun <T> withContractsInJar(jarInputStream: InputStream, withContracts: (List<ContractClassName>, InputStream) -> T): T {
+    return withContractsInJarFile(jarInputStream) { contracts, jarFile -> jarFile.read { withContracts(contracts, it) } }
+}
+
+/**
+ * As [withContractsInJar], but passes the temporary file the jar was copied to, which can then be read as many times as
+ * needed without holding the jar in memory. The file is deleted once [withContracts] returns.
+ */
+fun <T> withContractsInJarFile(jarInputStream: InputStream, withContracts: (List<ContractClassName>, Path) -> T): T {
     val tempFile = Files.createTempFile("attachment", ".jar")
     try {
         jarInputStream.use {
@@ -52,7 +60,7 @@ fun <T> withContractsInJar(jarInputStream: InputStream, withContracts: (List<Con
         val contracts = logElapsedTime("Contracts loading for '$cordappJar'", logger) {
             ContractsJarFile(tempFile.toAbsolutePath()).scan()
         }
-        return tempFile.read { withContracts(contracts, it) }
+        return withContracts(contracts, tempFile)
     } finally {
         tempFile.deleteIfExists()
     }
@@ -23,6 +23,10 @@ import org.apache.activemq.artemis.api.core.client.ClientMessage
 import org.apache.activemq.artemis.api.core.client.ClientSession
 import org.slf4j.MDC
 import rx.Subscription
+import java.time.Duration
+import java.util.*
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.locks.ReentrantLock
 import kotlin.concurrent.withLock
 
@@ -32,13 +36,17 @@ import kotlin.concurrent.withLock
  *  The AMQPBridgeManager also provides a single shared connection to Artemis, although each bridge then creates an
  *  independent Session for message consumption.
  *  The Netty thread pool used by the AMQPBridges is also shared and managed by the AMQPBridgeManager.
+ *  With an [ackWindowSize] greater than one, Artemis acknowledgements are batched: each bridge acknowledges every
+ *  [ackWindowSize] remotely accepted messages, or after [ackWindowPeriod], whichever comes first.
  */
 @VisibleForTesting
 class AMQPBridgeManager(config: MutualSslConfiguration,
                         maxMessageSize: Int,
                         crlCheckSoftFail: Boolean,
                         private val artemisMessageClientFactory: () -> ArtemisSessionProvider,
-                        private val bridgeMetricsService: BridgeMetricsService? = null) : BridgeManager {
+                        private val bridgeMetricsService: BridgeMetricsService? = null,
+                        private val ackWindowSize: Int = 1,
+                        private val ackWindowPeriod: Duration = DEFAULT_ACK_WINDOW_PERIOD) : BridgeManager {
 
     private val lock = ReentrantLock()
     private val queueNamesToBridgesMap = mutableMapOf<String, MutableList<AMQPBridge>>()
@@ -61,6 +69,7 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
 
     companion object {
         private const val NUM_BRIDGE_THREADS = 0 // Default sized pool
+        val DEFAULT_ACK_WINDOW_PERIOD: Duration = Duration.ofMillis(100)
     }
 
     /**
@@ -70,6 +79,8 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
      * The acknowledgement and removal of messages from the local queue only occurs if there successful end-to-end delivery.
      * If the delivery fails the session is rolled back to prevent loss of the message. This may cause duplicate delivery,
      * however Artemis and the remote Corda instanced will deduplicate these messages.
+     * When acknowledgements are windowed the bridge remembers its deliveries in order and periodically acknowledges the
+     * longest prefix the remote has accepted with a single cumulative Artemis acknowledgement.
      */
     private class AMQPBridge(val queueName: String,
                              val targets: List<NetworkHostAndPort>,
@@ -77,7 +88,9 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
                              private val amqpConfig: AMQPConfiguration,
                              sharedEventGroup: EventLoopGroup,
                              private val artemis: ArtemisSessionProvider,
-                             private val bridgeMetricsService: BridgeMetricsService?) {
+                             private val bridgeMetricsService: BridgeMetricsService?,
+                             private val ackWindowSize: Int,
+                             private val ackWindowPeriod: Duration) {
         companion object {
             private val log = contextLogger()
         }
@@ -110,6 +123,20 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
         private var session: ClientSession? = null
         private var consumer: ClientConsumer? = null
         private var connectedSubscription: Subscription? = null
+        private val scheduler: EventLoopGroup = sharedEventGroup
+        private val windowedAcks = ackWindowSize > 1
+
+        private class PendingAck(val message: ClientMessage, val generation: Int) {
+            var accepted: Boolean = false
+        }
+
+        // Deliveries awaiting acknowledgement to Artemis, in the order the consumer received them. This and the fields
+        // below are guarded by the queue's own monitor, which is never held while talking to Artemis.
+        private val pendingAcks = ArrayDeque<PendingAck>()
+        private var unflushedAcks = 0
+        private var flushScheduled = false
+        // Bumped whenever the window is discarded, so that late completions of discarded deliveries are ignored.
+        private var ackGeneration = 0
 
         fun start() {
             logInfoWithMDC("Create new AMQP bridge")
@@ -121,6 +148,8 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
             logInfoWithMDC("Stopping AMQP bridge")
             lock.withLock {
                 synchronized(artemis) {
+                    flushAcks()
+                    resetAckWindow()
                     consumer?.close()
                     consumer = null
                     session?.stop()
@@ -139,7 +168,9 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
                         logInfoWithMDC("Bridge Connected")
                         bridgeMetricsService?.bridgeConnected(targets, legalNames)
                         val sessionFactory = artemis.started!!.sessionFactory
-                        val session = sessionFactory.createSession(NODE_P2P_USER, NODE_P2P_USER, false, true, true, false, DEFAULT_ACK_BATCH_SIZE)
+                        // Windowed acknowledgements are already batched, so send each one as soon as it is made.
+                        val ackBatchSize = if (windowedAcks) 0 else DEFAULT_ACK_BATCH_SIZE
+                        val session = sessionFactory.createSession(NODE_P2P_USER, NODE_P2P_USER, false, true, true, false, ackBatchSize)
                         this.session = session
                         val consumer = session.createConsumer(queueName)
                         this.consumer = consumer
@@ -148,6 +179,8 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
                     } else {
                         logInfoWithMDC("Bridge Disconnected")
                         bridgeMetricsService?.bridgeDisconnected(targets, legalNames)
+                        flushAcks()
+                        resetAckWindow()
                         consumer?.close()
                         consumer = null
                         session?.stop()
@@ -167,7 +200,9 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
                 artemisMessage.individualAcknowledge()
                 return
             }
-            val data = ByteArray(artemisMessage.bodySize).apply { artemisMessage.bodyBuffer.readBytes(this) }
+            // Send the body straight from the Artemis message's buffer, which stays untouched until the message is acknowledged.
+            val bodyBuffer = artemisMessage.bodyBuffer
+            val data = bodyBuffer.byteBuf().slice(bodyBuffer.readerIndex(), artemisMessage.bodySize)
             val properties = HashMap<String, Any?>()
             for (key in P2PMessagingHeaders.whitelistedHeaders) {
                 if (artemisMessage.containsProperty(key)) {
@@ -183,17 +218,19 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
             val sendableMessage = amqpClient.createMessage(data, peerInbox,
                     legalNames.first().toString(),
                     properties)
+            val pendingAck = if (windowedAcks) synchronized(pendingAcks) { PendingAck(artemisMessage, ackGeneration).also { pendingAcks.add(it) } } else null
             sendableMessage.onComplete.then {
                 logDebugWithMDC { "Bridge ACK ${sendableMessage.onComplete.get()}" }
-                lock.withLock {
-                    if (sendableMessage.onComplete.get() == MessageStatus.Acknowledged) {
-                        artemisMessage.individualAcknowledge()
+                if (sendableMessage.onComplete.get() == MessageStatus.Acknowledged) {
+                    if (pendingAck != null) {
+                        acceptInWindow(pendingAck)
                     } else {
+                        lock.withLock { artemisMessage.individualAcknowledge() }
+                    }
+                } else {
+                    lock.withLock {
                         logInfoWithMDC("Rollback rejected message uuid: ${artemisMessage.getObjectProperty("_AMQ_DUPL_ID")}")
-                        // We need to commit any acknowledged messages before rolling back the failed
-                        // (unacknowledged) message.
-                        session?.commit()
-                        session?.rollback(false)
+                        rollback()
                     }
                 }
             }
@@ -205,12 +242,75 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
                 lock.withLock {
                     ex.message?.let { logInfoWithMDC(it)}
                     logInfoWithMDC("Rollback rejected message uuid: ${artemisMessage.getObjectProperty("_AMQ_DUPL_ID")}")
-                    session?.commit()
-                    session?.rollback(false)
+                    rollback()
                 }
             }
             bridgeMetricsService?.packetAcceptedEvent(sendableMessage)
         }
+
+        private fun acceptInWindow(pendingAck: PendingAck) {
+            val flushNow = synchronized(pendingAcks) {
+                if (pendingAck.generation != ackGeneration) return
+                pendingAck.accepted = true
+                if (++unflushedAcks >= ackWindowSize) {
+                    true
+                } else {
+                    if (!flushScheduled) {
+                        flushScheduled = true
+                        try {
+                            scheduler.schedule({ lock.withLock { flushAcks() } }, ackWindowPeriod.toMillis(), TimeUnit.MILLISECONDS)
+                        } catch (ex: RejectedExecutionException) {
+                            // Shutting down, the bridge flushes as it stops.
+                        }
+                    }
+                    false
+                }
+            }
+            if (flushNow) {
+                lock.withLock { flushAcks() }
+            }
+        }
+
+        /**
+         * Acknowledges the longest run of remotely accepted deliveries at the head of the window. Artemis acknowledgements
+         * are cumulative per consumer (bridged messages all share the default priority), so acknowledging the last message
+         * of the run covers all the earlier ones.
+         * Must be called holding [lock].
+         */
+        private fun flushAcks() {
+            if (!windowedAcks) return
+            val last = synchronized(pendingAcks) {
+                flushScheduled = false
+                var last: PendingAck? = null
+                while (pendingAcks.peek()?.accepted == true) {
+                    last = pendingAcks.poll()
+                    unflushedAcks--
+                }
+                last
+            }
+            if (last != null && session != null) {
+                last.message.acknowledge()
+            }
+        }
+
+        /**
+         * Rolls the session back so that Artemis redelivers everything not yet acknowledged. Messages the remote has already
+         * accepted are acknowledged and committed first. Must be called holding [lock].
+         */
+        private fun rollback() {
+            flushAcks()
+            resetAckWindow()
+            session?.commit()
+            session?.rollback(false)
+        }
+
+        private fun resetAckWindow() {
+            synchronized(pendingAcks) {
+                pendingAcks.clear()
+                unflushedAcks = 0
+                ackGeneration++
+            }
+        }
     }
 
     override fun deployBridge(queueName: String, targets: List<NetworkHostAndPort>, legalNames: Set<CordaX500Name>) {
@@ -221,7 +321,8 @@ class AMQPBridgeManager(config: MutualSslConfiguration,
                     return
                 }
             }
-            val newBridge = AMQPBridge(queueName, targets, legalNames, amqpConfig, sharedEventLoopGroup!!, artemis!!, bridgeMetricsService)
+            val newBridge = AMQPBridge(queueName, targets, legalNames, amqpConfig, sharedEventLoopGroup!!, artemis!!, bridgeMetricsService,
+                    ackWindowSize, ackWindowPeriod)
             bridges += newBridge
             bridgeMetricsService?.bridgeCreated(targets, legalNames)
             newBridge
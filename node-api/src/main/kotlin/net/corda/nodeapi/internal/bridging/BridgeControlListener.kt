@@ -14,20 +14,25 @@ import org.apache.activemq.artemis.api.core.RoutingType
 import org.apache.activemq.artemis.api.core.SimpleString
 import org.apache.activemq.artemis.api.core.client.ClientConsumer
 import org.apache.activemq.artemis.api.core.client.ClientMessage
+import java.time.Duration
 import java.util.*
 
 class BridgeControlListener(val config: MutualSslConfiguration,
                             maxMessageSize: Int,
                             crlCheckSoftFail: Boolean,
                             private val artemisMessageClientFactory: () -> ArtemisSessionProvider,
-                            bridgeMetricsService: BridgeMetricsService? = null) : AutoCloseable {
+                            bridgeMetricsService: BridgeMetricsService? = null,
+                            ackWindowSize: Int = 1,
+                            ackWindowPeriod: Duration = AMQPBridgeManager.DEFAULT_ACK_WINDOW_PERIOD) : AutoCloseable {
     private val bridgeId: String = UUID.randomUUID().toString()
     private val bridgeManager: BridgeManager = AMQPBridgeManager(
             config,
             maxMessageSize,
             crlCheckSoftFail,
             artemisMessageClientFactory,
-            bridgeMetricsService)
+            bridgeMetricsService,
+            ackWindowSize,
+            ackWindowPeriod)
     private val validInboundQueues = mutableSetOf<String>()
     private var artemis: ArtemisSessionProvider? = null
     private var controlConsumer: ClientConsumer? = null
@@ -1,8 +1,8 @@
 package net.corda.nodeapi.internal.protonwrapper.engine
 
 import io.netty.buffer.ByteBuf
+import io.netty.buffer.ByteBufUtil
 import io.netty.buffer.PooledByteBufAllocator
-import io.netty.buffer.Unpooled
 import io.netty.channel.Channel
 import io.netty.channel.ChannelHandlerContext
 import net.corda.core.utilities.NetworkHostAndPort
@@ -418,26 +418,29 @@ internal class ConnectionStateMachine(private val serverMode: Boolean,
         }
     }
 
-    private fun encodeAMQPMessage(message: Message): ByteBuf {
-        val buffer = PooledByteBufAllocator.DEFAULT.heapBuffer(1500)
+    // The pooled buffer is handed on as it is, to be released once the message has been passed to proton. It has to be a heap
+    // buffer as proton sends from a byte array.
+    private fun encodeAMQPMessage(message: Message, payloadSize: Int): ByteBuf {
+        val buffer = PooledByteBufAllocator.DEFAULT.heapBuffer(payloadSize + 1500)
         try {
-            try {
-                message.encode(NettyWritable(buffer))
-                val bytes = ByteArray(buffer.writerIndex())
-                buffer.readBytes(bytes)
-                return Unpooled.wrappedBuffer(bytes)
-            } catch (ex: Exception) {
-                logErrorWithMDC("Unable to encode message as AMQP packet", ex)
-                throw ex
-            }
-        } finally {
+            message.encode(NettyWritable(buffer))
+            return buffer
+        } catch (ex: Exception) {
             buffer.release()
+            logErrorWithMDC("Unable to encode message as AMQP packet", ex)
+            throw ex
         }
     }
 
     private fun encodePayloadBytes(msg: SendableMessageImpl): ByteBuf {
         val message = Proton.message()
-        message.body = Data(Binary(msg.payload))
+        val payload = msg.payloadBuffer
+        // Wrap the payload's backing array where there is one rather than copying it.
+        message.body = Data(if (payload.hasArray()) {
+            Binary(payload.array(), payload.arrayOffset() + payload.readerIndex(), payload.readableBytes())
+        } else {
+            Binary(ByteBufUtil.getBytes(payload))
+        })
         message.isDurable = true
         message.properties = Properties()
         val appProperties = HashMap(msg.applicationProperties)
@@ -445,7 +448,7 @@ internal class ConnectionStateMachine(private val serverMode: Boolean,
         // Fortunately, when we are bridge to bridge/bridge to float we can authenticate links there.
         appProperties["_AMQ_VALIDATED_USER"] = localLegalName
         message.applicationProperties = ApplicationProperties(appProperties)
-        return encodeAMQPMessage(message)
+        return encodeAMQPMessage(message, payload.readableBytes())
     }
 
     private fun decodeAMQPMessage(link: Receiver): Message {
@@ -34,9 +34,9 @@ internal class EventProcessor(channel: Channel,
                               private val localLegalName: String,
                               private val remoteLegalName: String,
                               userName: String?,
-                              password: String?) : BaseHandler() {
+                              password: String?,
+                              creditWindowSize: Int) : BaseHandler() {
     companion object {
-        private const val FLOW_WINDOW_SIZE = 10
         private val log = contextLogger()
     }
 
@@ -74,7 +74,7 @@ internal class EventProcessor(channel: Channel,
 
     init {
         addHandler(Handshaker())
-        addHandler(FlowController(FLOW_WINDOW_SIZE))
+        addHandler(FlowController(creditWindowSize))
         addHandler(stateMachine)
         connection.context = channel
         tick(stateMachine.connection)
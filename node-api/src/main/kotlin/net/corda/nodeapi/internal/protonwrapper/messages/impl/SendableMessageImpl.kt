@@ -1,6 +1,8 @@
 package net.corda.nodeapi.internal.protonwrapper.messages.impl
 
 import io.netty.buffer.ByteBuf
+import io.netty.buffer.ByteBufUtil
+import io.netty.buffer.Unpooled
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.internal.concurrent.openFuture
 import net.corda.core.utilities.NetworkHostAndPort
@@ -10,12 +12,24 @@ import net.corda.nodeapi.internal.protonwrapper.messages.SendableMessage
 /**
  * An internal packet management class that allows handling of the encoded buffers and
  * allows registration of an acknowledgement handler when the remote receiver confirms durable storage.
+ *
+ * @property payloadBuffer The payload, which is encoded straight from this buffer. It is neither copied nor released, so
+ * must not change until the message is sent.
  */
-internal class SendableMessageImpl(override val payload: ByteArray,
+internal class SendableMessageImpl(val payloadBuffer: ByteBuf,
                                    override val topic: String,
                                    override val destinationLegalName: String,
                                    override val destinationLink: NetworkHostAndPort,
                                    override val applicationProperties: Map<String, Any?>) : SendableMessage {
+    constructor(payload: ByteArray,
+                topic: String,
+                destinationLegalName: String,
+                destinationLink: NetworkHostAndPort,
+                applicationProperties: Map<String, Any?>) : this(Unpooled.wrappedBuffer(payload), topic, destinationLegalName, destinationLink, applicationProperties)
+
+    /** A copy of the payload. */
+    override val payload: ByteArray get() = ByteBufUtil.getBytes(payloadBuffer)
+
     var buf: ByteBuf? = null
     @Volatile
     var status: MessageStatus = MessageStatus.Unsent
@@ -1,6 +1,8 @@
 package net.corda.nodeapi.internal.protonwrapper.netty
 
 import io.netty.bootstrap.Bootstrap
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
 import io.netty.channel.*
 import io.netty.channel.nio.NioEventLoopGroup
 import io.netty.channel.socket.SocketChannel
@@ -131,6 +133,7 @@ class AMQPClient(val targets: List<NetworkHostAndPort>,
                     conf.userName,
                     conf.password,
                     conf.trace,
+                    conf.creditWindowSize,
                     {
                         parent.retryInterval = MIN_RETRY_INTERVAL // reset to fast reconnect if we connect properly
                         parent._onConnection.onNext(it.second)
@@ -198,7 +201,18 @@ class AMQPClient(val targets: List<NetworkHostAndPort>,
                       topic: String,
                       destinationLegalName: String,
                       properties: Map<String, Any?>): SendableMessage {
-        requireMessageSize(payload.size, configuration.maxMessageSize)
+        return createMessage(Unpooled.wrappedBuffer(payload), topic, destinationLegalName, properties)
+    }
+
+    /**
+     * Creates a message whose payload is the readable bytes of [payload]. These are encoded without being copied first, so
+     * they must not change until the message completes. The buffer is not released.
+     */
+    fun createMessage(payload: ByteBuf,
+                      topic: String,
+                      destinationLegalName: String,
+                      properties: Map<String, Any?>): SendableMessage {
+        requireMessageSize(payload.readableBytes(), configuration.maxMessageSize)
         return SendableMessageImpl(payload, topic, destinationLegalName, currentTarget, properties)
     }
 
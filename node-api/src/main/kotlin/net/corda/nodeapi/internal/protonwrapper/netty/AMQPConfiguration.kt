@@ -5,6 +5,10 @@ import net.corda.nodeapi.internal.config.CertificateStore
 import java.security.KeyStore
 
 interface AMQPConfiguration {
+    companion object {
+        const val DEFAULT_CREDIT_WINDOW_SIZE = 10
+    }
+
     /**
      * SASL User name presented during protocol handshake. No SASL login if NULL.
      * For legacy interoperability with Artemis authorisation we typically require this to be "PEER_USER"
@@ -51,5 +55,14 @@ interface AMQPConfiguration {
      * but currently that is deferred to Artemis and the bridge code.
      */
     val maxMessageSize: Int
+
+    /**
+     * The number of messages each receiving link grants credit for. The window is topped up as deliveries are consumed,
+     * so a larger value lets a sender keep more messages in flight on high latency links at the cost of buffering.
+     * This only applies to an [AMQPServer]: the links an [AMQPClient] opens only send, and their credit is granted by the peer.
+     */
+    @JvmDefault
+    val creditWindowSize: Int
+        get() = DEFAULT_CREDIT_WINDOW_SIZE
 }
 
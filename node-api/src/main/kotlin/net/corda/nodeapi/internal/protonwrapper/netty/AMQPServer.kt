@@ -74,6 +74,7 @@ class AMQPServer(val hostName: String,
                     conf.userName,
                     conf.password,
                     conf.trace,
+                    conf.creditWindowSize,
                     {
                         parent.clientChannels[it.first.remoteAddress()] = it.first
                         parent._onConnection.onNext(it.second)
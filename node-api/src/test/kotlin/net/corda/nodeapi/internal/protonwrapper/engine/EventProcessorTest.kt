@@ -0,0 +1,29 @@
+package net.corda.nodeapi.internal.protonwrapper.engine
+
+import io.netty.channel.embedded.EmbeddedChannel
+import net.corda.nodeapi.internal.protonwrapper.netty.AMQPConfiguration
+import org.apache.qpid.proton.amqp.messaging.Target
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class EventProcessorTest {
+    @Test
+    fun `receiving links are granted the configured credit`() {
+        assertEquals(AMQPConfiguration.DEFAULT_CREDIT_WINDOW_SIZE, grantedCredit(AMQPConfiguration.DEFAULT_CREDIT_WINDOW_SIZE))
+        assertEquals(50, grantedCredit(50))
+    }
+
+    private fun grantedCredit(creditWindowSize: Int): Int {
+        val channel = EmbeddedChannel()
+        try {
+            val eventProcessor = EventProcessor(channel, true, "O=Local, L=London, C=GB", "O=Remote, L=London, C=GB", null, null, creditWindowSize)
+            val receiver = eventProcessor.connection.session().receiver("test")
+            receiver.target = Target().apply { address = "test" }
+            receiver.open()
+            eventProcessor.processEvents()
+            return receiver.credit
+        } finally {
+            channel.close()
+        }
+    }
+}
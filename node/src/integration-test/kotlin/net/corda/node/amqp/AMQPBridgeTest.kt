@@ -168,6 +168,43 @@ class AMQPBridgeTest {
         artemisServer.stop()
     }
 
+    @Test
+    fun `windowed acknowledgements drain the local queue`() {
+        val sourceQueueName = "internal.peers." + BOB.publicKey.toStringShort()
+        val (artemisServer, artemisClient, bridgeManager) = createArtemis(sourceQueueName, ackWindowSize = 3)
+
+        // Five messages do not fill two windows, so the last two are only acknowledged once the window period expires
+        val artemis = artemisClient.started!!
+        for (i in 0 until 5) {
+            val artemisMessage = artemis.session.createMessage(true).apply {
+                putIntProperty(P2PMessagingHeaders.senderUUID, i)
+                writeBodyBufferBytes("Test$i".toByteArray())
+                putStringProperty(HDR_DUPLICATE_DETECTION_ID, SimpleString(UUID.randomUUID().toString()))
+            }
+            artemis.producer.send(sourceQueueName, artemisMessage)
+        }
+
+        val amqpServer = createAMQPServer()
+        val receive = amqpServer.onReceive.toBlocking().iterator
+        amqpServer.start()
+
+        for (i in 0 until 5) {
+            val received = receive.next()
+            assertEquals(i, received.applicationProperties[P2PMessagingHeaders.senderUUID.toString()])
+            received.complete(true)
+        }
+
+        val deadline = System.currentTimeMillis() + 10_000L
+        while (artemis.session.queueQuery(SimpleString(sourceQueueName)).messageCount > 0L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals(0L, artemis.session.queueQuery(SimpleString(sourceQueueName)).messageCount)
+        bridgeManager.stop()
+        amqpServer.stop()
+        artemisClient.stop()
+        artemisServer.stop()
+    }
+
     @Test
     fun `bridge with strict CRL checking does not connect to server with invalid certificates`() {
         // Note that the opposite of this test (that a connection is established if strict checking is disabled) is carried out by the
@@ -186,7 +223,7 @@ class AMQPBridgeTest {
         artemisServer.stop()
     }
 
-    private fun createArtemis(sourceQueueName: String?, crlCheckSoftFail: Boolean = true): Triple<ArtemisMessagingServer, ArtemisMessagingClient, BridgeManager> {
+    private fun createArtemis(sourceQueueName: String?, crlCheckSoftFail: Boolean = true, ackWindowSize: Int = 1): Triple<ArtemisMessagingServer, ArtemisMessagingClient, BridgeManager> {
         val baseDir = temporaryFolder.root.toPath() / "artemis"
         val certificatesDirectory = baseDir / "certificates"
         val p2pSslConfiguration = CertificateStoreStubs.P2P.withCertificatesDirectory(certificatesDirectory)
@@ -206,7 +243,8 @@ class AMQPBridgeTest {
         val artemisClient = ArtemisMessagingClient(artemisConfig.p2pSslOptions, artemisAddress, MAX_MESSAGE_SIZE)
         artemisServer.start()
         artemisClient.start()
-        val bridgeManager = AMQPBridgeManager(artemisConfig.p2pSslOptions, artemisAddress, MAX_MESSAGE_SIZE, artemisConfig.crlCheckSoftFail)
+        val bridgeManager = AMQPBridgeManager(artemisConfig.p2pSslOptions, MAX_MESSAGE_SIZE, artemisConfig.crlCheckSoftFail,
+                { ArtemisMessagingClient(artemisConfig.p2pSslOptions, artemisAddress, MAX_MESSAGE_SIZE) }, ackWindowSize = ackWindowSize)
         bridgeManager.start()
         val artemis = artemisClient.started!!
         if (sourceQueueName != null) {
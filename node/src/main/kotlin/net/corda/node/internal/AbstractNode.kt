@@ -1,6 +1,8 @@
 package net.corda.node.internal
 
+import com.codahale.metrics.Gauge
 import com.codahale.metrics.MetricRegistry
+import com.github.benmanes.caffeine.cache.Caffeine
 import com.google.common.collect.MutableClassToInstanceMap
 import com.google.common.util.concurrent.MoreExecutors
 import com.google.common.util.concurrent.ThreadFactoryBuilder
@@ -12,6 +14,8 @@ import net.corda.core.context.InvocationContext
 import net.corda.core.crypto.DigitalSignature
 import net.corda.core.crypto.SecureHash
 import net.corda.core.crypto.internal.AliasPrivateKey
+import net.corda.core.crypto.internal.VerifiedSignature
+import net.corda.core.crypto.internal.verifiedSignatures
 import net.corda.core.crypto.newSecureRandom
 import net.corda.core.flows.ContractUpgradeFlow
 import net.corda.core.flows.FinalityFlow
@@ -30,6 +34,7 @@ import net.corda.core.internal.FlowStateMachine
 import net.corda.core.internal.NODE_INFO_DIRECTORY
 import net.corda.core.internal.NamedCacheFactory
 import net.corda.core.internal.NetworkParametersStorage
+import net.corda.core.internal.PartialAttachmentStorage
 import net.corda.core.internal.VisibleForTesting
 import net.corda.core.internal.concurrent.flatMap
 import net.corda.core.internal.concurrent.map
@@ -57,6 +62,7 @@ import net.corda.core.schemas.MappedSchema
 import net.corda.core.serialization.SerializationWhitelist
 import net.corda.core.serialization.SerializeAsToken
 import net.corda.core.serialization.SingletonSerializeAsToken
+import net.corda.core.serialization.internal.AttachmentsClassLoaderBuilder
 import net.corda.core.transactions.LedgerTransaction
 import net.corda.core.utilities.NetworkHostAndPort
 import net.corda.core.utilities.days
@@ -99,6 +105,7 @@ import net.corda.node.services.events.NodeSchedulerService
 import net.corda.node.services.events.ScheduledActivityObserver
 import net.corda.node.services.identity.PersistentIdentityService
 import net.corda.node.services.keys.BasicHSMKeyManagementService
+import net.corda.node.services.keys.FreshKeyPool
 import net.corda.node.services.keys.KeyManagementServiceInternal
 import net.corda.node.services.messaging.DeduplicationHandler
 import net.corda.node.services.messaging.MessagingService
@@ -112,6 +119,8 @@ import net.corda.node.services.persistence.AttachmentStorageInternal
 import net.corda.node.services.persistence.DBCheckpointStorage
 import net.corda.node.services.persistence.DBTransactionMappingStorage
 import net.corda.node.services.persistence.DBTransactionStorage
+import net.corda.node.services.persistence.FileSystemAttachmentContentStore
+import net.corda.node.services.persistence.FileSystemPartialAttachmentStorage
 import net.corda.node.services.persistence.NodeAttachmentService
 import net.corda.node.services.persistence.NodePropertiesPersistentStore
 import net.corda.node.services.persistence.PublicKeyToOwningIdentityCacheImpl
@@ -122,6 +131,7 @@ import net.corda.node.services.statemachine.ExternalEvent
 import net.corda.node.services.statemachine.FlowLogicRefFactoryImpl
 import net.corda.node.services.statemachine.FlowMonitor
 import net.corda.node.services.statemachine.FlowStateMachineImpl
+import net.corda.node.services.statemachine.SessionSchemaCaches
 import net.corda.node.services.statemachine.SingleThreadedStateMachineManager
 import net.corda.node.services.statemachine.StateMachineManager
 import net.corda.node.services.transactions.BasicVerifierFactoryService
@@ -161,6 +171,7 @@ import net.corda.nodeapi.internal.persistence.DatabaseConfig
 import net.corda.nodeapi.internal.persistence.DatabaseIncompatibleException
 import net.corda.nodeapi.internal.persistence.OutstandingDatabaseChangesException
 import net.corda.nodeapi.internal.persistence.SchemaMigration
+import net.corda.serialization.internal.amqp.DefaultRemoteSerializerFactory
 import net.corda.tools.shell.InteractiveShell
 import org.apache.activemq.artemis.utils.ReusableLatch
 import org.jolokia.jvmagent.JolokiaServer
@@ -228,6 +239,20 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
         }
     }
 
+    init {
+        // The attachments classloader and resolved remote type caches are shared by everything in the JVM, so these
+        // report on all of them.
+        metricRegistry.register("AttachmentsClassLoader.CacheHits", Gauge<Long> { AttachmentsClassLoaderBuilder.classLoaderCacheHits })
+        metricRegistry.register("AttachmentsClassLoader.CacheMisses", Gauge<Long> { AttachmentsClassLoaderBuilder.classLoaderCacheMisses })
+        metricRegistry.register("AttachmentsClassLoader.CacheEvictions", Gauge<Long> { AttachmentsClassLoaderBuilder.classLoaderCacheEvictions })
+        metricRegistry.register("AttachmentsClassLoader.ScanCacheHits", Gauge<Long> { AttachmentsClassLoaderBuilder.attachmentScanCacheHits })
+        metricRegistry.register("AttachmentsClassLoader.ScanCacheMisses", Gauge<Long> { AttachmentsClassLoaderBuilder.attachmentScanCacheMisses })
+        metricRegistry.register("Serialization.ResolvedTypeCacheHits", Gauge<Long> { DefaultRemoteSerializerFactory.resolvedTypeCacheHits })
+        metricRegistry.register("Serialization.ResolvedTypeCacheMisses", Gauge<Long> { DefaultRemoteSerializerFactory.resolvedTypeCacheMisses })
+        // Verified signatures are also shared, as a signature which verified for one node will verify for any other.
+        verifiedSignatures = cacheFactory.buildNamed<VerifiedSignature, Boolean>(Caffeine.newBuilder(), "Crypto_verifiedSignatures").asMap()
+    }
+
     private val notaryLoader = configuration.notary?.let {
         NotaryLoader(it, versionInfo)
     }
@@ -251,7 +276,7 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
     }
 
     val networkMapCache = PersistentNetworkMapCache(cacheFactory, database, identityService).tokenize()
-    val checkpointStorage = DBCheckpointStorage()
+    val checkpointStorage = DBCheckpointStorage(configuration.deltaCheckpoints)
     @Suppress("LeakingThis")
     val transactionStorage = makeTransactionStorage(configuration.transactionCacheSizeBytes).tokenize()
     val networkMapClient: NetworkMapClient? = configuration.networkServices?.let { NetworkMapClient(it.networkMapURL, versionInfo) }
@@ -259,8 +284,10 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
         metricRegistry,
         cacheFactory,
         database,
-        configuration.devMode
+        configuration.devMode,
+        configuration.attachmentsDirectory?.let { FileSystemAttachmentContentStore(it) }
     ).tokenize()
+    val partialAttachmentStorage = FileSystemPartialAttachmentStorage(configuration.baseDirectory / "partial-attachments")
     val attachmentTrustCalculator = makeAttachmentTrustCalculator(configuration, database)
     val cryptoService = CryptoServiceFactory.makeCryptoService(
             SupportedCryptoServices.BC_SIMPLE,
@@ -274,12 +301,13 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
     val pkToIdCache = PublicKeyToOwningIdentityCacheImpl(database, cacheFactory)
     @Suppress("LeakingThis")
     val keyManagementService = makeKeyManagementService(identityService).tokenize()
-    val servicesForResolution = ServicesForResolutionImpl(identityService, attachments, cordappProvider, networkParametersStorage, transactionStorage).also {
+    val servicesForResolution = ServicesForResolutionImpl(identityService, attachments, cordappProvider, networkParametersStorage, transactionStorage, cacheFactory).also {
         attachments.servicesForResolution = it
     }
     @Suppress("LeakingThis")
     val vaultService = makeVaultService(keyManagementService, servicesForResolution, database, cordappLoader).tokenize()
     val nodeProperties = NodePropertiesPersistentStore(StubbedNodeUniqueIdProvider::value, database, cacheFactory)
+    val sessionSchemaCaches = SessionSchemaCaches(networkMapCache, database, cacheFactory)
     val flowLogicRefFactory = makeFlowLogicRefFactoryImpl()
     // TODO Cancelling parameters updates - if we do that, how we ensure that no one uses cancelled parameters in the transactions?
     val networkMapUpdater = NetworkMapUpdater(
@@ -299,8 +327,9 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
     val transactionVerifierService = InMemoryTransactionVerifierService(
         numberOfWorkers = transactionVerifierWorkerCount,
         cordappProvider = cordappProvider,
-        attachments = attachments
-    ).tokenize()
+        attachments = attachments,
+        metrics = metricRegistry
+    ).tokenize().closeOnStop()
     val verifierFactoryService: VerifierFactoryService = if (djvmCordaSource != null) {
         DeterministicVerifierFactoryService(djvmBootstrapSource, djvmCordaSource).apply {
             log.info("DJVM sandbox enabled for deterministic contract verification.")
@@ -504,6 +533,7 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
             networkParametersStorage.setCurrentParameters(signedNetParams, trustRoot)
             identityService.loadIdentities(nodeInfo.legalIdentitiesAndCerts)
             attachments.start()
+            partialAttachmentStorage.removeAbandoned { checkpointStorage.getCheckpoint(it) != null }
             cordappProvider.start()
             nodeProperties.start()
             // Place the long term identity key in the KMS. Eventually, this is likely going to be separated again because
@@ -943,7 +973,15 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
         // Place the long term identity key in the KMS. Eventually, this is likely going to be separated again because
         // the KMS is meant for derived temporary keys used in transactions, and we're not supposed to sign things with
         // the identity key. But the infrastructure to make that easy isn't here yet.
-        return BasicHSMKeyManagementService(cacheFactory, identityService, database, cryptoService)
+        return BasicHSMKeyManagementService(cacheFactory, identityService, database, cryptoService, makeFreshKeyPool())
+    }
+
+    private fun makeFreshKeyPool(): FreshKeyPool? {
+        if (configuration.freshKeyPoolHighWatermark <= 0) return null
+        val pool = FreshKeyPool(configuration.freshKeyPoolLowWatermark, configuration.freshKeyPoolHighWatermark).closeOnStop()
+        metricRegistry.register("KeyManagementService.FreshKeyPoolDepth", Gauge<Int> { pool.size })
+        metricRegistry.register("KeyManagementService.FreshKeyPoolMisses", Gauge<Long> { pool.missCount })
+        return pool
     }
 
     open fun stop() {
@@ -1097,7 +1135,7 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
                                         services: ServicesForResolution,
                                         database: CordaPersistence,
                                         cordappLoader: CordappLoader): VaultServiceInternal {
-        return NodeVaultService(platformClock, keyManagementService, services, database, schemaService, cordappLoader.appClassLoader)
+        return NodeVaultService(platformClock, keyManagementService, services, database, schemaService, cordappLoader.appClassLoader, servicesForResolution)
     }
 
     // JDK 11: switch to directly instantiating jolokia server (rather than indirectly via dynamically self attaching Java Agents,
@@ -1134,8 +1172,10 @@ abstract class AbstractNode<S>(val configuration: NodeConfiguration,
         override val configuration: NodeConfiguration get() = this@AbstractNode.configuration
         override val networkMapUpdater: NetworkMapUpdater get() = this@AbstractNode.networkMapUpdater
         override val cacheFactory: NamedCacheFactory get() = this@AbstractNode.cacheFactory
+        override val sessionSchemaCaches: SessionSchemaCaches get() = this@AbstractNode.sessionSchemaCaches
         override val networkParametersService: NetworkParametersStorage get() = this@AbstractNode.networkParametersStorage
         override val attachmentTrustCalculator: AttachmentTrustCalculator get() = this@AbstractNode.attachmentTrustCalculator
+        override val partialAttachmentStorage: PartialAttachmentStorage get() = this@AbstractNode.partialAttachmentStorage
         override val diagnosticsService: DiagnosticsService get() = this@AbstractNode.diagnosticsService
         override val externalOperationExecutor: ExecutorService get() = this@AbstractNode.externalOperationExecutor
 
@@ -129,6 +129,15 @@ internal class CordaRPCOpsImpl(
         return services.vaultService._queryBy(criteria, paging, sorting, contractStateType)
     }
 
+    @RPCReturnsObservables
+    override fun <T : ContractState> vaultStreamBy(criteria: QueryCriteria,
+                                                   sorting: Sort,
+                                                   batchSize: Int,
+                                                   contractStateType: Class<out T>): Observable<Vault.Page<T>> {
+        contractStateType.checkIsA<ContractState>()
+        return services.vaultService._streamBy(criteria, sorting, batchSize, contractStateType)
+    }
+
     @RPCReturnsObservables
     override fun <T : ContractState> vaultTrackBy(criteria: QueryCriteria,
                                                   paging: PageSpecification,
@@ -417,7 +417,8 @@ open class Node(configuration: NodeConfiguration,
                     failoverCallback = { errorAndTerminate("ArtemisMessagingClient failed. Shutting down.", null) }
             )
         }
-        return BridgeControlListener(configuration.p2pSslOptions, networkParameters.maxMessageSize, configuration.crlCheckSoftFail, artemisMessagingClientFactory)
+        return BridgeControlListener(configuration.p2pSslOptions, networkParameters.maxMessageSize, configuration.crlCheckSoftFail, artemisMessagingClientFactory,
+                ackWindowSize = configuration.bridgeAckWindowSize, ackWindowPeriod = configuration.bridgeAckWindowPeriodMillis)
     }
 
     private fun startLocalRpcBroker(securityManager: RPCSecurityManager): BrokerAddresses? {
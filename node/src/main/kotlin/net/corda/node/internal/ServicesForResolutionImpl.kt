@@ -1,42 +1,91 @@
 package net.corda.node.internal
 
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.Weigher
 import net.corda.core.contracts.*
+import net.corda.core.contracts.ComponentGroupEnum.OUTPUTS_GROUP
 import net.corda.core.cordapp.CordappProvider
+import net.corda.core.internal.NamedCacheFactory
 import net.corda.core.internal.SerializedStateAndRef
 import net.corda.core.node.NetworkParameters
 import net.corda.core.node.ServicesForResolution
 import net.corda.core.node.services.AttachmentStorage
 import net.corda.core.node.services.IdentityService
 import net.corda.core.node.services.NetworkParametersService
-import net.corda.core.node.services.TransactionStorage
 import net.corda.core.transactions.ContractUpgradeWireTransaction
+import net.corda.core.transactions.CoreTransaction
 import net.corda.core.transactions.NotaryChangeWireTransaction
 import net.corda.core.transactions.WireTransaction
 import net.corda.core.transactions.WireTransaction.Companion.resolveStateRefBinaryComponent
+import net.corda.core.utilities.OpaqueBytes
+import net.corda.node.services.api.ResolvedStateCache
+import net.corda.node.services.api.WritableTransactionStorage
 
 data class ServicesForResolutionImpl(
         override val identityService: IdentityService,
         override val attachments: AttachmentStorage,
         override val cordappProvider: CordappProvider,
         override val networkParametersService: NetworkParametersService,
-        private val validatedTransactions: TransactionStorage
-) : ServicesForResolution {
+        private val validatedTransactions: WritableTransactionStorage,
+        private val cacheFactory: NamedCacheFactory
+) : ServicesForResolution, ResolvedStateCache {
+    private companion object {
+        // Used to weigh states whose serialised form is not at hand, such as the outputs of notary change transactions.
+        private const val stateSizeEstimate = 1024
+    }
+
+    private class CachedState(val state: TransactionState<ContractState>, val size: Int)
+
+    /**
+     * Deserialised transaction outputs, so that loading a state does not require loading and deserialising the whole
+     * transaction that produced it. Large vault query pages in particular end up loading many states.
+     */
+    private val stateCache: Cache<StateRef, CachedState> = cacheFactory.buildNamed(
+            Caffeine.newBuilder().weigher(Weigher<StateRef, CachedState> { key, value -> key.txhash.size + value.size }),
+            "ServicesForResolution_states"
+    )
+
     override val networkParameters: NetworkParameters get() = networkParametersService.lookup(networkParametersService.currentHash) ?:
             throw IllegalArgumentException("No current parameters in network parameters storage")
 
     @Throws(TransactionResolutionException::class)
     override fun loadState(stateRef: StateRef): TransactionState<*> {
-        val stx = validatedTransactions.getTransaction(stateRef.txhash) ?: throw TransactionResolutionException(stateRef.txhash)
-        return stx.resolveBaseTransaction(this).outputs[stateRef.index]
+        val cached = stateCache.getIfPresent(stateRef) ?: loadAndCacheStates(listOf(stateRef)).getValue(stateRef)
+        return cached.state
     }
 
     @Throws(TransactionResolutionException::class)
     override fun loadStates(stateRefs: Set<StateRef>): Set<StateAndRef<ContractState>> {
-        return stateRefs.groupBy { it.txhash }.flatMap {
-            val stx = validatedTransactions.getTransaction(it.key) ?: throw TransactionResolutionException(it.key)
+        val cached = stateCache.getAllPresent(stateRefs)
+        val loaded = if (cached.size < stateRefs.size) loadAndCacheStates(stateRefs.filter { it !in cached }) else emptyMap()
+        return stateRefs.mapTo(LinkedHashSet()) { StateAndRef((cached[it] ?: loaded.getValue(it)).state, it) }
+    }
+
+    override fun cacheOutputs(tx: WireTransaction, outputs: Collection<StateAndRef<ContractState>>) {
+        val serialisedOutputs = serialisedOutputs(tx)
+        stateCache.putAll(outputs.associateBy({ it.ref }, { CachedState(it.state, serialisedOutputs?.getOrNull(it.ref.index)?.size ?: stateSizeEstimate) }))
+    }
+
+    /** Loads the given states, resolving each of the transactions that produced them only once. */
+    private fun loadAndCacheStates(stateRefs: Collection<StateRef>): Map<StateRef, CachedState> {
+        val loaded = HashMap<StateRef, CachedState>()
+        val refsByTxId = stateRefs.groupBy { it.txhash }
+        val transactions = validatedTransactions.getTransactions(refsByTxId.keys)
+        refsByTxId.forEach { (txId, refs) ->
+            val stx = transactions[txId] ?: throw TransactionResolutionException(txId)
             val baseTx = stx.resolveBaseTransaction(this)
-            it.value.map { ref -> StateAndRef(baseTx.outputs[ref.index], ref) }
-        }.toSet()
+            val serialisedOutputs = serialisedOutputs(stx.coreTransaction)
+            refs.forEach { ref ->
+                loaded[ref] = CachedState(baseTx.outputs[ref.index], serialisedOutputs?.getOrNull(ref.index)?.size ?: stateSizeEstimate)
+            }
+        }
+        stateCache.putAll(loaded)
+        return loaded
+    }
+
+    private fun serialisedOutputs(tx: CoreTransaction): List<OpaqueBytes>? {
+        return (tx as? WireTransaction)?.componentGroups?.firstOrNull { it.groupIndex == OUTPUTS_GROUP.ordinal }?.components
     }
 
     @Throws(TransactionResolutionException::class, AttachmentResolutionException::class)
@@ -4,11 +4,11 @@ import net.corda.core.context.Trace
 import net.corda.core.serialization.SerializationContext
 import net.corda.core.utilities.contextLogger
 import net.corda.core.utilities.loggerFor
+import net.corda.node.services.rpc.FlowControlledObservable
 import net.corda.node.services.rpc.ObservableContextInterface
 import net.corda.node.services.rpc.ObservableSubscription
 import net.corda.nodeapi.RPCApi
 import net.corda.serialization.internal.amqp.*
-import org.apache.qpid.proton.codec.Data
 import rx.Notification
 import rx.Observable
 import rx.Subscriber
@@ -74,7 +74,7 @@ class RpcServerObservableSerializer : CustomSerializer.Implements<Observable<*>>
 
     override fun writeDescribedObject(
             obj: Observable<*>,
-            data: Data,
+            data: AMQPWriter,
             type: Type,
             output: SerializationOutput,
             context: SerializationContext
@@ -92,9 +92,19 @@ class RpcServerObservableSerializer : CustomSerializer.Implements<Observable<*>>
             data.putLong(observableId.timestamp.toEpochMilli())
         }
 
+        // Flow controlled observables are only asked for their next item once the previous one has been sent.
+        val flowControlled = obj is FlowControlledObservable<*>
         val observableWithSubscription = ObservableSubscription(
                 subscription = obj.materialize().subscribe(
                         object : Subscriber<Notification<*>>() {
+                            override fun onStart() {
+                                if (flowControlled) {
+                                    // Without an initial request the producer would be asked for everything it has.
+                                    request(0)
+                                    observableContext.requestObservations { request(1) }
+                                }
+                            }
+
                             override fun onNext(observation: Notification<*>) {
                                 if (!isUnsubscribed) {
                                     val message = RPCApi.ServerToClient.Observation(
@@ -102,7 +112,14 @@ class RpcServerObservableSerializer : CustomSerializer.Implements<Observable<*>>
                                             content = observation,
                                             deduplicationIdentity = observableContext.deduplicationIdentity
                                     )
-                                    observableContext.sendMessage(message)
+                                    if (flowControlled) {
+                                        observableContext.sendMessage(message) { sent ->
+                                            // Stop producing items for a client which can no longer be sent them.
+                                            if (sent) observableContext.requestObservations { request(1) } else unsubscribe()
+                                        }
+                                    } else {
+                                        observableContext.sendMessage(message)
+                                    }
                                 }
                             }
 
@@ -3,20 +3,28 @@ package net.corda.node.services
 import co.paralleluniverse.fibers.Suspendable
 import net.corda.core.crypto.SecureHash
 import net.corda.core.flows.FlowLogic
+import net.corda.core.internal.FetchBatchTransactionsFlow
 import net.corda.core.internal.FetchTransactionsFlow
 import net.corda.core.internal.ResolveTransactionsFlow
 import net.corda.core.internal.TransactionsResolver
 import net.corda.core.internal.dependencies
+import net.corda.core.internal.startVerification
 import net.corda.core.node.StatesToRecord
 import net.corda.core.transactions.SignedTransaction
 import net.corda.core.utilities.debug
+import net.corda.core.utilities.getOrThrow
 import net.corda.core.utilities.trace
 import net.corda.core.utilities.seconds
 import net.corda.node.services.api.WritableTransactionStorage
 import java.util.*
 
 class DbTransactionsResolver(private val flow: ResolveTransactionsFlow) : TransactionsResolver {
-    private var sortedDependencies: List<SecureHash>? = null
+    companion object {
+        // Limits how many transactions are held in memory while their verification is in progress.
+        private const val MAX_VERIFICATION_BATCH_SIZE = 100
+    }
+
+    private var dependencyLevels: List<List<SecureHash>>? = null
     private val logger = flow.logger
 
     @Suspendable
@@ -41,6 +49,9 @@ class DbTransactionsResolver(private val flow: ResolveTransactionsFlow) : Transa
         // accept this kind of change is possible? Most likely solution is for identity data to be an attachment.
 
         val nextRequests = LinkedHashSet<SecureHash>(flow.txHashes) // Keep things unique but ordered, for unit test stability.
+        // A verified transaction can only have been recorded once its own dependencies were, so the traversal stops at any that
+        // we already have. These are looked up a whole level of the graph at a time, rather than one by one as they are fetched.
+        nextRequests.removeAll(transactionStorage.verifiedTransactionIds(nextRequests))
         val topologicalSort = TopologicalSort()
         logger.debug { "DbTransactionsResolver.downloadDependencies(batchMode=$batchMode)" }
 
@@ -55,13 +66,18 @@ class DbTransactionsResolver(private val flow: ResolveTransactionsFlow) : Transa
             }
 
             // Request the standalone transaction data (which may refer to things we don't yet have).
-            val (existingTxIds, downloadedTxs) = fetchRequiredTransactions(Collections.singleton(nextRequests.first())) // Fetch first item only
+            val (existingTxIds, downloadedTxs) = if (batchMode) {
+                fetchRequiredTransactionsInBatch(nextRequests)
+            } else {
+                fetchRequiredTransactions(Collections.singleton(nextRequests.first())) // Fetch first item only
+            }
             for (tx in downloadedTxs) {
                 val dependencies = tx.dependencies
                 topologicalSort.add(tx.id, dependencies)
             }
 
             var suspended = true
+            val newDependencies = LinkedHashSet<SecureHash>()
             for (downloaded in downloadedTxs) {
                 suspended = false
                 val dependencies = downloaded.dependencies
@@ -75,10 +91,14 @@ class DbTransactionsResolver(private val flow: ResolveTransactionsFlow) : Transa
                 val suspendedViaParams = flow.fetchMissingNetworkParameters(downloaded)
                 suspended = suspended || suspendedViaAttachments || suspendedViaParams
 
-                // Add all input states and reference input states to the work queue.
-                nextRequests.addAll(dependencies)
+                newDependencies.addAll(dependencies)
             }
 
+            // Add all input states and reference input states we don't already have to the work queue.
+            newDependencies.removeAll(topologicalSort.transactionIds)
+            newDependencies.removeAll(transactionStorage.verifiedTransactionIds(newDependencies))
+            nextRequests.addAll(newDependencies)
+
             // If the flow did not suspend on the last iteration of the downloaded loop above, perform a suspend here to ensure that
             // all data is flushed to the database.
             if (!suspended) {
@@ -90,28 +110,59 @@ class DbTransactionsResolver(private val flow: ResolveTransactionsFlow) : Transa
             nextRequests.removeAll(existingTxIds)
         }
 
-        sortedDependencies = topologicalSort.complete()
-        logger.debug { "Downloaded ${sortedDependencies?.size} dependencies from remote peer for transactions ${flow.txHashes}" }
+        dependencyLevels = topologicalSort.completeInLevels()
+        logger.debug {
+            "Downloaded ${dependencyLevels?.sumBy { it.size }} dependencies in ${dependencyLevels?.size} levels from remote peer for " +
+                    "transactions ${flow.txHashes}"
+        }
     }
 
     override fun recordDependencies(usedStatesToRecord: StatesToRecord) {
-        val sortedDependencies = checkNotNull(this.sortedDependencies)
-        logger.trace { "Recording ${sortedDependencies.size} dependencies for ${flow.txHashes.size} transactions" }
+        val dependencyLevels = checkNotNull(this.dependencyLevels)
+        logger.trace { "Recording ${dependencyLevels.sumBy { it.size }} dependencies for ${flow.txHashes.size} transactions" }
         val transactionStorage = flow.serviceHub.validatedTransactions as WritableTransactionStorage
-        for (txId in sortedDependencies) {
-            // Retrieve and delete the transaction from the unverified store.
-            val (tx, isVerified) = checkNotNull(transactionStorage.getTransactionInternal(txId)) {
-                "Somehow the unverified transaction ($txId) that we stored previously is no longer there."
+        // The transactions within a level do not depend on each other, and so the contracts of a whole batch of them can be run
+        // concurrently by the transaction verifier service, before the batch is recorded together.
+        for (batch in dependencyLevels.flatMap { it.chunked(MAX_VERIFICATION_BATCH_SIZE) }) {
+            val storedTxs = transactionStorage.getTransactionsInternal(batch)
+            val unverifiedTxs = batch.mapNotNull { txId ->
+                // Retrieve and delete the transaction from the unverified store.
+                val (tx, isVerified) = checkNotNull(storedTxs[txId]) {
+                    "Somehow the unverified transaction ($txId) that we stored previously is no longer there."
+                }
+                if (isVerified) {
+                    logger.debug { "No need to record $txId as it's already been verified" }
+                    null
+                } else {
+                    tx
+                }
             }
-            if (!isVerified) {
-                tx.verify(flow.serviceHub)
-                flow.serviceHub.recordTransactions(usedStatesToRecord, listOf(tx))
-            } else {
-                logger.debug { "No need to record $txId as it's already been verified" }
+            if (unverifiedTxs.isEmpty()) continue
+
+            val verifications = unverifiedTxs.map { it to it.startVerification(flow.serviceHub) }
+            for ((tx, verification) in verifications) {
+                try {
+                    verification.getOrThrow()
+                } catch (e: Exception) {
+                    reverify(tx)
+                } catch (e: LinkageError) {
+                    // Such as a NoClassDefFoundError, which the full verification may be able to fix up.
+                    reverify(tx)
+                }
             }
+            flow.serviceHub.recordTransactions(usedStatesToRecord, unverifiedTxs)
         }
     }
 
+    /**
+     * Verifies a transaction whose concurrent verification failed once more, in full. This attempts any fix-ups the transaction
+     * needs and otherwise throws the appropriate exception.
+     */
+    private fun reverify(tx: SignedTransaction) {
+        logger.debug { "Concurrent verification of ${tx.id} failed, verifying again" }
+        tx.verify(flow.serviceHub)
+    }
+
     // The transactions already present in the database do not need to be checkpointed on every iteration of downloading
     // dependencies for other transactions, so strip these down to just the IDs here.
     @Suspendable
@@ -120,6 +171,14 @@ class DbTransactionsResolver(private val flow: ResolveTransactionsFlow) : Transa
         return Pair(requestedTxs.fromDisk.map { it.id }, requestedTxs.downloaded)
     }
 
+    // The counterparty leaves out any transactions which would take its response over its maximum payload size. These remain
+    // in the work queue and are requested again.
+    @Suspendable
+    private fun fetchRequiredTransactionsInBatch(requests: Set<SecureHash>): Pair<List<SecureHash>, List<SignedTransaction>> {
+        val requestedTxs = flow.subFlow(FetchBatchTransactionsFlow(LinkedHashSet(requests), flow.otherSide))
+        return Pair(requestedTxs.fromDisk.map { it.id }, requestedTxs.downloaded.mapNotNull { it.get() })
+    }
+
     /**
      * Provides a way to topologically sort SignedTransactions represented just their [SecureHash] IDs. This means that given any two transactions
      * T1 and T2 in the list returned by [complete] if T1 is a dependency of T2 then T1 will occur earlier than T2.
@@ -163,5 +222,23 @@ class DbTransactionsResolver(private val flow: ResolveTransactionsFlow) : Transa
 
             return result.apply(Collections::reverse)
         }
+
+        /**
+         * Return the transaction IDs grouped into levels, in which each transaction depends only on transactions in earlier
+         * levels. The transactions within a level are therefore independent of each other.
+         */
+        fun completeInLevels(): List<List<SecureHash>> {
+            val levelOf = HashMap<SecureHash, Int>(transactionIds.size)
+            val levels = ArrayList<MutableList<SecureHash>>()
+            for (txId in complete()) {
+                val level = levelOf[txId] ?: 0
+                if (level == levels.size) levels += ArrayList<SecureHash>()
+                levels[level].add(txId)
+                forwardGraph[txId]?.forEach { dependent ->
+                    levelOf[dependent] = maxOf(levelOf[dependent] ?: 0, level + 1)
+                }
+            }
+            return levels
+        }
     }
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package net.corda.node.services.api
 
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.context.InvocationContext
+import net.corda.core.contracts.ContractState
+import net.corda.core.contracts.StateAndRef
 import net.corda.core.crypto.SecureHash
 import net.corda.core.flows.FlowLogic
 import net.corda.core.flows.StateMachineRunId
@@ -10,11 +12,13 @@ import net.corda.core.internal.concurrent.OpenFuture
 import net.corda.core.messaging.DataFeed
 import net.corda.core.messaging.StateMachineTransactionMapping
 import net.corda.core.node.NodeInfo
+import net.corda.core.node.ServicesForResolution
 import net.corda.core.node.StatesToRecord
 import net.corda.core.node.services.NetworkMapCache
 import net.corda.core.node.services.NetworkMapCacheBase
 import net.corda.core.node.services.TransactionStorage
 import net.corda.core.transactions.SignedTransaction
+import net.corda.core.transactions.WireTransaction
 import net.corda.core.utilities.contextLogger
 import net.corda.node.internal.InitiatedFlowFactory
 import net.corda.node.internal.cordapp.CordappProviderInternal
@@ -25,6 +29,7 @@ import net.corda.node.services.network.NetworkMapUpdater
 import net.corda.node.services.persistence.AttachmentStorageInternal
 import net.corda.node.services.statemachine.ExternalEvent
 import net.corda.node.services.statemachine.FlowStateMachineImpl
+import net.corda.node.services.statemachine.SessionSchemaCaches
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import java.security.PublicKey
 import java.util.*
@@ -153,6 +158,7 @@ interface ServiceHubInternal : ServiceHubCoreInternal {
 
     fun getFlowFactory(initiatingFlowClass: Class<out FlowLogic<*>>): InitiatedFlowFactory<*>?
     val cacheFactory: NamedCacheFactory
+    val sessionSchemaCaches: SessionSchemaCaches
 
     override fun recordTransactions(statesToRecord: StatesToRecord, txs: Iterable<SignedTransaction>) {
         recordTransactions(
@@ -260,6 +266,42 @@ interface WritableTransactionStorage : TransactionStorage {
      * ID exists.
      */
     fun getTransactionInternal(id: SecureHash): Pair<SignedTransaction, Boolean>?
+
+    /**
+     * Return those of the transactions with the given IDs which exist in the store, each with a flag of whether it's verified.
+     * Transactions which are not cached are loaded together, rather than one at a time.
+     */
+    fun getTransactionsInternal(ids: Collection<SecureHash>): Map<SecureHash, Pair<SignedTransaction, Boolean>>
+
+    /**
+     * Return those of the transactions with the given IDs which exist in the store and are verified, as [getTransaction] would
+     * for each of them.
+     */
+    fun getTransactions(ids: Collection<SecureHash>): Map<SecureHash, SignedTransaction> {
+        return getTransactionsInternal(ids).filterValues { (_, isVerified) -> isVerified }.mapValues { (_, value) -> value.first }
+    }
+
+    /**
+     * Return true if all the transactions with the given IDs are stored as verified.
+     */
+    fun containsAll(ids: Collection<SecureHash>): Boolean = verifiedTransactionIds(ids).containsAll(ids)
+
+    /**
+     * Return those of the given transaction IDs which are stored as verified. Unlike [getTransaction], the transactions
+     * themselves are not loaded, and the IDs are looked up in as few queries as possible.
+     */
+    fun verifiedTransactionIds(ids: Collection<SecureHash>): Set<SecureHash>
+}
+
+/**
+ * The node's cache of deserialised transaction outputs, from which [ServicesForResolution.loadStates] serves states.
+ */
+interface ResolvedStateCache {
+    /**
+     * Adds the given outputs of [tx] to the cache. This is used when recording states in the vault, as they are likely to
+     * be loaded again by vault queries.
+     */
+    fun cacheOutputs(tx: WireTransaction, outputs: Collection<StateAndRef<ContractState>>)
 }
 
 /**
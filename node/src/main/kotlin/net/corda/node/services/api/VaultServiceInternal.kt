@@ -1,10 +1,16 @@
 package net.corda.node.services.api
 
+import net.corda.core.contracts.ContractState
 import net.corda.core.node.StatesToRecord
+import net.corda.core.node.services.Vault
+import net.corda.core.node.services.VaultQueryException
 import net.corda.core.node.services.VaultService
+import net.corda.core.node.services.vault.QueryCriteria
+import net.corda.core.node.services.vault.Sort
 import net.corda.core.transactions.CoreTransaction
 import net.corda.core.transactions.NotaryChangeWireTransaction
 import net.corda.core.transactions.WireTransaction
+import rx.Observable
 
 interface VaultServiceInternal : VaultService {
     fun start()
@@ -22,4 +28,11 @@ interface VaultServiceInternal : VaultService {
      * This does not allow for passing transactions that have already been seen by the node, as this API is only used in testing.
      */
     fun notify(statesToRecord: StatesToRecord, tx: CoreTransaction) = notifyAll(statesToRecord, listOf(tx))
+
+    /**
+     * Returns the results of the given query as a stream of [Vault.Page]s of at most [batchSize] states each, which are read from
+     * the database as the subscriber requests them.
+     */
+    @Throws(VaultQueryException::class)
+    fun <T : ContractState> _streamBy(criteria: QueryCriteria, sorting: Sort, batchSize: Int, contractStateType: Class<out T>): Observable<Vault.Page<T>>
 }
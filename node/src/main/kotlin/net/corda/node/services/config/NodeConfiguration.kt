@@ -61,6 +61,7 @@ interface NodeConfiguration : ConfigurationWithOptionsContainer {
     val transactionCacheSizeBytes: Long get() = defaultTransactionCacheSize
     val attachmentContentCacheSizeBytes: Long get() = defaultAttachmentContentCacheSize
     val attachmentCacheBound: Long get() = defaultAttachmentCacheBound
+    val stateCacheSizeBytes: Long get() = defaultStateCacheSize
     // do not change this value without syncing it with ScheduledFlowsDrainingModeTest
     val drainingModePollPeriod: Duration get() = Duration.ofSeconds(5)
     val extraNetworkMapKeys: List<UUID>
@@ -90,6 +91,16 @@ interface NodeConfiguration : ConfigurationWithOptionsContainer {
 
     val flowExternalOperationThreadPoolSize: Int
 
+    val deltaCheckpoints: Boolean
+
+    val bridgeAckWindowSize: Int
+    val bridgeAckWindowPeriodMillis: Duration
+
+    val attachmentsDirectory: Path? get() = null
+
+    val freshKeyPoolLowWatermark: Int get() = 0
+    val freshKeyPoolHighWatermark: Int get() = 0
+
     companion object {
         // default to at least 8MB and a bit extra for larger heap sizes
         val defaultTransactionCacheSize: Long = 8.MB + getAdditionalCacheMemory()
@@ -104,6 +115,7 @@ interface NodeConfiguration : ConfigurationWithOptionsContainer {
 
         internal val defaultAttachmentContentCacheSize: Long = 10.MB
         internal const val defaultAttachmentCacheBound = 1024L
+        internal val defaultStateCacheSize: Long = 8.MB
 
         const val cordappDirectoriesKey = "cordappDirectories"
 
@@ -161,7 +173,11 @@ data class NotaryConfig(
         /** Notary implementation-specific configuration parameters. */
         val extraConfig: Config? = null,
         val raft: RaftConfig? = null,
-        val bftSMaRt: BFTSmartConfig? = null
+        val bftSMaRt: BFTSmartConfig? = null,
+        /** The maximum number of queued notarisation requests the simple notary commits in a single database transaction. */
+        val batchSize: Int = 1,
+        /** The number of partitions of the committed states the simple notary processes concurrently, each on its own thread. */
+        val shards: Int = 1
 )
 
 /**
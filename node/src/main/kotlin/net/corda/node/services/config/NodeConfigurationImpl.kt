@@ -82,7 +82,13 @@ data class NodeConfigurationImpl(
                 Defaults.networkParameterAcceptanceSettings,
         override val blacklistedAttachmentSigningKeys: List<String> = Defaults.blacklistedAttachmentSigningKeys,
         override val configurationWithOptions: ConfigurationWithOptions,
-        override val flowExternalOperationThreadPoolSize: Int = Defaults.flowExternalOperationThreadPoolSize
+        override val flowExternalOperationThreadPoolSize: Int = Defaults.flowExternalOperationThreadPoolSize,
+        override val deltaCheckpoints: Boolean = Defaults.deltaCheckpoints,
+        override val bridgeAckWindowSize: Int = Defaults.bridgeAckWindowSize,
+        override val bridgeAckWindowPeriodMillis: Duration = Defaults.bridgeAckWindowPeriodMillis,
+        override val attachmentsDirectory: Path? = Defaults.attachmentsDirectory,
+        override val freshKeyPoolLowWatermark: Int = Defaults.freshKeyPoolLowWatermark,
+        override val freshKeyPoolHighWatermark: Int = Defaults.freshKeyPoolHighWatermark
 ) : NodeConfiguration {
     internal object Defaults {
         val jmxMonitoringHttpPort: Int? = null
@@ -119,6 +125,12 @@ data class NodeConfigurationImpl(
         val networkParameterAcceptanceSettings: NetworkParameterAcceptanceSettings = NetworkParameterAcceptanceSettings()
         val blacklistedAttachmentSigningKeys: List<String> = emptyList()
         const val flowExternalOperationThreadPoolSize: Int = 1
+        const val deltaCheckpoints: Boolean = false
+        const val bridgeAckWindowSize: Int = 1
+        val bridgeAckWindowPeriodMillis: Duration = Duration.ofMillis(100)
+        val attachmentsDirectory: Path? = null
+        const val freshKeyPoolLowWatermark: Int = 0
+        const val freshKeyPoolHighWatermark: Int = 0
 
         fun cordappsDirectories(baseDirectory: Path) = listOf(baseDirectory / CORDAPPS_DIR_NAME_DEFAULT)
 
@@ -172,6 +184,7 @@ data class NodeConfigurationImpl(
             networkServices = NetworkServicesConfig(compatibilityZoneURL, compatibilityZoneURL, inferred = true)
         }
         require(h2port == null || h2Settings == null) { "Cannot specify both 'h2port' and 'h2Settings' in configuration" }
+        require(bridgeAckWindowSize >= 1) { "'bridgeAckWindowSize' must be at least 1" }
     }
 
     override val certificatesDirectory = baseDirectory / "certificates"
@@ -217,6 +230,7 @@ data class NodeConfigurationImpl(
         errors += validateTlsCertCrlConfig()
         errors += validateNetworkServices()
         errors += validateH2Settings()
+        errors += validateFreshKeyPool()
         return errors
     }
 
@@ -241,6 +255,14 @@ data class NodeConfigurationImpl(
         return errors
     }
 
+    private fun validateFreshKeyPool(): List<String> {
+        val errors = mutableListOf<String>()
+        if (freshKeyPoolHighWatermark > 0 && freshKeyPoolLowWatermark !in 0 until freshKeyPoolHighWatermark) {
+            errors += "'freshKeyPoolLowWatermark' must be at least zero and less than 'freshKeyPoolHighWatermark'"
+        }
+        return errors
+    }
+
     private fun validateRpcSettings(options: NodeRpcSettings): List<String> {
         val errors = mutableListOf<String>()
         if (options.adminAddress == null) {
@@ -197,9 +197,11 @@ internal object NotaryConfigSpec : Configuration.Specification<NotaryConfig>("No
     private val extraConfig by nestedObject().map(ConfigObject::toConfig).optional()
     private val raft by nested(RaftConfigSpec).optional()
     private val bftSMaRt by nested(BFTSmartConfigSpec).optional()
+    private val batchSize by int().optional().withDefaultValue(1)
+    private val shards by int().optional().withDefaultValue(1)
 
     override fun parseValid(configuration: Config): Valid<NotaryConfig> {
-        return valid(NotaryConfig(configuration[validating], configuration[serviceLegalName], configuration[className], configuration[etaMessageThresholdSeconds], configuration[extraConfig], configuration[raft], configuration[bftSMaRt]))
+        return valid(NotaryConfig(configuration[validating], configuration[serviceLegalName], configuration[className], configuration[etaMessageThresholdSeconds], configuration[extraConfig], configuration[raft], configuration[bftSMaRt], configuration[batchSize], configuration[shards]))
     }
 }
 
@@ -64,6 +64,12 @@ internal object V1NodeConfigurationSpec : Configuration.Specification<NodeConfig
             .optional()
             .withDefaultValue(Defaults.networkParameterAcceptanceSettings)
     private val flowExternalOperationThreadPoolSize by int().optional().withDefaultValue(Defaults.flowExternalOperationThreadPoolSize)
+    private val deltaCheckpoints by boolean().optional().withDefaultValue(Defaults.deltaCheckpoints)
+    private val bridgeAckWindowSize by int().optional().withDefaultValue(Defaults.bridgeAckWindowSize)
+    private val bridgeAckWindowPeriodMillis by duration().optional().withDefaultValue(Defaults.bridgeAckWindowPeriodMillis)
+    private val attachmentsDirectory by string().mapValid(::toPath).optional()
+    private val freshKeyPoolLowWatermark by int().optional().withDefaultValue(Defaults.freshKeyPoolLowWatermark)
+    private val freshKeyPoolHighWatermark by int().optional().withDefaultValue(Defaults.freshKeyPoolHighWatermark)
     @Suppress("unused")
     private val custom by nestedObject().optional()
     @Suppress("unused")
@@ -128,7 +134,13 @@ internal object V1NodeConfigurationSpec : Configuration.Specification<NodeConfig
                     blacklistedAttachmentSigningKeys = configuration[blacklistedAttachmentSigningKeys],
                     networkParameterAcceptanceSettings = configuration[networkParameterAcceptanceSettings],
                     configurationWithOptions = ConfigurationWithOptions(configuration, Configuration.Validation.Options.defaults),
-                    flowExternalOperationThreadPoolSize = configuration[flowExternalOperationThreadPoolSize]
+                    flowExternalOperationThreadPoolSize = configuration[flowExternalOperationThreadPoolSize],
+                    deltaCheckpoints = configuration[deltaCheckpoints],
+                    bridgeAckWindowSize = configuration[bridgeAckWindowSize],
+                    bridgeAckWindowPeriodMillis = configuration[bridgeAckWindowPeriodMillis],
+                    attachmentsDirectory = configuration[attachmentsDirectory]?.let { baseDirectoryPath.resolve(it) },
+                    freshKeyPoolLowWatermark = configuration[freshKeyPoolLowWatermark],
+                    freshKeyPoolHighWatermark = configuration[freshKeyPoolHighWatermark]
             ))
         } catch (e: Exception) {
             return when (e) {
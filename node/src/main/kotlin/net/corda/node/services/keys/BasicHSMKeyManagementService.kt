@@ -29,12 +29,15 @@ import kotlin.collections.LinkedHashSet
  * This is not the long-term implementation.  See the list of items in the above class.
  *
  * This class needs database transactions to be in-flight during method calls and init.
+ *
+ * Fresh keys are taken from the [freshKeyPool] if one is given, and otherwise generated on demand.
  */
-class BasicHSMKeyManagementService(
+class BasicHSMKeyManagementService @JvmOverloads constructor(
         cacheFactory: NamedCacheFactory,
         override val identityService: PersistentIdentityService,
         private val database: CordaPersistence,
-        private val cryptoService: SignOnlyCryptoService
+        private val cryptoService: SignOnlyCryptoService,
+        private val freshKeyPool: FreshKeyPool? = null
 ) : SingletonSerializeAsToken(), KeyManagementServiceInternal {
 
     @Entity
@@ -101,7 +104,7 @@ class BasicHSMKeyManagementService(
     }
 
     override fun freshKeyInternal(externalId: UUID?): PublicKey {
-        val keyPair = generateKeyPair()
+        val keyPair = freshKeyPool?.take() ?: generateKeyPair()
         database.transaction {
             keysMap[keyPair.public] = keyPair.private
             // Register the key to our identity.
@@ -0,0 +1,90 @@
+package net.corda.node.services.keys
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import net.corda.core.crypto.generateKeyPair
+import net.corda.core.utilities.contextLogger
+import java.security.KeyPair
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * A pool of key pairs generated in the background, from which [BasicHSMKeyManagementService] takes its fresh keys so
+ * that flows don't wait for key generation.
+ *
+ * Whenever the pool holds no more than [lowWatermark] key pairs it is topped up to [highWatermark] on a background
+ * thread. Should it run dry in the meantime, a key pair is generated on the caller's thread instead. The key pairs
+ * are only held in memory, and so any left in the pool when the node stops are simply discarded.
+ */
+@ThreadSafe
+class FreshKeyPool(
+        private val lowWatermark: Int,
+        private val highWatermark: Int,
+        private val generate: () -> KeyPair = ::generateKeyPair
+) : AutoCloseable {
+    companion object {
+        private val log = contextLogger()
+    }
+
+    init {
+        require(lowWatermark in 0 until highWatermark) { "The low watermark must be at least zero and below the high watermark" }
+    }
+
+    private val pool = LinkedBlockingQueue<KeyPair>()
+    private val refilling = AtomicBoolean(false)
+    private val misses = AtomicLong()
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder().setNameFormat("fresh-key-pool-thread").setDaemon(true).build()
+    )
+
+    /** The number of key pairs currently in the pool. */
+    val size: Int get() = pool.size
+
+    /** The number of key pairs which had to be generated on demand because the pool was empty. */
+    val missCount: Long get() = misses.get()
+
+    init {
+        refillIfNeeded()
+    }
+
+    /**
+     * Take a key pair from the pool, or generate one if it is empty.
+     */
+    fun take(): KeyPair {
+        val keyPair = pool.poll()
+        refillIfNeeded()
+        if (keyPair != null) return keyPair
+        misses.incrementAndGet()
+        return generate()
+    }
+
+    private fun refillIfNeeded() {
+        val depth = pool.size
+        if (depth > lowWatermark || depth >= highWatermark || !refilling.compareAndSet(false, true)) return
+        try {
+            executor.execute {
+                try {
+                    while (pool.size < highWatermark && !Thread.currentThread().isInterrupted) {
+                        pool.add(generate())
+                    }
+                } catch (e: Exception) {
+                    log.error("Unable to refill the fresh key pool", e)
+                } finally {
+                    refilling.set(false)
+                }
+            }
+        } catch (e: RejectedExecutionException) {
+            // The pool has been closed.
+            refilling.set(false)
+        }
+    }
+
+    override fun close() {
+        executor.shutdownNow()
+        pool.clear()
+    }
+}
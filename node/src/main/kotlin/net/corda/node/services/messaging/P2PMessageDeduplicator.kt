@@ -1,5 +1,7 @@
 package net.corda.node.services.messaging
 
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
 import net.corda.core.crypto.SecureHash
 import net.corda.core.identity.CordaX500Name
 import net.corda.core.internal.NamedCacheFactory
@@ -12,6 +14,7 @@ import java.util.concurrent.ConcurrentHashMap
 import javax.persistence.Column
 import javax.persistence.Entity
 import javax.persistence.Id
+import javax.persistence.Index
 
 /**
  * Encapsulate the de-duplication logic.
@@ -23,6 +26,10 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
     // redeliver messages to the same consumer if they weren't ACKed.
     private val beingProcessedMessages = ConcurrentHashMap<DeduplicationId, MessageMeta>()
     private val processedMessages = createProcessedMessages(cacheFactory)
+    // The highest sequence number seen so far for each sender hash, covering both persisted messages and those being processed.
+    // Sequence numbers are unique per sender so a message with a higher sequence number cannot be a duplicate, and checking it
+    // doesn't need to touch the database. Entries are loaded from the database the first time a sender is seen.
+    private val senderHighWaterMarks: Cache<String, Long> = cacheFactory.buildNamed(Caffeine.newBuilder(), "P2PMessageDeduplicator_senderHighWaterMarks")
 
     private fun createProcessedMessages(cacheFactory: NamedCacheFactory): AppendOnlyPersistentMap<DeduplicationId, MessageMeta, ProcessedMessage, String> {
         return AppendOnlyPersistentMap(
@@ -44,6 +51,29 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
 
     private fun isDuplicateInDatabase(msg: ReceivedMessage): Boolean = database.transaction { msg.uniqueMessageId in processedMessages }
 
+    private fun isAboveHighWaterMark(senderHash: String, senderSeqNo: Long): Boolean {
+        return senderSeqNo > senderHighWaterMarks.get(senderHash) { loadHighWaterMark(it) }!!
+    }
+
+    private fun raiseHighWaterMark(senderHash: String, senderSeqNo: Long) {
+        senderHighWaterMarks.asMap().compute(senderHash) { key, highWaterMark -> Math.max(highWaterMark ?: loadHighWaterMark(key), senderSeqNo) }
+    }
+
+    private fun loadHighWaterMark(senderHash: String): Long {
+        // Messages being processed must be looked at first. Any that complete (and so disappear from there) before we read the
+        // database will then already be visible in it.
+        val beingProcessed = beingProcessedMessages.values.filter { it.senderHash == senderHash }.map { it.senderSeqNo!! }.max() ?: -1L
+        val persisted = database.transaction {
+            val criteriaBuilder = session.criteriaBuilder
+            val criteriaQuery = criteriaBuilder.createQuery(Long::class.javaObjectType)
+            val root = criteriaQuery.from(ProcessedMessage::class.java)
+            criteriaQuery.select(criteriaBuilder.max(root.get<Long>(ProcessedMessage::seqNo.name)))
+            criteriaQuery.where(criteriaBuilder.equal(root.get<String>(ProcessedMessage::hash.name), senderHash))
+            session.createQuery(criteriaQuery).singleResult
+        } ?: -1L
+        return Math.max(beingProcessed, persisted)
+    }
+
     // We need to incorporate the sending party, and the sessionInit flag as per the in-memory cache.
     private fun senderHash(senderKey: SenderKey) = SecureHash.sha256(senderKey.peer.toString() + senderKey.isSessionInit.toString() + senderKey.senderUUID).toString()
 
@@ -54,6 +84,10 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
         if (beingProcessedMessages.containsKey(msg.uniqueMessageId)) {
             return true
         }
+        val senderHash = senderHash(msg)
+        if (senderHash != null && isAboveHighWaterMark(senderHash, msg.senderSeqNo!!)) {
+            return false
+        }
         return isDuplicateInDatabase(msg)
     }
 
@@ -61,12 +95,18 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
      * Called the first time we encounter [deduplicationId].
      */
     fun signalMessageProcessStart(msg: ReceivedMessage) {
-        val receivedSenderUUID = msg.senderUUID
-        val receivedSenderSeqNo = msg.senderSeqNo
-        // We don't want a mix of nulls and values so we ensure that here.
-        val senderHash: String? = if (receivedSenderUUID != null && receivedSenderSeqNo != null) senderHash(SenderKey(receivedSenderUUID, msg.peer, msg.isSessionInit)) else null
+        val senderHash = senderHash(msg)
         val senderSeqNo: Long? = if (senderHash != null) msg.senderSeqNo else null
         beingProcessedMessages[msg.uniqueMessageId] = MessageMeta(Instant.now(), senderHash, senderSeqNo)
+        if (senderHash != null) {
+            raiseHighWaterMark(senderHash, senderSeqNo!!)
+        }
+    }
+
+    // We don't want a mix of nulls and values so we ensure that here.
+    private fun senderHash(msg: ReceivedMessage): String? {
+        val receivedSenderUUID = msg.senderUUID
+        return if (receivedSenderUUID != null && msg.senderSeqNo != null) senderHash(SenderKey(receivedSenderUUID, msg.peer, msg.isSessionInit)) else null
     }
 
     /**
@@ -86,7 +126,7 @@ class P2PMessageDeduplicator(cacheFactory: NamedCacheFactory, private val databa
 
     @Entity
     @Suppress("MagicNumber") // database column width
-    @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}message_ids")
+    @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}message_ids", indexes = [(Index(name = "node_message_ids_sender_idx", columnList = "sender,sequence_number"))])
     class ProcessedMessage(
             @Id
             @Column(name = "message_id", length = 64, nullable = false)
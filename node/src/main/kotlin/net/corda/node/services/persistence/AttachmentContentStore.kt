@@ -0,0 +1,107 @@
+package net.corda.node.services.persistence
+
+import net.corda.core.internal.copyTo
+import net.corda.core.internal.createDirectories
+import net.corda.core.internal.deleteIfExists
+import net.corda.core.internal.div
+import net.corda.core.internal.exists
+import net.corda.core.internal.moveTo
+import net.corda.core.internal.write
+import net.corda.core.node.services.AttachmentId
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.nio.file.StandardOpenOption.READ
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * Holds the content of attachments outside of the database, which then only keeps their metadata.
+ */
+interface AttachmentContentStore {
+    /**
+     * Store the [content] of the attachment with the given [id]. Storing content which is already present has no effect.
+     */
+    fun store(id: AttachmentId, content: ByteArray)
+
+    /**
+     * Store the content of the attachment with the given [id] from a [file], without reading it into memory.
+     */
+    fun store(id: AttachmentId, file: Path)
+
+    /**
+     * Load the content of the attachment with the given [id], or return null if it has not been stored.
+     */
+    fun load(id: AttachmentId): ByteBuffer?
+}
+
+/**
+ * An [AttachmentContentStore] which keeps each attachment in a file named by its hash, sharded into sub-directories
+ * by the first two characters of the hash so that no single directory grows too large. Content is read by mapping
+ * the file into memory, and so it is neither copied through JDBC nor held on the heap.
+ *
+ * Files are written under a temporary name and then moved into place, so a file which exists is always complete.
+ * A file may be left behind if the transaction that imported its attachment rolls back, but as files are named by
+ * their content it will be reused if the attachment is imported again.
+ */
+@ThreadSafe
+class FileSystemAttachmentContentStore(private val directory: Path) : AttachmentContentStore {
+    override fun store(id: AttachmentId, content: ByteArray) = store(id) { it.write(content) }
+
+    override fun store(id: AttachmentId, file: Path) = store(id) { file.copyTo(it, REPLACE_EXISTING) }
+
+    private inline fun store(id: AttachmentId, writeTo: (Path) -> Unit) {
+        val file = pathOf(id)
+        if (file.exists()) return
+        val shard = file.parent.createDirectories()
+        val temp = Files.createTempFile(shard, id.toString(), ".tmp")
+        try {
+            writeTo(temp)
+            temp.moveTo(file, ATOMIC_MOVE)
+        } finally {
+            temp.deleteIfExists()
+        }
+    }
+
+    override fun load(id: AttachmentId): ByteBuffer? {
+        return try {
+            // The mapping remains valid after the channel is closed.
+            FileChannel.open(pathOf(id), READ).use { it.map(FileChannel.MapMode.READ_ONLY, 0, it.size()) }
+        } catch (e: NoSuchFileException) {
+            null
+        }
+    }
+
+    private fun pathOf(id: AttachmentId): Path {
+        val name = id.toString()
+        return directory / name.substring(0, 2) / name
+    }
+}
+
+/**
+ * Reads the remaining content of a [ByteBuffer], such as a mapped attachment file, without copying it.
+ */
+internal class ByteBufferInputStream(private val buffer: ByteBuffer) : InputStream() {
+    override fun read(): Int = if (buffer.hasRemaining()) buffer.get().toInt() and 0xFF else -1
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (off < 0 || len < 0 || len > b.size - off) throw IndexOutOfBoundsException()
+        if (len == 0) return 0
+        if (!buffer.hasRemaining()) return -1
+        val count = Math.min(len, buffer.remaining())
+        buffer.get(b, off, count)
+        return count
+    }
+
+    override fun skip(n: Long): Long {
+        val count = Math.max(0, Math.min(n, buffer.remaining().toLong())).toInt()
+        buffer.position(buffer.position() + count)
+        return count.toLong()
+    }
+
+    override fun available(): Int = buffer.remaining()
+}
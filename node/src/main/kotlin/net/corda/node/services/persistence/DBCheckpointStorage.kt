@@ -6,6 +6,7 @@ import net.corda.core.utilities.debug
 import net.corda.node.services.api.CheckpointStorage
 import net.corda.node.services.statemachine.Checkpoint
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
+import net.corda.nodeapi.internal.persistence.contextTransaction
 import net.corda.nodeapi.internal.persistence.currentDBSession
 import org.apache.commons.lang3.ArrayUtils.EMPTY_BYTE_ARRAY
 import org.slf4j.Logger
@@ -16,15 +17,42 @@ import javax.persistence.Column
 import javax.persistence.Entity
 import javax.persistence.Id
 import org.hibernate.annotations.Type
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
 import java.sql.Connection
 import java.sql.SQLException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
 
 /**
  * Simple checkpoint key value storage in DB.
+ *
+ * When [deltaCheckpoints] is enabled, each flow's checkpoint is stored as a compressed full snapshot in the
+ * `checkpoint_base` column plus a compressed delta against that snapshot in the `checkpoint_value` column. Most updates
+ * then only rewrite the (small) delta, and a fresh full snapshot is written every [fullSnapshotInterval] updates or
+ * whenever the delta stops paying for itself. Rows written without a base are plain checkpoints, so both formats can be
+ * read back regardless of the current setting.
  */
-class DBCheckpointStorage : CheckpointStorage {
+class DBCheckpointStorage(
+        private val deltaCheckpoints: Boolean = false,
+        private val fullSnapshotInterval: Int = DEFAULT_FULL_SNAPSHOT_INTERVAL
+) : CheckpointStorage {
     val log: Logger = LoggerFactory.getLogger(this::class.java)
 
+    companion object {
+        const val DEFAULT_FULL_SNAPSHOT_INTERVAL = 32
+        private const val DELTA_FORMAT_VERSION: Byte = 1
+        // Format version followed by the prefix, suffix and dictionary lengths.
+        private const val DELTA_HEADER_SIZE = 13
+        // Deflate can only make use of the last 32KB of a preset dictionary.
+        private const val MAX_DICTIONARY_SIZE = 32 * 1024
+    }
+
     @Entity
     @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}checkpoints")
     class DBCheckpoint(
@@ -35,29 +63,66 @@ class DBCheckpointStorage : CheckpointStorage {
 
             @Type(type = "corda-blob")
             @Column(name = "checkpoint_value", nullable = false)
-            var checkpoint: ByteArray = EMPTY_BYTE_ARRAY          
+            var checkpoint: ByteArray = EMPTY_BYTE_ARRAY,
+
+            @Type(type = "corda-blob")
+            @Column(name = "checkpoint_base", nullable = true)
+            var checkpointBase: ByteArray? = null
     ) {
-	    override fun toString() = "DBCheckpoint(checkpointId = ${checkpointId}, checkpointSize = ${checkpoint.size})"
+	    override fun toString() = "DBCheckpoint(checkpointId = ${checkpointId}, checkpointSize = ${checkpoint.size}, baseSize = ${checkpointBase?.size})"
       }
 
+    /** The last committed (compressed) full snapshot of a flow's checkpoint, and how many deltas have been written against it. */
+    private class Snapshot(val compressedBytes: ByteArray, val deltasWritten: Int)
+
+    private val snapshots = ConcurrentHashMap<StateMachineRunId, Snapshot>()
+
     override fun addCheckpoint(id: StateMachineRunId, checkpoint: SerializedBytes<Checkpoint>) {
-        currentDBSession().save(DBCheckpoint().apply {
-            checkpointId = id.uuid.toString()
-            this.checkpoint = checkpoint.bytes
-            log.debug { "Checkpoint $checkpointId, size=${this.checkpoint.size}" }
-        })
+        currentDBSession().save(createFullCheckpoint(id, checkpoint.bytes))
     }
 
     override fun updateCheckpoint(id: StateMachineRunId, checkpoint: SerializedBytes<Checkpoint>) {
-        currentDBSession().update(DBCheckpoint().apply {
+        val snapshot = if (deltaCheckpoints) snapshots[id] else null
+        if (snapshot != null && snapshot.deltasWritten < fullSnapshotInterval) {
+            val delta = encodeDelta(decompress(snapshot.compressedBytes), checkpoint.bytes)
+            // Once the delta is as big as half of the checkpoint it's cheaper to start from a new snapshot.
+            if (delta.size < checkpoint.size / 2) {
+                updateDelta(id, delta)
+                contextTransaction.onCommit { snapshots.replace(id, snapshot, Snapshot(snapshot.compressedBytes, snapshot.deltasWritten + 1)) }
+                return
+            }
+        }
+        currentDBSession().update(createFullCheckpoint(id, checkpoint.bytes))
+    }
+
+    private fun createFullCheckpoint(id: StateMachineRunId, bytes: ByteArray): DBCheckpoint {
+        return DBCheckpoint().apply {
             checkpointId = id.uuid.toString()
-            this.checkpoint = checkpoint.bytes
-            log.debug { "Checkpoint $checkpointId, size=${this.checkpoint.size}" }
-        })
+            if (deltaCheckpoints) {
+                val base = compress(bytes)
+                checkpointBase = base
+                checkpoint = encodeDelta(bytes, bytes)
+                contextTransaction.onCommit { snapshots[id] = Snapshot(base, 0) }
+            } else {
+                checkpoint = bytes
+            }
+            log.debug { "Checkpoint $checkpointId, size=${this.checkpoint.size}, baseSize=${checkpointBase?.size}" }
+        }
     }
 
+    private fun updateDelta(id: StateMachineRunId, delta: ByteArray) {
+        val session = currentDBSession()
+        val criteriaBuilder = session.criteriaBuilder
+        val update = criteriaBuilder.createCriteriaUpdate(DBCheckpoint::class.java)
+        val root = update.from(DBCheckpoint::class.java)
+        update.set(root.get<ByteArray>(DBCheckpoint::checkpoint.name), delta)
+        update.where(criteriaBuilder.equal(root.get<String>(DBCheckpoint::checkpointId.name), id.uuid.toString()))
+        check(session.createQuery(update).executeUpdate() == 1) { "Checkpoint $id does not exist" }
+        log.debug { "Checkpoint $id, deltaSize=${delta.size}" }
+    }
 
     override fun removeCheckpoint(id: StateMachineRunId): Boolean {
+        snapshots.remove(id)
         val session = currentDBSession()
         val criteriaBuilder = session.criteriaBuilder
         val delete = criteriaBuilder.createCriteriaDelete(DBCheckpoint::class.java)
@@ -67,8 +132,8 @@ class DBCheckpointStorage : CheckpointStorage {
     }
 
     override fun getCheckpoint(id: StateMachineRunId): SerializedBytes<Checkpoint>? {
-        val bytes = currentDBSession().get(DBCheckpoint::class.java, id.uuid.toString())?.checkpoint ?: return null
-        return SerializedBytes(bytes)
+        val dbCheckpoint = currentDBSession().get(DBCheckpoint::class.java, id.uuid.toString()) ?: return null
+        return SerializedBytes(dbCheckpoint.toCheckpointBytes())
     }
 
     override fun getAllCheckpoints(): Stream<Pair<StateMachineRunId, SerializedBytes<Checkpoint>>> {
@@ -77,7 +142,7 @@ class DBCheckpointStorage : CheckpointStorage {
         val root = criteriaQuery.from(DBCheckpoint::class.java)
         criteriaQuery.select(root)
         return session.createQuery(criteriaQuery).stream().map {
-            StateMachineRunId(UUID.fromString(it.checkpointId)) to SerializedBytes<Checkpoint>(it.checkpoint)
+            StateMachineRunId(UUID.fromString(it.checkpointId)) to SerializedBytes<Checkpoint>(it.toCheckpointBytes())
         }
     }
 
@@ -94,4 +159,77 @@ class DBCheckpointStorage : CheckpointStorage {
             0L
         }
     }
+
+    private fun DBCheckpoint.toCheckpointBytes(): ByteArray {
+        val base = checkpointBase ?: return checkpoint
+        return applyDelta(decompress(base), checkpoint)
+    }
+
+    /**
+     * Encodes [target] as the prefix and suffix it shares with [base] plus the deflated bytes in between. The replaced
+     * region of [base] is used as a preset dictionary, since it usually closely resembles what replaces it.
+     */
+    private fun encodeDelta(base: ByteArray, target: ByteArray): ByteArray {
+        val maxCommon = Math.min(base.size, target.size)
+        var prefix = 0
+        while (prefix < maxCommon && base[prefix] == target[prefix]) prefix++
+        var suffix = 0
+        while (suffix < maxCommon - prefix && base[base.size - 1 - suffix] == target[target.size - 1 - suffix]) suffix++
+        val dictionary = base.copyOfRange(prefix, Math.min(base.size - suffix, prefix + MAX_DICTIONARY_SIZE))
+        val output = ByteArrayOutputStream()
+        DataOutputStream(output).use {
+            it.writeByte(DELTA_FORMAT_VERSION.toInt())
+            it.writeInt(prefix)
+            it.writeInt(suffix)
+            it.writeInt(dictionary.size)
+            val deflater = Deflater(Deflater.BEST_SPEED)
+            try {
+                if (dictionary.isNotEmpty()) deflater.setDictionary(dictionary)
+                DeflaterOutputStream(it, deflater).apply {
+                    write(target, prefix, target.size - prefix - suffix)
+                    finish()
+                }
+            } finally {
+                deflater.end()
+            }
+        }
+        return output.toByteArray()
+    }
+
+    private fun applyDelta(base: ByteArray, delta: ByteArray): ByteArray {
+        val header = DataInputStream(ByteArrayInputStream(delta))
+        val version = header.readByte()
+        check(version == DELTA_FORMAT_VERSION) { "Unknown checkpoint delta format $version" }
+        val prefix = header.readInt()
+        val suffix = header.readInt()
+        val dictionarySize = header.readInt()
+        val output = ByteArrayOutputStream(base.size)
+        output.write(base, 0, prefix)
+        val inflater = Inflater()
+        try {
+            inflater.setInput(delta, DELTA_HEADER_SIZE, delta.size - DELTA_HEADER_SIZE)
+            val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
+            while (!inflater.finished()) {
+                val inflated = inflater.inflate(buffer)
+                // A delta whose middle is empty, as for a full snapshot, is already finished without inflating anything.
+                if (inflated == 0 && !inflater.finished()) {
+                    check(inflater.needsDictionary()) { "Truncated checkpoint delta" }
+                    inflater.setDictionary(base, prefix, dictionarySize)
+                }
+                output.write(buffer, 0, inflated)
+            }
+        } finally {
+            inflater.end()
+        }
+        output.write(base, base.size - suffix, suffix)
+        return output.toByteArray()
+    }
+
+    private fun compress(bytes: ByteArray): ByteArray {
+        val output = ByteArrayOutputStream()
+        DeflaterOutputStream(output, Deflater(Deflater.BEST_SPEED)).use { it.write(bytes) }
+        return output.toByteArray()
+    }
+
+    private fun decompress(bytes: ByteArray): ByteArray = InflaterInputStream(ByteArrayInputStream(bytes)).use { it.readBytes() }
 }
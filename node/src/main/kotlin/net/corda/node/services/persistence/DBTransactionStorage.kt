@@ -101,6 +101,9 @@ class DBTransactionStorage(private val database: CordaPersistence, cacheFactory:
         // to the memory pressure at all here.
         private const val transactionSignatureOverheadEstimate = 1024
 
+        // Keeps the number of IN list parameters below the limits of the supported databases.
+        private const val MAX_IDS_PER_QUERY = 500
+
         private val logger = contextLogger()
 
         private fun contextToUse(): SerializationContext {
@@ -207,6 +210,32 @@ class DBTransactionStorage(private val database: CordaPersistence, cacheFactory:
         }
     }
 
+    override fun getTransactionsInternal(ids: Collection<SecureHash>): Map<SecureHash, Pair<SignedTransaction, Boolean>> {
+        return database.transaction {
+            txStorage.content.getAll(ids).mapValues { (_, value) -> value.toSignedTx() to value.status.isVerified() }
+        }
+    }
+
+    override fun verifiedTransactionIds(ids: Collection<SecureHash>): Set<SecureHash> {
+        // Transactions cached as verified need no query. Those cached as unverified may have been verified since.
+        val (cachedAsVerified, toQuery) = ids.partition { txStorage.content.getIfCommittedInCache(it)?.status?.isVerified() == true }
+        if (toQuery.isEmpty()) return cachedAsVerified.toSet()
+        return database.transaction {
+            val session = currentDBSession()
+            val criteriaBuilder = session.criteriaBuilder
+            toQuery.chunked(MAX_IDS_PER_QUERY).flatMapTo(cachedAsVerified.toHashSet()) { chunk ->
+                val criteriaQuery = criteriaBuilder.createQuery(String::class.java)
+                val queryRoot = criteriaQuery.from(DBTransaction::class.java)
+                criteriaQuery.select(queryRoot.get<String>(DBTransaction::txId.name))
+                criteriaQuery.where(criteriaBuilder.and(
+                        queryRoot.get<String>(DBTransaction::txId.name).`in`(chunk.map(SecureHash::toString)),
+                        criteriaBuilder.equal(queryRoot.get<TransactionStatus>(DBTransaction::status.name), TransactionStatus.VERIFIED)
+                ))
+                session.createQuery(criteriaQuery).resultList.map { SecureHash.parse(it) }
+            }
+        }
+    }
+
     private val updatesPublisher = PublishSubject.create<SignedTransaction>().toSerialized()
     override val updates: Observable<SignedTransaction> = updatesPublisher.wrapWithDatabaseTransaction()
 
@@ -0,0 +1,118 @@
+package net.corda.node.services.persistence
+
+import net.corda.core.crypto.SecureHash
+import net.corda.core.flows.StateMachineRunId
+import net.corda.core.internal.PartialAttachmentStorage
+import net.corda.core.internal.createDirectories
+import net.corda.core.internal.deleteIfExists
+import net.corda.core.internal.deleteRecursively
+import net.corda.core.internal.div
+import net.corda.core.internal.exists
+import net.corda.core.internal.hash
+import net.corda.core.internal.inputStream
+import net.corda.core.internal.isDirectory
+import net.corda.core.internal.list
+import net.corda.core.internal.size
+import net.corda.core.utilities.contextLogger
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.CREATE
+import java.nio.file.StandardOpenOption.WRITE
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * A [PartialAttachmentStorage] which keeps the content fetched by each flow in a sub-directory named by the flow's id,
+ * with a file per attachment. Chunks are written at their offset in the file, so writing one again after a flow is
+ * restarted does no harm.
+ *
+ * Content which is written from the start in order is hashed as it's written. Otherwise, as when a flow picks up from
+ * content written before the node was restarted, the file is hashed when the hash is asked for.
+ */
+@ThreadSafe
+class FileSystemPartialAttachmentStorage(private val directory: Path) : PartialAttachmentStorage {
+    companion object {
+        private val log = contextLogger()
+    }
+
+    private class Digest(val digest: MessageDigest, var size: Long)
+
+    private val digests = ConcurrentHashMap<Path, Digest>()
+
+    override fun size(runId: StateMachineRunId, id: SecureHash): Long {
+        val file = pathOf(runId, id)
+        return if (file.exists()) file.size else 0
+    }
+
+    override fun write(runId: StateMachineRunId, id: SecureHash, offset: Long, bytes: ByteArray) {
+        val file = pathOf(runId, id)
+        file.parent.createDirectories()
+        FileChannel.open(file, CREATE, WRITE).use { channel ->
+            val buffer = ByteBuffer.wrap(bytes)
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position())
+            }
+        }
+        updateDigest(file, offset, bytes)
+    }
+
+    override fun hash(runId: StateMachineRunId, id: SecureHash): SecureHash {
+        val file = pathOf(runId, id)
+        val digest = digests.remove(file)
+        return if (digest != null && digest.size == file.size) {
+            SecureHash.SHA256(digest.digest.digest())
+        } else {
+            file.inputStream().hash()
+        }
+    }
+
+    override fun open(runId: StateMachineRunId, id: SecureHash): InputStream = pathOf(runId, id).inputStream()
+
+    override fun delete(runId: StateMachineRunId, id: SecureHash) {
+        val file = pathOf(runId, id)
+        digests.remove(file)
+        file.deleteIfExists()
+        if (file.parent.exists() && file.parent.list().isEmpty()) file.parent.deleteIfExists()
+    }
+
+    /**
+     * Discard the content held for flows which no longer exist, such as those which failed while the node was stopped.
+     * This must be called before any flows are started.
+     */
+    fun removeAbandoned(isFlowLive: (StateMachineRunId) -> Boolean) {
+        if (!directory.isDirectory()) return
+        val flowDirectories = directory.list().filter { it.isDirectory() }
+        for (flowDirectory in flowDirectories) {
+            val runId = try {
+                StateMachineRunId(UUID.fromString(flowDirectory.fileName.toString()))
+            } catch (e: IllegalArgumentException) {
+                continue
+            }
+            if (!isFlowLive(runId)) {
+                log.info("Removing partially fetched attachments of flow $runId, which no longer exists")
+                flowDirectory.deleteRecursively()
+            }
+        }
+    }
+
+    private fun updateDigest(file: Path, offset: Long, bytes: ByteArray) {
+        val digest = if (offset == 0L) {
+            Digest(MessageDigest.getInstance("SHA-256"), 0).also { digests[file] = it }
+        } else {
+            digests[file] ?: return
+        }
+        if (offset == digest.size) {
+            digest.digest.update(bytes)
+            digest.size += bytes.size
+        } else {
+            // Content written out of order, or written again, is hashed from the file instead.
+            digests.remove(file)
+        }
+    }
+
+    private fun pathOf(runId: StateMachineRunId, id: SecureHash): Path = directory / runId.uuid.toString() / id.toString()
+}
@@ -11,7 +11,6 @@ import net.corda.core.contracts.Attachment
 import net.corda.core.contracts.ContractAttachment
 import net.corda.core.contracts.ContractClassName
 import net.corda.core.crypto.SecureHash
-import net.corda.core.crypto.sha256
 import net.corda.core.internal.*
 import net.corda.core.internal.Version
 import net.corda.core.internal.cordapp.CordappImpl.Companion.CORDAPP_CONTRACT_VERSION
@@ -23,6 +22,8 @@ import net.corda.core.node.services.vault.AttachmentSort
 import net.corda.core.node.services.vault.Builder
 import net.corda.core.node.services.vault.Sort
 import net.corda.core.serialization.*
+import net.corda.core.serialization.internal.AttachmentWithEntryIndex
+import net.corda.core.serialization.internal.readAttachmentEntryIndex
 import net.corda.core.utilities.contextLogger
 import net.corda.node.services.vault.HibernateAttachmentQueryCriteriaParser
 import net.corda.node.utilities.InfrequentlyMutatedCache
@@ -32,11 +33,13 @@ import net.corda.nodeapi.exceptions.DuplicateAttachmentException
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
 import net.corda.nodeapi.internal.persistence.currentDBSession
-import net.corda.nodeapi.internal.withContractsInJar
+import net.corda.nodeapi.internal.withContractsInJarFile
 import org.hibernate.query.Query
 import java.io.FilterInputStream
 import java.io.IOException
 import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.file.Path
 import java.nio.file.Paths
 import java.security.PublicKey
 import java.time.Instant
@@ -49,13 +52,17 @@ import javax.persistence.*
 
 /**
  * Stores attachments using Hibernate to database.
+ *
+ * If a [contentStore] is given then the content of new attachments is kept there rather than in the database, and any
+ * content still held in the database is moved to it by [start].
  */
 @ThreadSafe
 class NodeAttachmentService @JvmOverloads constructor(
     metrics: MetricRegistry,
     cacheFactory: NamedCacheFactory,
     private val database: CordaPersistence,
-    val devMode: Boolean = false
+    val devMode: Boolean = false,
+    private val contentStore: AttachmentContentStore? = null
 ) : AttachmentStorageInternal, SingletonSerializeAsToken() {
 
     // This is to break the circular dependency.
@@ -66,6 +73,11 @@ class NodeAttachmentService @JvmOverloads constructor(
 
         private val PRIVILEGED_UPLOADERS = listOf(DEPLOYED_CORDAPP_UPLOADER, RPC_UPLOADER, P2P_UPLOADER, UNKNOWN_UPLOADER)
 
+        // Attachments with longer paths than this are not indexed, and are scanned whenever a classloader is built with them.
+        // The path is part of the index table's primary key, along with the attachment id, and SQL Server limits index
+        // keys to 900 bytes.
+        private const val MAX_INDEXED_PATH_LENGTH = 190
+
         // Just iterate over the entries with verification enabled: should be good enough to catch mistakes.
         // Note that JarInputStream won't throw any kind of error at all if the file stream is in fact not
         // a ZIP! It'll just pretend it's an empty archive, which is kind of stupid but that's how it works.
@@ -117,9 +129,10 @@ class NodeAttachmentService @JvmOverloads constructor(
             @Column(name = "att_id", nullable = false)
             var attId: String,
 
-            @Column(name = "content", nullable = false)
+            // Null if the content is held in the node's AttachmentContentStore.
+            @Column(name = "content", nullable = true)
             @Lob
-            var content: ByteArray,
+            var content: ByteArray?,
 
             @Column(name = "insertion_date", nullable = false, updatable = false)
             var insertionDate: Instant = Instant.now(),
@@ -144,7 +157,15 @@ class NodeAttachmentService @JvmOverloads constructor(
 
             // Assumption: only Contract Attachments are versioned, version unknown or value for other attachments other than Contract Attachment defaults to 1
             @Column(name = "version", nullable = false)
-            var version: Int = DEFAULT_CORDAPP_VERSION
+            var version: Int = DEFAULT_CORDAPP_VERSION,
+
+            // The hashes of the attachment's files by lower cased path, which the attachments classloader needs to check them.
+            @ElementCollection
+            @MapKeyColumn(name = "path", length = MAX_INDEXED_PATH_LENGTH)
+            @Column(name = "entry_hash", length = 64, nullable = false)
+            @CollectionTable(name = "${NODE_DATABASE_PREFIX}attachments_entries", joinColumns = [(JoinColumn(name = "att_id", referencedColumnName = "att_id"))],
+                    foreignKey = ForeignKey(name = "FK__entries__attachments"))
+            var entries: Map<String, String>? = null
     )
 
     @VisibleForTesting
@@ -159,6 +180,47 @@ class NodeAttachmentService @JvmOverloads constructor(
         criteriaQuery.select(criteriaBuilder.count(criteriaQuery.from(DBAttachment::class.java)))
         val count = session.createQuery(criteriaQuery).singleResult
         attachmentCount.inc(count)
+        if (contentStore != null) {
+            migrateContentToStore(contentStore)
+        } else {
+            checkNoContentInStore()
+        }
+    }
+
+    /**
+     * Without a content store the node cannot read attachments whose content was moved out of the database, and so it
+     * must not start if there are any.
+     */
+    private fun checkNoContentInStore() {
+        val storedElsewhere = currentDBSession().createQuery(
+                "select count(a) from ${DBAttachment::class.java.name} a where a.content is null",
+                Long::class.javaObjectType
+        ).singleResult
+        check(storedElsewhere == 0L) {
+            "The content of $storedElsewhere attachments is held in an attachments directory, which is no longer configured. " +
+                    "Restore the attachmentsDirectory setting to start the node."
+        }
+    }
+
+    /**
+     * Move the content of any attachments still held in the database to [contentStore], one attachment at a time so
+     * that no more than one needs to be held in memory.
+     */
+    private fun migrateContentToStore(contentStore: AttachmentContentStore) {
+        val session = currentDBSession()
+        val ids = session.createQuery(
+                "select a.attId from ${DBAttachment::class.java.name} a where a.content is not null",
+                String::class.java
+        ).resultList
+        if (ids.isEmpty()) return
+        log.info("Moving the content of ${ids.size} attachments from the database to the attachment content store")
+        for (id in ids) {
+            val attachment = session.get(DBAttachment::class.java, id)
+            contentStore.store(AttachmentId.parse(id), attachment.content!!)
+            attachment.content = null
+            session.flush()
+            session.evict(attachment)
+        }
     }
 
     @CordaSerializable
@@ -231,13 +293,23 @@ class NodeAttachmentService @JvmOverloads constructor(
         dataLoader: () -> ByteArray,
         private val checkOnLoad: Boolean,
         uploader: String?,
-        override val signerKeys: List<PublicKey>
-    ) : AbstractAttachment(dataLoader, uploader), SerializeAsToken {
+        override val signerKeys: List<PublicKey>,
+        entryIndexLoader: () -> Map<String, SecureHash>? = { null },
+        mappedContentLoader: (() -> ByteBuffer)? = null
+    ) : AbstractAttachment(dataLoader, uploader), AttachmentWithEntryIndex, SerializeAsToken {
+
+        override val entryIndex: Map<String, SecureHash>? by lazy(entryIndexLoader)
+
+        // Content mapped from the attachment content store, which is read in place rather than loaded onto the heap.
+        private val mappedContent: ByteBuffer? by lazy { mappedContentLoader?.invoke() }
+
+        override val size: Int get() = mappedContent?.remaining() ?: super.size
 
         override fun open(): InputStream {
-            val stream = super.open()
+            val mapped = mappedContent
+            val stream = if (mapped != null) ByteBufferInputStream(mapped.duplicate()) else super.open()
             // This is just an optional safety check. If it slows things down too much it can be disabled.
-            return if (checkOnLoad && id is SecureHash.SHA256) HashCheckingStream(id, attachmentData.size, stream) else stream
+            return if (checkOnLoad && id is SecureHash.SHA256) HashCheckingStream(id, size, stream) else stream
         }
 
         private class Token(
@@ -260,7 +332,8 @@ class NodeAttachmentService @JvmOverloads constructor(
     }
 
     // slightly complex 2 level approach to attachment caching:
-    // On the first level we cache attachment contents loaded from the DB by their key. This is a weight based
+    // On the first level we cache attachment contents loaded from the DB by their key. Content which is held in the
+    // content store is mapped from its file instead, and so only weighs its key. This is a weight based
     // cache (we don't want to waste too  much memory on this) and could be evicted quite aggressively. If we fail
     // to load an attachment from the db, the loader will insert a non present optional - we invalidate this
     // immediately as we definitely want to retry whether the attachment was just delayed.
@@ -274,11 +347,11 @@ class NodeAttachmentService @JvmOverloads constructor(
     private val attachmentContentCache = NonInvalidatingWeightBasedCache(
             cacheFactory = cacheFactory,
             name = "NodeAttachmentService_attachmentContent",
-            weigher = Weigher<SecureHash, Optional<Pair<Attachment, ByteArray>>> { key, value -> key.size + if (value.isPresent) value.get().second.size else 0 },
+            weigher = Weigher<SecureHash, Optional<Pair<Attachment, ByteArray?>>> { key, value -> key.size + (value.orElse(null)?.second?.size ?: 0) },
             loadFunction = { Optional.ofNullable(loadAttachmentContent(it)) }
     )
 
-    private fun loadAttachmentContent(id: AttachmentId): Pair<Attachment, ByteArray>? {
+    private fun loadAttachmentContent(id: AttachmentId): Pair<Attachment, ByteArray?>? {
         return database.transaction {
             val attachment = currentDBSession().get(DBAttachment::class.java, id.toString())
                     ?: return@transaction null
@@ -287,12 +360,17 @@ class NodeAttachmentService @JvmOverloads constructor(
     }
 
     private fun createAttachmentFromDatabase(attachment: DBAttachment): Attachment {
+        val id = SecureHash.parse(attachment.attId)
+        val content = attachment.content
+        val mappedContentLoader: (() -> ByteBuffer)? = if (content == null) ({ loadStoredContent(id) }) else null
         val attachmentImpl = AttachmentImpl(
-            id = SecureHash.parse(attachment.attId),
-            dataLoader = { attachment.content },
+            id = id,
+            dataLoader = { content ?: loadStoredContent(id).copyBytes() },
             checkOnLoad = checkAttachmentsOnLoad,
             uploader = attachment.uploader,
-            signerKeys = attachment.signers?.toList() ?: emptyList()
+            signerKeys = attachment.signers?.toList() ?: emptyList(),
+            entryIndexLoader = { loadEntryIndex(attachment.attId) },
+            mappedContentLoader = mappedContentLoader
         )
         val contracts = attachment.contractClassNames
         return if (contracts != null && contracts.isNotEmpty()) {
@@ -309,6 +387,24 @@ class NodeAttachmentService @JvmOverloads constructor(
         }
     }
 
+    private fun loadStoredContent(id: AttachmentId): ByteBuffer {
+        val store = checkNotNull(contentStore) { "Attachment $id has no content in the database and there is no content store" }
+        return store.load(id) ?: throw IllegalStateException("Content of attachment $id is missing from the content store")
+    }
+
+    private fun loadEntryIndex(attId: String): Map<String, SecureHash>? {
+        return database.transaction {
+            val query = session.createQuery(
+                    "select key(e), value(e) from ${DBAttachment::class.java.name} a join a.entries e where a.attId = :attId",
+                    Tuple::class.java
+            )
+            query.setParameter("attId", attId)
+            query.resultList
+                    .associate { (it[0] as String) to SecureHash.parse(it[1] as String) }
+                    .takeIf { it.isNotEmpty() }
+        }
+    }
+
     private val attachmentCache = NonInvalidatingCache<SecureHash, Optional<Attachment>>(
             cacheFactory = cacheFactory,
             name = "NodeAttachmentService_attachmentPresence",
@@ -383,37 +479,36 @@ class NodeAttachmentService @JvmOverloads constructor(
 
     // TODO: PLT-147: The attachment should be randomised to prevent brute force guessing and thus privacy leaks.
     private fun import(jar: InputStream, uploader: String?, filename: String?): AttachmentId {
+        // A JarInputStream has already consumed the manifest, which would then be missing from the stored attachment.
+        require(jar !is JarInputStream) { "Input stream must not be a JarInputStream" }
+        // The jar is hashed as it is copied to a temporary file, which is then read for each of the checks below rather
+        // than holding the jar in memory. Only if its content is to be kept in the database is it read into memory.
+        val hashingStream = HashingInputStream(Hashing.sha256(), jar)
         return database.transaction {
-            withContractsInJar(jar) { contractClassNames, inputStream ->
-                require(inputStream !is JarInputStream) { "Input stream must not be a JarInputStream" }
-
-                // Read the file into RAM and then calculate its hash. The attachment must fit into memory.
-                // TODO: Switch to a two-phase insert so we can handle attachments larger than RAM.
-                // To do this we must pipe stream into the database without knowing its hash, which we will learn only once
-                // the insert/upload is complete. We can then query to see if it's a duplicate and if so, erase, and if not
-                // set the hash field of the new attachment record.
-
-                val bytes = inputStream.readFully()
-                val id = bytes.sha256()
+            withContractsInJarFile(hashingStream) { contractClassNames, jarFile ->
+                val id = SecureHash.SHA256(hashingStream.hash().asBytes())
                 if (!hasAttachment(id)) {
-                    checkIsAValidJAR(bytes.inputStream())
-                    val jarSigners = getSigners(bytes)
-                    val contractVersion = increaseDefaultVersionIfWhitelistedAttachment(contractClassNames, getVersion(bytes), id)
+                    jarFile.read { checkIsAValidJAR(it.buffered()) }
+                    val jarSigners = getSigners(jarFile)
+                    val contractVersion = increaseDefaultVersionIfWhitelistedAttachment(contractClassNames, getVersion(jarFile), id)
+                    val entryIndex = getEntryIndex(jarFile)
                     val session = currentDBSession()
+                    contentStore?.store(id, jarFile)
                     val attachment = DBAttachment(
                             attId = id.toString(),
-                            content = bytes,
+                            content = if (contentStore == null) jarFile.readAll() else null,
                             uploader = uploader,
                             filename = filename,
                             contractClassNames = contractClassNames,
                             signers = jarSigners,
-                            version = contractVersion
+                            version = contractVersion,
+                            entries = entryIndex?.mapValues { it.value.toString() }
                     )
                     session.save(attachment)
                     attachmentCount.inc()
                     log.info("Stored new attachment: id=$id uploader=$uploader filename=$filename")
                     contractClassNames.forEach { contractsCache.invalidate(it) }
-                    return@withContractsInJar id
+                    return@withContractsInJarFile id
                 }
                 if (isUploaderTrusted(uploader)) {
                     val session = currentDBSession()
@@ -428,7 +523,7 @@ class NodeAttachmentService @JvmOverloads constructor(
                             attachmentContentCache.put(id, Optional.of(attachmentAndContent))
                             attachmentCache.put(id, Optional.of(attachmentAndContent.first))
                         }
-                        return@withContractsInJar id
+                        return@withContractsInJarFile id
                     }
                     // If the uploader is the same, throw the exception because the attachment cannot be overridden by the same uploader.
                 }
@@ -437,11 +532,17 @@ class NodeAttachmentService @JvmOverloads constructor(
         }
     }
 
-    private fun getSigners(attachmentBytes: ByteArray) =
-            JarInputStream(attachmentBytes.inputStream()).use(JarSignatureCollector::collectSigners)
+    private fun Path.openJar() = JarInputStream(inputStream().buffered())
+
+    private fun getSigners(jarFile: Path) = jarFile.openJar().use(JarSignatureCollector::collectSigners)
+
+    private fun getEntryIndex(jarFile: Path): Map<String, SecureHash>? {
+        val entryIndex = jarFile.openJar().use(::readAttachmentEntryIndex)
+        return entryIndex?.takeIf { it.keys.all { path -> path.length <= MAX_INDEXED_PATH_LENGTH } }
+    }
 
-    private fun getVersion(attachmentBytes: ByteArray) =
-            JarInputStream(attachmentBytes.inputStream()).use {
+    private fun getVersion(jarFile: Path) =
+            jarFile.openJar().use {
                 try {
                     it.manifest?.mainAttributes?.getValue(CORDAPP_CONTRACT_VERSION)?.toInt() ?: DEFAULT_CORDAPP_VERSION
                 } catch (e: NumberFormatException) {
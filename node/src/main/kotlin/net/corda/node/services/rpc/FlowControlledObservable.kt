@@ -0,0 +1,10 @@
+package net.corda.node.services.rpc
+
+import rx.Observable
+
+/**
+ * An [Observable] which only emits items as its subscriber requests them. When one is returned over RPC the server requests a single
+ * item at a time, and only requests the next one once the previous one has been sent, so that a slow client cannot cause items to
+ * build up in the node. Only sources which honour backpressure, such as a [rx.observables.SyncOnSubscribe], should be wrapped in this.
+ */
+class FlowControlledObservable<T>(onSubscribe: OnSubscribe<T>) : Observable<T>(onSubscribe)
@@ -14,6 +14,21 @@ import java.util.concurrent.ConcurrentHashMap
 interface ObservableContextInterface {
     fun sendMessage(serverToClient: RPCApi.ServerToClient)
 
+    /**
+     * Sends [serverToClient] and then calls [onSent] with whether it was handed over to the client's queue. [onSent] may be called
+     * on the thread sending messages, and so must not block.
+     */
+    fun sendMessage(serverToClient: RPCApi.ServerToClient, onSent: (Boolean) -> Unit) {
+        sendMessage(serverToClient)
+        onSent(true)
+    }
+
+    /**
+     * Runs [request], which asks a flow controlled observable for its next items. The observable may produce them on the thread
+     * running [request], which is therefore not the thread sending messages.
+     */
+    fun requestObservations(request: () -> Unit) = request()
+
     val observableMap: Cache<Trace.InvocationId, ObservableSubscription>
     val clientAddressToObservables: ConcurrentHashMap<SimpleString, HashSet<Trace.InvocationId>>
     val deduplicationIdentity: String
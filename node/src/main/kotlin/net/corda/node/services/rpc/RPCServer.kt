@@ -34,6 +34,8 @@ import net.corda.nodeapi.internal.DeduplicationChecker
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.contextDatabase
 import net.corda.nodeapi.internal.persistence.contextDatabaseOrNull
+import net.corda.serialization.internal.amqp.SentSchemaCache
+import net.corda.serialization.internal.amqp.withSchemaReferences
 import org.apache.activemq.artemis.api.core.Message
 import org.apache.activemq.artemis.api.core.SimpleString
 import org.apache.activemq.artemis.api.core.client.*
@@ -121,11 +123,20 @@ class RPCServer(
     private val observableMap = createObservableSubscriptionMap()
     /** A mapping from client addresses to IDs of associated Observables */
     private val clientAddressToObservables = ConcurrentHashMap<SimpleString, HashSet<InvocationId>>()
+    /**
+     * The schemas sent to each client which accepts schema references. Replies are serialised on the single sender thread
+     * and sent to a single queue per client, so the client receives the schemas in the order this cache records them.
+     * Messages sent while the client's queue is unbound are lost though, so the cache is reset whenever the client
+     * (re)connects, and schemas the client asks for are resent.
+     */
+    private val clientSchemaCaches = ConcurrentHashMap<SimpleString, SentSchemaCache>()
     /** The scheduled reaper handle. */
     private var reaperScheduledFuture: ScheduledFuture<*>? = null
 
     private var senderThread: Thread? = null
     private var rpcExecutor: ScheduledExecutorService? = null
+    /** Where flow controlled observables are asked for their next items, so that producing them doesn't hold up the sender thread. */
+    private var observationExecutor: ExecutorService? = null
     private var reaperExecutor: ScheduledExecutorService? = null
 
     private var sessionFactory: ClientSessionFactory? = null
@@ -206,6 +217,10 @@ class RPCServer(
                     rpcConfiguration.rpcThreadPoolSize,
                     ThreadFactoryBuilder().setNameFormat("rpc-server-handler-pool-%d").build()
             )
+            observationExecutor = Executors.newFixedThreadPool(
+                    rpcConfiguration.rpcThreadPoolSize,
+                    ThreadFactoryBuilder().setNameFormat("rpc-server-observation-pool-%d").build()
+            )
             reaperExecutor = Executors.newSingleThreadScheduledExecutor(
                     ThreadFactoryBuilder().setNameFormat("rpc-server-reaper-%d").build()
             )
@@ -273,14 +288,19 @@ class RPCServer(
             // We must do the serialisation here as any encountered Observables may already have events, which would
             // trigger more sends. We must make sure that the root of the Observables (e.g. the RPC reply) is sent
             // before any child observations.
-            job.message.writeToClientMessage(job.serializationContext, artemisMessage)
+            // The client's schema cache is looked up here as it is replaced when the client reconnects.
+            val serializationContext = clientSchemaCaches[job.clientAddress]?.let { job.serializationContext.withSchemaReferences(it) }
+                    ?: job.serializationContext
+            job.message.writeToClientMessage(serializationContext, artemisMessage)
             artemisMessage.putLongProperty(RPCApi.DEDUPLICATION_SEQUENCE_NUMBER_FIELD_NAME, sequenceNumber)
             rpcProducer!!.send(job.clientAddress, artemisMessage)
             log.debug { "<- RPC <- ${job.message}" }
+            job.onSent?.invoke(true)
         } catch (throwable: Throwable) {
             log.error("Failed to send message, kicking client. Message was ${job.message}", throwable)
             serverControl!!.closeConsumerConnectionsForAddress(job.clientAddress.toString())
             invalidateClient(job.clientAddress)
+            job.onSent?.invoke(false)
             if (throwable is VirtualMachineError) throw throwable
         }
     }
@@ -291,6 +311,7 @@ class RPCServer(
         senderThread?.join(queueDrainTimeout.toMillis())
         reaperScheduledFuture?.cancel(false)
         rpcExecutor?.shutdownNow()
+        observationExecutor?.shutdownNow()
         reaperExecutor?.shutdownNow()
         sessionFactory?.close()
         observableMap.invalidateAll()
@@ -313,6 +334,8 @@ class RPCServer(
         require(notificationType == CoreNotificationType.BINDING_ADDED.name){"Message contained notification type of $notificationType instead of expected ${CoreNotificationType.BINDING_ADDED.name}"}
         val clientAddress = SimpleString(artemisMessage.getStringProperty(ManagementHelper.HDR_ROUTING_NAME))
         log.debug("RPC client queue created on address $clientAddress")
+        // Anything sent to the client before its queue was bound was dropped, including schemas it may not have seen.
+        clientSchemaCaches.computeIfPresent(clientAddress) { _, _ -> SentSchemaCache() }
 
         val buffer = stopBuffering(clientAddress)
         buffer?.let { drainBuffer(it) }
@@ -341,6 +364,7 @@ class RPCServer(
             observableMap.invalidateAll(observableIds)
         }
         responseMessageBuffer.remove(clientAddress)
+        clientSchemaCaches.remove(clientAddress)
     }
 
     private fun clientArtemisMessageHandler(artemisMessage: ClientMessage) {
@@ -356,6 +380,9 @@ class RPCServer(
                 is RPCApi.ClientToServer.ObservablesClosed -> {
                     log.debug { "-> RPC observable closed -> $clientToServer"}
                 }
+                is RPCApi.ClientToServer.SchemaRequest -> {
+                    log.debug { "-> RPC schema request -> $clientToServer" }
+                }
             }
         }
         try {
@@ -369,6 +396,9 @@ class RPCServer(
                         log.info("Message duplication detected, discarding message")
                         return
                     }
+                    if (clientToServer.acceptsSchemaReferences) {
+                        clientSchemaCaches.computeIfAbsent(clientToServer.clientAddress) { SentSchemaCache() }
+                    }
                     val arguments = Try.on {
                         clientToServer.serialisedArguments.deserialize<List<Any?>>(context = RPC_SERVER_CONTEXT)
                     }
@@ -392,6 +422,10 @@ class RPCServer(
                 is RPCApi.ClientToServer.ObservablesClosed -> {
                     observableMap.invalidateAll(clientToServer.ids)
                 }
+                is RPCApi.ClientToServer.SchemaRequest -> {
+                    val reply = RPCApi.ServerToClient.SchemaReply(clientToServer.fingerprint, deduplicationIdentity!!)
+                    sendJobQueue.put(RpcSendJob.Send(null, clientToServer.clientAddress, RPC_SERVER_CONTEXT, reply))
+                }
             }
         } finally {
             artemisMessage.acknowledge()
@@ -493,6 +527,19 @@ class RPCServer(
             sendJobQueue.put(RpcSendJob.Send(contextDatabaseOrNull, clientAddress,
                     serializationContextWithObservableContext, serverToClient))
         }
+
+        override fun sendMessage(serverToClient: RPCApi.ServerToClient, onSent: (Boolean) -> Unit) {
+            sendJobQueue.put(RpcSendJob.Send(contextDatabaseOrNull, clientAddress,
+                    serializationContextWithObservableContext, serverToClient, onSent))
+        }
+
+        override fun requestObservations(request: () -> Unit) {
+            try {
+                observationExecutor!!.execute(request)
+            } catch (e: RejectedExecutionException) {
+                log.debug { "Not requesting more observations for $clientAddress as the RPC server is stopping" }
+            }
+        }
     }
 
     private sealed class RpcSendJob {
@@ -502,7 +549,8 @@ class RPCServer(
                 val database: CordaPersistence?,
                 val clientAddress: SimpleString,
                 val serializationContext: SerializationContext,
-                val message: RPCApi.ServerToClient
+                val message: RPCApi.ServerToClient,
+                val onSent: ((Boolean) -> Unit)? = null
         ) : RpcSendJob()
         object Stop : RpcSendJob()
     }
@@ -70,6 +70,7 @@ class FlowMessagingImpl(val serviceHub: ServiceHubInternal): FlowMessaging {
             is ExistingSessionMessage -> message.recipientSessionId
         }
         serviceHub.networkService.send(networkMessage, address, sequenceKey = sequenceKey)
+        serviceHub.sessionSchemaCaches.onSent(party, message)
     }
 
     private fun SessionMessage.additionalHeaders(target: Party): Map<String, String> {
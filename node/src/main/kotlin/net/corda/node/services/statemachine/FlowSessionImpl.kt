@@ -8,19 +8,20 @@ import net.corda.core.flows.FlowSession
 import net.corda.core.identity.Party
 import net.corda.core.internal.FlowIORequest
 import net.corda.core.internal.FlowStateMachine
+import net.corda.core.internal.SessionSerializationContexts
 import net.corda.core.internal.checkPayloadIs
-import net.corda.core.serialization.SerializationDefaults
+import net.corda.core.serialization.SerializationContext
 import net.corda.core.serialization.SerializedBytes
 import net.corda.core.serialization.serialize
 import net.corda.core.utilities.NonEmptySet
 import net.corda.core.utilities.UntrustworthyData
+import net.corda.node.services.api.ServiceHubInternal
 
 class FlowSessionImpl(
         override val destination: Destination,
         private val wellKnownParty: Party,
         val sourceSessionId: SessionId
-) : FlowSession() {
-
+) : FlowSession(), SessionSerializationContexts {
     override val counterparty: Party get() = wellKnownParty
 
     override fun toString(): String = "FlowSessionImpl(destination=$destination, sourceSessionId=$sourceSessionId)"
@@ -31,6 +32,13 @@ class FlowSessionImpl(
 
     private val flowStateMachine: FlowStateMachine<*> get() = Fiber.currentFiber() as FlowStateMachine<*>
 
+    private val sessionSchemaCaches: SessionSchemaCaches
+        get() = (flowStateMachine.serviceHub as ServiceHubInternal).sessionSchemaCaches
+
+    override val sendContext: SerializationContext get() = sessionSchemaCaches.sendContext(counterparty)
+
+    override val receiveContext: SerializationContext get() = sessionSchemaCaches.receiveContext
+
     @Suspendable
     override fun getCounterpartyFlowInfo(maySkipCheckpoint: Boolean): FlowInfo {
         val request = FlowIORequest.GetFlowInfo(NonEmptySet.of(this))
@@ -48,13 +56,13 @@ class FlowSessionImpl(
     ): UntrustworthyData<R> {
         enforceNotPrimitive(receiveType)
         val request = FlowIORequest.SendAndReceive(
-                sessionToMessage = mapOf(this to payload.serialize(context = SerializationDefaults.P2P_CONTEXT)),
+                sessionToMessage = mapOf(this to payload.serialize(context = sendContext)),
                 shouldRetrySend = false
         )
         val responseValues: Map<FlowSession, SerializedBytes<Any>> = flowStateMachine.suspend(request, maySkipCheckpoint)
         val responseForCurrentSession = responseValues.getValue(this)
 
-        return responseForCurrentSession.checkPayloadIs(receiveType)
+        return responseForCurrentSession.checkPayloadIs(receiveType, receiveContext)
     }
 
     @Suspendable
@@ -64,7 +72,7 @@ class FlowSessionImpl(
     override fun <R : Any> receive(receiveType: Class<R>, maySkipCheckpoint: Boolean): UntrustworthyData<R> {
         enforceNotPrimitive(receiveType)
         val request = FlowIORequest.Receive(NonEmptySet.of(this))
-        return flowStateMachine.suspend(request, maySkipCheckpoint).getValue(this).checkPayloadIs(receiveType)
+        return flowStateMachine.suspend(request, maySkipCheckpoint).getValue(this).checkPayloadIs(receiveType, receiveContext)
     }
 
     @Suspendable
@@ -73,7 +81,7 @@ class FlowSessionImpl(
     @Suspendable
     override fun send(payload: Any, maySkipCheckpoint: Boolean) {
         val request = FlowIORequest.Send(
-                sessionToMessage = mapOf(this to payload.serialize(context = SerializationDefaults.P2P_CONTEXT))
+                sessionToMessage = mapOf(this to payload.serialize(context = sendContext))
         )
         return flowStateMachine.suspend(request, maySkipCheckpoint)
     }
@@ -0,0 +1,190 @@
+package net.corda.node.services.statemachine
+
+import com.github.benmanes.caffeine.cache.Caffeine
+import net.corda.core.crypto.SecureHash
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.identity.Party
+import net.corda.core.internal.NamedCacheFactory
+import net.corda.core.node.services.PartyInfo
+import net.corda.core.serialization.SerializationContext
+import net.corda.core.serialization.SerializationDefaults
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.utilities.MAX_HASH_HEX_SIZE
+import net.corda.core.utilities.contextLogger
+import net.corda.node.services.api.NetworkMapCacheInternal
+import net.corda.node.services.messaging.ReceivedMessage
+import net.corda.node.utilities.NonInvalidatingCache
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.NODE_DATABASE_PREFIX
+import net.corda.nodeapi.internal.persistence.currentDBSession
+import net.corda.serialization.internal.amqp.AccessOrderLinkedHashMap
+import net.corda.serialization.internal.amqp.DEFAULT_SENT_SCHEMA_CACHE_SIZE
+import net.corda.serialization.internal.amqp.FingerprintedSchema
+import net.corda.serialization.internal.amqp.ReceivedSchemas
+import net.corda.serialization.internal.amqp.Schema
+import net.corda.serialization.internal.amqp.SchemaReference
+import net.corda.serialization.internal.amqp.SentSchemas
+import net.corda.serialization.internal.amqp.TransformsSchema
+import net.corda.serialization.internal.amqp.TypeNotation
+import net.corda.serialization.internal.amqp.withSchemaReferences
+import org.apache.commons.lang3.ArrayUtils
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import javax.annotation.concurrent.ThreadSafe
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.Id
+import javax.persistence.Lob
+import javax.persistence.Table
+
+/**
+ * The envelope schemas of the flow session payloads sent to and received from other nodes, so that a payload whose schema
+ * the recipient already holds only carries the schema's fingerprint. They are held by the node and keyed by counterparty,
+ * rather than held by each session, so that all the sessions with a peer share them, and they are not part of any flow's
+ * checkpoint.
+ *
+ * A payload is written by its flow but only sent once the flow's checkpoint is committed, and the flows sending to a peer
+ * do so in no particular order. A schema is therefore only referred to by fingerprint once a payload carrying it in full
+ * has been [handed to the messaging layer][onSent], as the peer then receives that payload first. Likewise, received
+ * payloads are only read when their flows get round to them, so the schemas they carry are recorded as the messages
+ * [arrive][onReceived]. Received schemas are kept in the database by fingerprint, as messages which refer to them may
+ * still be in the node's inbox when it restarts.
+ */
+@ThreadSafe
+class SessionSchemaCaches(
+        private val networkMapCache: NetworkMapCacheInternal,
+        private val database: CordaPersistence,
+        cacheFactory: NamedCacheFactory
+) {
+    companion object {
+        private val log = contextLogger()
+
+        /** The platform version from which nodes read session payloads which refer to their schemas by fingerprint. */
+        const val SCHEMA_REFERENCES_PLATFORM_VERSION = 6
+    }
+
+    @Entity
+    @Table(name = "${NODE_DATABASE_PREFIX}session_schemas")
+    class DBSessionSchema(
+            @Id
+            @Column(name = "fingerprint", length = MAX_HASH_HEX_SIZE, nullable = false)
+            var fingerprint: String = "",
+
+            // The schema and transforms schema as encoded in the payload which carried them, which the fingerprint is the hash of.
+            @Lob
+            @Column(name = "schemas", nullable = false)
+            var schemas: ByteArray = ArrayUtils.EMPTY_BYTE_ARRAY
+    )
+
+    // The schemas of the payload types, by the descriptors of the types, so that each is only built once for all peers.
+    private val built = cacheFactory.buildNamed<List<String>, FingerprintedSchema>(Caffeine.newBuilder(), "SessionSchemaCaches_built")
+    private val sent = ConcurrentHashMap<CordaX500Name, PeerSchemas>()
+    private val senderUUIDs = ConcurrentHashMap<CordaX500Name, String>()
+    private val received = NonInvalidatingCache<SecureHash, Optional<FingerprintedSchema>>(cacheFactory, "SessionSchemaCaches_received") {
+        Optional.ofNullable(load(it))
+    }
+
+    private val receivedSchemas = object : ReceivedSchemas {
+        override fun get(fingerprint: SecureHash): FingerprintedSchema? = received.get(fingerprint)!!.orElse(null)
+
+        // Schemas carried in full were recorded as their messages arrived.
+        override fun receivedInFull(schema: FingerprintedSchema) = Unit
+    }
+
+    /**
+     * The context to write payloads for [peer] with. Schemas are only sent by fingerprint to a single node on a platform
+     * version which can read them, as a message for a distributed service may be delivered to any of its members.
+     */
+    fun sendContext(peer: Party): SerializationContext {
+        val context = SerializationDefaults.P2P_CONTEXT
+        if (networkMapCache.getPartyInfo(peer) !is PartyInfo.SingleNode) {
+            return context
+        }
+        val platformVersion = networkMapCache.getNodeByLegalIdentity(peer)?.platformVersion
+        if (platformVersion == null || platformVersion < SCHEMA_REFERENCES_PLATFORM_VERSION) {
+            return context
+        }
+        return context.withSchemaReferences(sent.computeIfAbsent(peer.name) { PeerSchemas() })
+    }
+
+    /** The context to read payloads received from any peer with. */
+    val receiveContext: SerializationContext
+        get() = SerializationDefaults.P2P_CONTEXT.withSchemaReferences(receivedSchemas)
+
+    /**
+     * Records the schemas carried in full by [message], which has just been handed to the messaging layer to send to [peer].
+     */
+    fun onSent(peer: Party, message: SessionMessage) {
+        val peerSchemas = sent[peer.name] ?: return
+        val reference = message.payload?.let { SchemaReference.read(it) } ?: return
+        if (reference.encodedSchemas != null) {
+            peerSchemas.held(reference.fingerprint)
+        }
+    }
+
+    /**
+     * Records the schemas carried in full by [message] as it arrives, before any flow reads it. The schemas sent to a peer
+     * are forgotten when it is seen to have restarted, as the RPC server does for a reconnecting client. The peer should
+     * still hold them in its database, but resending each once is cheap.
+     */
+    fun onReceived(receivedMessage: ReceivedMessage, message: SessionMessage) {
+        val peer = receivedMessage.peer
+        val senderUUID = receivedMessage.senderUUID
+        if (senderUUID != null && senderUUIDs.put(peer, senderUUID).let { it != null && it != senderUUID }) {
+            sent.remove(peer)
+        }
+        val reference = message.payload?.let { SchemaReference.read(it) } ?: return
+        val encodedSchemas = reference.encodedSchemas ?: return
+        if (received.get(reference.fingerprint)!!.isPresent) {
+            return
+        }
+        val schemas = try {
+            reference.decodeSchemas()
+        } catch (e: Exception) {
+            null
+        }
+        if (schemas == null) {
+            // The payload itself will fail to be read.
+            log.warn("Schemas ${reference.fingerprint} received from $peer are malformed")
+            return
+        }
+        database.transaction {
+            currentDBSession().save(DBSessionSchema(reference.fingerprint.toString(), encodedSchemas))
+        }
+        received.put(reference.fingerprint, Optional.of(schemas))
+    }
+
+    private fun load(fingerprint: SecureHash): FingerprintedSchema? {
+        val stored = database.transaction {
+            currentDBSession().find(DBSessionSchema::class.java, fingerprint.toString())
+        } ?: return null
+        return SchemaReference(fingerprint, stored.schemas).decodeSchemas()
+    }
+
+    private val SessionMessage.payload: SerializedBytes<Any>?
+        get() = when (this) {
+            is InitialSessionMessage -> firstPayload
+            is ExistingSessionMessage -> (payload as? DataSessionMessage)?.payload
+        }
+
+    /**
+     * The schemas which one peer is known to hold. The peer keeps every schema it receives, so they can be evicted in
+     * any order, and the least recently used are.
+     */
+    private inner class PeerSchemas : SentSchemas {
+        private val held = AccessOrderLinkedHashMap<SecureHash, Unit>(DEFAULT_SENT_SCHEMA_CACHE_SIZE)
+
+        override fun reference(types: Collection<TypeNotation>, buildTransforms: (Schema) -> TransformsSchema): Pair<FingerprintedSchema, Boolean> {
+            val schema = built.get(FingerprintedSchema.keyOf(types)) { FingerprintedSchema.build(types, buildTransforms) }!!
+            return Pair(schema, !isHeld(schema.fingerprint))
+        }
+
+        @Synchronized
+        fun held(fingerprint: SecureHash) {
+            held[fingerprint] = Unit
+        }
+
+        @Synchronized
+        private fun isHeld(fingerprint: SecureHash): Boolean = held[fingerprint] != null
+    }
+}
@@ -449,6 +449,7 @@ class SingleThreadedStateMachineManager(
             event.deduplicationHandler.afterDatabaseTransaction()
             return
         }
+        serviceHub.sessionSchemaCaches.onReceived(event.receivedMessage, sessionMessage)
         val sender = serviceHub.networkMapCache.getPeerByLegalName(peer)
         if (sender != null) {
             when (sessionMessage) {
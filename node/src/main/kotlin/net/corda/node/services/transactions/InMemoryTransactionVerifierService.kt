@@ -1,5 +1,7 @@
 package net.corda.node.services.transactions
 
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.MetricRegistry
 import net.corda.core.concurrent.CordaFuture
 import net.corda.core.contracts.Attachment
 import net.corda.core.contracts.TransactionVerificationException.BrokenTransactionException
@@ -10,15 +12,25 @@ import net.corda.core.internal.prepareVerify
 import net.corda.core.node.services.AttachmentStorage
 import net.corda.core.node.services.TransactionVerifierService
 import net.corda.core.serialization.SingletonSerializeAsToken
+import net.corda.core.serialization.internal.SerializationEnvironment
+import net.corda.core.serialization.internal._contextSerializationEnv
+import net.corda.core.serialization.internal._inheritableContextSerializationEnv
 import net.corda.core.transactions.LedgerTransaction
 import net.corda.core.utilities.contextLogger
 import net.corda.node.internal.cordapp.CordappProviderInternal
 import net.corda.nodeapi.internal.persistence.withoutDatabaseAccess
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
 
+/**
+ * Verifies transactions on a pool of [numberOfWorkers] threads, so that independent transactions can be verified in parallel
+ * while their callers wait on the returned futures.
+ */
 class InMemoryTransactionVerifierService(
-    @Suppress("UNUSED_PARAMETER") numberOfWorkers: Int,
+    numberOfWorkers: Int,
     private val cordappProvider: CordappProviderInternal,
-    private val attachments: AttachmentStorage
+    private val attachments: AttachmentStorage,
+    metrics: MetricRegistry
 ) : SingletonSerializeAsToken(), TransactionVerifierService, TransactionVerifierServiceInternal, AutoCloseable {
     companion object {
         private val SEPARATOR = System.lineSeparator() + "-> "
@@ -35,15 +47,54 @@ class InMemoryTransactionVerifierService(
         }
     }
 
-    override fun verify(transaction: LedgerTransaction): CordaFuture<*> {
-        return openFuture<Unit>().apply {
-            capture {
-                val verifier = transaction.prepareVerify(transaction.attachments)
-                withoutDatabaseAccess {
-                    verifier.verify()
+    // The pool's threads are created without inheriting the creating thread's serialization environment (see
+    // _inheritableContextSerializationEnv), which instead is passed to them with each transaction.
+    private val workerPool = ForkJoinPool(numberOfWorkers)
+    private val queueDepth = AtomicInteger()
+    private val latency = metrics.timer("Verification.Latency")
+    private val duration = metrics.timer("Verification.Duration")
+
+    init {
+        metrics.register("Verification.QueueDepth", Gauge<Int> { queueDepth.get() })
+    }
+
+    override fun verify(transaction: LedgerTransaction): CordaFuture<*> = verifyOnWorker(transaction, transaction.attachments)
+
+    private fun verifyOnWorker(transaction: LedgerTransaction, attachments: List<Attachment>): CordaFuture<*> {
+        val future = openFuture<Unit>()
+        val serializationEnv = _contextSerializationEnv.get() ?: _inheritableContextSerializationEnv.get()
+        val latencyContext = latency.time()
+        queueDepth.incrementAndGet()
+        workerPool.execute {
+            queueDepth.decrementAndGet()
+            // Errors such as NoClassDefFoundError must reach the caller too, as they can mean the transaction needs fixing up.
+            try {
+                duration.time().use {
+                    withContextSerializationEnv(serializationEnv) {
+                        val verifier = transaction.prepareVerify(attachments)
+                        withoutDatabaseAccess {
+                            verifier.verify()
+                        }
+                    }
                 }
+                future.set(Unit)
+            } catch (t: Throwable) {
+                future.setException(t)
+            } finally {
+                latencyContext.stop()
             }
         }
+        return future
+    }
+
+    private inline fun withContextSerializationEnv(serializationEnv: SerializationEnvironment?, block: () -> Unit) {
+        if (serializationEnv == null) return block()
+        _contextSerializationEnv.set(serializationEnv)
+        try {
+            block()
+        } finally {
+            _contextSerializationEnv.set(null)
+        }
     }
 
     private fun computeReplacementAttachmentsFor(ltx: LedgerTransaction, missingClass: String?): Collection<Attachment> {
@@ -104,17 +155,16 @@ class InMemoryTransactionVerifierService(
     }
 
     override fun reverifyWithFixups(transaction: LedgerTransaction, missingClass: String?): CordaFuture<*> {
-        return openFuture<Unit>().apply {
-            capture {
-                val replacementAttachments = computeReplacementAttachmentsFor(transaction, missingClass)
-                log.warn("Reverifying transaction {} with attachments:{}", transaction.id, replacementAttachments.toPrettyString())
-                val verifier = transaction.prepareVerify(replacementAttachments.toList())
-                withoutDatabaseAccess {
-                    verifier.verify()
-                }
-            }
+        val replacementAttachments = try {
+            computeReplacementAttachmentsFor(transaction, missingClass)
+        } catch (t: Throwable) {
+            return openFuture<Unit>().apply { setException(t) }
         }
+        log.warn("Reverifying transaction {} with attachments:{}", transaction.id, replacementAttachments.toPrettyString())
+        return verifyOnWorker(transaction, replacementAttachments.toList())
     }
 
-    override fun close() {}
+    override fun close() {
+        workerPool.shutdown()
+    }
 }
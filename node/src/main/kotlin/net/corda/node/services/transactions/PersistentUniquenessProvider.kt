@@ -37,6 +37,7 @@ import java.util.*
 import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
 import javax.annotation.concurrent.ThreadSafe
 import javax.persistence.Column
 import javax.persistence.EmbeddedId
@@ -47,9 +48,24 @@ import javax.persistence.Lob
 import javax.persistence.MappedSuperclass
 import kotlin.concurrent.thread
 
-/** A RDBMS backed Uniqueness provider */
+/**
+ * A RDBMS backed Uniqueness provider.
+ *
+ * Requests are partitioned by the hash of their input and reference states into [shards], each processed by its own
+ * thread. A request is queued on the lowest shard it touches and is committed while holding the locks of all the shards it
+ * touches, acquired in ascending order, so requests spending the same state are never committed concurrently. When more
+ * than one request is queued on a shard, up to [maxBatchSize] of them are committed together in a single database
+ * transaction.
+ */
 @ThreadSafe
-class PersistentUniquenessProvider(val clock: Clock, val database: CordaPersistence, cacheFactory: NamedCacheFactory, val signTransaction : SigningFunction) : UniquenessProvider, SingletonSerializeAsToken() {
+class PersistentUniquenessProvider(
+        val clock: Clock,
+        val database: CordaPersistence,
+        cacheFactory: NamedCacheFactory,
+        val signTransaction : SigningFunction,
+        private val maxBatchSize: Int = 1,
+        private val shards: Int = 1
+) : UniquenessProvider, SingletonSerializeAsToken() {
 
     @MappedSuperclass
     class BaseComittedState(
@@ -99,19 +115,25 @@ class PersistentUniquenessProvider(val clock: Clock, val database: CordaPersiste
             val requestSignature: NotarisationRequestSignature,
             val timeWindow: TimeWindow?,
             val references: List<StateRef>,
-            val future: OpenFuture<UniquenessProvider.Result>)
+            val future: OpenFuture<UniquenessProvider.Result>,
+            /** The indices of the shards this request touches, in ascending order. */
+            val shardIndices: List<Int>)
 
     @Entity
     @javax.persistence.Table(name = "${NODE_DATABASE_PREFIX}notary_committed_states")
     class CommittedState(id: PersistentStateRef, consumingTxHash: String) : BaseComittedState(id, consumingTxHash)
 
+    init {
+        require(maxBatchSize > 0) { "The maximum batch size must be positive" }
+        require(shards > 0) { "The number of shards must be positive" }
+    }
+
     private val commitLog = createMap(cacheFactory)
 
-    private val requestQueue = LinkedBlockingQueue<CommitRequest>(requestQueueSize)
     private val nrQueuedStates = AtomicInteger(0)
 
     /**
-     * Measured in states per minute, with a minimum of 1. We take an average of the last 100 commits.
+     * Measured in states per minute per shard, with a minimum of 1. We take an average of the last 100 commits.
      * Minutes was chosen to increase accuracy by 60x over seconds, given we have to use longs here.
      */
     private val throughputHistory = SlidingWindowReservoir(100)
@@ -128,7 +150,8 @@ class PersistentUniquenessProvider(val clock: Clock, val database: CordaPersiste
      * @param numStates The number of states (input + reference) we're about to request be notarised.
      */
     override fun getEta(numStates: Int): Duration {
-        val rate = throughput
+        // Shards are processed concurrently, so assume the load is spread evenly across them.
+        val rate = throughput * shards
         val nrStates = nrQueuedStates.getAndAdd(numStates)
         log.debug { "rate: $rate, queueSize: $nrStates" }
         if (rate > 0.0 && nrStates > 0) {
@@ -137,17 +160,29 @@ class PersistentUniquenessProvider(val clock: Clock, val database: CordaPersiste
         return NotaryServiceFlow.defaultEstimatedWaitTime
     }
 
-    /** A request processor thread. */
-    private val processorThread = thread(name = "Notary request queue processor", isDaemon = true) {
-        try {
-            while (!Thread.interrupted()) {
-                processRequest(requestQueue.take())
+    /** A partition of the committed states, with its own request queue and processor thread. */
+    private inner class Shard(index: Int) {
+        val requestQueue = LinkedBlockingQueue<CommitRequest>(maxOf(requestQueueSize / shards, 1))
+        val lock = ReentrantLock()
+
+        /** A request processor thread. */
+        private val processorThread = thread(name = "Notary request queue processor${if (shards > 1) " $index" else ""}", isDaemon = true) {
+            try {
+                while (!Thread.interrupted()) {
+                    val requests = ArrayList<CommitRequest>()
+                    requests += requestQueue.take()
+                    requestQueue.drainTo(requests, maxBatchSize - 1)
+                    requests.forEach { decrementQueueSize(it) }
+                    processRequests(requests)
+                }
+            } catch (e: InterruptedException) {
             }
-        } catch (e: InterruptedException) {
+            log.debug { "Shutting down with ${requestQueue.size} in-flight requests unprocessed." }
         }
-        log.debug { "Shutting down with ${requestQueue.size} in-flight requests unprocessed." }
     }
 
+    private val shardList = (0 until shards).map { Shard(it) }
+
     companion object {
         private const val requestQueueSize = 100_000
         private val log = contextLogger()
@@ -191,33 +226,85 @@ class PersistentUniquenessProvider(val clock: Clock, val database: CordaPersiste
             references: List<StateRef>
     ): CordaFuture<UniquenessProvider.Result> {
         val future = openFuture<UniquenessProvider.Result>()
-        val request = CommitRequest(states, txId, callerIdentity, requestSignature, timeWindow, references, future)
-        requestQueue.put(request)
+        val request = CommitRequest(states, txId, callerIdentity, requestSignature, timeWindow, references, future, shardIndices(states, references, txId))
+        shardList[request.shardIndices.first()].requestQueue.put(request)
         log.debug { "Request added to queue. TxId: $txId" }
         return future
     }
 
-    private fun logRequest(txId: SecureHash, callerIdentity: Party, requestSignature: NotarisationRequestSignature) {
-        val request = Request(
-                consumingTxHash = txId.toString(),
-                partyName = callerIdentity.name.toString(),
-                requestSignature = requestSignature.serialize().bytes,
-                requestDate = clock.instant()
-        )
-        val session = currentDBSession()
-        session.persist(request)
+    /**
+     * Returns the shards that own the given states. A request without any states is assigned a shard by its transaction id,
+     * which is what it is committed under.
+     */
+    private fun shardIndices(states: List<StateRef>, references: List<StateRef>, txId: SecureHash): List<Int> {
+        if (shards == 1) return listOf(0)
+        if (states.isEmpty() && references.isEmpty()) return listOf(Math.floorMod(txId.hashCode(), shards))
+        return (states + references).map { Math.floorMod(it.hashCode(), shards) }.toSortedSet().toList()
+    }
+
+    /** Runs [block] holding the locks of all the shards touched by [requests], acquired in ascending order to avoid deadlocks. */
+    private inline fun <T> withShardLocks(requests: List<CommitRequest>, block: () -> T): T {
+        if (shards == 1) return block()
+        val locks = requests.flatMap { it.shardIndices }.toSortedSet().map { shardList[it].lock }
+        locks.forEach { it.lock() }
+        try {
+            return block()
+        } finally {
+            locks.asReversed().forEach { it.unlock() }
+        }
+    }
+
+    /**
+     * The writes of the requests committed in a single database transaction. These are only persisted once all the requests
+     * have been processed, grouped by entity so that the inserts can be sent as JDBC batches. Until then conflicts between
+     * requests of the same batch are detected from here.
+     */
+    private inner class CommitBatch {
+        private val requests = ArrayList<Request>()
+        private val committedStates = LinkedHashMap<StateRef, SecureHash>()
+        private val committedTransactions = LinkedHashSet<SecureHash>()
+
+        fun consumingTx(stateRef: StateRef): SecureHash? = committedStates[stateRef] ?: commitLog[stateRef]
+
+        fun previouslyCommitted(txId: SecureHash): Boolean {
+            return txId in committedTransactions || currentDBSession().find(CommittedTransaction::class.java, txId.toString()) != null
+        }
+
+        fun logRequest(txId: SecureHash, callerIdentity: Party, requestSignature: NotarisationRequestSignature) {
+            requests += Request(
+                    consumingTxHash = txId.toString(),
+                    partyName = callerIdentity.name.toString(),
+                    requestSignature = requestSignature.serialize().bytes,
+                    requestDate = clock.instant()
+            )
+        }
+
+        fun commit(states: List<StateRef>, txId: SecureHash) {
+            states.forEach { committedStates[it] = txId }
+            committedTransactions += txId
+        }
+
+        fun persist() {
+            val session = currentDBSession()
+            if (maxBatchSize > 1) {
+                session.jdbcBatchSize = maxBatchSize
+            }
+            requests.forEach { session.persist(it) }
+            committedStates.forEach { stateRef, txId -> commitLog[stateRef] = txId }
+            committedTransactions.forEach { session.persist(CommittedTransaction(it.toString())) }
+        }
     }
 
     private fun findAlreadyCommitted(
             states: List<StateRef>,
             references: List<StateRef>,
-            commitLog: AppendOnlyPersistentMap<StateRef, SecureHash, CommittedState, PersistentStateRef>
+            batch: CommitBatch
     ): LinkedHashMap<StateRef, StateConsumptionDetails> {
         val conflictingStates = LinkedHashMap<StateRef, StateConsumptionDetails>()
 
         fun checkConflicts(toCheck: List<StateRef>, type: StateConsumptionDetails.ConsumedStateType) {
             return toCheck.forEach { stateRef ->
-                val consumingTx = commitLog[stateRef]
+                val consumingTx = batch.consumingTx(stateRef)
                 if (consumingTx != null) conflictingStates[stateRef] = StateConsumptionDetails(consumingTx.sha256(), type)
             }
         }
@@ -228,36 +315,54 @@ class PersistentUniquenessProvider(val clock: Clock, val database: CordaPersiste
         return conflictingStates
     }
 
+    /**
+     * Commits all the [requests] in a single database transaction.
+     *
+     * @return for each request the error it was rejected with, or null if it was committed.
+     */
+    private fun commitAll(requests: List<CommitRequest>): List<NotaryInternalException?> {
+        return withShardLocks(requests) {
+            database.transaction {
+                val batch = CommitBatch()
+                val errors = requests.map { request ->
+                    try {
+                        commitOne(request.states, request.txId, request.callerIdentity, request.requestSignature, request.timeWindow, request.references, batch)
+                        null
+                    } catch (e: NotaryInternalException) {
+                        e
+                    }
+                }
+                batch.persist()
+                errors
+            }
+        }
+    }
+
     private fun commitOne(
             states: List<StateRef>,
             txId: SecureHash,
             callerIdentity: Party,
             requestSignature: NotarisationRequestSignature,
             timeWindow: TimeWindow?,
-            references: List<StateRef>
+            references: List<StateRef>,
+            batch: CommitBatch
     ) {
-        database.transaction {
-            logRequest(txId, callerIdentity, requestSignature)
-            val conflictingStates = findAlreadyCommitted(states, references, commitLog)
-            if (conflictingStates.isNotEmpty()) {
-                if (states.isEmpty()) {
-                    handleReferenceConflicts(txId, conflictingStates)
-                } else {
-                    handleConflicts(txId, conflictingStates)
-                }
+        val conflictingStates = findAlreadyCommitted(states, references, batch)
+        if (conflictingStates.isNotEmpty()) {
+            if (states.isEmpty()) {
+                handleReferenceConflicts(txId, conflictingStates, batch)
             } else {
-                handleNoConflicts(timeWindow, states, txId, commitLog)
+                handleConflicts(txId, conflictingStates)
             }
+        } else {
+            handleNoConflicts(timeWindow, states, txId, batch)
         }
+        // Rejected requests are not logged, as they would have been rolled back together with the rest of their transaction.
+        batch.logRequest(txId, callerIdentity, requestSignature)
     }
 
-    private fun previouslyCommitted(txId: SecureHash): Boolean {
-        val session = currentDBSession()
-        return session.find(CommittedTransaction::class.java, txId.toString()) != null
-    }
-
-    private fun handleReferenceConflicts(txId: SecureHash, conflictingStates: LinkedHashMap<StateRef, StateConsumptionDetails>) {
-        if (!previouslyCommitted(txId)) {
+    private fun handleReferenceConflicts(txId: SecureHash, conflictingStates: LinkedHashMap<StateRef, StateConsumptionDetails>, batch: CommitBatch) {
+        if (!batch.previouslyCommitted(txId)) {
             val conflictError = NotaryError.Conflict(txId, conflictingStates)
             log.info("Failure, input states already committed: ${conflictingStates.keys}. TxId: $txId")
             throw NotaryInternalException(conflictError)
@@ -276,44 +381,62 @@ class PersistentUniquenessProvider(val clock: Clock, val database: CordaPersiste
         }
     }
 
-    private fun handleNoConflicts(timeWindow: TimeWindow?, states: List<StateRef>, txId: SecureHash, commitLog: AppendOnlyPersistentMap<StateRef, SecureHash, CommittedState, PersistentStateRef>) {
+    private fun handleNoConflicts(timeWindow: TimeWindow?, states: List<StateRef>, txId: SecureHash, batch: CommitBatch) {
         // Skip if this is a re-notarisation of a reference-only transaction
-        if (states.isEmpty() && previouslyCommitted(txId)) {
+        if (states.isEmpty() && batch.previouslyCommitted(txId)) {
             return
         }
 
         val outsideTimeWindowError = validateTimeWindow(clock.instant(), timeWindow)
         if (outsideTimeWindowError == null) {
-            states.forEach { stateRef ->
-                commitLog[stateRef] = txId
-            }
-            val session = currentDBSession()
-            session.persist(CommittedTransaction(txId.toString()))
+            batch.commit(states, txId)
             log.info("Successfully committed all input states: $states. TxId: $txId")
         } else {
             throw NotaryInternalException(outsideTimeWindowError)
         }
     }
 
-    private fun decrementQueueSize(request: CommitRequest): Int {
-        val nrStates = request.states.size + request.references.size
-        nrQueuedStates.addAndGet(-nrStates)
-        return nrStates
+    private fun decrementQueueSize(request: CommitRequest) {
+        nrQueuedStates.addAndGet(-numberOfStates(request))
     }
 
-    private fun processRequest(request: CommitRequest) {
-        val numStates = decrementQueueSize(request)
-        try {
+    private fun numberOfStates(request: CommitRequest): Int = request.states.size + request.references.size
+
+    private fun processRequests(requests: List<CommitRequest>) {
+        val numStates = requests.sumBy(::numberOfStates)
+        val errors = try {
+            var result: List<NotaryInternalException?> = emptyList()
             val duration = elapsedTime {
-                commitOne(request.states, request.txId, request.callerIdentity, request.requestSignature, request.timeWindow, request.references)
+                result = commitAll(requests)
             }
             val statesPerMinute = numStates.toLong() * TimeUnit.MINUTES.toNanos(1) / duration.toNanos()
             throughputHistory.update(maxOf(statesPerMinute, 1))
             throughput = throughputHistory.snapshot.median // Median deemed more stable / representative than mean.
-            respondWithSuccess(request)
+            result
         } catch (e: Exception) {
-            log.warn("Error processing commit request", e)
-            respondWithError(request, e)
+            if (requests.size == 1) {
+                log.warn("Error processing commit request", e)
+                respondWithError(requests.single(), e)
+            } else {
+                // Don't let one bad request fail the whole batch.
+                log.warn("Error processing batch of ${requests.size} commit requests, retrying them individually", e)
+                requests.forEach { processRequests(listOf(it)) }
+            }
+            return
+        }
+        requests.forEachIndexed { index, request ->
+            try {
+                val error = errors[index]
+                if (error == null) {
+                    respondWithSuccess(request)
+                } else {
+                    log.warn("Error processing commit request", error)
+                    respondWithError(request, error)
+                }
+            } catch (e: Exception) {
+                log.warn("Error processing commit request", e)
+                respondWithError(request, e)
+            }
         }
     }
 
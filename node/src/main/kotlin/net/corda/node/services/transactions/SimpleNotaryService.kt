@@ -22,7 +22,9 @@ class SimpleNotaryService(override val services: ServiceHubInternal, override va
             services.clock,
             services.database,
             services.cacheFactory,
-            ::signTransaction)
+            ::signTransaction,
+            notaryConfig.batchSize,
+            notaryConfig.shards)
 
     override fun createServiceFlow(otherPartySession: FlowSession): NotaryServiceFlow {
         return if (notaryConfig.validating) {
@@ -255,6 +255,12 @@ class HibernateQueryCriteriaParser(val contractStateType: Class<out ContractStat
                                    val vaultStates: Root<VaultSchemaV1.VaultStates>) : AbstractQueryCriteriaParser<QueryCriteria, IQueryCriteriaParser, Sort>(), IQueryCriteriaParser {
     private companion object {
         private val log = contextLogger()
+
+        private val keysetSorting = Sort(listOf(
+                Sort.SortColumn(SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC),
+                Sort.SortColumn(SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+                Sort.SortColumn(SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)
+        ))
     }
 
     // incrementally build list of join predicates
@@ -264,6 +270,8 @@ class HibernateQueryCriteriaParser(val contractStateType: Class<out ContractStat
     private val aggregateExpressions = mutableListOf<Expression<*>>()
     private val commonPredicates = mutableMapOf<Pair<String, Operator>, Predicate>()   // schema attribute Name, operator -> predicate
     private val constraintPredicates = mutableSetOf<Predicate>()
+    // restricts a keyset paginated query to the results following its page cursor
+    private var keysetPredicate: Predicate? = null
 
     var stateTypes: Vault.StateStatus = Vault.StateStatus.UNCONSUMED
 
@@ -579,12 +587,39 @@ class HibernateQueryCriteriaParser(val contractStateType: Class<out ContractStat
                 else
                     aggregateExpressions
         criteriaQuery.multiselect(selections)
-        val combinedPredicates = commonPredicates.values.plus(predicateSet).plus(constraintPredicates).plus(joinPredicates)
+        val combinedPredicates = commonPredicates.values.plus(predicateSet).plus(constraintPredicates).plus(joinPredicates).plus(listOfNotNull(keysetPredicate))
         criteriaQuery.where(*combinedPredicates.toTypedArray())
 
         return predicateSet
     }
 
+    /**
+     * Parses [criteria] for a keyset paginated query: the results are ordered by the time they were recorded and then by
+     * their state reference, and start straight after [after] if it is set.
+     */
+    fun parseKeyset(criteria: QueryCriteria, after: PageCursor?): Collection<Predicate> {
+        if (after != null) {
+            val recordedTime = vaultStates.get<Instant>(VaultSchemaV1.VaultStates::recordedTime.name)
+            val txId = vaultStates.get<PersistentStateRef>("stateRef").get<String>("txId")
+            val index = vaultStates.get<PersistentStateRef>("stateRef").get<Int>("index")
+            val afterTxId = after.stateRef.txhash.toString()
+            keysetPredicate = criteriaBuilder.or(
+                    criteriaBuilder.greaterThan(recordedTime, after.recordedTime),
+                    criteriaBuilder.and(
+                            criteriaBuilder.equal(recordedTime, after.recordedTime),
+                            criteriaBuilder.or(
+                                    criteriaBuilder.greaterThan(txId, afterTxId),
+                                    criteriaBuilder.and(
+                                            criteriaBuilder.equal(txId, afterTxId),
+                                            criteriaBuilder.greaterThan(index, after.stateRef.index)
+                                    )
+                            )
+                    )
+            )
+        }
+        return parse(criteria, keysetSorting)
+    }
+
     override fun parseCriteria(criteria: CommonQueryCriteria): Collection<Predicate> {
         log.trace { "Parsing CommonQueryCriteria: $criteria" }
 
@@ -17,14 +17,18 @@ import net.corda.core.schemas.PersistentStateRef
 import net.corda.core.serialization.SingletonSerializeAsToken
 import net.corda.core.transactions.*
 import net.corda.core.utilities.*
+import net.corda.node.services.api.ResolvedStateCache
 import net.corda.node.services.api.SchemaService
 import net.corda.node.services.api.VaultServiceInternal
+import net.corda.node.services.rpc.FlowControlledObservable
 import net.corda.node.services.schema.PersistentStateService
 import net.corda.node.services.statemachine.FlowStateMachineImpl
 import net.corda.nodeapi.internal.persistence.*
 import org.hibernate.Session
 import rx.Observable
+import rx.Observer
 import rx.exceptions.OnErrorNotImplementedException
+import rx.observables.SyncOnSubscribe
 import rx.subjects.PublishSubject
 import java.security.PublicKey
 import java.sql.SQLException
@@ -60,7 +64,9 @@ class NodeVaultService(
         private val servicesForResolution: ServicesForResolution,
         private val database: CordaPersistence,
         private val schemaService: SchemaService,
-        private val appClassloader: ClassLoader
+        private val appClassloader: ClassLoader,
+        // Recorded states are added to the resolution cache, as vault queries are likely to load them again.
+        private val stateCache: ResolvedStateCache? = null
 ) : SingletonSerializeAsToken(), VaultServiceInternal {
     companion object {
         private val log = contextLogger()
@@ -283,6 +289,9 @@ class NodeVaultService(
                     outputs
                 }
             }.map { (idx, _) -> tx.outRef<ContractState>(idx) }
+            if (stateCache != null && ourNewStates.isNotEmpty()) {
+                contextTransaction.onCommit { stateCache.cacheOutputs(tx, ourNewStates) }
+            }
 
             // Retrieve all unconsumed states for this transaction's inputs.
             val consumedStates = loadStates(tx.inputs)
@@ -603,7 +612,7 @@ class NodeVaultService(
         return database.transaction {
             // calculate total results where a page specification has been defined
             var totalStates = -1L
-            if (!skipPagingChecks && !paging.isDefault) {
+            if (!skipPagingChecks && !paging.isDefault && paging.countTotalStates) {
                 val count = builder { VaultSchemaV1.VaultStates::recordedTime.count() }
                 val countCriteria = QueryCriteria.VaultCustomQueryCriteria(count, Vault.StateStatus.ALL)
                 val results = _queryBy(criteria.and(countCriteria), PageSpecification(), Sort(emptyList()), contractStateType, true)  // only skip pagination checks for total results count query
@@ -619,7 +628,12 @@ class NodeVaultService(
             val criteriaParser = HibernateQueryCriteriaParser(contractStateType, contractStateTypeMappings, criteriaBuilder, criteriaQuery, queryRootVaultStates)
 
             // parse criteria and build where predicates
-            criteriaParser.parse(criteria, sorting)
+            if (paging.keyset) {
+                if (sorting.columns.isNotEmpty()) throw VaultQueryException("Keyset pagination orders results by recorded time and state reference, and cannot be combined with a sort specification")
+                criteriaParser.parseKeyset(criteria, paging.after)
+            } else {
+                criteriaParser.parse(criteria, sorting)
+            }
 
             // prepare query for execution
             val query = session.createQuery(criteriaQuery)
@@ -627,7 +641,7 @@ class NodeVaultService(
             // pagination checks
             if (!skipPagingChecks && !paging.isDefault) {
                 // pagination
-                if (paging.pageNumber < DEFAULT_PAGE_NUM) throw VaultQueryException("Page specification: invalid page number ${paging.pageNumber} [page numbers start from $DEFAULT_PAGE_NUM]")
+                if (!paging.keyset && paging.pageNumber < DEFAULT_PAGE_NUM) throw VaultQueryException("Page specification: invalid page number ${paging.pageNumber} [page numbers start from $DEFAULT_PAGE_NUM]")
                 if (paging.pageSize < 1) throw VaultQueryException("Page specification: invalid page size ${paging.pageSize} [minimum is 1]")
                 if (paging.pageSize > MAX_PAGE_SIZE) throw VaultQueryException("Page specification: invalid page size ${paging.pageSize} [maximum is $MAX_PAGE_SIZE]")
             }
@@ -636,7 +650,7 @@ class NodeVaultService(
             // TODO: This is a catch-all solution. But why is the default pageNumber set to be -1 in the first place?
             // Even if we set the default pageNumber to be 1 instead, that may not cover the non-default cases.
             // So the floor may be necessary anyway.
-            query.firstResult = maxOf(0, (paging.pageNumber - 1) * paging.pageSize)
+            query.firstResult = if (paging.keyset) 0 else maxOf(0, (paging.pageNumber - 1) * paging.pageSize)
             val pageSize = paging.pageSize + 1
             query.maxResults = if (pageSize > 0) pageSize else Integer.MAX_VALUE // detection too many results, protected against overflow
 
@@ -657,20 +671,9 @@ class NodeVaultService(
                         if (result[0] is VaultSchemaV1.VaultStates) {
                             if (!paging.isDefault && index == paging.pageSize) // skip last result if paged
                                 return@forEachIndexed
-                            val vaultState = result[0] as VaultSchemaV1.VaultStates
-                            val stateRef = StateRef(SecureHash.parse(vaultState.stateRef!!.txId), vaultState.stateRef!!.index)
-                            stateRefs.add(stateRef)
-                            statesMeta.add(Vault.StateMetadata(stateRef,
-                                    vaultState.contractStateClassName,
-                                    vaultState.recordedTime,
-                                    vaultState.consumedTime,
-                                    vaultState.stateStatus,
-                                    vaultState.notary,
-                                    vaultState.lockId,
-                                    vaultState.lockUpdateTime,
-                                    vaultState.relevancyStatus,
-                                    constraintInfo(vaultState.constraintType, vaultState.constraintData)
-                            ))
+                            val stateMetadata = (result[0] as VaultSchemaV1.VaultStates).toStateMetadata()
+                            stateRefs.add(stateMetadata.ref)
+                            statesMeta.add(stateMetadata)
                         } else {
                             // TODO: improve typing of returned other results
                             log.debug { "OtherResults: ${Arrays.toString(result.toArray())}" }
@@ -684,6 +687,67 @@ class NodeVaultService(
         }
     }
 
+    private fun VaultSchemaV1.VaultStates.toStateMetadata(): Vault.StateMetadata {
+        return Vault.StateMetadata(StateRef(SecureHash.parse(stateRef!!.txId), stateRef!!.index),
+                contractStateClassName,
+                recordedTime,
+                consumedTime,
+                stateStatus,
+                notary,
+                lockId,
+                lockUpdateTime,
+                relevancyStatus,
+                constraintInfo(constraintType, constraintData)
+        )
+    }
+
+    /**
+     * Returns the results of the provided query as an [Observable] of [Vault.Page]s holding at most [batchSize] states each.
+     *
+     * Each page is read when the subscriber requests it, by a query of its own in a short database transaction of its own, so nothing is
+     * held open between pages and the number of states held in memory depends on the subscriber's demand rather than on the size of the
+     * result set. Without a sort specification the pages are read by keyset pagination, carrying on after the last state of the previous
+     * page. Sorted results are read by page number instead, so states recorded while they are being streamed may shift them between pages.
+     * The pages carry no total states count and queries using aggregate functions are rejected.
+     */
+    @Throws(VaultQueryException::class)
+    override fun <T : ContractState> _streamBy(criteria: QueryCriteria, sorting: Sort, batchSize: Int, contractStateType: Class<out T>): Observable<Vault.Page<T>> {
+        if (batchSize < 1) throw VaultQueryException("Invalid batch size $batchSize [minimum is 1]")
+        if (batchSize > MAX_PAGE_SIZE) throw VaultQueryException("Invalid batch size $batchSize [maximum is $MAX_PAGE_SIZE]")
+        log.debug { "Vault stream for contract type: $contractStateType, criteria: $criteria, batch size: $batchSize, sorting: $sorting" }
+        val firstPage = if (sorting.columns.isEmpty()) {
+            PageSpecification(pageSize = batchSize, keyset = true, countTotalStates = false)
+        } else {
+            PageSpecification(pageNumber = DEFAULT_PAGE_NUM, pageSize = batchSize, countTotalStates = false)
+        }
+        return FlowControlledObservable(SyncOnSubscribe.createStateful<PageSpecification, Vault.Page<T>>(
+                { firstPage },
+                { paging, observer -> streamPage(criteria, paging, sorting, contractStateType, observer) }
+        ))
+    }
+
+    /**
+     * Reads the page of a streamed query given by [paging], and returns the specification of the page after it. The observer is completed
+     * once a page comes back short.
+     */
+    private fun <T : ContractState> streamPage(criteria: QueryCriteria,
+                                               paging: PageSpecification,
+                                               sorting: Sort,
+                                               contractStateType: Class<out T>,
+                                               observer: Observer<in Vault.Page<T>>): PageSpecification {
+        val page = _queryBy(criteria, paging, sorting, contractStateType)
+        if (page.otherResults.isNotEmpty()) throw VaultQueryException("Aggregate functions cannot be used in a streamed vault query")
+        if (page.states.isNotEmpty()) observer.onNext(page)
+        return when {
+            page.states.size < paging.pageSize -> {
+                observer.onCompleted()
+                paging
+            }
+            paging.keyset -> paging.after(page)
+            else -> paging.copy(pageNumber = paging.pageNumber + 1)
+        }
+    }
+
     /**
      * Returns a [DataFeed] containing the results of the provided query, along with the associated observable, containing any subsequent updates.
      *
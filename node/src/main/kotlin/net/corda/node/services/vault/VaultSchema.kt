@@ -44,7 +44,8 @@ object VaultSchemaV1 : MappedSchema(
     override val migrationResource = "vault-schema.changelog-master"
 
     @Entity
-    @Table(name = "vault_states", indexes = [Index(name = "state_status_idx", columnList = "state_status"), Index(name = "lock_id_idx", columnList = "lock_id, state_status")])
+    @Table(name = "vault_states", indexes = [Index(name = "state_status_idx", columnList = "state_status"), Index(name = "lock_id_idx", columnList = "lock_id, state_status"),
+        Index(name = "recorded_time_idx", columnList = "recorded_timestamp, transaction_id, output_index")])
     class VaultStates(
             /** NOTE: serialized transaction state (including contract state) is now resolved from transaction store */
             // TODO: create a distinct table to hold serialized state data (once DBTransactionStore is encrypted)
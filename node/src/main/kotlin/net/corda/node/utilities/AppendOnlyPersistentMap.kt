@@ -9,6 +9,7 @@ import net.corda.nodeapi.internal.persistence.contextTransaction
 import net.corda.nodeapi.internal.persistence.currentDBSession
 import org.hibernate.Session
 import org.hibernate.internal.SessionImpl
+import java.io.Serializable
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicBoolean
@@ -30,6 +31,9 @@ abstract class AppendOnlyPersistentMapBase<K, V, E, out EK>(
 
     private companion object {
         private val log = contextLogger()
+
+        // Keeps the number of IN list parameters below the limits of the supported databases.
+        private const val MAX_KEYS_PER_QUERY = 500
     }
 
     protected abstract val cache: LoadingCache<K, Transactional<V>>
@@ -40,6 +44,37 @@ abstract class AppendOnlyPersistentMapBase<K, V, E, out EK>(
      */
     operator fun get(key: K): V? = cache.get(key)?.orElse(null)
 
+    /**
+     * Returns the values associated with those of the given keys that have one. Values are taken from the cache where possible,
+     * and the keys it knows nothing about are loaded from the storage together, with one query per [MAX_KEYS_PER_QUERY] keys,
+     * rather than one query each.
+     */
+    fun getAll(keys: Collection<K>): Map<K, V> {
+        val result = LinkedHashMap<K, V>()
+        val toLoad = ArrayList<K>()
+        for (key in keys) {
+            if (cache.asMap()[key] == null && !anyoneWriting(key)) {
+                toLoad += key
+            } else {
+                // Anything already cached, or being written, goes through the usual path so that it is seen with the same isolation.
+                get(key)?.let { result[key] = it }
+            }
+        }
+        if (toLoad.isNotEmpty()) {
+            for ((key, value) in loadValues(toLoad)) {
+                // Don't cache the loaded value if another database transaction has started writing the key since.
+                cache.asMap().compute(key) { _, oldValue -> oldValue ?: if (anyoneWriting(key)) null else Transactional.Committed(value) }
+                result[key] = value
+            }
+        }
+        return result
+    }
+
+    /**
+     * Returns the value associated with the key if the cache holds it as committed, without ever loading it from the storage.
+     */
+    fun getIfCommittedInCache(key: K): V? = (cache.asMap()[key] as? Transactional.Committed<V>)?.value
+
     val size: Long get() = allPersisted.use { it.count() }
 
     /**
@@ -203,6 +238,21 @@ abstract class AppendOnlyPersistentMapBase<K, V, E, out EK>(
         return result?.apply { if (isSafeToDetach) session.detach(result) }?.let(fromPersistentEntity)?.second
     }
 
+    private fun loadValues(keys: List<K>): List<Pair<K, V>> {
+        val session = currentDBSession()
+        val isSafeToDetach = isSafeToFlushAndDetach(session)
+        if (isSafeToDetach) {
+            // See loadValue for why the flush is needed.
+            session.flush()
+        }
+        val results = session.byMultipleIds(persistentEntityClass)
+                .withBatchSize(MAX_KEYS_PER_QUERY)
+                .multiLoad(keys.map { toPersistentEntityKey(it) as Serializable })
+        return results.mapNotNull { result ->
+            result?.apply { if (isSafeToDetach) session.detach(result) }?.let(fromPersistentEntity)
+        }
+    }
+
     private fun isSafeToFlushAndDetach(session: Session): Boolean {
         if (session !is SessionImpl)
             return true
@@ -44,6 +44,7 @@ open class DefaultNamedCacheFactory protected constructor(private val metricRegi
                 name == "DBTransactionStorage_transactions" -> caffeine.maximumWeight(transactionCacheSizeBytes)
                 name == "NodeAttachmentService_attachmentContent" -> caffeine.maximumWeight(attachmentContentCacheSizeBytes)
                 name == "NodeAttachmentService_attachmentPresence" -> caffeine.maximumSize(attachmentCacheBound)
+                name == "ServicesForResolution_states" -> caffeine.maximumWeight(stateCacheSizeBytes)
                 name == "NodeAttachmentService_contractAttachmentVersions" -> caffeine.maximumSize(defaultCacheSize)
                 name == "PersistentIdentityService_keyToPartyAndCert" -> caffeine.maximumSize(defaultCacheSize)
                 name == "PersistentIdentityService_nameToKey" -> caffeine.maximumSize(defaultCacheSize)
@@ -56,6 +57,7 @@ open class DefaultNamedCacheFactory protected constructor(private val metricRegi
                 name == "ContractUpgradeService_upgrades" -> caffeine.maximumSize(defaultCacheSize)
                 name == "PersistentUniquenessProvider_transactions" -> caffeine.maximumSize(defaultCacheSize)
                 name == "P2PMessageDeduplicator_processedMessages" -> caffeine.maximumSize(defaultCacheSize)
+                name == "P2PMessageDeduplicator_senderHighWaterMarks" -> caffeine.maximumSize(defaultCacheSize)
                 name == "DeduplicationChecker_watermark" -> caffeine
                 name == "BFTNonValidatingNotaryService_transactions" -> caffeine.maximumSize(defaultCacheSize)
                 name == "RaftUniquenessProvider_transactions" -> caffeine.maximumSize(defaultCacheSize)
@@ -63,6 +65,9 @@ open class DefaultNamedCacheFactory protected constructor(private val metricRegi
                 name == "NodeParametersStorage_networkParametersByHash" -> caffeine.maximumSize(defaultCacheSize)
                 name == "PublicKeyToOwningIdentityCache_cache" -> caffeine.maximumSize(defaultCacheSize)
                 name == "NodeAttachmentTrustCalculator_trustedKeysCache" -> caffeine.maximumSize(defaultCacheSize)
+                name == "Crypto_verifiedSignatures" -> caffeine.maximumSize(defaultCacheSize)
+                name == "SessionSchemaCaches_built" -> caffeine.maximumSize(defaultCacheSize)
+                name == "SessionSchemaCaches_received" -> caffeine.maximumSize(defaultCacheSize)
                 else -> throw IllegalArgumentException("Unexpected cache name $name. Did you add a new cache?")
             }
         }
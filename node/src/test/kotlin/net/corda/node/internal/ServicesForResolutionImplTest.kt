@@ -0,0 +1,102 @@
+package net.corda.node.internal
+
+import net.corda.core.contracts.StateRef
+import net.corda.core.contracts.TransactionResolutionException
+import net.corda.core.crypto.SecureHash
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.transactions.TransactionBuilder
+import net.corda.testing.contracts.DummyContract
+import net.corda.testing.contracts.DummyState
+import net.corda.testing.core.SerializationEnvironmentRule
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.node.MockServices
+import net.corda.testing.node.internal.MockTransactionStorage
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class ServicesForResolutionImplTest {
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule()
+
+    private val myself = TestIdentity(CordaX500Name("Me", "London", "GB"))
+    private val notary = TestIdentity(CordaX500Name("NotaryService", "London", "GB"), 1337L)
+    private val services = MockServices(listOf("net.corda.testing.contracts"), myself)
+    private val transactionStorage = CountingTransactionStorage()
+    private val servicesForResolution = ServicesForResolutionImpl(
+            services.identityService,
+            services.attachments,
+            services.cordappProvider,
+            services.networkParametersService,
+            transactionStorage,
+            TestingNamedCacheFactory()
+    )
+
+    @Test
+    fun `loads each transaction once and then serves states from the cache`() {
+        val first = recordTransaction(3)
+        val second = recordTransaction(2)
+        val refs = listOf(StateRef(second.id, 1), StateRef(first.id, 0), StateRef(second.id, 0), StateRef(first.id, 2))
+
+        val loaded = servicesForResolution.loadStates(refs.toSet())
+        assertThat(loaded.map { it.ref }).isEqualTo(refs)
+        assertThat(loaded.map { (it.state.data as DummyState).magicNumber }).isEqualTo(listOf(1, 0, 0, 2))
+        assertEquals(2, transactionStorage.lookups)
+        assertEquals(1, transactionStorage.bulkLookups)
+
+        assertThat(servicesForResolution.loadStates(refs.toSet())).isEqualTo(loaded)
+        assertEquals(first.tx.outputs[2], servicesForResolution.loadState(StateRef(first.id, 2)))
+        assertEquals(2, transactionStorage.lookups)
+
+        servicesForResolution.loadStates(setOf(StateRef(first.id, 0), StateRef(first.id, 1)))
+        assertEquals(3, transactionStorage.lookups)
+    }
+
+    @Test
+    fun `cached outputs do not need to be loaded`() {
+        val stx = recordTransaction(2)
+        servicesForResolution.cacheOutputs(stx.tx, listOf(stx.tx.outRef(0), stx.tx.outRef(1)))
+
+        val loaded = servicesForResolution.loadStates(setOf(StateRef(stx.id, 0), StateRef(stx.id, 1)))
+        assertThat(loaded.map { it.state }).isEqualTo(stx.tx.outputs)
+        assertEquals(0, transactionStorage.lookups)
+    }
+
+    @Test
+    fun `throws for states of unknown transactions`() {
+        val unknownTxId = SecureHash.randomSHA256()
+        assertFailsWith<TransactionResolutionException> {
+            servicesForResolution.loadStates(setOf(StateRef(recordTransaction(1).id, 0), StateRef(unknownTxId, 0)))
+        }
+    }
+
+    private fun recordTransaction(outputs: Int): SignedTransaction {
+        val builder = TransactionBuilder(notary = notary.party)
+        for (magicNumber in 0 until outputs) {
+            builder.addOutputState(DummyState(magicNumber), DummyContract.PROGRAM_ID)
+        }
+        builder.addCommand(DummyContract.Commands.Create(), myself.publicKey)
+        return services.signInitialTransaction(builder).also { transactionStorage.addTransaction(it) }
+    }
+
+    private class CountingTransactionStorage : MockTransactionStorage() {
+        var lookups = 0
+        var bulkLookups = 0
+
+        override fun getTransaction(id: SecureHash): SignedTransaction? {
+            lookups++
+            return super.getTransaction(id)
+        }
+
+        override fun getTransactions(ids: Collection<SecureHash>): Map<SecureHash, SignedTransaction> {
+            lookups += ids.size
+            bulkLookups++
+            return super.getTransactions(ids)
+        }
+    }
+}
@@ -7,13 +7,17 @@ import net.corda.core.context.Trace
 import net.corda.node.internal.serialization.testutils.TestObservableContext
 import net.corda.node.internal.serialization.testutils.serializationContext
 import net.corda.node.serialization.amqp.RpcServerObservableSerializer
+import net.corda.node.services.rpc.FlowControlledObservable
+import net.corda.node.services.rpc.ObservableContextInterface
 import net.corda.node.services.rpc.ObservableSubscription
+import net.corda.nodeapi.RPCApi
 import net.corda.serialization.internal.AllWhitelist
 import net.corda.serialization.internal.amqp.SerializationOutput
 import net.corda.serialization.internal.amqp.SerializerFactoryBuilder
 import org.apache.activemq.artemis.api.core.SimpleString
 import org.junit.Test
 import rx.Observable
+import rx.observables.SyncOnSubscribe
 import java.time.Instant
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
@@ -80,4 +84,41 @@ class RpcServerObservableSerializerTests {
             throw Error("Serialization of observable should not throw - ${e.message}")
         }
     }
+
+    @Test
+    fun `flow controlled observable stops producing once an item cannot be sent`() {
+        val requests = ArrayList<() -> Unit>()
+        val observableContext = object : ObservableContextInterface by TestObservableContext(
+                subscriptionMap(),
+                clientAddressToObservables = ConcurrentHashMap(),
+                deduplicationIdentity = "thisIsATest",
+                clientAddress = SimpleString("clientAddress")) {
+            override fun sendMessage(serverToClient: RPCApi.ServerToClient, onSent: (Boolean) -> Unit) = onSent(false)
+            override fun requestObservations(request: () -> Unit) {
+                requests += request
+            }
+        }
+
+        val sf = SerializerFactoryBuilder.build(AllWhitelist, javaClass.classLoader).apply {
+            register(RpcServerObservableSerializer())
+        }
+
+        var produced = 0
+        var unsubscribed = false
+        val obs = FlowControlledObservable(SyncOnSubscribe.createStateful<Int, Int>(
+                { 0 },
+                { state, observer -> observer.onNext(state); produced++; state + 1 },
+                { unsubscribed = true }
+        ))
+        SerializationOutput(sf).serializeAndReturnSchema(obs, RpcServerObservableSerializer.createContext(serializationContext, observableContext))
+
+        // Items are only produced when requested, away from the thread serialising the observable.
+        assertEquals(0, produced)
+        assertEquals(1, requests.size)
+        requests.single()()
+        assertEquals(1, produced)
+        // The item could not be sent, so no more are requested.
+        assertEquals(1, requests.size)
+        assertTrue(unsubscribed)
+    }
 }
\ No newline at end of file
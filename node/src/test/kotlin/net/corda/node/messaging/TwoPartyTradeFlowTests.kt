@@ -385,19 +385,21 @@ class TwoPartyTradeFlowTests(private val anonymous: Boolean) {
                             // Seller Alice sends her seller info to Bob, who wants to check the asset for sale.
                             // He requests, Alice looks up in her DB to send the tx to Bob
                             expect(TxRecord.Get(alicesFakePaper[0].id)),
-                            // Seller Alice gets a proposed tx which depends on Bob's two cash txns and her own tx.
+                            // Seller Alice gets a proposed tx which depends on Bob's two cash txns and her own tx, which
+                            // she already knows to be verified.
                             expect(TxRecord.Get(bobsFakeCash[1].id)),
                             expect(TxRecord.Get(bobsFakeCash[2].id)),
-                            expect(TxRecord.Get(alicesFakePaper[0].id)),
                             // Alice notices that Bob's cash txns depend on a third tx she also doesn't know.
                             expect(TxRecord.Get(bobsFakeCash[0].id)),
                             // Bob answers with the transactions that are now all verifiable, as Alice bottomed out.
                             // Bob's transactions are valid, so she commits to the database
                             //expect(TxRecord.Add(bobsSignedTxns[bobsFakeCash[0].id]!!)), //TODO investigate missing event after introduction of signature constraints non-downgrade rule
+                            // Bob's two later cash txns only depend on the third, so she verifies them together and then
+                            // records them together.
                             expect(TxRecord.Get(bobsFakeCash[0].id)), // Verify
-                            expect(TxRecord.Add(bobsSignedTxns[bobsFakeCash[2].id]!!)),
                             expect(TxRecord.Get(bobsFakeCash[0].id)), // Verify
                             expect(TxRecord.Add(bobsSignedTxns[bobsFakeCash[1].id]!!)),
+                            expect(TxRecord.Add(bobsSignedTxns[bobsFakeCash[2].id]!!)),
                             // Now she verifies the transaction is contract-valid (not signature valid) which means
                             // looking up the states again.
                             expect(TxRecord.Get(bobsFakeCash[1].id)),
@@ -769,6 +771,25 @@ class TwoPartyTradeFlowTests(private val anonymous: Boolean) {
                 delegate.getTransactionInternal(id)
             }
         }
+
+        override fun getTransactions(ids: Collection<SecureHash>): Map<SecureHash, SignedTransaction> {
+            return database.transaction {
+                ids.forEach { records.add(TxRecord.Get(it)) }
+                delegate.getTransactions(ids)
+            }
+        }
+
+        override fun getTransactionsInternal(ids: Collection<SecureHash>): Map<SecureHash, Pair<SignedTransaction, Boolean>> {
+            return database.transaction {
+                delegate.getTransactionsInternal(ids)
+            }
+        }
+
+        override fun verifiedTransactionIds(ids: Collection<SecureHash>): Set<SecureHash> {
+            return database.transaction {
+                delegate.verifiedTransactionIds(ids)
+            }
+        }
     }
 
     interface TxRecord {
@@ -0,0 +1,78 @@
+package net.corda.node.serialization.amqp
+
+import net.corda.core.contracts.Amount
+import net.corda.core.contracts.Command
+import net.corda.core.contracts.TransactionState
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.transactions.WireTransaction
+import net.corda.finance.DOLLARS
+import net.corda.finance.contracts.asset.Cash
+import net.corda.serialization.internal.AMQP_P2P_CONTEXT
+import net.corda.serialization.internal.AllWhitelist
+import net.corda.serialization.internal.amqp.DeserializationInput
+import net.corda.serialization.internal.amqp.SerializationOutput
+import net.corda.serialization.internal.amqp.SerializerFactory
+import net.corda.serialization.internal.amqp.SerializerFactoryBuilder
+import net.corda.serialization.internal.amqp.custom.PublicKeySerializer
+import net.corda.serialization.internal.amqp.registerCustomSerializers
+import net.corda.serialization.internal.carpenter.ClassCarpenterImpl
+import net.corda.testing.core.DUMMY_NOTARY_NAME
+import net.corda.testing.core.SerializationEnvironmentRule
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.internal.createWireTransaction
+import org.junit.Rule
+import org.junit.Test
+import kotlin.test.assertEquals
+
+class GeneratedAccessorsTests {
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule()
+    private val megaCorp = TestIdentity(CordaX500Name("MegaCorp", "London", "GB"))
+    private val miniCorp = TestIdentity(CordaX500Name("MiniCorp", "London", "GB"))
+    private val notary = TestIdentity(DUMMY_NOTARY_NAME)
+    private val context = AMQP_P2P_CONTEXT.withLenientCarpenter()
+
+    private val states = (1..10).map { Cash.State(megaCorp.ref(it.toByte()), Amount(it * 100L, 1.DOLLARS.token), miniCorp.party) }
+
+    @Test
+    fun `states are written and read the same way with generated accessors`() {
+        val state = states.first()
+        val bytes = assertSameBytes(state)
+        assertEquals(state, DeserializationInput(makeFactory(true)).deserialize(bytes, Cash.State::class.java, context))
+    }
+
+    @Test
+    fun `transactions are written and read the same way with generated accessors`() {
+        val wtx = createWireTransaction(
+                inputs = emptyList(),
+                attachments = emptyList(),
+                outputs = states.map { TransactionState(it, Cash.PROGRAM_ID, notary.party) },
+                commands = listOf(Command(Cash.Commands.Issue(), megaCorp.publicKey)),
+                notary = notary.party,
+                timeWindow = null)
+        val bytes = assertSameBytes(wtx)
+        val deserialized = DeserializationInput(makeFactory(true)).deserialize(bytes, WireTransaction::class.java, context)
+        assertEquals(wtx.id, deserialized.id)
+        assertEquals(wtx.outputStates, deserialized.outputStates)
+    }
+
+    // Generated and reflective property access must produce exactly the same bytes.
+    private fun <T : Any> assertSameBytes(obj: T): SerializedBytes<T> {
+        val generated = SerializationOutput(makeFactory(true)).serialize(obj, context)
+        assertEquals(SerializationOutput(makeFactory(false)).serialize(obj, context), generated)
+        return generated
+    }
+
+    private fun makeFactory(generateAccessors: Boolean): SerializerFactory {
+        return SerializerFactoryBuilder.build(
+                AllWhitelist,
+                ClassCarpenterImpl(AllWhitelist, javaClass.classLoader),
+                generateAccessors = generateAccessors
+        ).apply {
+            register(PublicKeySerializer)
+            registerCustomSerializers(this)
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.corda.node.services.keys
+
+import net.corda.core.crypto.generateKeyPair
+import net.corda.testing.common.internal.eventually
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertNotEquals
+
+class FreshKeyPoolTest {
+    @Test
+    fun `pool is filled to the high watermark and refilled at the low watermark`() {
+        FreshKeyPool(2, 5).use { pool ->
+            eventually { assertEquals(5, pool.size) }
+            val keys = (1..3).map { pool.take() }
+            assertEquals(3, keys.toSet().size)
+            eventually { assertEquals(5, pool.size) }
+            assertEquals(0, pool.missCount)
+        }
+    }
+
+    @Test
+    fun `keys are generated on demand when the pool is empty`() {
+        val release = CountDownLatch(1)
+        val pool = FreshKeyPool(0, 1) {
+            // Hold up the background refill so that the pool stays empty.
+            if (Thread.currentThread().name == "fresh-key-pool-thread") release.await(5, TimeUnit.SECONDS)
+            generateKeyPair()
+        }
+        pool.use {
+            assertNotEquals(it.take(), it.take())
+            assertEquals(2, it.missCount)
+            release.countDown()
+            eventually { assertEquals(1, it.size) }
+        }
+    }
+
+    @Test
+    fun `watermarks are checked`() {
+        assertThatIllegalArgumentException().isThrownBy { FreshKeyPool(5, 5) }
+        assertThatIllegalArgumentException().isThrownBy { FreshKeyPool(-1, 5) }
+    }
+}
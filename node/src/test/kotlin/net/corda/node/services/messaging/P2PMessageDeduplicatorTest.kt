@@ -0,0 +1,103 @@
+package net.corda.node.services.messaging
+
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.utilities.ByteSequence
+import net.corda.core.utilities.OpaqueBytes
+import net.corda.node.services.statemachine.DeduplicationId
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.internal.configureDatabase
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.time.Instant
+import java.util.*
+
+class P2PMessageDeduplicatorTest {
+    private lateinit var database: CordaPersistence
+    private lateinit var deduplicator: P2PMessageDeduplicator
+    private val senderUUID = UUID.randomUUID().toString()
+
+    @Before
+    fun setUp() {
+        database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null })
+        deduplicator = P2PMessageDeduplicator(TestingNamedCacheFactory(), database)
+    }
+
+    @After
+    fun cleanUp() {
+        database.close()
+    }
+
+    @Test
+    fun `message with a new sequence number is not a duplicate`() {
+        processMessage(message(1))
+        assertThat(deduplicator.isDuplicate(message(2))).isFalse()
+    }
+
+    @Test
+    fun `message being processed is a duplicate`() {
+        val message = message(1)
+        deduplicator.signalMessageProcessStart(message)
+        assertThat(deduplicator.isDuplicate(message)).isTrue()
+    }
+
+    @Test
+    fun `processed message is a duplicate`() {
+        val message = message(1)
+        processMessage(message)
+        assertThat(deduplicator.isDuplicate(message)).isTrue()
+    }
+
+    @Test
+    fun `processed message is a duplicate after restart`() {
+        val message = message(5)
+        processMessage(message)
+        deduplicator = P2PMessageDeduplicator(TestingNamedCacheFactory(), database)
+        assertThat(deduplicator.isDuplicate(message)).isTrue()
+        assertThat(deduplicator.isDuplicate(message(4))).isFalse()
+        assertThat(deduplicator.isDuplicate(message(6))).isFalse()
+    }
+
+    @Test
+    fun `message below the high water mark that was never processed is not a duplicate`() {
+        processMessage(message(2))
+        assertThat(deduplicator.isDuplicate(message(1))).isFalse()
+    }
+
+    @Test
+    fun `message without sender details is checked against the database`() {
+        val message = message(null, DeduplicationId("legacy"))
+        assertThat(deduplicator.isDuplicate(message)).isFalse()
+        processMessage(message)
+        assertThat(deduplicator.isDuplicate(message)).isTrue()
+    }
+
+    private fun processMessage(message: ReceivedMessage) {
+        deduplicator.signalMessageProcessStart(message)
+        database.transaction {
+            deduplicator.persistDeduplicationId(message.uniqueMessageId)
+        }
+        deduplicator.signalMessageProcessFinish(message.uniqueMessageId)
+    }
+
+    private fun message(senderSeqNo: Long?, uniqueMessageId: DeduplicationId = DeduplicationId("N-$senderSeqNo")): ReceivedMessage {
+        return TestReceivedMessage(uniqueMessageId, if (senderSeqNo != null) senderUUID else null, senderSeqNo)
+    }
+
+    private class TestReceivedMessage(override val uniqueMessageId: DeduplicationId,
+                                      override val senderUUID: String?,
+                                      override val senderSeqNo: Long?) : ReceivedMessage {
+        override val topic: String = "test"
+        override val data: ByteSequence = OpaqueBytes.of(0)
+        override val debugTimestamp: Instant = Instant.now()
+        override val additionalHeaders: Map<String, String> = emptyMap()
+        override val peer: CordaX500Name = ALICE_NAME
+        override val platformVersion: Int = 1
+        override val isSessionInit: Boolean = false
+    }
+}
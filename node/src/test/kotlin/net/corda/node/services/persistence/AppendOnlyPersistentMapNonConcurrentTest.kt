@@ -9,6 +9,7 @@ import net.corda.testing.internal.TestingNamedCacheFactory
 import net.corda.testing.internal.configureDatabase
 import net.corda.testing.node.MockServices
 import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.entry
 import org.junit.After
 import org.junit.Test
 import javax.persistence.Column
@@ -130,4 +131,27 @@ class AppendOnlyPersistentMapNonConcurrentTest {
         val result = database.transaction { map[1] }
         assertThat(result).isEqualTo("updated")
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `get all loads values missing from the cache`() {
+        val map = createMap(2)
+        database.transaction {
+            (1L..5L).forEach { map[it] = it.toString() }
+        }
+
+        val result = database.transaction { map.getAll(listOf(5, 1, 6, 3)) }
+        assertThat(result).containsOnly(entry(5L, "5"), entry(1L, "1"), entry(3L, "3"))
+        assertThat(database.transaction { map.getAll(emptyList()) }).isEmpty()
+    }
+
+    @Test
+    fun `get all sees values written in the same transaction`() {
+        val map = createMap(1)
+        val result = database.transaction {
+            map[1] = "1"
+            map[2] = "2"
+            map.getAll(listOf(1, 2))
+        }
+        assertThat(result).containsOnly(entry(1L, "1"), entry(2L, "2"))
+    }
+}
@@ -179,10 +179,123 @@ class DBCheckpointStorageTests {
         }.isInstanceOf(CheckpointIncompatibleException::class.java)
     }
 
-    private fun newCheckpointStorage() {
+    @Test
+    fun `update checkpoint with delta checkpoints`() {
+        newCheckpointStorage(deltaCheckpoints = true)
+        val (id, originalCheckpoint) = newCheckpoint()
+        database.transaction {
+            checkpointStorage.addCheckpoint(id, originalCheckpoint)
+        }
+        var latestCheckpoint = originalCheckpoint
+        for (i in 1..(DBCheckpointStorage.DEFAULT_FULL_SNAPSHOT_INTERVAL + 2)) {
+            latestCheckpoint = latestCheckpoint.modified(i)
+            database.transaction {
+                checkpointStorage.updateCheckpoint(id, latestCheckpoint)
+            }
+            database.transaction {
+                assertThat(checkpointStorage.getCheckpoint(id)).isEqualTo(latestCheckpoint)
+            }
+        }
+        newCheckpointStorage()
+        database.transaction {
+            assertThat(checkpointStorage.checkpoints()).containsExactly(latestCheckpoint)
+        }
+    }
+
+    @Test
+    fun `full snapshot can be read back with delta checkpoints`() {
+        newCheckpointStorage(deltaCheckpoints = true)
+        val (id, checkpoint) = newCheckpoint()
+        database.transaction {
+            checkpointStorage.addCheckpoint(id, checkpoint)
+        }
+        database.transaction {
+            assertThat(checkpointStorage.getCheckpoint(id)).isEqualTo(checkpoint)
+        }
+        newCheckpointStorage(deltaCheckpoints = true)
+        database.transaction {
+            assertThat(checkpointStorage.getCheckpoint(id)).isEqualTo(checkpoint)
+        }
+    }
+
+    @Test
+    fun `truncated checkpoint is written as a delta with nothing in between`() {
+        newCheckpointStorage(deltaCheckpoints = true)
+        val (id, originalCheckpoint) = newCheckpoint()
+        database.transaction {
+            checkpointStorage.addCheckpoint(id, originalCheckpoint)
+        }
+        val truncatedCheckpoint = SerializedBytes<Checkpoint>(originalCheckpoint.bytes.copyOf(originalCheckpoint.size - 1))
+        database.transaction {
+            checkpointStorage.updateCheckpoint(id, truncatedCheckpoint)
+        }
+        database.transaction {
+            assertThat(checkpointStorage.getCheckpoint(id)).isEqualTo(truncatedCheckpoint)
+        }
+    }
+
+    @Test
+    fun `rolled back full snapshot is not used as a delta base`() {
+        newCheckpointStorage(deltaCheckpoints = true)
+        val (id, originalCheckpoint) = newCheckpoint()
+        database.transaction {
+            checkpointStorage.addCheckpoint(id, originalCheckpoint)
+        }
+        // Nothing in common with the original checkpoint, so this is written as a new full snapshot.
+        val rolledBackCheckpoint = SerializedBytes<Checkpoint>(originalCheckpoint.bytes.reversedArray())
+        assertThatThrownBy {
+            database.transaction {
+                checkpointStorage.updateCheckpoint(id, rolledBackCheckpoint)
+                throw IllegalStateException("Rollback")
+            }
+        }.isInstanceOf(IllegalStateException::class.java)
+        val updatedCheckpoint = rolledBackCheckpoint.modified(1)
         database.transaction {
-            checkpointStorage = DBCheckpointStorage()
+            checkpointStorage.updateCheckpoint(id, updatedCheckpoint)
         }
+        newCheckpointStorage()
+        database.transaction {
+            assertThat(checkpointStorage.checkpoints()).containsExactly(updatedCheckpoint)
+        }
+    }
+
+    @Test
+    fun `checkpoints written with deltas can be read with deltas disabled`() {
+        newCheckpointStorage(deltaCheckpoints = true)
+        val (id, originalCheckpoint) = newCheckpoint()
+        val updatedCheckpoint = originalCheckpoint.modified(1)
+        database.transaction {
+            checkpointStorage.addCheckpoint(id, originalCheckpoint)
+        }
+        database.transaction {
+            checkpointStorage.updateCheckpoint(id, updatedCheckpoint)
+        }
+        newCheckpointStorage()
+        database.transaction {
+            assertThat(checkpointStorage.checkpoints()).containsExactly(updatedCheckpoint)
+        }
+        val finalCheckpoint = updatedCheckpoint.modified(2)
+        database.transaction {
+            checkpointStorage.updateCheckpoint(id, finalCheckpoint)
+        }
+        database.transaction {
+            assertThat(checkpointStorage.checkpoints()).containsExactly(finalCheckpoint)
+        }
+    }
+
+    private fun newCheckpointStorage(deltaCheckpoints: Boolean = false,
+                                     fullSnapshotInterval: Int = DBCheckpointStorage.DEFAULT_FULL_SNAPSHOT_INTERVAL) {
+        database.transaction {
+            checkpointStorage = DBCheckpointStorage(deltaCheckpoints, fullSnapshotInterval)
+        }
+    }
+
+    /** Flips a single byte in the middle of the checkpoint, which is all the storage layer needs to see a change. */
+    private fun SerializedBytes<Checkpoint>.modified(seed: Int): SerializedBytes<Checkpoint> {
+        val modifiedBytes = bytes.copyOf()
+        val index = modifiedBytes.size / 2 + seed % 16
+        modifiedBytes[index] = (modifiedBytes[index] + 1).toByte()
+        return SerializedBytes(modifiedBytes)
     }
 
     private fun newCheckpoint(version: Int = 1): Pair<StateMachineRunId, SerializedBytes<Checkpoint>> {
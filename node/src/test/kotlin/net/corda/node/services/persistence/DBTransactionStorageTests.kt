@@ -313,6 +313,47 @@ class DBTransactionStorageTests {
         assertTransactionIsRetrievable(secondTransaction)
     }
 
+    @Test
+    fun `only verified transaction ids are found`() {
+        val verified = newTransaction()
+        val unverified = newTransaction()
+        database.transaction {
+            transactionStorage.addTransaction(verified)
+            transactionStorage.addUnverifiedTransaction(unverified)
+        }
+        val unknownId = SecureHash.randomSHA256()
+        assertThat(transactionStorage.verifiedTransactionIds(listOf(verified.id, unverified.id, unknownId))).containsOnly(verified.id)
+        assertThat(transactionStorage.verifiedTransactionIds(emptyList())).isEmpty()
+    }
+
+    @Test
+    fun `verified transaction ids are looked up across several queries`() {
+        val transactions = (1..600).map { newTransaction() }
+        database.transaction {
+            transactions.forEach { transactionStorage.addTransaction(it) }
+        }
+        val ids = transactions.map { it.id } + SecureHash.randomSHA256()
+        assertThat(transactionStorage.verifiedTransactionIds(ids)).containsExactlyInAnyOrderElementsOf(transactions.map { it.id })
+    }
+
+    @Test
+    fun `transactions are fetched in bulk whether cached or not`() {
+        newTransactionStorage(cacheSizeBytesOverride = 1)
+        val verified = (1..3).map { newTransaction() }
+        val unverified = newTransaction()
+        database.transaction {
+            verified.forEach { transactionStorage.addTransaction(it) }
+            transactionStorage.addUnverifiedTransaction(unverified)
+        }
+        val ids = verified.map { it.id } + unverified.id + SecureHash.randomSHA256()
+
+        assertThat(transactionStorage.getTransactions(ids)).isEqualTo(verified.associateBy { it.id })
+        assertThat(transactionStorage.getTransactionsInternal(ids)).isEqualTo(
+                verified.associateBy({ it.id }, { it to true }) + (unverified.id to (unverified to false)))
+        assertTrue(transactionStorage.containsAll(verified.map { it.id }))
+        assertThat(transactionStorage.containsAll(ids)).isFalse()
+    }
+
     private fun newTransactionStorage(cacheSizeBytesOverride: Long? = null, clock: CordaClock = SimpleClock(Clock.systemUTC())) {
         transactionStorage = DBTransactionStorage(database, TestingNamedCacheFactory(cacheSizeBytesOverride
                 ?: 1024), clock)
@@ -0,0 +1,61 @@
+package net.corda.node.services.persistence
+
+import net.corda.core.crypto.SecureHash
+import net.corda.core.crypto.sha256
+import net.corda.core.flows.StateMachineRunId
+import net.corda.core.internal.readFully
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import kotlin.test.assertEquals
+
+class FileSystemPartialAttachmentStorageTest {
+    @Rule
+    @JvmField
+    val tempFolder = TemporaryFolder()
+
+    private val runId = StateMachineRunId.createRandom()
+    private val content = ByteArray(1000) { it.toByte() }
+    private val id = content.sha256()
+
+    private val storage by lazy { FileSystemPartialAttachmentStorage(tempFolder.root.toPath()) }
+
+    @Test
+    fun `content written in order is hashed and read back`() {
+        writeChunks(storage, 0, 300, 600)
+        assertEquals(content.size.toLong(), storage.size(runId, id))
+        assertEquals(id, storage.hash(runId, id))
+        assertEquals(content.toList(), storage.open(runId, id).readFully().toList())
+    }
+
+    @Test
+    fun `content written again is hashed from the file`() {
+        writeChunks(storage, 0, 300)
+        storage.write(runId, id, 300, content.copyOfRange(300, 600))
+        writeChunks(storage, 600)
+        assertEquals(id, storage.hash(runId, id))
+    }
+
+    @Test
+    fun `content picked up after a restart is hashed from the file`() {
+        writeChunks(storage, 0)
+        writeChunks(FileSystemPartialAttachmentStorage(tempFolder.root.toPath()), 300, 600)
+        assertEquals(id, FileSystemPartialAttachmentStorage(tempFolder.root.toPath()).hash(runId, id))
+    }
+
+    @Test
+    fun `deleted content is not hashed`() {
+        writeChunks(storage, 0, 300, 600)
+        storage.delete(runId, id)
+        writeChunks(storage, 300)
+        assertEquals(SecureHash.sha256(ByteArray(300) + content.copyOfRange(300, content.size)), storage.hash(runId, id))
+    }
+
+    /** Writes the chunks of [content] starting at each of [offsets], each running up to the next. */
+    private fun writeChunks(storage: FileSystemPartialAttachmentStorage, vararg offsets: Int) {
+        val ends = offsets.drop(1) + content.size
+        for ((offset, end) in offsets.zip(ends)) {
+            storage.write(runId, id, offset.toLong(), content.copyOfRange(offset, end))
+        }
+    }
+}
@@ -18,6 +18,7 @@ import net.corda.core.node.services.vault.AttachmentQueryCriteria.AttachmentsQue
 import net.corda.core.node.services.vault.AttachmentSort
 import net.corda.core.node.services.vault.Builder
 import net.corda.core.node.services.vault.Sort
+import net.corda.core.serialization.internal.AttachmentWithEntryIndex
 import net.corda.core.utilities.getOrThrow
 import net.corda.node.services.transactions.PersistentUniquenessProvider
 import net.corda.nodeapi.exceptions.DuplicateAttachmentException
@@ -140,6 +141,90 @@ class NodeAttachmentServiceTest {
         }
     }
 
+    @Test
+    fun `jar input streams cannot be imported`() {
+        val (testJar, _) = makeTestJar()
+        testJar.read { stream ->
+            assertThatIllegalArgumentException().isThrownBy {
+                storage.importAttachment(JarInputStream(stream), "test", null)
+            }.withMessage("Input stream must not be a JarInputStream")
+        }
+    }
+
+    @Test
+    fun `importing a jar indexes its entries`() {
+        val (testJar, id) = makeTestJar(listOf(Pair("Test1.txt", "Some content"), Pair("META-INF/services/test", "More content")))
+        testJar.read { storage.importAttachment(it, "test", null) }
+
+        val attachment = storage.openAttachment(id) as AttachmentWithEntryIndex
+        assertEquals(mapOf(
+                "test1.txt" to "Some content".toByteArray().sha256(),
+                "meta-inf/services/test" to "More content".toByteArray().sha256()
+        ), attachment.entryIndex)
+    }
+
+    @Test
+    fun `jars with paths too long to index are not indexed`() {
+        val (testJar, id) = makeTestJar(listOf(Pair("a/".repeat(200) + "test.txt", "Some content")))
+        testJar.read { storage.importAttachment(it, "test", null) }
+
+        assertNull((storage.openAttachment(id) as AttachmentWithEntryIndex).entryIndex)
+    }
+
+    @Test
+    fun `attachment content can be kept in a content store`() {
+        SelfCleaningDir().use { dir ->
+            val fileStorage = makeStorageWithContentStore(dir.path)
+            val (testJar, id) = makeTestJar()
+            testJar.read { fileStorage.importAttachment(it, "test", null) }
+
+            assertNull(database.transaction { session.get(NodeAttachmentService.DBAttachment::class.java, id.toString()).content })
+            assertTrue((dir.path / id.toString().substring(0, 2) / id.toString()).exists())
+            val attachment = fileStorage.openAttachment(id)!!
+            assertThat(attachment.open().readFully()).isEqualTo(testJar.readAll())
+            assertEquals(testJar.readAll().size, attachment.size)
+            attachment.openAsJAR().use {
+                assertEquals("test1.txt", it.nextJarEntry!!.name)
+                assertEquals("This is some useful content", it.readBytes().toString(StandardCharsets.UTF_8))
+            }
+        }
+    }
+
+    @Test
+    fun `attachment content held in the database is moved to the content store on start`() {
+        SelfCleaningDir().use { dir ->
+            val (testJar, id) = makeTestJar()
+            testJar.read { storage.importAttachment(it, "test", null) }
+            assertNotNull(database.transaction { session.get(NodeAttachmentService.DBAttachment::class.java, id.toString()).content })
+
+            val fileStorage = makeStorageWithContentStore(dir.path)
+            assertNull(database.transaction { session.get(NodeAttachmentService.DBAttachment::class.java, id.toString()).content })
+            assertThat(fileStorage.openAttachment(id)!!.open().readFully()).isEqualTo(testJar.readAll())
+        }
+    }
+
+    @Test
+    fun `node does not start without the content store once it holds attachment content`() {
+        SelfCleaningDir().use { dir ->
+            val (testJar, _) = makeTestJar()
+            testJar.read { makeStorageWithContentStore(dir.path).importAttachment(it, "test", null) }
+
+            val storageWithoutContentStore = NodeAttachmentService(MetricRegistry(), TestingNamedCacheFactory(), database)
+            assertThatIllegalStateException().isThrownBy {
+                database.transaction { storageWithoutContentStore.start() }
+            }.withMessageContaining("attachmentsDirectory")
+        }
+    }
+
+    private fun makeStorageWithContentStore(directory: Path): NodeAttachmentService {
+        return NodeAttachmentService(MetricRegistry(), TestingNamedCacheFactory(), database, contentStore = FileSystemAttachmentContentStore(directory)).also {
+            database.transaction {
+                it.start()
+            }
+            it.servicesForResolution = services
+        }
+    }
+
     @Test
     fun `attachment can be overridden by trusted uploader`() {
         SelfCleaningDir().use { file ->
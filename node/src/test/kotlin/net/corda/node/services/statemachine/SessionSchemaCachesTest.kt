@@ -0,0 +1,107 @@
+package net.corda.node.services.statemachine
+
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.whenever
+import net.corda.core.internal.PLATFORM_VERSION
+import net.corda.core.node.NodeInfo
+import net.corda.core.node.services.PartyInfo
+import net.corda.core.serialization.CordaSerializable
+import net.corda.core.serialization.SerializedBytes
+import net.corda.core.serialization.deserialize
+import net.corda.core.serialization.serialize
+import net.corda.core.utilities.NetworkHostAndPort
+import net.corda.node.services.api.NetworkMapCacheInternal
+import net.corda.node.services.messaging.ReceivedMessage
+import net.corda.nodeapi.internal.persistence.CordaPersistence
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.serialization.internal.amqp.SchemaReference
+import net.corda.testing.core.ALICE_NAME
+import net.corda.testing.core.SerializationEnvironmentRule
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.internal.configureDatabase
+import net.corda.testing.internal.rigorousMock
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+
+class SessionSchemaCachesTest {
+    private companion object {
+        val ALICE = TestIdentity(ALICE_NAME, 70)
+    }
+
+    @CordaSerializable
+    data class Payload(val value: Int)
+
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule()
+
+    private lateinit var database: CordaPersistence
+
+    private val networkMapCache = rigorousMock<NetworkMapCacheInternal>().also {
+        doReturn(PartyInfo.SingleNode(ALICE.party, emptyList())).whenever(it).getPartyInfo(ALICE.party)
+        val nodeInfo = NodeInfo(listOf(NetworkHostAndPort("localhost", 1000)), listOf(ALICE.identity), PLATFORM_VERSION, 1)
+        doReturn(nodeInfo).whenever(it).getNodeByLegalIdentity(ALICE.party)
+    }
+
+    @Before
+    fun setUp() {
+        database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null })
+    }
+
+    @After
+    fun cleanUp() {
+        database.close()
+    }
+
+    @Test
+    fun `schemas are only sent by reference once a payload carrying them has been sent`() {
+        val caches = newCaches()
+        val first = send(caches, 1)
+        assertNotNull(SchemaReference.read(send(caches, 2))!!.encodedSchemas)
+        caches.onSent(ALICE.party, dataMessage(first))
+        assertNull(SchemaReference.read(send(caches, 3))!!.encodedSchemas)
+    }
+
+    @Test
+    fun `schemas received in full are kept across restarts`() {
+        val sender = newCaches()
+        val inFull = send(sender, 1)
+        sender.onSent(ALICE.party, dataMessage(inFull))
+        val byReference = send(sender, 2)
+
+        newCaches().onReceived(receivedMessage("sender"), dataMessage(inFull))
+        assertEquals(Payload(2), byReference.deserialize(context = newCaches().receiveContext))
+    }
+
+    @Test
+    fun `schemas are sent in full again once the peer has restarted`() {
+        val caches = newCaches()
+        caches.onReceived(receivedMessage("before"), ExistingSessionMessage(SessionId(1), EndSessionMessage))
+        caches.onSent(ALICE.party, dataMessage(send(caches, 1)))
+        caches.onReceived(receivedMessage("before"), ExistingSessionMessage(SessionId(1), EndSessionMessage))
+        assertNull(SchemaReference.read(send(caches, 2))!!.encodedSchemas)
+
+        caches.onReceived(receivedMessage("after"), ExistingSessionMessage(SessionId(1), EndSessionMessage))
+        assertNotNull(SchemaReference.read(send(caches, 3))!!.encodedSchemas)
+    }
+
+    private fun newCaches() = SessionSchemaCaches(networkMapCache, database, TestingNamedCacheFactory())
+
+    private fun send(caches: SessionSchemaCaches, value: Int): SerializedBytes<Any> {
+        return SerializedBytes(Payload(value).serialize(context = caches.sendContext(ALICE.party)).bytes)
+    }
+
+    private fun dataMessage(payload: SerializedBytes<Any>) = ExistingSessionMessage(SessionId(1), DataSessionMessage(payload))
+
+    private fun receivedMessage(senderUUID: String) = rigorousMock<ReceivedMessage>().also {
+        doReturn(ALICE.name).whenever(it).peer
+        doReturn(senderUUID).whenever(it).senderUUID
+    }
+}
@@ -56,4 +56,30 @@ class DbTransactionsResolverTopologicalSortTest {
         assertThat(listOf(t1, t2, t3, t4).map(sorted::indexOf)).isSorted
         assertThat(listOf(t1, t4).map(sorted::indexOf)).isSorted
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `levels of T1 to T2 to T3 to T4, T1 to T4`() {
+        topologicalSort.add(t4, setOf(t2, t1))
+        topologicalSort.add(t3, setOf(t2))
+        topologicalSort.add(t2, setOf(t1))
+        topologicalSort.add(t1, emptySet())
+        val levels = topologicalSort.completeInLevels()
+        assertThat(levels).hasSize(3)
+        assertThat(levels[0]).containsExactly(t1)
+        assertThat(levels[1]).containsExactly(t2)
+        assertThat(levels[2]).containsExactlyInAnyOrder(t3, t4)
+    }
+
+    @Test
+    fun `levels of T1 to T3, T2 to T3 to T4`() {
+        topologicalSort.add(t4, setOf(t3))
+        topologicalSort.add(t3, setOf(t1, t2))
+        topologicalSort.add(t2, emptySet())
+        topologicalSort.add(t1, emptySet())
+        val levels = topologicalSort.completeInLevels()
+        assertThat(levels).hasSize(3)
+        assertThat(levels[0]).containsExactlyInAnyOrder(t1, t2)
+        assertThat(levels[1]).containsExactly(t3)
+        assertThat(levels[2]).containsExactly(t4)
+    }
+}
@@ -0,0 +1,65 @@
+package net.corda.node.services.transactions
+
+import com.codahale.metrics.MetricRegistry
+import net.corda.core.contracts.TransactionVerificationException.TransactionMissingEncumbranceException
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.transactions.LedgerTransaction
+import net.corda.core.transactions.TransactionBuilder
+import net.corda.core.utilities.getOrThrow
+import net.corda.node.internal.cordapp.CordappProviderInternal
+import net.corda.testing.contracts.DummyContract
+import net.corda.testing.contracts.DummyState
+import net.corda.testing.core.SerializationEnvironmentRule
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.node.MockServices
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class InMemoryTransactionVerifierServiceTest {
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule()
+
+    private val myself = TestIdentity(CordaX500Name("Me", "London", "GB"))
+    private val notary = TestIdentity(CordaX500Name("NotaryService", "London", "GB"), 1337L)
+    private val services = MockServices(listOf("net.corda.testing.contracts"), myself)
+    private val metrics = MetricRegistry()
+    private val verifierService = InMemoryTransactionVerifierService(
+            numberOfWorkers = 2,
+            cordappProvider = services.cordappProvider as CordappProviderInternal,
+            attachments = services.attachments,
+            metrics = metrics
+    )
+
+    @After
+    fun tearDown() {
+        verifierService.close()
+    }
+
+    @Test
+    fun `verifies transactions on the worker pool`() {
+        val transactions = (0 until 8).map { ledgerTransaction(it) }
+        transactions.map(verifierService::verify).forEach { it.getOrThrow() }
+
+        assertEquals(8, metrics.timer("Verification.Latency").count)
+        assertEquals(8, metrics.timer("Verification.Duration").count)
+        assertEquals(0, metrics.gauges["Verification.QueueDepth"]!!.value)
+    }
+
+    @Test
+    fun `verification failures complete the future`() {
+        assertFailsWith<TransactionMissingEncumbranceException> {
+            verifierService.verify(ledgerTransaction(0, encumbrance = 1)).getOrThrow()
+        }
+    }
+
+    private fun ledgerTransaction(magicNumber: Int, encumbrance: Int? = null): LedgerTransaction {
+        val builder = TransactionBuilder(notary = notary.party)
+        builder.addOutputState(DummyState(magicNumber), DummyContract.PROGRAM_ID, notary.party, encumbrance)
+        builder.addCommand(DummyContract.Commands.Create(), myself.publicKey)
+        return services.signInitialTransaction(builder).toLedgerTransaction(services, checkSufficientSignatures = false)
+    }
+}
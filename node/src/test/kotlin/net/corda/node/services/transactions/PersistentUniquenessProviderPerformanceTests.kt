@@ -0,0 +1,65 @@
+package net.corda.node.services.transactions
+
+import com.google.common.base.Stopwatch
+import net.corda.core.crypto.DigitalSignature
+import net.corda.core.crypto.NullKeys
+import net.corda.core.crypto.SecureHash
+import net.corda.core.flows.NotarisationRequestSignature
+import net.corda.core.identity.CordaX500Name
+import net.corda.core.internal.notary.UniquenessProvider
+import net.corda.core.utilities.contextLogger
+import net.corda.node.services.schema.NodeSchemaService
+import net.corda.nodeapi.internal.persistence.DatabaseConfig
+import net.corda.testing.core.SerializationEnvironmentRule
+import net.corda.testing.core.TestIdentity
+import net.corda.testing.core.generateStateRef
+import net.corda.testing.internal.TestingNamedCacheFactory
+import net.corda.testing.internal.configureDatabase
+import net.corda.testing.node.MockServices.Companion.makeTestDataSourceProperties
+import net.corda.testing.node.TestClock
+import org.junit.Ignore
+import org.junit.Rule
+import org.junit.Test
+import java.time.Clock
+import java.util.concurrent.TimeUnit
+
+@Ignore("Only use locally")
+class PersistentUniquenessProviderPerformanceTests {
+    private companion object {
+        private val log = contextLogger()
+    }
+
+    @Rule
+    @JvmField
+    val testSerialization = SerializationEnvironmentRule(inheritable = true)
+    private val identity = TestIdentity(CordaX500Name("MegaCorp", "London", "GB")).party
+    private val requestSignature = NotarisationRequestSignature(DigitalSignature.WithKey(NullKeys.NullPublicKey, ByteArray(32)), 0)
+
+    // Measure the commit throughput for an increasing number of shards. Each transaction spends two fresh input states, so
+    // most transactions touch more than one shard.
+    @Test
+    fun `commit throughput by shard count`() {
+        for (shards in listOf(1, 2, 4, 8)) {
+            for (batchSize in listOf(1, 32)) {
+                log.info("Shards: $shards, batch size: $batchSize, commits/sec: ${measureThroughput(shards, batchSize, 20_000)}")
+            }
+        }
+    }
+
+    private fun measureThroughput(shards: Int, batchSize: Int, transactions: Int): Long {
+        val database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null }, NodeSchemaService(extraSchemas = setOf(NodeNotarySchemaV1)))
+        try {
+            val provider = PersistentUniquenessProvider(TestClock(Clock.systemUTC()), database, TestingNamedCacheFactory(), ::signSingle, batchSize, shards)
+            val requests = (1..transactions).map { Pair(listOf(generateStateRef(), generateStateRef()), SecureHash.randomSHA256()) }
+            val stopwatch = Stopwatch.createStarted()
+            requests.map { (inputs, txId) ->
+                provider.commit(inputs, txId, identity, requestSignature)
+            }.forEach {
+                check(it.get() is UniquenessProvider.Result.Success)
+            }
+            return transactions * TimeUnit.SECONDS.toNanos(1) / stopwatch.stop().elapsed(TimeUnit.NANOSECONDS)
+        } finally {
+            database.close()
+        }
+    }
+}
@@ -53,6 +53,8 @@ class UniquenessProviderTests(
         @Parameterized.Parameters(name = "{0}")
         fun data(): Collection<UniquenessProviderFactory> = listOf(
                 PersistentUniquenessProviderFactory(),
+                PersistentUniquenessProviderFactory(maxBatchSize = 16),
+                PersistentUniquenessProviderFactory(maxBatchSize = 16, shards = 4),
                 RaftUniquenessProviderFactory()
         )
     }
@@ -389,6 +391,49 @@ class UniquenessProviderTests(
 
     /* Group G: input, reference states and time window – covered by previous tests. */
 
+    /* Concurrent request tests. */
+    @Test
+    fun `commits at most one of several concurrent transactions spending the same input`() {
+        val inputState = generateStateRef()
+        val results = (1..10).map {
+            val txId = SecureHash.randomSHA256()
+            Pair(txId, uniquenessProvider.commit(listOf(inputState), txId, identity, requestSignature))
+        }.map { it.first to it.second.get() }
+
+        val successes = results.filter { it.second is UniquenessProvider.Result.Success }
+        assertEquals(1, successes.size)
+        val winningTxId = successes.single().first
+        results.filter { it.second is UniquenessProvider.Result.Failure }.forEach {
+            val error = (it.second as UniquenessProvider.Result.Failure).error as NotaryError.Conflict
+            assertEquals(winningTxId.sha256(), error.consumedStates[inputState]!!.hashOfTransactionId)
+        }
+    }
+
+    @Test
+    fun `commits at most one of several concurrent transactions sharing one of their inputs`() {
+        val sharedState = generateStateRef()
+        val results = (1..10).map {
+            val txId = SecureHash.randomSHA256()
+            val inputs = listOf(generateStateRef(), sharedState, generateStateRef())
+            Pair(inputs, uniquenessProvider.commit(inputs, txId, identity, requestSignature))
+        }.map { it.first to it.second.get() }
+
+        assertEquals(1, results.count { it.second is UniquenessProvider.Result.Success })
+        // The inputs of rejected transactions must not have been consumed.
+        results.filter { it.second is UniquenessProvider.Result.Failure }.forEach {
+            val unsharedInputs = it.first - sharedState
+            val result = uniquenessProvider.commit(unsharedInputs, SecureHash.randomSHA256(), identity, requestSignature).get()
+            assert(result is UniquenessProvider.Result.Success)
+        }
+    }
+
+    @Test
+    fun `commits concurrent transactions re-notarising the same transaction`() {
+        val inputState = generateStateRef()
+        val futures = (1..10).map { uniquenessProvider.commit(listOf(inputState), txID, identity, requestSignature) }
+        futures.forEach { assert(it.get() is UniquenessProvider.Result.Success) }
+    }
+
     /* Transaction signing tests. */
     @Test
     fun `signs transactions correctly`() {
@@ -411,13 +456,13 @@ interface UniquenessProviderFactory {
     fun cleanUp() {}
 }
 
-class PersistentUniquenessProviderFactory : UniquenessProviderFactory {
+class PersistentUniquenessProviderFactory(private val maxBatchSize: Int = 1, private val shards: Int = 1) : UniquenessProviderFactory {
     private var database: CordaPersistence? = null
 
     override fun create(clock: Clock): UniquenessProvider {
         database?.close()
         database = configureDatabase(makeTestDataSourceProperties(), DatabaseConfig(), { null }, { null }, NodeSchemaService(extraSchemas = setOf(NodeNotarySchemaV1)))
-        return PersistentUniquenessProvider(clock, database!!, TestingNamedCacheFactory(), ::signSingle)
+        return PersistentUniquenessProvider(clock, database!!, TestingNamedCacheFactory(), ::signSingle, maxBatchSize, shards)
     }
 
     override fun cleanUp() {
@@ -27,6 +27,7 @@ import net.corda.finance.schemas.CommercialPaperSchemaV1
 import net.corda.finance.test.SampleCashSchemaV2
 import net.corda.finance.test.SampleCashSchemaV3
 import net.corda.finance.workflows.CommercialPaperUtils
+import net.corda.node.services.api.VaultServiceInternal
 import net.corda.nodeapi.internal.persistence.CordaPersistence
 import net.corda.nodeapi.internal.persistence.DatabaseConfig
 import net.corda.nodeapi.internal.persistence.DatabaseTransaction
@@ -46,6 +47,8 @@ import org.junit.Rule
 import org.junit.Test
 import org.junit.rules.ExpectedException
 import org.junit.rules.ExternalResource
+import rx.Observable
+import rx.observers.TestSubscriber
 import java.time.Duration
 import java.time.Instant
 import java.time.LocalDate
@@ -1676,6 +1679,55 @@ abstract class VaultQueryTestsBase : VaultQueryParties {
         }
     }
 
+    // keyset pagination
+    @Test
+    fun `keyset pagination returns every state once in recorded order`() {
+        database.transaction {
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 23, DUMMY_CASH_ISSUER)
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 12, DUMMY_CASH_ISSUER)
+            val criteria = VaultQueryCriteria(status = Vault.StateStatus.ALL)
+            val allStates = vaultService.queryBy<ContractState>(criteria).states
+
+            var paging = PageSpecification(pageSize = 10, keyset = true)
+            val pages = mutableListOf<Vault.Page<ContractState>>()
+            do {
+                val page = vaultService.queryBy<ContractState>(criteria, paging = paging)
+                pages += page
+                paging = paging.after(page)
+            } while (page.states.size == paging.pageSize)
+
+            assertThat(pages.map { it.states.size }).containsExactly(10, 10, 10, 5)
+            assertThat(pages.map { it.totalStatesAvailable }.distinct()).containsExactly(35L)
+            val keysetStates = pages.flatMap { it.states }
+            assertThat(keysetStates).containsExactlyInAnyOrderElementsOf(allStates)
+            val keysetMetadata = pages.flatMap { it.statesMetadata }
+            assertThat(keysetMetadata.map { it.recordedTime }).isSorted
+        }
+    }
+
+    @Test
+    fun `keyset pagination can skip counting the total states`() {
+        database.transaction {
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 5, DUMMY_CASH_ISSUER)
+            val paging = PageSpecification(pageSize = 2, keyset = true, countTotalStates = false)
+            val results = vaultService.queryBy<ContractState>(VaultQueryCriteria(), paging = paging)
+            assertThat(results.states).hasSize(2)
+            assertThat(results.totalStatesAvailable).isEqualTo(-1)
+        }
+    }
+
+    @Test
+    fun `keyset pagination cannot be combined with sorting`() {
+        expectedEx.expect(VaultQueryException::class.java)
+        expectedEx.expectMessage("Keyset pagination")
+
+        database.transaction {
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 5, DUMMY_CASH_ISSUER)
+            val sorting = Sort(setOf(Sort.SortColumn(SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.DESC)))
+            vaultService.queryBy<ContractState>(VaultQueryCriteria(), PageSpecification(pageSize = 2, keyset = true), sorting)
+        }
+    }
+
     // test paging with aggregate function and group by clause
     @Test
     fun `test paging with aggregate function and group by clause`() {
@@ -2961,4 +3013,81 @@ class VaultQueryTests : VaultQueryTestsBase(), VaultQueryParties by delegate {
             )
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Streamed query tests commit their states first, as the stream reads them in its own database transaction.
+     */
+
+    @Test
+    fun `streamed query emits every state in batches`() {
+        database.transaction {
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 25, DUMMY_CASH_ISSUER)
+        }
+        val criteria = VaultQueryCriteria(status = Vault.StateStatus.ALL)
+        val allStates = database.transaction { vaultService.queryBy<ContractState>(criteria).states }
+
+        val pages = streamBy(criteria, 10).toList().toBlocking().single()
+        assertThat(pages.map { it.states.size }).containsExactly(10, 10, 5)
+        assertThat(pages.flatMap { it.states }).containsExactlyInAnyOrderElementsOf(allStates)
+        assertThat(pages.flatMap { it.statesMetadata }.map { it.ref }).isEqualTo(pages.flatMap { it.states }.map { it.ref })
+        assertThat(pages.map { it.totalStatesAvailable }.distinct()).containsExactly(-1L)
+    }
+
+    @Test
+    fun `streamed query only reads the pages requested`() {
+        database.transaction {
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 25, DUMMY_CASH_ISSUER)
+        }
+        val subscriber = TestSubscriber<Vault.Page<ContractState>>(1)
+        streamBy(VaultQueryCriteria(), 10).subscribe(subscriber)
+        subscriber.assertValueCount(1)
+        subscriber.assertNotCompleted()
+
+        subscriber.requestMore(1)
+        subscriber.assertValueCount(2)
+
+        // Each page is read in a transaction of its own, so none is held open between pages.
+        var transactionsClosed = false
+        database.onAllOpenTransactionsClosed { transactionsClosed = true }
+        assertThat(transactionsClosed).isTrue()
+        subscriber.unsubscribe()
+    }
+
+    @Test
+    fun `sorted streamed query emits the states in order`() {
+        database.transaction {
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 25, DUMMY_CASH_ISSUER)
+        }
+        val sortAttributeTxnId = SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID)
+        val sortAttributeIndex = SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX)
+        val sorting = Sort(listOf(Sort.SortColumn(sortAttributeTxnId, Sort.Direction.DESC), Sort.SortColumn(sortAttributeIndex, Sort.Direction.DESC)))
+        val allStates = database.transaction { vaultService.queryBy<ContractState>(VaultQueryCriteria(), sorting).states }
+
+        val pages = streamBy(VaultQueryCriteria(), 10, sorting).toList().toBlocking().single()
+        assertThat(pages.map { it.states.size }).containsExactly(10, 10, 5)
+        assertThat(pages.flatMap { it.states }).isEqualTo(allStates)
+    }
+
+    @Test
+    fun `streamed query of an empty vault completes without any pages`() {
+        val subscriber = TestSubscriber<Vault.Page<ContractState>>()
+        streamBy(VaultQueryCriteria(), 10).subscribe(subscriber)
+        subscriber.assertNoValues()
+        subscriber.assertCompleted()
+    }
+
+    @Test
+    fun `streamed query cannot use aggregate functions`() {
+        database.transaction {
+            vaultFiller.fillWithSomeTestCash(100.DOLLARS, notaryServices, 5, DUMMY_CASH_ISSUER)
+        }
+        val sum = builder { CashSchemaV1.PersistentCashState::pennies.sum() }
+        val subscriber = TestSubscriber<Vault.Page<ContractState>>()
+        streamBy(VaultCustomQueryCriteria(sum), 10).subscribe(subscriber)
+        subscriber.assertError(VaultQueryException::class.java)
+    }
+
+    private fun streamBy(criteria: QueryCriteria, batchSize: Int, sorting: Sort = Sort(emptySet())): Observable<Vault.Page<ContractState>> {
+        return (vaultService as VaultServiceInternal)._streamBy(criteria, sorting, batchSize, ContractState::class.java)
+    }
+}
@@ -2,13 +2,13 @@ package net.corda.serialization.djvm.serializers
 
 import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.amqp.AMQPSerializer
+import net.corda.serialization.internal.amqp.AMQPWriter
 import net.corda.serialization.internal.amqp.DeserializationInput
 import net.corda.serialization.internal.amqp.SerializationOutput
 import net.corda.serialization.internal.amqp.SerializationSchemas
 import net.corda.serialization.internal.amqp.typeDescriptorFor
 import org.apache.qpid.proton.amqp.Binary
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import java.util.function.Function
 
@@ -29,7 +29,7 @@ class PrimitiveSerializer(
     }
 
     override fun writeObject(
-        obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
+        obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
     ) {
         abortReadOnly()
     }
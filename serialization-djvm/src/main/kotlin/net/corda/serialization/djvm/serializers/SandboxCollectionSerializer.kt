@@ -6,6 +6,7 @@ import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.serialization.djvm.deserializers.CreateCollection
 import net.corda.serialization.djvm.toSandboxAnyClass
 import net.corda.serialization.internal.amqp.AMQPSerializer
+import net.corda.serialization.internal.amqp.AMQPWriter
 import net.corda.serialization.internal.amqp.CustomSerializer
 import net.corda.serialization.internal.amqp.DeserializationInput
 import net.corda.serialization.internal.amqp.LocalSerializerFactory
@@ -16,7 +17,6 @@ import net.corda.serialization.internal.amqp.redescribe
 import net.corda.serialization.internal.model.LocalTypeInformation
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.ParameterizedType
 import java.lang.reflect.Type
 import java.util.EnumSet
@@ -78,7 +78,7 @@ class SandboxCollectionSerializer(
     }
 
     override fun writeDescribedObject(
-        obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext
+        obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext
     ) {
         throw UnsupportedOperationException("Factory Only")
     }
@@ -122,7 +122,7 @@ private class ConcreteCollectionSerializer(
     }
 
     override fun writeObject(
-        obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
+        obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
     ) {
         abortReadOnly()
     }
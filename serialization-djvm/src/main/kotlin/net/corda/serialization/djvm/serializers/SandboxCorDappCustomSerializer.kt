@@ -8,6 +8,7 @@ import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.serialization.djvm.deserializers.CorDappCustomDeserializer
 import net.corda.serialization.internal.amqp.AMQPNotSerializableException
 import net.corda.serialization.internal.amqp.AMQPTypeIdentifiers
+import net.corda.serialization.internal.amqp.AMQPWriter
 import net.corda.serialization.internal.amqp.CORDAPP_TYPE
 import net.corda.serialization.internal.amqp.CustomSerializer
 import net.corda.serialization.internal.amqp.Descriptor
@@ -21,7 +22,6 @@ import net.corda.serialization.internal.amqp.SerializerFactory
 import net.corda.serialization.internal.amqp.typeDescriptorFor
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.ParameterizedType
 import java.lang.reflect.Type
 import java.util.Collections.singleton
@@ -85,7 +85,7 @@ class SandboxCorDappCustomSerializer(
         abortReadOnly()
     }
 
-    override fun writeDescribedObject(obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext) {
+    override fun writeDescribedObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext) {
         abortReadOnly()
     }
 
@@ -4,12 +4,12 @@ import net.corda.core.serialization.SerializationContext
 import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.serialization.djvm.deserializers.CreateCurrency
 import net.corda.serialization.djvm.toSandboxAnyClass
+import net.corda.serialization.internal.amqp.AMQPWriter
 import net.corda.serialization.internal.amqp.CustomSerializer
 import net.corda.serialization.internal.amqp.DeserializationInput
 import net.corda.serialization.internal.amqp.Schema
 import net.corda.serialization.internal.amqp.SerializationOutput
 import net.corda.serialization.internal.amqp.SerializationSchemas
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import java.util.Currency
 import java.util.function.Function
@@ -34,7 +34,7 @@ class SandboxCurrencySerializer(
         return creator.apply(obj)!!
     }
 
-    override fun writeDescribedObject(obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext) {
+    override fun writeDescribedObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext) {
         abortReadOnly()
     }
 }
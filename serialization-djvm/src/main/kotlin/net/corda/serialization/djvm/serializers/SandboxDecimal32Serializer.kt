@@ -4,13 +4,13 @@ import net.corda.core.serialization.SerializationContext
 import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.serialization.djvm.deserializers.Decimal32Deserializer
 import net.corda.serialization.djvm.toSandboxAnyClass
+import net.corda.serialization.internal.amqp.AMQPWriter
 import net.corda.serialization.internal.amqp.CustomSerializer
 import net.corda.serialization.internal.amqp.DeserializationInput
 import net.corda.serialization.internal.amqp.Schema
 import net.corda.serialization.internal.amqp.SerializationOutput
 import net.corda.serialization.internal.amqp.SerializationSchemas
 import org.apache.qpid.proton.amqp.Decimal32
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import java.util.function.Function
 
@@ -28,7 +28,7 @@ class SandboxDecimal32Serializer(
         return transformer.apply(intArrayOf((obj as Decimal32).bits))!!
     }
 
-    override fun writeDescribedObject(obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext) {
+    override fun writeDescribedObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext) {
         abortReadOnly()
     }
 }
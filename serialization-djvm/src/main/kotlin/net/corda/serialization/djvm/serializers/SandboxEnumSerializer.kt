@@ -7,6 +7,7 @@ import net.corda.serialization.djvm.deserializers.DescribeEnum
 import net.corda.serialization.djvm.toSandboxAnyClass
 import net.corda.serialization.internal.amqp.AMQPNotSerializableException
 import net.corda.serialization.internal.amqp.AMQPSerializer
+import net.corda.serialization.internal.amqp.AMQPWriter
 import net.corda.serialization.internal.amqp.CustomSerializer
 import net.corda.serialization.internal.amqp.DeserializationInput
 import net.corda.serialization.internal.amqp.LocalSerializerFactory
@@ -17,7 +18,6 @@ import net.corda.serialization.internal.model.EnumTransforms
 import net.corda.serialization.internal.model.LocalTypeInformation
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import java.util.function.Function
 import java.util.function.Predicate
@@ -56,7 +56,7 @@ class SandboxEnumSerializer(
     }
 
     override fun writeDescribedObject(
-         obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext
+         obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext
     ) {
         throw UnsupportedOperationException("Factory Only")
     }
@@ -106,7 +106,7 @@ private class ConcreteEnumSerializer(
     }
 
     override fun writeObject(
-        obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
+        obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
     ) {
         abortReadOnly()
     }
@@ -5,6 +5,7 @@ import net.corda.djvm.rewiring.SandboxClassLoader
 import net.corda.serialization.djvm.deserializers.CreateMap
 import net.corda.serialization.djvm.toSandboxAnyClass
 import net.corda.serialization.internal.amqp.AMQPSerializer
+import net.corda.serialization.internal.amqp.AMQPWriter
 import net.corda.serialization.internal.amqp.CustomSerializer
 import net.corda.serialization.internal.amqp.DeserializationInput
 import net.corda.serialization.internal.amqp.LocalSerializerFactory
@@ -15,7 +16,6 @@ import net.corda.serialization.internal.amqp.redescribe
 import net.corda.serialization.internal.model.LocalTypeInformation
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.ParameterizedType
 import java.lang.reflect.Type
 import java.util.EnumMap
@@ -68,7 +68,7 @@ class SandboxMapSerializer(
     }
 
     override fun writeDescribedObject(
-        obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext
+        obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext
     ) {
         throw UnsupportedOperationException("Factory Only")
     }
@@ -117,7 +117,7 @@ private class ConcreteMapSerializer(
     }
 
     override fun writeObject(
-        obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
+        obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int
     ) {
         abortReadOnly()
     }
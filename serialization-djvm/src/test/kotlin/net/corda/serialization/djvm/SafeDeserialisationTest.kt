@@ -8,6 +8,7 @@ import net.corda.serialization.internal.SectionId
 import net.corda.serialization.internal.amqp.CompositeType
 import net.corda.serialization.internal.amqp.DeserializationInput
 import net.corda.serialization.internal.amqp.Envelope
+import net.corda.serialization.internal.amqp.ProtonDataWriter
 import net.corda.serialization.internal.amqp.TypeNotation
 import net.corda.serialization.internal.amqp.alsoAsByteBuffer
 import net.corda.serialization.internal.amqp.amqpMagic
@@ -70,7 +71,7 @@ class SafeDeserialisationTest : TestBase(KOTLIN) {
 
     private fun Envelope.write(): ByteArray {
         val data = Data.Factory.create()
-        data.withDescribed(Envelope.DESCRIPTOR_OBJECT) {
+        ProtonDataWriter(data).withDescribed(Envelope.DESCRIPTOR_OBJECT) {
             withList {
                 putObject(obj)
                 putObject(schema)
@@ -5,7 +5,6 @@ import net.corda.core.serialization.CordaSerializable
 import net.corda.core.serialization.SerializationContext
 import net.corda.finance.contracts.asset.Cash
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import org.junit.Test
 import java.lang.reflect.Type
 import kotlin.test.assertFailsWith
@@ -22,7 +21,7 @@ class CustomSerializerRegistryTests {
         override val descriptor: Descriptor get() = throw UnsupportedOperationException()
         override val schemaForDocumentation: Schema get() = throw UnsupportedOperationException()
 
-        override fun writeDescribedObject(obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext) {
+        override fun writeDescribedObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext) {
             throw UnsupportedOperationException()
         }
 
@@ -3,7 +3,6 @@ package net.corda.serialization.internal.amqp
 import net.corda.core.serialization.SerializationContext
 import org.apache.qpid.proton.amqp.Binary
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 
 /**
@@ -21,7 +20,7 @@ class AMQPPrimitiveSerializer(clazz: Class<*>) : AMQPSerializer<Any> {
 
     override fun writeObject(
             obj: Any,
-            data: Data,
+            data: AMQPWriter,
             type: Type,
             output: SerializationOutput,
             context: SerializationContext,
@@ -3,7 +3,6 @@ package net.corda.serialization.internal.amqp
 import net.corda.core.KeepForDJVM
 import net.corda.core.serialization.SerializationContext
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 
 /**
@@ -34,7 +33,7 @@ interface AMQPSerializer<out T> {
      * Write the given object, with declared type, to the output.
      */
     @JvmDefault
-    fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                     context: SerializationContext, debugIndent: Int = 0)
 
     /**
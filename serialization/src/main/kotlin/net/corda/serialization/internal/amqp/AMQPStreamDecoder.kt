@@ -0,0 +1,238 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.core.KeepForDJVM
+import org.apache.qpid.proton.amqp.*
+import org.apache.qpid.proton.codec.Data
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+import java.util.*
+
+/**
+ * Decodes an AMQP value straight from a [ByteBuffer] into the objects proton's [Data.getObject] would return for it:
+ * [DescribedType]s, unmodifiable lists and maps, [Binary], [Symbol], the unsigned and decimal types and boxed primitives.
+ * Proton instead decodes into a tree of elements first, and only then builds those objects from it.
+ *
+ * Arrays are handed to proton, as the serializers never write them.
+ */
+@KeepForDJVM
+object AMQPStreamDecoder {
+    /**
+     * Decodes the single value which must make up the rest of [buffer].
+     */
+    @Throws(AMQPNoTypeNotSerializableException::class)
+    fun decode(buffer: ByteBuffer): Any? {
+        val value = try {
+            readValue(buffer)
+        } catch (e: BufferUnderflowException) {
+            throw unexpectedSize()
+        }
+        if (buffer.hasRemaining()) {
+            throw unexpectedSize()
+        }
+        return value
+    }
+
+    /**
+     * Decodes the value at the position of [buffer], leaving the buffer positioned after it.
+     */
+    @Throws(AMQPNoTypeNotSerializableException::class)
+    fun decodeNext(buffer: ByteBuffer): Any? {
+        return try {
+            readValue(buffer)
+        } catch (e: BufferUnderflowException) {
+            throw unexpectedSize()
+        }
+    }
+
+    /**
+     * Moves [buffer] past the value at its position without decoding it, for reading one part of a large value.
+     */
+    @Throws(AMQPNoTypeNotSerializableException::class)
+    fun skip(buffer: ByteBuffer) {
+        try {
+            skipValue(buffer)
+        } catch (e: BufferUnderflowException) {
+            throw unexpectedSize()
+        }
+    }
+
+    private fun unexpectedSize() = AMQPNoTypeNotSerializableException("Unexpected size of data", "Blob is corrupted!.")
+
+    private fun readValue(buffer: ByteBuffer): Any? {
+        val constructor = buffer.get().toInt() and 0xff
+        return when (constructor) {
+            0x00 -> DecodedDescribedType(readValue(buffer), readValue(buffer))
+            0x40 -> null
+            0x41 -> true
+            0x42 -> false
+            0x43 -> UnsignedInteger.ZERO
+            0x44 -> UnsignedLong.ZERO
+            0x45 -> Collections.unmodifiableList(ArrayList<Any?>())
+            0x50 -> UnsignedByte.valueOf(buffer.get())
+            0x51 -> buffer.get()
+            0x52 -> UnsignedInteger.valueOf(buffer.get().toInt() and 0xff)
+            0x53 -> UnsignedLong.valueOf((buffer.get().toInt() and 0xff).toLong())
+            0x54 -> buffer.get().toInt()
+            0x55 -> buffer.get().toLong()
+            0x56 -> readBoolean(buffer.get())
+            0x60 -> UnsignedShort.valueOf(buffer.short)
+            0x61 -> buffer.short
+            0x70 -> UnsignedInteger.valueOf(buffer.int)
+            0x71 -> buffer.int
+            0x72 -> buffer.float
+            0x73 -> buffer.int
+            0x74 -> Decimal32(buffer.int)
+            0x80 -> UnsignedLong.valueOf(buffer.long)
+            0x81 -> buffer.long
+            0x82 -> buffer.double
+            0x83 -> Date(buffer.long)
+            0x84 -> Decimal64(buffer.long)
+            0x94 -> Decimal128(buffer.long, buffer.long)
+            0x98 -> UUID(buffer.long, buffer.long)
+            0xa0 -> Binary(readBytes(buffer, buffer.get().toInt() and 0xff))
+            0xa1 -> readString(buffer, buffer.get().toInt() and 0xff, Charsets.UTF_8)
+            0xa3 -> Symbol.valueOf(readString(buffer, buffer.get().toInt() and 0xff, Charsets.US_ASCII))
+            0xb0 -> Binary(readBytes(buffer, buffer.int))
+            0xb1 -> readString(buffer, buffer.int, Charsets.UTF_8)
+            0xb3 -> Symbol.valueOf(readString(buffer, buffer.int, Charsets.US_ASCII))
+            0xc0 -> readList(buffer, buffer.get().toInt() and 0xff) { it.get().toInt() and 0xff }
+            0xc1 -> readMap(buffer, buffer.get().toInt() and 0xff) { it.get().toInt() and 0xff }
+            0xd0 -> readList(buffer, buffer.int) { it.int }
+            0xd1 -> readMap(buffer, buffer.int) { it.int }
+            0xe0 -> readArray(buffer, 2, buffer.get().toInt() and 0xff)
+            0xf0 -> readArray(buffer, 5, buffer.int)
+            else -> throw IllegalArgumentException("No constructor for type $constructor")
+        }
+    }
+
+    private fun skipValue(buffer: ByteBuffer) {
+        val constructor = buffer.get().toInt() and 0xff
+        val size = when (constructor) {
+            0x00 -> {
+                skipValue(buffer)
+                skipValue(buffer)
+                0
+            }
+            in 0x40..0x45 -> 0
+            in 0x50..0x56 -> 1
+            0x60, 0x61 -> 2
+            in 0x70..0x74 -> 4
+            in 0x80..0x84 -> 8
+            0x94, 0x98 -> 16
+            0xa0, 0xa1, 0xa3, 0xc0, 0xc1, 0xe0 -> buffer.get().toInt() and 0xff
+            0xb0, 0xb1, 0xb3, 0xd0, 0xd1, 0xf0 -> buffer.int
+            else -> throw IllegalArgumentException("No constructor for type $constructor")
+        }
+        checkSize(buffer, size)
+        buffer.position(buffer.position() + size)
+    }
+
+    private fun readBoolean(value: Byte): Boolean = when (value.toInt()) {
+        0 -> false
+        1 -> true
+        else -> throw IllegalArgumentException("Illegal value $value for boolean")
+    }
+
+    private fun readBytes(buffer: ByteBuffer, size: Int): ByteArray {
+        // Check the size before allocating, so that a malformed size cannot claim more memory than the data holds.
+        checkSize(buffer, size)
+        return ByteArray(size).apply { buffer.get(this) }
+    }
+
+    private fun readString(buffer: ByteBuffer, size: Int, charset: Charset): String {
+        if (!buffer.hasArray()) {
+            return String(readBytes(buffer, size), charset)
+        }
+        checkSize(buffer, size)
+        // Decode straight from the backing array rather than copying the bytes out first.
+        val string = String(buffer.array(), buffer.arrayOffset() + buffer.position(), size, charset)
+        buffer.position(buffer.position() + size)
+        return string
+    }
+
+    private fun checkSize(buffer: ByteBuffer, size: Int) {
+        if (size < 0 || size > buffer.remaining()) {
+            throw BufferUnderflowException()
+        }
+    }
+
+    /**
+     * Reads the [count] values inside a list or map of [size] bytes. As with proton, any bytes of the body left over after
+     * the last value are skipped.
+     */
+    private inline fun readCompound(buffer: ByteBuffer, size: Int, readCount: (ByteBuffer) -> Int, read: (ByteBuffer, Int) -> Unit) {
+        if (size < 0) {
+            throw IllegalArgumentException("Malformed data")
+        } else if (size > buffer.remaining()) {
+            throw BufferUnderflowException()
+        }
+        val end = buffer.position() + size
+        val limit = buffer.limit()
+        buffer.limit(end)
+        try {
+            read(buffer, readCount(buffer))
+        } catch (e: BufferUnderflowException) {
+            throw IllegalArgumentException("Malformed data")
+        } finally {
+            buffer.limit(limit)
+        }
+        buffer.position(end)
+    }
+
+    private inline fun readList(buffer: ByteBuffer, size: Int, readCount: (ByteBuffer) -> Int): List<Any?> {
+        val list = ArrayList<Any?>()
+        readCompound(buffer, size, readCount) { body, count ->
+            for (i in 0 until count) {
+                list.add(readValue(body))
+            }
+        }
+        return Collections.unmodifiableList(list)
+    }
+
+    private inline fun readMap(buffer: ByteBuffer, size: Int, readCount: (ByteBuffer) -> Int): Map<Any?, Any?> {
+        val map = LinkedHashMap<Any?, Any?>()
+        readCompound(buffer, size, readCount) { body, count ->
+            for (i in 0 until count / 2) {
+                map[readValue(body)] = readValue(body)
+            }
+            if (count % 2 != 0) {
+                map[readValue(body)] = null
+            }
+        }
+        return Collections.unmodifiableMap(map)
+    }
+
+    /**
+     * Hands an array, whose constructor and size take up the [headerSize] bytes before the position of [buffer], to proton.
+     */
+    private fun readArray(buffer: ByteBuffer, headerSize: Int, size: Int): Any? {
+        if (size < 0) {
+            throw IllegalArgumentException("Malformed data")
+        } else if (size > buffer.remaining()) {
+            throw BufferUnderflowException()
+        }
+        val end = buffer.position() + size
+        val arrayBytes = buffer.duplicate()
+        arrayBytes.position(buffer.position() - headerSize)
+        arrayBytes.limit(end)
+        val data = Data.Factory.create()
+        data.decode(arrayBytes)
+        buffer.position(end)
+        return data.`object`
+    }
+
+    @KeepForDJVM
+    private class DecodedDescribedType(private val descriptor: Any?, private val described: Any?) : DescribedType {
+        override fun getDescriptor(): Any? = descriptor
+        override fun getDescribed(): Any? = described
+
+        override fun equals(other: Any?): Boolean {
+            return other is DescribedType && descriptor == other.descriptor && described == other.described
+        }
+
+        override fun hashCode(): Int = 31 * (descriptor?.hashCode() ?: 0) + (described?.hashCode() ?: 0)
+
+        override fun toString(): String = "{$descriptor: $described}"
+    }
+}
@@ -0,0 +1,474 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.core.KeepForDJVM
+import org.apache.qpid.proton.amqp.*
+import org.apache.qpid.proton.codec.Data
+import java.io.OutputStream
+import java.util.*
+
+/**
+ * An [AMQPWriter] which encodes each value straight into a byte array as it is put, rather than building a tree of
+ * elements which then has to be sized and encoded into a second buffer. The bytes are identical to those proton's own
+ * [Data] implementation produces for the same sequence of calls, which matters as transaction component hashes are
+ * computed over them.
+ *
+ * Lists, maps and described types are written with the widest header when they are put, and that header is patched when
+ * they are exited. Where proton would have chosen a compact header the body is moved down over the unused bytes; only
+ * bodies of less than 255 bytes are ever moved.
+ *
+ * A container can only be entered right after it has been put. See [AMQPStreamDecoder] for the reverse direction.
+ */
+@KeepForDJVM
+class AMQPStreamEncoder(initialCapacity: Int = DEFAULT_INITIAL_CAPACITY) : AMQPWriter {
+    companion object {
+        private const val DEFAULT_INITIAL_CAPACITY = 1024
+
+        private const val NONE = 0
+        private const val LIST = 1
+        private const val MAP = 2
+        private const val DESCRIBED = 3
+
+        // Constructor, 32-bit size and 32-bit count.
+        private const val WIDE_HEADER_SIZE = 9
+        private const val COMPACT_HEADER_SIZE = 3
+        private const val MAX_COMPACT_SIZE = 254
+        private const val MAX_COMPACT_COUNT = 255
+    }
+
+    private var buffer = ByteArray(initialCapacity)
+    private var position = 0
+
+    // The containers which have been entered, innermost last, and how many values have been put in each so far.
+    private var kinds = IntArray(16)
+    private var starts = IntArray(16)
+    private var counts = IntArray(16)
+    private var depth = 0
+
+    // A container which has been put but not entered yet.
+    private var pendingKind = NONE
+    private var pendingStart = 0
+
+    /**
+     * Writes the encoded values to [stream]. All containers must have been exited.
+     */
+    fun writeTo(stream: OutputStream) {
+        checkComplete()
+        stream.write(buffer, 0, position)
+    }
+
+    /**
+     * Returns the encoded values. All containers must have been exited.
+     */
+    fun encode(): Binary {
+        checkComplete()
+        return Binary(buffer.copyOf(position))
+    }
+
+    override fun putList() {
+        startValue()
+        startContainer(LIST, 0xd0)
+    }
+
+    override fun putMap() {
+        startValue()
+        startContainer(MAP, 0xd1)
+    }
+
+    override fun putDescribed() {
+        startValue()
+        pendingKind = DESCRIBED
+        pendingStart = position
+        writeByte(0x00)
+    }
+
+    override fun enter() {
+        if (pendingKind == NONE) {
+            throw IllegalStateException("Only a list, map or described type which has just been put can be entered")
+        }
+        if (depth == kinds.size) {
+            kinds = kinds.copyOf(depth * 2)
+            starts = starts.copyOf(depth * 2)
+            counts = counts.copyOf(depth * 2)
+        }
+        kinds[depth] = pendingKind
+        starts[depth] = pendingStart
+        counts[depth] = 0
+        depth++
+        pendingKind = NONE
+    }
+
+    override fun exit() {
+        finishPending()
+        check(depth > 0) { "No list, map or described type has been entered" }
+        depth--
+        finishContainer(kinds[depth], starts[depth], counts[depth])
+    }
+
+    override fun putNull() {
+        startValue()
+        writeByte(0x40)
+    }
+
+    override fun putBoolean(b: Boolean) {
+        startValue()
+        writeByte(if (b) 0x41 else 0x42)
+    }
+
+    override fun putUnsignedByte(ub: UnsignedByte) {
+        startValue()
+        writeByte(0x50)
+        writeByte(ub.toInt())
+    }
+
+    override fun putByte(b: Byte) {
+        startValue()
+        writeByte(0x51)
+        writeByte(b.toInt())
+    }
+
+    override fun putUnsignedShort(us: UnsignedShort) {
+        startValue()
+        writeByte(0x60)
+        writeShort(us.toInt())
+    }
+
+    override fun putShort(s: Short) {
+        startValue()
+        writeByte(0x61)
+        writeShort(s.toInt())
+    }
+
+    override fun putUnsignedInteger(ui: UnsignedInteger) {
+        startValue()
+        val value = ui.toInt()
+        when {
+            value == 0 -> writeByte(0x43)
+            value and 0xff.inv() == 0 -> {
+                writeByte(0x52)
+                writeByte(value)
+            }
+            else -> {
+                writeByte(0x70)
+                writeInt(value)
+            }
+        }
+    }
+
+    override fun putInt(i: Int) {
+        startValue()
+        if (i in Byte.MIN_VALUE..Byte.MAX_VALUE) {
+            writeByte(0x54)
+            writeByte(i)
+        } else {
+            writeByte(0x71)
+            writeInt(i)
+        }
+    }
+
+    override fun putChar(c: Int) {
+        startValue()
+        writeByte(0x73)
+        writeInt(c)
+    }
+
+    override fun putUnsignedLong(ul: UnsignedLong) {
+        startValue()
+        val value = ul.toLong()
+        when {
+            value == 0L -> writeByte(0x44)
+            value and 0xffL.inv() == 0L -> {
+                writeByte(0x53)
+                writeByte(value.toInt())
+            }
+            else -> {
+                writeByte(0x80)
+                writeLong(value)
+            }
+        }
+    }
+
+    override fun putLong(l: Long) {
+        startValue()
+        if (l in Byte.MIN_VALUE..Byte.MAX_VALUE) {
+            writeByte(0x55)
+            writeByte(l.toInt())
+        } else {
+            writeByte(0x81)
+            writeLong(l)
+        }
+    }
+
+    override fun putTimestamp(t: Date) {
+        startValue()
+        writeByte(0x83)
+        writeLong(t.time)
+    }
+
+    override fun putFloat(f: Float) {
+        startValue()
+        writeByte(0x72)
+        writeInt(java.lang.Float.floatToRawIntBits(f))
+    }
+
+    override fun putDouble(d: Double) {
+        startValue()
+        writeByte(0x82)
+        writeLong(java.lang.Double.doubleToRawLongBits(d))
+    }
+
+    override fun putDecimal32(d: Decimal32) {
+        startValue()
+        writeByte(0x74)
+        writeInt(d.bits)
+    }
+
+    override fun putDecimal64(d: Decimal64) {
+        startValue()
+        writeByte(0x84)
+        writeLong(d.bits)
+    }
+
+    override fun putDecimal128(d: Decimal128) {
+        startValue()
+        writeByte(0x94)
+        writeLong(d.mostSignificantBits)
+        writeLong(d.leastSignificantBits)
+    }
+
+    override fun putUUID(u: UUID) {
+        startValue()
+        writeByte(0x98)
+        writeLong(u.mostSignificantBits)
+        writeLong(u.leastSignificantBits)
+    }
+
+    override fun putBinary(bytes: Binary) {
+        startValue()
+        writeVariable(0xa0, 0xb0, bytes.array, bytes.arrayOffset, bytes.length)
+    }
+
+    override fun putBinary(bytes: ByteArray) {
+        startValue()
+        writeVariable(0xa0, 0xb0, bytes, 0, bytes.size)
+    }
+
+    override fun putString(string: String) {
+        startValue()
+        val bytes = string.toByteArray(Charsets.UTF_8)
+        writeVariable(0xa1, 0xb1, bytes, 0, bytes.size)
+    }
+
+    override fun putSymbol(symbol: Symbol) {
+        startValue()
+        val bytes = symbol.toString().toByteArray(Charsets.US_ASCII)
+        writeVariable(0xa3, 0xb3, bytes, 0, bytes.size)
+    }
+
+    /**
+     * Dispatches on the type of [o] in the same order as proton's own implementation.
+     */
+    override fun putObject(o: Any?) {
+        when (o) {
+            null -> putNull()
+            is Boolean -> putBoolean(o)
+            is UnsignedByte -> putUnsignedByte(o)
+            is Byte -> putByte(o)
+            is UnsignedShort -> putUnsignedShort(o)
+            is Short -> putShort(o)
+            is UnsignedInteger -> putUnsignedInteger(o)
+            is Int -> putInt(o)
+            is Char -> putChar(o.toInt())
+            is UnsignedLong -> putUnsignedLong(o)
+            is Long -> putLong(o)
+            is Date -> putTimestamp(o)
+            is Float -> putFloat(o)
+            is Double -> putDouble(o)
+            is Decimal32 -> putDecimal32(o)
+            is Decimal64 -> putDecimal64(o)
+            is Decimal128 -> putDecimal128(o)
+            is UUID -> putUUID(o)
+            is Binary -> putBinary(o)
+            is String -> putString(o)
+            is Symbol -> putSymbol(o)
+            is DescribedType -> putDescribedType(o)
+            is Array<*> -> {
+                if (!o.isArrayOf<Symbol>()) throw IllegalArgumentException("Unsupported array type")
+                @Suppress("UNCHECKED_CAST")
+                putSymbolArray(o as Array<Symbol>)
+            }
+            is List<*> -> {
+                @Suppress("UNCHECKED_CAST")
+                putJavaList(o as List<Any?>)
+            }
+            is Map<*, *> -> {
+                @Suppress("UNCHECKED_CAST")
+                putJavaMap(o as Map<Any?, Any?>)
+            }
+            else -> throw IllegalArgumentException("Unknown type ${o.javaClass.simpleName}")
+        }
+    }
+
+    override fun putJavaMap(map: Map<Any?, Any?>) {
+        putMap()
+        enter()
+        for ((key, value) in map) {
+            putObject(key)
+            putObject(value)
+        }
+        exit()
+    }
+
+    override fun putJavaList(list: List<Any?>) {
+        putList()
+        enter()
+        for (element in list) {
+            putObject(element)
+        }
+        exit()
+    }
+
+    override fun putDescribedType(dt: DescribedType) {
+        putDescribed()
+        enter()
+        putObject(dt.descriptor)
+        putObject(dt.described)
+        exit()
+    }
+
+    /**
+     * Writes [symbols] as an array with the constructor proton chooses: the short form of the symbol constructor unless
+     * any symbol is longer than 255 bytes.
+     */
+    private fun putSymbolArray(symbols: Array<Symbol>) {
+        startValue()
+        val encoded = symbols.map { it.toString().toByteArray(Charsets.US_ASCII) }
+        val small = encoded.all { it.size <= 255 }
+        // The element constructor followed by the elements, each with its size.
+        val bodySize = 1 + encoded.sumBy { it.size + if (small) 1 else 4 }
+        if (bodySize <= MAX_COMPACT_SIZE && symbols.size <= MAX_COMPACT_COUNT) {
+            writeByte(0xe0)
+            writeByte(bodySize + 1)
+            writeByte(symbols.size)
+        } else {
+            writeByte(0xf0)
+            writeInt(bodySize + 4)
+            writeInt(symbols.size)
+        }
+        writeByte(if (small) 0xa3 else 0xb3)
+        for (bytes in encoded) {
+            if (small) writeByte(bytes.size) else writeInt(bytes.size)
+            writeBytes(bytes, 0, bytes.size)
+        }
+    }
+
+    private fun startValue() {
+        finishPending()
+        if (depth > 0) {
+            val index = depth - 1
+            if (kinds[index] == DESCRIBED && counts[index] == 2) {
+                throw IllegalArgumentException("Too many elements in described type")
+            }
+            counts[index]++
+        }
+    }
+
+    private fun startContainer(kind: Int, constructor: Int) {
+        pendingKind = kind
+        pendingStart = position
+        writeByte(constructor)
+        ensureCapacity(WIDE_HEADER_SIZE - 1)
+        position += WIDE_HEADER_SIZE - 1
+    }
+
+    // A container which was put but never entered is empty.
+    private fun finishPending() {
+        if (pendingKind != NONE) {
+            val kind = pendingKind
+            pendingKind = NONE
+            finishContainer(kind, pendingStart, 0)
+        }
+    }
+
+    private fun finishContainer(kind: Int, start: Int, count: Int) {
+        if (kind == DESCRIBED) {
+            // Proton pads a described type with nulls for a missing descriptor or value.
+            for (missing in count until 2) {
+                writeByte(0x40)
+            }
+            return
+        }
+        val bodyStart = start + WIDE_HEADER_SIZE
+        val bodySize = position - bodyStart
+        if (kind == LIST && count == 0) {
+            buffer[start] = 0x45
+            position = start + 1
+        } else if (bodySize <= MAX_COMPACT_SIZE && count <= MAX_COMPACT_COUNT) {
+            buffer[start] = (if (kind == LIST) 0xc0 else 0xc1).toByte()
+            buffer[start + 1] = (bodySize + 1).toByte()
+            buffer[start + 2] = count.toByte()
+            System.arraycopy(buffer, bodyStart, buffer, start + COMPACT_HEADER_SIZE, bodySize)
+            position -= WIDE_HEADER_SIZE - COMPACT_HEADER_SIZE
+        } else {
+            putIntAt(start + 1, bodySize + 4)
+            putIntAt(start + 5, count)
+        }
+    }
+
+    private fun checkComplete() {
+        finishPending()
+        check(depth == 0) { "Not all lists, maps and described types have been exited" }
+    }
+
+    private fun writeVariable(smallConstructor: Int, constructor: Int, bytes: ByteArray, offset: Int, length: Int) {
+        if (length <= 255) {
+            writeByte(smallConstructor)
+            writeByte(length)
+        } else {
+            writeByte(constructor)
+            writeInt(length)
+        }
+        writeBytes(bytes, offset, length)
+    }
+
+    private fun writeBytes(bytes: ByteArray, offset: Int, length: Int) {
+        ensureCapacity(length)
+        System.arraycopy(bytes, offset, buffer, position, length)
+        position += length
+    }
+
+    private fun writeByte(value: Int) {
+        ensureCapacity(1)
+        buffer[position++] = value.toByte()
+    }
+
+    private fun writeShort(value: Int) {
+        ensureCapacity(2)
+        buffer[position++] = (value shr 8).toByte()
+        buffer[position++] = value.toByte()
+    }
+
+    private fun writeInt(value: Int) {
+        ensureCapacity(4)
+        putIntAt(position, value)
+        position += 4
+    }
+
+    private fun writeLong(value: Long) {
+        writeInt((value shr 32).toInt())
+        writeInt(value.toInt())
+    }
+
+    private fun putIntAt(index: Int, value: Int) {
+        buffer[index] = (value shr 24).toByte()
+        buffer[index + 1] = (value shr 16).toByte()
+        buffer[index + 2] = (value shr 8).toByte()
+        buffer[index + 3] = value.toByte()
+    }
+
+    private fun ensureCapacity(extra: Int) {
+        val required = position + extra
+        if (required > buffer.size) {
+            buffer = buffer.copyOf(Math.max(required, buffer.size * 2))
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.core.KeepForDJVM
+import org.apache.qpid.proton.amqp.*
+import org.apache.qpid.proton.codec.Data
+import java.util.*
+
+/**
+ * The AMQP values the serializers write an object as. These are the write operations of proton's [Data], without its
+ * navigation, reading and array support, so that values can be encoded as they are put rather than held in a tree.
+ *
+ * A list, map or described type is written by putting it, entering it, putting its contents and then exiting it.
+ */
+@KeepForDJVM
+interface AMQPWriter {
+    fun putNull()
+    fun putBoolean(b: Boolean)
+    fun putUnsignedByte(ub: UnsignedByte)
+    fun putByte(b: Byte)
+    fun putUnsignedShort(us: UnsignedShort)
+    fun putShort(s: Short)
+    fun putUnsignedInteger(ui: UnsignedInteger)
+    fun putInt(i: Int)
+    fun putChar(c: Int)
+    fun putUnsignedLong(ul: UnsignedLong)
+    fun putLong(l: Long)
+    fun putTimestamp(t: Date)
+    fun putFloat(f: Float)
+    fun putDouble(d: Double)
+    fun putDecimal32(d: Decimal32)
+    fun putDecimal64(d: Decimal64)
+    fun putDecimal128(d: Decimal128)
+    fun putUUID(u: UUID)
+    fun putBinary(bytes: Binary)
+    fun putBinary(bytes: ByteArray)
+    fun putString(string: String)
+    fun putSymbol(symbol: Symbol)
+
+    /**
+     * Puts [o] as the AMQP type proton's [Data.putObject] would. The only arrays which can be put are arrays of [Symbol].
+     */
+    fun putObject(o: Any?)
+
+    fun putJavaMap(map: Map<Any?, Any?>)
+    fun putJavaList(list: List<Any?>)
+    fun putDescribedType(dt: DescribedType)
+
+    fun putList()
+    fun putMap()
+    fun putDescribed()
+
+    /** Enters the list, map or described type which has just been put, so that its contents can be put. */
+    fun enter()
+
+    /** Exits the list, map or described type which was last entered. */
+    fun exit()
+}
+
+/**
+ * An [AMQPWriter] which puts the values into a proton [Data] tree, for when the values have to be navigated or encoded
+ * more than once.
+ */
+@KeepForDJVM
+class ProtonDataWriter(val data: Data) : AMQPWriter {
+    override fun putNull() = data.putNull()
+    override fun putBoolean(b: Boolean) = data.putBoolean(b)
+    override fun putUnsignedByte(ub: UnsignedByte) = data.putUnsignedByte(ub)
+    override fun putByte(b: Byte) = data.putByte(b)
+    override fun putUnsignedShort(us: UnsignedShort) = data.putUnsignedShort(us)
+    override fun putShort(s: Short) = data.putShort(s)
+    override fun putUnsignedInteger(ui: UnsignedInteger) = data.putUnsignedInteger(ui)
+    override fun putInt(i: Int) = data.putInt(i)
+    override fun putChar(c: Int) = data.putChar(c)
+    override fun putUnsignedLong(ul: UnsignedLong) = data.putUnsignedLong(ul)
+    override fun putLong(l: Long) = data.putLong(l)
+    override fun putTimestamp(t: Date) = data.putTimestamp(t)
+    override fun putFloat(f: Float) = data.putFloat(f)
+    override fun putDouble(d: Double) = data.putDouble(d)
+    override fun putDecimal32(d: Decimal32) = data.putDecimal32(d)
+    override fun putDecimal64(d: Decimal64) = data.putDecimal64(d)
+    override fun putDecimal128(d: Decimal128) = data.putDecimal128(d)
+    override fun putUUID(u: UUID) = data.putUUID(u)
+    override fun putBinary(bytes: Binary) = data.putBinary(bytes)
+    override fun putBinary(bytes: ByteArray) = data.putBinary(bytes)
+    override fun putString(string: String) = data.putString(string)
+    override fun putSymbol(symbol: Symbol) = data.putSymbol(symbol)
+    override fun putObject(o: Any?) = data.putObject(o)
+    override fun putJavaMap(map: Map<Any?, Any?>) = data.putJavaMap(map)
+    override fun putJavaList(list: List<Any?>) = data.putJavaList(list)
+    override fun putDescribedType(dt: DescribedType) = data.putDescribedType(dt)
+    override fun putList() = data.putList()
+    override fun putMap() = data.putMap()
+    override fun putDescribed() = data.putDescribed()
+
+    override fun enter() {
+        data.enter()
+    }
+
+    override fun exit() {
+        data.exit()
+    }
+}
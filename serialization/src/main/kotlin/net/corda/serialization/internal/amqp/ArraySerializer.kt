@@ -8,7 +8,6 @@ import net.corda.core.utilities.loggerFor
 import net.corda.core.utilities.trace
 import net.corda.serialization.internal.model.resolveAgainst
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 
 /**
@@ -73,7 +72,7 @@ open class ArraySerializer(override val type: Type, factory: LocalSerializerFact
         }
     }
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         // Write described
@@ -136,13 +135,13 @@ abstract class PrimArraySerializer(type: Type, factory: LocalSerializerFactory)
         fun make(type: Type, factory: LocalSerializerFactory) = primTypes[type]!!(factory)
     }
 
-    fun localWriteObject(data: Data, func: () -> Unit) {
+    fun localWriteObject(data: AMQPWriter, func: () -> Unit) {
         data.withDescribed(typeNotation.descriptor) { withList { func() } }
     }
 }
 
 class PrimIntArraySerializer(factory: LocalSerializerFactory) : PrimArraySerializer(IntArray::class.java, factory) {
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         localWriteObject(data) {
@@ -152,7 +151,7 @@ class PrimIntArraySerializer(factory: LocalSerializerFactory) : PrimArraySeriali
 }
 
 class PrimCharArraySerializer(factory: LocalSerializerFactory) : PrimArraySerializer(CharArray::class.java, factory) {
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         localWriteObject(data) {
@@ -173,7 +172,7 @@ class PrimCharArraySerializer(factory: LocalSerializerFactory) : PrimArraySerial
 }
 
 class PrimBooleanArraySerializer(factory: LocalSerializerFactory) : PrimArraySerializer(BooleanArray::class.java, factory) {
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         localWriteObject(data) {
@@ -184,7 +183,7 @@ class PrimBooleanArraySerializer(factory: LocalSerializerFactory) : PrimArraySer
 
 class PrimDoubleArraySerializer(factory: LocalSerializerFactory) :
         PrimArraySerializer(DoubleArray::class.java, factory) {
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         localWriteObject(data) {
@@ -195,7 +194,7 @@ class PrimDoubleArraySerializer(factory: LocalSerializerFactory) :
 
 class PrimFloatArraySerializer(factory: LocalSerializerFactory) :
         PrimArraySerializer(FloatArray::class.java, factory) {
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int) {
         localWriteObject(data) {
             (obj as FloatArray).forEach { output.writeObjectOrNull(it, data, elementType, context, debugIndent + 1) }
@@ -205,7 +204,7 @@ class PrimFloatArraySerializer(factory: LocalSerializerFactory) :
 
 class PrimShortArraySerializer(factory: LocalSerializerFactory) :
         PrimArraySerializer(ShortArray::class.java, factory) {
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         localWriteObject(data) {
@@ -216,7 +215,7 @@ class PrimShortArraySerializer(factory: LocalSerializerFactory) :
 
 class PrimLongArraySerializer(factory: LocalSerializerFactory) :
         PrimArraySerializer(LongArray::class.java, factory) {
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         localWriteObject(data) {
@@ -6,7 +6,6 @@ import net.corda.core.utilities.NonEmptySet
 import net.corda.serialization.internal.model.LocalTypeInformation
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.io.NotSerializableException
 import java.lang.reflect.ParameterizedType
 import java.lang.reflect.Type
@@ -102,7 +101,7 @@ class CollectionSerializer(private val declaredType: ParameterizedType, factory:
 
     override fun writeObject(
             obj: Any,
-            data: Data,
+            data: AMQPWriter,
             type: Type,
             output: SerializationOutput,
             context: SerializationContext,
@@ -4,7 +4,6 @@ import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.amqp.AMQPTypeIdentifiers.isPrimitive
 import net.corda.serialization.internal.model.*
 import org.apache.qpid.proton.amqp.Binary
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Method
 import java.lang.reflect.Field
 import java.lang.reflect.Type
@@ -46,7 +45,7 @@ interface PropertyWriteStrategy {
          * Select the correct strategy for writing properties, based on the property information.
          */
         fun make(name: String, propertyInformation: LocalPropertyInformation, factory: LocalSerializerFactory): PropertyWriteStrategy {
-            val reader = PropertyReader.make(propertyInformation)
+            val reader = PropertyReader.make(propertyInformation, factory.accessorFactory)
             val type = propertyInformation.type
             return if (isPrimitive(type.typeIdentifier)) {
                 when (type.typeIdentifier) {
@@ -67,7 +66,7 @@ interface PropertyWriteStrategy {
     /**
      * Write the property's value to the [SerializationOutput].
      */
-    fun writeProperty(obj: Any?, data: Data, output: SerializationOutput, context: SerializationContext, debugIndent: Int)
+    fun writeProperty(obj: Any?, data: AMQPWriter, output: SerializationOutput, context: SerializationContext, debugIndent: Int)
 }
 
 /**
@@ -136,15 +135,22 @@ sealed class PropertyReader {
 
     companion object {
         /**
-         * Make a [PropertyReader] based on the provided [LocalPropertyInformation].
+         * Make a [PropertyReader] based on the provided [LocalPropertyInformation], calling getters through a
+         * [PropertyAccessor] where the [PropertyAccessorFactory] supplies one.
          */
-        fun make(propertyInformation: LocalPropertyInformation) = when(propertyInformation) {
-            is LocalPropertyInformation.GetterSetterProperty -> GetterReader(propertyInformation.observedGetter)
-            is LocalPropertyInformation.ConstructorPairedProperty -> GetterReader(propertyInformation.observedGetter)
-            is LocalPropertyInformation.ReadOnlyProperty -> GetterReader(propertyInformation.observedGetter)
-            is LocalPropertyInformation.CalculatedProperty -> GetterReader(propertyInformation.observedGetter)
+        fun make(
+                propertyInformation: LocalPropertyInformation,
+                accessorFactory: PropertyAccessorFactory = ReflectivePropertyAccessorFactory
+        ) = when(propertyInformation) {
+            is LocalPropertyInformation.GetterSetterProperty -> getterReader(propertyInformation.observedGetter, accessorFactory)
+            is LocalPropertyInformation.ConstructorPairedProperty -> getterReader(propertyInformation.observedGetter, accessorFactory)
+            is LocalPropertyInformation.ReadOnlyProperty -> getterReader(propertyInformation.observedGetter, accessorFactory)
+            is LocalPropertyInformation.CalculatedProperty -> getterReader(propertyInformation.observedGetter, accessorFactory)
             is LocalPropertyInformation.PrivateConstructorPairedProperty -> FieldReader(propertyInformation.observedField)
         }
+
+        private fun getterReader(getter: Method, accessorFactory: PropertyAccessorFactory): PropertyReader =
+                accessorFactory.accessorFor(getter)?.let(::AccessorReader) ?: GetterReader(getter)
     }
 
     /**
@@ -163,6 +169,13 @@ sealed class PropertyReader {
         override fun read(obj: Any?): Any? = if (obj == null) null else getter.invoke(obj)
     }
 
+    /**
+     * Reads a property using a [PropertyAccessor] which calls its getter directly.
+     */
+    class AccessorReader(private val accessor: PropertyAccessor): PropertyReader() {
+        override fun read(obj: Any?): Any? = if (obj == null) null else accessor.read(obj)
+    }
+
     /**
      * Reads a property using a backing [Field].
      */
@@ -184,7 +197,7 @@ object EvolutionPropertyWriteStrategy : PropertyWriteStrategy {
     override fun writeClassInfo(output: SerializationOutput) =
             throw UnsupportedOperationException("Evolution serializers cannot write values")
 
-    override fun writeProperty(obj: Any?, data: Data, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
+    override fun writeProperty(obj: Any?, data: AMQPWriter, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
             throw UnsupportedOperationException("Evolution serializers cannot write values")
 }
 
@@ -223,7 +236,7 @@ class DescribedTypeWriteStrategy(private val name: String,
         }
     }
 
-    override fun writeProperty(obj: Any?, data: Data, output: SerializationOutput, context: SerializationContext,
+    override fun writeProperty(obj: Any?, data: AMQPWriter, output: SerializationOutput, context: SerializationContext,
                                debugIndent: Int) = ifThrowsAppend({ nameForDebug }) {
         val propertyValue = reader.read(obj)
         output.writeObjectOrNull(propertyValue, data, propertyInformation.type.observedType, context, debugIndent)
@@ -238,7 +251,7 @@ object AMQPPropertyReadStrategy : PropertyReadStrategy {
 class AMQPPropertyWriteStrategy(private val reader: PropertyReader) : PropertyWriteStrategy {
     override fun writeClassInfo(output: SerializationOutput) {}
 
-    override fun writeProperty(obj: Any?, data: Data, output: SerializationOutput,
+    override fun writeProperty(obj: Any?, data: AMQPWriter, output: SerializationOutput,
                                context: SerializationContext, debugIndent: Int
     ) {
         val value = reader.read(obj)
@@ -262,7 +275,7 @@ object AMQPCharPropertyReadStrategy : PropertyReadStrategy {
 class AMQPCharPropertyWriteStategy(private val reader: PropertyReader) : PropertyWriteStrategy {
     override fun writeClassInfo(output: SerializationOutput) {}
 
-    override fun writeProperty(obj: Any?, data: Data, output: SerializationOutput,
+    override fun writeProperty(obj: Any?, data: AMQPWriter, output: SerializationOutput,
                                context: SerializationContext, debugIndent: Int
     ) {
         val input = reader.read(obj)
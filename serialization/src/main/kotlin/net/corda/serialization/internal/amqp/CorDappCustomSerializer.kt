@@ -5,7 +5,6 @@ import net.corda.core.internal.uncheckedCast
 import net.corda.core.serialization.SerializationContext
 import net.corda.core.serialization.SerializationCustomSerializer
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import kotlin.reflect.jvm.javaType
 import kotlin.reflect.jvm.jvmErasure
@@ -70,7 +69,7 @@ class CorDappCustomSerializer(
 
     override fun writeClassInfo(output: SerializationOutput) {}
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         val proxy = uncheckedCast<SerializationCustomSerializer<*, *>,
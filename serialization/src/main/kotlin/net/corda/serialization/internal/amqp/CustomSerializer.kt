@@ -6,7 +6,6 @@ import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.model.FingerprintWriter
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 
 interface SerializerFor {
@@ -48,7 +47,7 @@ abstract class CustomSerializer<T : Any> : AMQPSerializer<T>, SerializerFor {
      */
     override val revealSubclassesInSchema: Boolean get() = false
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         data.withDescribed(descriptor) {
@@ -56,7 +55,7 @@ abstract class CustomSerializer<T : Any> : AMQPSerializer<T>, SerializerFor {
         }
     }
 
-    abstract fun writeDescribedObject(obj: T, data: Data, type: Type, output: SerializationOutput,
+    abstract fun writeDescribedObject(obj: T, data: AMQPWriter, type: Type, output: SerializationOutput,
                                       context: SerializationContext)
 
     /**
@@ -105,7 +104,7 @@ abstract class CustomSerializer<T : Any> : AMQPSerializer<T>, SerializerFor {
 
         override val descriptor: Descriptor = Descriptor(typeDescriptor)
 
-        override fun writeDescribedObject(obj: T, data: Data, type: Type, output: SerializationOutput,
+        override fun writeDescribedObject(obj: T, data: AMQPWriter, type: Type, output: SerializationOutput,
                                           context: SerializationContext
         ) {
             superClassSerializer.writeDescribedObject(obj, data, type, output, context)
@@ -178,7 +177,7 @@ abstract class CustomSerializer<T : Any> : AMQPSerializer<T>, SerializerFor {
 
         protected abstract fun fromProxy(proxy: P): T
 
-        override fun writeDescribedObject(obj: T, data: Data, type: Type, output: SerializationOutput,
+        override fun writeDescribedObject(obj: T, data: AMQPWriter, type: Type, output: SerializationOutput,
                                           context: SerializationContext
         ) {
             val proxy = toProxy(obj)
@@ -221,7 +220,7 @@ abstract class CustomSerializer<T : Any> : AMQPSerializer<T>, SerializerFor {
                         AMQPTypeIdentifiers.primitiveTypeName(String::class.java),
                         descriptor, emptyList())))
 
-        override fun writeDescribedObject(obj: T, data: Data, type: Type, output: SerializationOutput,
+        override fun writeDescribedObject(obj: T, data: AMQPWriter, type: Type, output: SerializationOutput,
                                           context: SerializationContext
         ) {
             data.putString(unmaker(obj))
@@ -13,7 +13,6 @@ import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Binary
 import org.apache.qpid.proton.amqp.DescribedType
 import org.apache.qpid.proton.amqp.UnsignedInteger
-import org.apache.qpid.proton.codec.Data
 import java.io.InputStream
 import java.io.NotSerializableException
 import java.lang.Exception
@@ -68,23 +67,20 @@ class DeserializationInput constructor(
         }
 
         @Throws(AMQPNoTypeNotSerializableException::class)
-        fun getEnvelope(byteSequence: ByteSequence, encodingWhitelist: EncodingWhitelist = NullEncodingWhitelist): Envelope {
+        fun getEnvelope(
+                byteSequence: ByteSequence,
+                encodingWhitelist: EncodingWhitelist = NullEncodingWhitelist,
+                receivedSchemas: ReceivedSchemas? = null
+        ): Envelope {
             return withDataBytes(byteSequence, encodingWhitelist) { dataBytes ->
-                val data = Data.Factory.create()
-                val expectedSize = dataBytes.remaining()
-                if (data.decode(dataBytes) != expectedSize.toLong()) {
-                    throw AMQPNoTypeNotSerializableException(
-                            "Unexpected size of data",
-                            "Blob is corrupted!.")
-                }
-                Envelope.get(data)
+                Envelope.get(AMQPStreamDecoder.decode(dataBytes), receivedSchemas)
             }
         }
     }
 
     @VisibleForTesting
     @Throws(AMQPNoTypeNotSerializableException::class)
-    fun getEnvelope(byteSequence: ByteSequence, context: SerializationContext) = getEnvelope(byteSequence, context.encodingWhitelist)
+    fun getEnvelope(byteSequence: ByteSequence, context: SerializationContext) = getEnvelope(byteSequence, context.encodingWhitelist, context.receivedSchemas)
 
     @Throws(
             AMQPNotSerializableException::class,
@@ -118,7 +114,7 @@ class DeserializationInput constructor(
     @Throws(NotSerializableException::class)
     fun <T : Any> deserialize(bytes: ByteSequence, clazz: Class<T>, context: SerializationContext): T =
             des {
-                val envelope = getEnvelope(bytes, context.encodingWhitelist)
+                val envelope = getEnvelope(bytes, context.encodingWhitelist, context.receivedSchemas)
 
                 logger.trace { "deserialize blob scheme=\"${envelope.schema}\"" }
 
@@ -131,7 +127,7 @@ class DeserializationInput constructor(
             clazz: Class<T>,
             context: SerializationContext
     ): ObjectAndEnvelope<T> = des {
-        val envelope = getEnvelope(bytes, context.encodingWhitelist)
+        val envelope = getEnvelope(bytes, context.encodingWhitelist, context.receivedSchemas)
         // Now pick out the obj and schema from the envelope.
         ObjectAndEnvelope(doReadObject(envelope, clazz, context), envelope)
     }
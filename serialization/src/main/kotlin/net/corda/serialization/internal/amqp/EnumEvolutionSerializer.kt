@@ -4,7 +4,6 @@ import net.corda.core.internal.uncheckedCast
 import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.model.LocalTypeInformation
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.io.NotSerializableException
 import java.lang.UnsupportedOperationException
 import java.lang.reflect.Type
@@ -58,7 +57,7 @@ class EnumEvolutionSerializer(
         throw UnsupportedOperationException("It should be impossible to write an evolution serializer")
     }
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         throw UnsupportedOperationException("It should be impossible to write an evolution serializer")
@@ -1,7 +1,6 @@
 package net.corda.serialization.internal.amqp
 
 import net.corda.core.serialization.SerializationContext
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 
 /**
@@ -41,7 +40,7 @@ class EnumSerializer(declaredType: Type, declaredClass: Class<*>, factory: Local
         return fromOrd
     }
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput,
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput,
                              context: SerializationContext, debugIndent: Int
     ) {
         if (obj !is Enum<*>) throw AMQPNotSerializableException(type, "Serializing $obj as enum when it isn't")
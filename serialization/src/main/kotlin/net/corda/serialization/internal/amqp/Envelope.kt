@@ -1,6 +1,8 @@
 package net.corda.serialization.internal.amqp
 
 import net.corda.core.KeepForDJVM
+import net.corda.core.crypto.SecureHash
+import org.apache.qpid.proton.amqp.Binary
 import org.apache.qpid.proton.amqp.DescribedType
 import org.apache.qpid.proton.codec.Data
 import org.apache.qpid.proton.codec.DescribedTypeConstructor
@@ -11,6 +13,9 @@ import java.io.NotSerializableException
  * This class wraps all serialized data, so that the schema can be carried along with it.  We will provide various
  * internal utilities to decompose and recompose with/without schema etc so that e.g. we can store objects with a
  * (relationally) normalised out schema to avoid excessive duplication.
+ *
+ * When written with a [SentSchemas] the envelope also carries a fingerprint of its schemas, and leaves the schemas
+ * themselves out if the receiver already holds them in its [ReceivedSchemas].
  */
 // TODO: make the schema parsing lazy since mostly schemas will have been seen before and we only need it if we
 // TODO: don't recognise a type descriptor.
@@ -20,16 +25,23 @@ data class Envelope(val obj: Any?, val schema: Schema, val transformsSchema: Tra
         val DESCRIPTOR = AMQPDescriptorRegistry.ENVELOPE.amqpDescriptor
         val DESCRIPTOR_OBJECT = Descriptor(null, DESCRIPTOR)
 
-        // described list should either be two or three elements long
+        // described list should either be two, three or four elements long
         private const val ENVELOPE_WITHOUT_TRANSFORMS = 2
         private const val ENVELOPE_WITH_TRANSFORMS = 3
+        private const val ENVELOPE_WITH_FINGERPRINT = 4
 
         private const val BLOB_IDX = 0
         private const val SCHEMA_IDX = 1
         private const val TRANSFORMS_SCHEMA_IDX = 2
+        private const val FINGERPRINT_IDX = 3
 
-        fun get(data: Data): Envelope {
-            val describedType = data.`object` as DescribedType
+        fun get(data: Data, receivedSchemas: ReceivedSchemas? = null): Envelope = get(data.`object`, receivedSchemas)
+
+        /**
+         * Builds the envelope from its decoded form, as returned by [AMQPStreamDecoder].
+         */
+        fun get(decoded: Any?, receivedSchemas: ReceivedSchemas? = null): Envelope {
+            val describedType = decoded as DescribedType
             if (describedType.descriptor != DESCRIPTOR) {
                 throw AMQPNoTypeNotSerializableException(
                         "Unexpected descriptor ${describedType.descriptor}, should be $DESCRIPTOR.")
@@ -41,14 +53,36 @@ data class Envelope(val obj: Any?, val schema: Schema, val transformsSchema: Tra
             val transformSchema: Any? = when (list.size) {
                 ENVELOPE_WITHOUT_TRANSFORMS -> null
                 ENVELOPE_WITH_TRANSFORMS -> list[TRANSFORMS_SCHEMA_IDX]
+                ENVELOPE_WITH_FINGERPRINT -> return withReferencedSchema(list, receivedSchemas)
                 else -> throw AMQPNoTypeNotSerializableException(
-                        "Malformed list, bad length of ${list.size} (should be 2 or 3)")
+                        "Malformed list, bad length of ${list.size} (should be 2, 3 or 4)")
             }
 
             return newInstance(listOf(list[BLOB_IDX], Schema.get(list[SCHEMA_IDX]!!),
                     TransformsSchema.newInstance(transformSchema)))
         }
 
+        private fun withReferencedSchema(list: List<*>, receivedSchemas: ReceivedSchemas?): Envelope {
+            if (receivedSchemas == null) {
+                throw AMQPNoTypeNotSerializableException(
+                        "Envelope refers to its schema by fingerprint, but schema references are not enabled.")
+            }
+            val fingerprint = SecureHash.SHA256((list[FINGERPRINT_IDX] as Binary).asByteBuffer().let { buffer ->
+                ByteArray(buffer.remaining()).also { buffer.get(it) }
+            })
+            val schemas = if (list[SCHEMA_IDX] == null) {
+                receivedSchemas[fingerprint] ?: throw UnknownSchemaReferenceException(fingerprint)
+            } else {
+                val schemas = receivedSchemas[fingerprint] ?: FingerprintedSchema(
+                        Schema.get(list[SCHEMA_IDX]!!),
+                        TransformsSchema.newInstance(list[TRANSFORMS_SCHEMA_IDX]),
+                        fingerprint)
+                receivedSchemas.receivedInFull(schemas)
+                schemas
+            }
+            return Envelope(list[BLOB_IDX], schemas.schema, schemas.transformsSchema)
+        }
+
         // This separation of functions is needed as this will be the entry point for the default
         // AMQP decoder if one is used (see the unit tests).
         override fun newInstance(described: Any?): Envelope {
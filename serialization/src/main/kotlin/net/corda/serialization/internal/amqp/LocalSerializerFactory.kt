@@ -40,6 +40,12 @@ interface LocalSerializerFactory {
      */
     val customSerializerNames: List<String>
 
+    /**
+     * The [PropertyAccessorFactory] used by the [ObjectSerializer]s this factory builds.
+     */
+    @JvmDefault
+    val accessorFactory: PropertyAccessorFactory get() = ReflectivePropertyAccessorFactory
+
     /**
      * Obtain an [AMQPSerializer] for an object of actual type [actualClass], and declared type [declaredType].
      */
@@ -100,7 +106,8 @@ class DefaultLocalSerializerFactory(
         private val primitiveSerializerFactory: Function<Class<*>, AMQPSerializer<Any>>,
         private val isPrimitiveType: Predicate<Class<*>>,
         private val customSerializerRegistry: CustomSerializerRegistry,
-        private val onlyCustomSerializers: Boolean)
+        private val onlyCustomSerializers: Boolean,
+        override val accessorFactory: PropertyAccessorFactory = ReflectivePropertyAccessorFactory)
     : LocalSerializerFactory {
 
     companion object {
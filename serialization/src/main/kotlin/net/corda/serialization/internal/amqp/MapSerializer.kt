@@ -7,7 +7,6 @@ import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.model.LocalTypeInformation
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.io.NotSerializableException
 import java.lang.reflect.ParameterizedType
 import java.lang.reflect.Type
@@ -100,7 +99,7 @@ class MapSerializer(private val declaredType: ParameterizedType, factory: LocalS
 
     override fun writeObject(
             obj: Any,
-            data: Data,
+            data: AMQPWriter,
             type: Type,
             output: SerializationOutput,
             context: SerializationContext,
@@ -28,6 +28,14 @@ data class ObjectBuilderProvider(
  */
 private class ConstructorCaller(private val javaConstructor: Constructor<Any>) : (Array<Any?>) -> Any {
 
+    companion object {
+        /**
+         * Call the constructor through a [ConstructorInvoker] if the [PropertyAccessorFactory] supplies one, or by reflection if not.
+         */
+        fun make(javaConstructor: Constructor<Any>, accessorFactory: PropertyAccessorFactory): (Array<Any?>) -> Any =
+                accessorFactory.invokerFor(javaConstructor)?.let { InvokerCaller(javaConstructor, it) } ?: ConstructorCaller(javaConstructor)
+    }
+
     override fun invoke(parameters: Array<Any?>): Any =
             try {
                 javaConstructor.newInstance(*parameters)
@@ -46,6 +54,22 @@ private class ConstructorCaller(private val javaConstructor: Constructor<Any>) :
             }
 }
 
+/**
+ * Wraps the operation of calling a constructor through a [ConstructorInvoker], with the same exception handling as [ConstructorCaller].
+ */
+private class InvokerCaller(private val javaConstructor: Constructor<Any>, private val invoker: ConstructorInvoker) : (Array<Any?>) -> Any {
+
+    override fun invoke(parameters: Array<Any?>): Any =
+            try {
+                invoker.invoke(parameters)
+            } catch (e: Exception) {
+                throw NotSerializableException(
+                        "Constructor for ${javaConstructor.declaringClass} " +
+                                "failed when called with parameters ${parameters.toList()}: ${e.message}"
+                )
+            }
+}
+
 /**
  * Wraps the operation of calling a setter, with helpful exception handling.
  */
@@ -78,8 +102,11 @@ interface ObjectBuilder {
         /**
          * Create an [ObjectBuilderProvider] for the given [LocalTypeInformation.Composable].
          */
-        fun makeProvider(typeInformation: LocalTypeInformation.Composable): ObjectBuilderProvider =
-                makeProvider(typeInformation.typeIdentifier, typeInformation.constructor, typeInformation.properties)
+        fun makeProvider(
+                typeInformation: LocalTypeInformation.Composable,
+                accessorFactory: PropertyAccessorFactory = ReflectivePropertyAccessorFactory
+        ): ObjectBuilderProvider =
+                makeProvider(typeInformation.typeIdentifier, typeInformation.constructor, typeInformation.properties, accessorFactory)
 
         /**
          * Create an [ObjectBuilderProvider] for the given type, constructor and set of properties.
@@ -90,15 +117,17 @@ interface ObjectBuilder {
         fun makeProvider(
                 typeIdentifier: TypeIdentifier,
                 constructor: LocalConstructorInformation,
-                properties: Map<String, LocalPropertyInformation>
+                properties: Map<String, LocalPropertyInformation>,
+                accessorFactory: PropertyAccessorFactory = ReflectivePropertyAccessorFactory
         ): ObjectBuilderProvider =
-                if (constructor.hasParameters) makeConstructorBasedProvider(properties, typeIdentifier, constructor)
-                else makeSetterBasedProvider(properties, typeIdentifier, constructor)
+                if (constructor.hasParameters) makeConstructorBasedProvider(properties, typeIdentifier, constructor, accessorFactory)
+                else makeSetterBasedProvider(properties, typeIdentifier, constructor, accessorFactory)
 
         private fun makeConstructorBasedProvider(
                 properties: Map<String, LocalPropertyInformation>,
                 typeIdentifier: TypeIdentifier,
-                constructor: LocalConstructorInformation
+                constructor: LocalConstructorInformation,
+                accessorFactory: PropertyAccessorFactory
         ): ObjectBuilderProvider {
             requireForSer(properties.values.all {
                 when (it) {
@@ -122,16 +151,18 @@ interface ObjectBuilder {
             }
 
             val propertySlots = constructorIndices.keys.mapIndexed { slot, name -> name to slot }.toMap()
+            val constructorCaller = ConstructorCaller.make(constructor.observedMethod, accessorFactory)
 
             return ObjectBuilderProvider(propertySlots) {
-                ConstructorBasedObjectBuilder(constructor, constructorIndices.values.toIntArray())
+                ConstructorBasedObjectBuilder(constructor, constructorCaller, constructorIndices.values.toIntArray())
             }
         }
 
         private fun makeSetterBasedProvider(
                 properties: Map<String, LocalPropertyInformation>,
                 typeIdentifier: TypeIdentifier,
-                constructor: LocalConstructorInformation
+                constructor: LocalConstructorInformation,
+                accessorFactory: PropertyAccessorFactory
         ): ObjectBuilderProvider {
             val setters = properties.mapValues { (name, property) ->
                 when (property) {
@@ -145,9 +176,10 @@ interface ObjectBuilder {
             }
 
             val propertySlots = setters.keys.mapIndexed { slot, name -> name to slot }.toMap()
+            val constructorCaller = ConstructorCaller.make(constructor.observedMethod, accessorFactory)
 
             return ObjectBuilderProvider(propertySlots) {
-                SetterBasedObjectBuilder(ConstructorCaller(constructor.observedMethod), setters.values.toList())
+                SetterBasedObjectBuilder(constructorCaller, setters.values.toList())
             }
         }
     }
@@ -173,7 +205,7 @@ interface ObjectBuilder {
  * and calling a setter method for each value populated into one of its slots.
  */
 private class SetterBasedObjectBuilder(
-        private val constructor: ConstructorCaller,
+        private val constructor: (Array<Any?>) -> Any,
         private val setters: List<SetterCaller?>
 ) : ObjectBuilder {
 
@@ -195,11 +227,11 @@ private class SetterBasedObjectBuilder(
  * and calling a constructor with those parameters to obtain the configured object instance.
  */
 private class ConstructorBasedObjectBuilder(
-        private val constructorInfo: LocalConstructorInformation,
+        constructorInfo: LocalConstructorInformation,
+        private val constructor: (Array<Any?>) -> Any,
         private val slotToCtorArgIdx: IntArray
 ) : ObjectBuilder {
 
-    private val constructor = ConstructorCaller(constructorInfo.observedMethod)
     private val params = arrayOfNulls<Any>(constructorInfo.parameters.size)
 
     init {
@@ -10,7 +10,6 @@ import net.corda.serialization.internal.model.RemotePropertyInformation
 import net.corda.serialization.internal.model.RemoteTypeInformation
 import net.corda.serialization.internal.model.TypeIdentifier
 import org.apache.qpid.proton.amqp.Symbol
-import org.apache.qpid.proton.codec.Data
 import java.io.NotSerializableException
 import java.lang.reflect.Type
 
@@ -76,7 +75,7 @@ interface ObjectSerializer : AMQPSerializer<Any> {
             val reader = ComposableObjectReader(
                     typeInformation.typeIdentifier,
                     propertySerializers,
-                    ObjectBuilder.makeProvider(typeInformation))
+                    ObjectBuilder.makeProvider(typeInformation, factory.accessorFactory))
 
             val writer = ComposableObjectWriter(
                     typeNotation,
@@ -110,7 +109,7 @@ class ComposableObjectSerializer(
 
     override fun writeClassInfo(output: SerializationOutput) = writer.writeClassInfo(output)
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
             writer.writeObject(obj, data, type, output, context, debugIndent)
 
     override fun readObject(obj: Any, schemas: SerializationSchemas, input: DeserializationInput, context: SerializationContext): Any =
@@ -135,7 +134,7 @@ class ComposableObjectWriter(
     }
 
     fun writeObject(
-            obj: Any, data: Data,
+            obj: Any, data: AMQPWriter,
             @Suppress("UNUSED_PARAMETER") type: Type,
             output: SerializationOutput,
             context: SerializationContext,
@@ -185,7 +184,7 @@ class AbstractObjectSerializer(
     override fun writeClassInfo(output: SerializationOutput) =
         writer.writeClassInfo(output)
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
         writer.writeObject(obj, data, type, output, context, debugIndent)
 
     override fun readObject(obj: Any, schemas: SerializationSchemas, input: DeserializationInput, context: SerializationContext): Any =
@@ -239,7 +238,7 @@ class EvolutionObjectSerializer(
     override fun writeClassInfo(output: SerializationOutput) =
             throw UnsupportedOperationException("Evolved types cannot be written")
 
-    override fun writeObject(obj: Any, data: Data, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
+    override fun writeObject(obj: Any, data: AMQPWriter, type: Type, output: SerializationOutput, context: SerializationContext, debugIndent: Int) =
             throw UnsupportedOperationException("Evolved types cannot be written")
 
     override fun readObject(obj: Any, schemas: SerializationSchemas, input: DeserializationInput, context: SerializationContext): Any =
@@ -0,0 +1,52 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.core.KeepForDJVM
+import java.lang.reflect.Constructor
+import java.lang.reflect.Method
+
+/**
+ * Reads the value of a property from an instance of the type to which it belongs, without using reflection.
+ */
+@KeepForDJVM
+interface PropertyAccessor {
+    /**
+     * Get the value of the property from the supplied (non-null) instance.
+     */
+    fun read(obj: Any): Any?
+}
+
+/**
+ * Calls a constructor with the given parameters, without using reflection.
+ */
+@KeepForDJVM
+interface ConstructorInvoker {
+    /**
+     * Create a new instance, passing [parameters] to the constructor in order.
+     */
+    fun invoke(parameters: Array<Any?>): Any
+}
+
+/**
+ * Supplies [PropertyAccessor]s and [ConstructorInvoker]s to the [ObjectSerializer]s built by a [LocalSerializerFactory].
+ */
+@KeepForDJVM
+interface PropertyAccessorFactory {
+    /**
+     * Obtain a [PropertyAccessor] which calls the given getter, or null if the getter should be called by reflection.
+     */
+    fun accessorFor(getter: Method): PropertyAccessor?
+
+    /**
+     * Obtain a [ConstructorInvoker] for the given constructor, or null if the constructor should be called by reflection.
+     */
+    fun invokerFor(constructor: Constructor<*>): ConstructorInvoker?
+}
+
+/**
+ * The default [PropertyAccessorFactory], which leaves all property access and construction to reflection.
+ */
+@KeepForDJVM
+object ReflectivePropertyAccessorFactory : PropertyAccessorFactory {
+    override fun accessorFor(getter: Method): PropertyAccessor? = null
+    override fun invokerFor(constructor: Constructor<*>): ConstructorInvoker? = null
+}
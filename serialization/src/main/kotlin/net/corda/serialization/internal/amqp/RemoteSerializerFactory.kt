@@ -7,6 +7,7 @@ import net.corda.core.utilities.trace
 import net.corda.serialization.internal.model.*
 import java.io.NotSerializableException
 import java.util.Collections.singletonList
+import java.util.concurrent.atomic.LongAdder
 
 /**
  * A factory that knows how to create serializers to deserialize values sent to us by remote parties.
@@ -38,7 +39,9 @@ data class RemoteAndLocalTypeInformation(
  * using the [EvolutionSerializerFactory].
  *
  * Its decisions are recorded by registering the chosen serialisers against their type descriptors
- * in the [DescriptorBasedSerializerRegistry].
+ * in the [DescriptorBasedSerializerRegistry]. As a type descriptor is the fingerprint of its type and of every type it
+ * refers to, and each factory serves a single classloader, a descriptor that has been seen before is resolved without
+ * interpreting the schema again.
  *
  * @param evolutionSerializerFactory The [EvolutionSerializerFactory] to use to create evolution serializers, when necessary.
  * @param descriptorBasedSerializerRegistry The registry to use to store serializers by [TypeDescriptor].
@@ -58,19 +61,36 @@ class DefaultRemoteSerializerFactory(
 
     companion object {
         private val logger = contextLogger()
+
+        private val hits = LongAdder()
+        private val misses = LongAdder()
+
+        /** The number of serializers found already resolved for their type descriptor, across all factories. */
+        val resolvedTypeCacheHits: Long get() = hits.sum()
+
+        /** The number of type descriptors which needed their schema interpreting, across all factories. */
+        val resolvedTypeCacheMisses: Long get() = misses.sum()
     }
 
     override fun get(
             typeDescriptor: TypeDescriptor,
             schema: SerializationSchemas,
             context: SerializationContext
-    ): AMQPSerializer<Any> =
+    ): AMQPSerializer<Any> {
         // If we have seen this descriptor before, we assume we have seen everything in this schema before.
-        descriptorBasedSerializerRegistry.getOrBuild(typeDescriptor) {
+        descriptorBasedSerializerRegistry[typeDescriptor]?.let {
+            hits.increment()
+            return it
+        }
+        return descriptorBasedSerializerRegistry.getOrBuild(typeDescriptor) {
             logger.trace { "get Serializer descriptor=$typeDescriptor" }
+            misses.increment()
 
-            // Interpret all of the types in the schema into RemoteTypeInformation, and reflect that into LocalTypeInformation.
-            val remoteTypeInformationMap = remoteTypeModel.interpret(schema)
+            // Interpret all of the types in the schema into RemoteTypeInformation, and reflect those we have not already
+            // resolved into LocalTypeInformation.
+            val remoteTypeInformationMap = remoteTypeModel.interpret(schema).filterKeys { descriptor ->
+                descriptor == typeDescriptor || descriptorBasedSerializerRegistry[descriptor] == null
+            }
             val reflected = reflect(remoteTypeInformationMap, context)
 
             // Get, and record in the registry, serializers for all of the types contained in the schema.
@@ -87,6 +107,7 @@ class DefaultRemoteSerializerFactory(
                 typeDescriptor = typeDescriptor
             )
         }
+    }
 
     private fun getUncached(
             remoteTypeInformation: RemoteTypeInformation,
@@ -0,0 +1,273 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.core.KeepForDJVM
+import net.corda.core.crypto.SecureHash
+import net.corda.core.serialization.SerializationContext
+import net.corda.core.utilities.ByteSequence
+import net.corda.serialization.internal.NullEncodingWhitelist
+import net.corda.serialization.internal.SectionId
+import net.corda.serialization.internal.byteArrayOutput
+import org.apache.qpid.proton.amqp.Binary
+import java.io.NotSerializableException
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+
+/**
+ * The number of schemas a [SentSchemaCache] remembers the receiver holding by default.
+ */
+const val DEFAULT_SENT_SCHEMA_CACHE_SIZE = 256
+
+/**
+ * The schema and transforms schema of an [Envelope], together with the fingerprint that identifies them on the wire.
+ */
+@KeepForDJVM
+class FingerprintedSchema(val schema: Schema, val transformsSchema: TransformsSchema, val fingerprint: SecureHash) {
+    companion object {
+        /** Reads schemas written by [encode]. */
+        fun decode(bytes: ByteSequence): FingerprintedSchema {
+            val receivedSchemas = ReceivedSchemaCache(size = 1)
+            DeserializationInput.getEnvelope(bytes, receivedSchemas = receivedSchemas)
+            return receivedSchemas.schemas.single()
+        }
+
+        /**
+         * Identifies the schemas describing [types], so that they can be looked up rather than [built][build] again.
+         */
+        fun keyOf(types: Collection<TypeNotation>): List<String> = types.map { it.descriptor.name?.toString() ?: it.name }
+
+        /** Builds the schemas describing [types], and fingerprints them. */
+        fun build(types: Collection<TypeNotation>, buildTransforms: (Schema) -> TransformsSchema): FingerprintedSchema {
+            val schema = Schema(types.toList())
+            val transformsSchema = buildTransforms(schema)
+            val data = AMQPStreamEncoder()
+            data.putObject(schema)
+            data.putObject(transformsSchema)
+            return FingerprintedSchema(schema, transformsSchema, SecureHash.sha256(data.encode().array))
+        }
+    }
+
+    /**
+     * Writes these schemas in full in an envelope of their own, which holds no object. Reading it with a
+     * [ReceivedSchemaCache] records the schemas in the cache.
+     */
+    fun encode(): ByteArray {
+        val data = AMQPStreamEncoder()
+        data.withDescribed(Envelope.DESCRIPTOR_OBJECT) {
+            withList {
+                putNull()
+                putObject(schema)
+                putObject(transformsSchema)
+                putBinary(fingerprint.bytes)
+            }
+        }
+        return byteArrayOutput {
+            amqpMagic.writeTo(it)
+            SectionId.DATA_AND_STOP.writeTo(it)
+            data.writeTo(it)
+        }
+    }
+}
+
+/**
+ * Decides which envelope schemas [SerializationOutput] writes in full, and which by fingerprint alone because the
+ * receiver holds them already.
+ */
+@KeepForDJVM
+interface SentSchemas {
+    /**
+     * Returns the schema describing [types], and whether it has to be sent in full because the receiver may not hold it.
+     */
+    fun reference(types: Collection<TypeNotation>, buildTransforms: (Schema) -> TransformsSchema): Pair<FingerprintedSchema, Boolean>
+}
+
+/**
+ * The envelope schemas held by a receiver, with which [DeserializationInput] reads envelopes that only carry a fingerprint.
+ */
+@KeepForDJVM
+interface ReceivedSchemas {
+    operator fun get(fingerprint: SecureHash): FingerprintedSchema?
+
+    /** Records a schema received in full. */
+    fun receivedInFull(schema: FingerprintedSchema)
+}
+
+/**
+ * The schema fingerprint of an envelope written with [SentSchemas], together with the schemas if the envelope carries them
+ * in full. It is found without decoding the rest of the envelope, so that the schemas of messages can be tracked as the
+ * messages are sent and received rather than only when their payloads are read.
+ *
+ * @property encodedSchemas The schema and transforms schema as encoded in the envelope, which is what [fingerprint] is the
+ * hash of, or null if the envelope refers to them by fingerprint alone.
+ */
+@KeepForDJVM
+class SchemaReference(val fingerprint: SecureHash, val encodedSchemas: ByteArray?) {
+    companion object {
+        private const val DESCRIBED = 0x00
+        private const val NULL = 0x40
+        private const val ENVELOPE_WITH_FINGERPRINT = 4
+
+        /**
+         * Finds the schema reference of the envelope in [bytes]. Returns null if the envelope was written without one, or
+         * cannot be read.
+         */
+        fun read(bytes: ByteSequence): SchemaReference? {
+            return try {
+                DeserializationInput.withDataBytes(bytes, NullEncodingWhitelist, ::read)
+            } catch (e: NotSerializableException) {
+                null
+            } catch (e: BufferUnderflowException) {
+                null
+            } catch (e: IllegalArgumentException) {
+                null
+            }
+        }
+
+        private fun read(buffer: ByteBuffer): SchemaReference? {
+            if (buffer.get().toInt() != DESCRIBED || AMQPStreamDecoder.decodeNext(buffer) != Envelope.DESCRIPTOR) {
+                return null
+            }
+            // The list's size comes before its count, and is not needed.
+            val count = when (buffer.get().toInt() and 0xff) {
+                0xc0 -> {
+                    buffer.get()
+                    buffer.get().toInt() and 0xff
+                }
+                0xd0 -> {
+                    buffer.int
+                    buffer.int
+                }
+                else -> return null
+            }
+            if (count != ENVELOPE_WITH_FINGERPRINT) {
+                return null
+            }
+            AMQPStreamDecoder.skip(buffer)
+            val start = buffer.position()
+            val encodedSchemas = if (buffer.get(start).toInt() == NULL) {
+                buffer.position(start + 2)
+                null
+            } else {
+                AMQPStreamDecoder.skip(buffer)
+                AMQPStreamDecoder.skip(buffer)
+                ByteArray(buffer.position() - start).also {
+                    buffer.position(start)
+                    buffer.get(it)
+                }
+            }
+            val fingerprint = AMQPStreamDecoder.decodeNext(buffer) as? Binary ?: return null
+            return SchemaReference(SecureHash.SHA256(fingerprint.array), encodedSchemas)
+        }
+    }
+
+    /**
+     * Decodes the schemas carried in full. Returns null if the envelope does not carry them, or they do not hash to the
+     * fingerprint.
+     */
+    @Throws(NotSerializableException::class)
+    fun decodeSchemas(): FingerprintedSchema? {
+        val encoded = encodedSchemas ?: return null
+        if (SecureHash.sha256(encoded) != fingerprint) {
+            return null
+        }
+        // Decode them as the two elements of a list, as they are written back to back.
+        val list = ByteBuffer.allocate(9 + encoded.size)
+        list.put(0xd0.toByte()).putInt(4 + encoded.size).putInt(2).put(encoded).flip()
+        val (schema, transformsSchema) = AMQPStreamDecoder.decode(list) as List<*>
+        return FingerprintedSchema(Schema.get(schema!!), TransformsSchema.newInstance(transformsSchema), fingerprint)
+    }
+}
+
+/**
+ * Thrown when an envelope refers to a schema which the [ReceivedSchemaCache] does not hold, for example because the
+ * message which carried it in full was lost. The sender can [SentSchemaCache.resend] it.
+ */
+@KeepForDJVM
+class UnknownSchemaReferenceException(val fingerprint: SecureHash) : NotSerializableException(
+        "Envelope refers to unknown schema $fingerprint. The sender's schema cache has diverged from ours.")
+
+/**
+ * Tracks the envelope schemas which have already been sent in full over one connection, so that [SerializationOutput] can
+ * send only their fingerprint from then on.
+ *
+ * This relies on the receiver reading envelopes in the order they were written, with a [ReceivedSchemaCache] at least as
+ * large as this one: both ends then evict schemas in the order they were sent in full, so any schema this cache still
+ * holds is also held by the receiver. Should an envelope be lost on the way, the receiver fails to read the next one
+ * which refers to a schema it carried with an [UnknownSchemaReferenceException], and can ask for the schema to be
+ * [resend]. It is not thread safe, as envelopes for one connection must be written in order anyway.
+ */
+@KeepForDJVM
+class SentSchemaCache(val size: Int = DEFAULT_SENT_SCHEMA_CACHE_SIZE) : SentSchemas {
+    // Built schemas by the descriptors of the types they describe, so that repeated messages skip rebuilding them.
+    private val built = AccessOrderLinkedHashMap<List<String>, FingerprintedSchema>(size)
+    private val sent = InsertionOrderLinkedHashMap<SecureHash, FingerprintedSchema>(size)
+
+    /** The schemas sent in full which the receiver still holds, from the least recently sent. */
+    val schemas: List<FingerprintedSchema> get() = sent.values.toList()
+
+    override fun reference(types: Collection<TypeNotation>, buildTransforms: (Schema) -> TransformsSchema): Pair<FingerprintedSchema, Boolean> {
+        val key = FingerprintedSchema.keyOf(types)
+        val schema = built[key] ?: FingerprintedSchema.build(types, buildTransforms).also { built[key] = it }
+        val sendInFull = schema.fingerprint !in sent
+        if (sendInFull) {
+            sent[schema.fingerprint] = schema
+        }
+        return Pair(schema, sendInFull)
+    }
+
+    /**
+     * Records [schema] as sent in full, as when restoring the cache. Schemas must be recorded in the order they were sent.
+     */
+    fun sentInFull(schema: FingerprintedSchema) {
+        sent.remove(schema.fingerprint)
+        sent[schema.fingerprint] = schema
+    }
+
+    /**
+     * Returns the schemas with the given [fingerprint], [encoded][FingerprintedSchema.encode] for a receiver which
+     * has lost them, and records them as the most recently sent. Returns null if they have been evicted, in which case
+     * the receiver cannot be holding any envelope which refers to them either.
+     */
+    fun resend(fingerprint: SecureHash): ByteArray? {
+        val schema = sent[fingerprint] ?: return null
+        sentInFull(schema)
+        return schema.encode()
+    }
+}
+
+/**
+ * Holds the envelope schemas received in full over one connection, so that envelopes which only carry a schema fingerprint
+ * can be deserialized. It must be at least as large as the sender's [SentSchemaCache]; the default leaves some headroom.
+ * Not thread safe, as envelopes for one connection must be read in the order they were written.
+ */
+@KeepForDJVM
+class ReceivedSchemaCache(val size: Int = 2 * DEFAULT_SENT_SCHEMA_CACHE_SIZE) : ReceivedSchemas {
+    private val received = InsertionOrderLinkedHashMap<SecureHash, FingerprintedSchema>(size)
+
+    /** The schemas held, from the least recently sent in full. */
+    val schemas: List<FingerprintedSchema> get() = received.values.toList()
+
+    override operator fun get(fingerprint: SecureHash): FingerprintedSchema? = received[fingerprint]
+
+    /** Records a schema received in full, making it the most recently sent one as far as eviction is concerned. */
+    override fun receivedInFull(schema: FingerprintedSchema) {
+        received.remove(schema.fingerprint)
+        received[schema.fingerprint] = schema
+    }
+}
+
+fun SerializationContext.withSchemaReferences(sentSchemas: SentSchemas): SerializationContext {
+    return withProperty(SentSchemas::class.java, sentSchemas)
+}
+
+fun SerializationContext.withSchemaReferences(receivedSchemas: ReceivedSchemas): SerializationContext {
+    return withProperty(ReceivedSchemas::class.java, receivedSchemas)
+}
+
+val SerializationContext.sentSchemas: SentSchemas? get() = properties[SentSchemas::class.java] as? SentSchemas
+
+val SerializationContext.receivedSchemas: ReceivedSchemas? get() = properties[ReceivedSchemas::class.java] as? ReceivedSchemas
+
+@KeepForDJVM
+private class InsertionOrderLinkedHashMap<K, V>(private val maxSize: Int) : LinkedHashMap<K, V>() {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<K, V>?): Boolean = size > maxSize
+}
@@ -3,13 +3,12 @@ package net.corda.serialization.internal.amqp
 import com.google.common.reflect.TypeToken
 import net.corda.core.serialization.*
 import net.corda.serialization.internal.model.TypeIdentifier
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.*
 
 /**
  * Extension helper for writing described objects.
  */
-fun Data.withDescribed(descriptor: Descriptor, block: Data.() -> Unit) {
+fun AMQPWriter.withDescribed(descriptor: Descriptor, block: AMQPWriter.() -> Unit) {
     // Write described
     putDescribed()
     enter()
@@ -22,7 +21,7 @@ fun Data.withDescribed(descriptor: Descriptor, block: Data.() -> Unit) {
 /**
  * Extension helper for writing lists.
  */
-fun Data.withList(block: Data.() -> Unit) {
+fun AMQPWriter.withList(block: AMQPWriter.() -> Unit) {
     // Write list
     putList()
     enter()
@@ -33,7 +32,7 @@ fun Data.withList(block: Data.() -> Unit) {
 /**
  * Extension helper for outputting reference to already observed object
  */
-fun Data.writeReferencedObject(refObject: ReferencedObject) {
+fun AMQPWriter.writeReferencedObject(refObject: ReferencedObject) {
     // Write described
     putDescribed()
     enter()
@@ -8,7 +8,6 @@ import net.corda.serialization.internal.CordaSerializationEncoding
 import net.corda.serialization.internal.SectionId
 import net.corda.serialization.internal.byteArrayOutput
 import net.corda.serialization.internal.model.TypeIdentifier
-import org.apache.qpid.proton.codec.Data
 import java.io.NotSerializableException
 import java.io.OutputStream
 import java.lang.reflect.Type
@@ -77,13 +76,18 @@ open class SerializationOutput constructor(
     }
 
     internal fun <T : Any> _serialize(obj: T, context: SerializationContext): SerializedBytes<T> {
-        val data = Data.Factory.create()
+        val data = AMQPStreamEncoder()
+        val sentSchemas = context.sentSchemas
         data.withDescribed(Envelope.DESCRIPTOR_OBJECT) {
             withList {
                 writeObject(obj, this, context)
-                val schema = Schema(schemaHistory.toList())
-                writeSchema(schema, this)
-                writeTransformSchema(TransformsSchema.build(schema, serializerFactory), this)
+                if (sentSchemas == null) {
+                    val schema = Schema(schemaHistory.toList())
+                    writeSchema(schema, this)
+                    writeTransformSchema(TransformsSchema.build(schema, serializerFactory), this)
+                } else {
+                    writeSchemaReference(sentSchemas, this)
+                }
             }
         }
         return SerializedBytes(byteArrayOutput {
@@ -97,26 +101,38 @@ open class SerializationOutput constructor(
                     stream = encoding.wrap(stream)
                 }
                 SectionId.DATA_AND_STOP.writeTo(stream)
-                stream.alsoAsByteBuffer(data.encodedSize().toInt(), data::encode)
+                data.writeTo(stream)
             } finally {
                 stream.close()
             }
         })
     }
 
-    internal fun writeObject(obj: Any, data: Data, context: SerializationContext) {
+    internal fun writeObject(obj: Any, data: AMQPWriter, context: SerializationContext) {
         writeObject(obj, data, obj.javaClass, context)
     }
 
-    open fun writeSchema(schema: Schema, data: Data) {
+    private fun writeSchemaReference(sentSchemas: SentSchemas, data: AMQPWriter) {
+        val (schemas, sendInFull) = sentSchemas.reference(schemaHistory) { TransformsSchema.build(it, serializerFactory) }
+        if (sendInFull) {
+            writeSchema(schemas.schema, data)
+            writeTransformSchema(schemas.transformsSchema, data)
+        } else {
+            data.putNull()
+            data.putNull()
+        }
+        data.putBinary(schemas.fingerprint.bytes)
+    }
+
+    open fun writeSchema(schema: Schema, data: AMQPWriter) {
         data.putObject(schema)
     }
 
-    open fun writeTransformSchema(transformsSchema: TransformsSchema, data: Data) {
+    open fun writeTransformSchema(transformsSchema: TransformsSchema, data: AMQPWriter) {
         data.putObject(transformsSchema)
     }
 
-    internal fun writeObjectOrNull(obj: Any?, data: Data, type: Type, context: SerializationContext, debugIndent: Int) {
+    internal fun writeObjectOrNull(obj: Any?, data: AMQPWriter, type: Type, context: SerializationContext, debugIndent: Int) {
         if (obj == null) {
             data.putNull()
         } else {
@@ -124,7 +140,7 @@ open class SerializationOutput constructor(
         }
     }
 
-    internal fun writeObject(obj: Any, data: Data, type: Type, context: SerializationContext, debugIndent: Int = 0) {
+    internal fun writeObject(obj: Any, data: AMQPWriter, type: Type, context: SerializationContext, debugIndent: Int = 0) {
         val serializer = serializerFactory.get(obj.javaClass, type)
         if (serializer !in serializerHistory) {
             serializerHistory.add(serializer)
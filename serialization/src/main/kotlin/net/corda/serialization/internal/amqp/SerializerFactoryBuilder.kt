@@ -4,6 +4,7 @@ import com.google.common.primitives.Primitives
 import net.corda.core.DeleteForDJVM
 import net.corda.core.KeepForDJVM
 import net.corda.core.serialization.ClassWhitelist
+import net.corda.serialization.internal.carpenter.AccessorCarpenter
 import net.corda.serialization.internal.carpenter.ClassCarpenter
 import net.corda.serialization.internal.carpenter.ClassCarpenterImpl
 import net.corda.serialization.internal.model.*
@@ -14,6 +15,12 @@ import java.util.function.Predicate
 
 @KeepForDJVM
 object SerializerFactoryBuilder {
+    /**
+     * Set this system property to true to have object serializers call getters and constructors through generated
+     * bytecode rather than by reflection.
+     */
+    const val GENERATED_ACCESSORS_PROPERTY = "net.corda.serialization.generatedAccessors"
+
     /**
      * The standard mapping of Java object types to Java primitive types.
      * The DJVM will need to override these, but probably not anyone else.
@@ -42,7 +49,8 @@ object SerializerFactoryBuilder {
                 allowEvolution = true,
                 overrideFingerPrinter = null,
                 onlyCustomSerializers = false,
-                mustPreserveDataWhenEvolving = false)
+                mustPreserveDataWhenEvolving = false,
+                accessorFactory = ReflectivePropertyAccessorFactory)
     }
 
     @JvmStatic
@@ -55,7 +63,8 @@ object SerializerFactoryBuilder {
             allowEvolution: Boolean = true,
             overrideFingerPrinter: FingerPrinter? = null,
             onlyCustomSerializers: Boolean = false,
-            mustPreserveDataWhenEvolving: Boolean = false): SerializerFactory {
+            mustPreserveDataWhenEvolving: Boolean = false,
+            generateAccessors: Boolean = java.lang.Boolean.getBoolean(GENERATED_ACCESSORS_PROPERTY)): SerializerFactory {
         return makeFactory(
                 whitelist,
                 classCarpenter,
@@ -63,7 +72,8 @@ object SerializerFactoryBuilder {
                 allowEvolution,
                 overrideFingerPrinter,
                 onlyCustomSerializers,
-                mustPreserveDataWhenEvolving)
+                mustPreserveDataWhenEvolving,
+                if (generateAccessors) AccessorCarpenter() else ReflectivePropertyAccessorFactory)
     }
 
     @JvmStatic
@@ -77,7 +87,8 @@ object SerializerFactoryBuilder {
             allowEvolution: Boolean = true,
             overrideFingerPrinter: FingerPrinter? = null,
             onlyCustomSerializers: Boolean = false,
-            mustPreserveDataWhenEvolving: Boolean = false): SerializerFactory {
+            mustPreserveDataWhenEvolving: Boolean = false,
+            generateAccessors: Boolean = java.lang.Boolean.getBoolean(GENERATED_ACCESSORS_PROPERTY)): SerializerFactory {
         return makeFactory(
                 whitelist,
                 ClassCarpenterImpl(whitelist, carpenterClassLoader, lenientCarpenterEnabled),
@@ -85,7 +96,8 @@ object SerializerFactoryBuilder {
                 allowEvolution,
                 overrideFingerPrinter,
                 onlyCustomSerializers,
-                mustPreserveDataWhenEvolving)
+                mustPreserveDataWhenEvolving,
+                if (generateAccessors) AccessorCarpenter() else ReflectivePropertyAccessorFactory)
     }
 
     private fun makeFactory(whitelist: ClassWhitelist,
@@ -94,7 +106,8 @@ object SerializerFactoryBuilder {
                             allowEvolution: Boolean,
                             overrideFingerPrinter: FingerPrinter?,
                             onlyCustomSerializers: Boolean,
-                            mustPreserveDataWhenEvolving: Boolean): SerializerFactory {
+                            mustPreserveDataWhenEvolving: Boolean,
+                            accessorFactory: PropertyAccessorFactory): SerializerFactory {
         val customSerializerRegistry = CachingCustomSerializerRegistry(descriptorBasedSerializerRegistry)
 
         val localTypeModel = ConfigurableLocalTypeModel(
@@ -114,7 +127,8 @@ object SerializerFactoryBuilder {
                 Function { clazz -> AMQPPrimitiveSerializer(clazz) },
                 Predicate { clazz -> clazz.isPrimitive || Primitives.unwrap(clazz).isPrimitive },
                 customSerializerRegistry,
-                onlyCustomSerializers)
+                onlyCustomSerializers,
+                accessorFactory)
 
         val typeLoader: TypeLoader = ClassCarpentingTypeLoader(
                 SchemaBuildingRemoteTypeCarpenter(classCarpenter),
@@ -3,7 +3,6 @@ package net.corda.serialization.internal.amqp.custom
 import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.amqp.*
 import org.apache.qpid.proton.amqp.Binary
-import org.apache.qpid.proton.codec.Data
 import java.io.ByteArrayInputStream
 import java.io.InputStream
 import java.lang.reflect.Type
@@ -27,7 +26,7 @@ object InputStreamSerializer
                             descriptor,
                             emptyList())))
 
-    override fun writeDescribedObject(obj: InputStream, data: Data, type: Type, output: SerializationOutput,
+    override fun writeDescribedObject(obj: InputStream, data: AMQPWriter, type: Type, output: SerializationOutput,
                                       context: SerializationContext
     ) {
         val startingSize = maxOf(4096, obj.available() + 1)
@@ -5,7 +5,6 @@ import net.corda.core.serialization.SerializationContext
 import net.corda.core.serialization.SerializationContext.UseCase.Storage
 import net.corda.serialization.internal.amqp.*
 import net.corda.serialization.internal.checkUseCase
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import java.security.PrivateKey
 
@@ -23,7 +22,7 @@ object PrivateKeySerializer
             emptyList()
     )))
 
-    override fun writeDescribedObject(obj: PrivateKey, data: Data, type: Type, output: SerializationOutput,
+    override fun writeDescribedObject(obj: PrivateKey, data: AMQPWriter, type: Type, output: SerializationOutput,
                                       context: SerializationContext
     ) {
         checkUseCase(Storage)
@@ -3,7 +3,6 @@ package net.corda.serialization.internal.amqp.custom
 import net.corda.core.crypto.Crypto
 import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.amqp.*
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import java.security.PublicKey
 
@@ -23,7 +22,7 @@ object PublicKeySerializer
             emptyList()
     )))
 
-    override fun writeDescribedObject(obj: PublicKey, data: Data, type: Type, output: SerializationOutput,
+    override fun writeDescribedObject(obj: PublicKey, data: AMQPWriter, type: Type, output: SerializationOutput,
                                       context: SerializationContext
     ) {
         // TODO: Instead of encoding to the default X509 format, we could have a custom per key type (space-efficient) serialiser.
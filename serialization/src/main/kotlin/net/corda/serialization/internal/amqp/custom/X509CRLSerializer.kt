@@ -2,7 +2,6 @@ package net.corda.serialization.internal.amqp.custom
 
 import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.amqp.*
-import org.apache.qpid.proton.codec.Data
 import java.lang.reflect.Type
 import java.security.cert.CertificateFactory
 import java.security.cert.X509CRL
@@ -20,7 +19,7 @@ object X509CRLSerializer
             emptyList()
     )))
 
-    override fun writeDescribedObject(obj: X509CRL, data: Data, type: Type, output: SerializationOutput,
+    override fun writeDescribedObject(obj: X509CRL, data: AMQPWriter, type: Type, output: SerializationOutput,
                                       context: SerializationContext) {
         output.writeObject(obj.encoded, data, clazz, context)
     }
@@ -0,0 +1,149 @@
+@file:DeleteForDJVM
+package net.corda.serialization.internal.carpenter
+
+import net.corda.core.DeleteForDJVM
+import net.corda.core.utilities.contextLogger
+import net.corda.core.utilities.debug
+import net.corda.serialization.internal.amqp.ConstructorInvoker
+import net.corda.serialization.internal.amqp.PropertyAccessor
+import net.corda.serialization.internal.amqp.PropertyAccessorFactory
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes.*
+import org.objectweb.asm.Type
+import java.lang.reflect.Constructor
+import java.lang.reflect.Method
+import java.lang.reflect.Modifier
+import java.util.*
+
+private const val ACCESSOR_PACKAGE = "net.corda.serialization.internal.carpenter.accessors"
+
+private val jlObject: String = Type.getInternalName(Object::class.java)
+private val propertyAccessor: String = Type.getInternalName(PropertyAccessor::class.java)
+private val constructorInvoker: String = Type.getInternalName(ConstructorInvoker::class.java)
+
+/**
+ * A [PropertyAccessorFactory] which generates the bytecode for a class calling each getter or constructor directly,
+ * so that the serializers can avoid reflective calls and their argument arrays on the hot path.
+ *
+ * Each generated class is loaded into a [CarpenterClassLoader] whose parent is the classloader of the type it accesses,
+ * and so it can only reach public members of public types. Anything else, and any class that cannot be generated or
+ * loaded, is left to reflection.
+ *
+ * This class is thread safe.
+ */
+@DeleteForDJVM
+class AccessorCarpenter : PropertyAccessorFactory {
+    companion object {
+        private val logger = contextLogger()
+    }
+
+    private val classLoaders = IdentityHashMap<ClassLoader, CarpenterClassLoader>()
+    private var generated = 0
+
+    override fun accessorFor(getter: Method): PropertyAccessor? {
+        if (!getter.declaringClass.isReachable || !Modifier.isPublic(getter.modifiers) || Modifier.isStatic(getter.modifiers)) {
+            return null
+        }
+        return generate(getter.declaringClass, "PropertyAccessor", propertyAccessor) {
+            with(visitMethod(ACC_PUBLIC, "read", "(L$jlObject;)L$jlObject;", null, null)) {
+                visitCode()
+                visitVarInsn(ALOAD, 1)
+                visitTypeInsn(CHECKCAST, Type.getInternalName(getter.declaringClass))
+                val opcode = if (getter.declaringClass.isInterface) INVOKEINTERFACE else INVOKEVIRTUAL
+                visitMethodInsn(opcode, Type.getInternalName(getter.declaringClass), getter.name,
+                        Type.getMethodDescriptor(getter), getter.declaringClass.isInterface)
+                box(getter.returnType)
+                visitInsn(ARETURN)
+                visitMaxs(0, 0)
+                visitEnd()
+            }
+        }?.newInstance() as PropertyAccessor?
+    }
+
+    override fun invokerFor(constructor: Constructor<*>): ConstructorInvoker? {
+        val owner = constructor.declaringClass
+        if (!owner.isReachable || !Modifier.isPublic(constructor.modifiers) || Modifier.isAbstract(owner.modifiers)
+                || !constructor.parameterTypes.all { it.isReachable }) {
+            return null
+        }
+        return generate(owner, "ConstructorInvoker", constructorInvoker) {
+            with(visitMethod(ACC_PUBLIC, "invoke", "([L$jlObject;)L$jlObject;", null, null)) {
+                visitCode()
+                visitTypeInsn(NEW, Type.getInternalName(owner))
+                visitInsn(DUP)
+                constructor.parameterTypes.forEachIndexed { index, parameterType ->
+                    visitVarInsn(ALOAD, 1)
+                    visitLdcInsn(index)
+                    visitInsn(AALOAD)
+                    unbox(parameterType)
+                }
+                visitMethodInsn(INVOKESPECIAL, Type.getInternalName(owner), "<init>", Type.getConstructorDescriptor(constructor), false)
+                visitInsn(ARETURN)
+                visitMaxs(0, 0)
+                visitEnd()
+            }
+        }?.newInstance() as ConstructorInvoker?
+    }
+
+    @Synchronized
+    private fun generate(target: Class<*>, kind: String, implementing: String, body: ClassWriter.() -> Unit): Class<*>? {
+        // Classes loaded by the bootstrap classloader cannot see the accessor interfaces.
+        val parent = target.classLoader ?: return null
+        val name = "$ACCESSOR_PACKAGE.$kind${generated++}"
+        val jvmName = name.replace('.', '/')
+
+        // ASM sizes the stack and locals of each method, hence the visitMaxs(0, 0) calls. The generated methods are a
+        // single straight line of instructions, so this costs little next to loading the class.
+        val cw = ClassWriter(ClassWriter.COMPUTE_FRAMES or ClassWriter.COMPUTE_MAXS)
+        cw.visit(V1_8, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, jvmName, null, jlObject, arrayOf(implementing))
+        with(cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null)) {
+            visitCode()
+            visitVarInsn(ALOAD, 0)
+            visitMethodInsn(INVOKESPECIAL, jlObject, "<init>", "()V", false)
+            visitInsn(RETURN)
+            visitMaxs(0, 0)
+            visitEnd()
+        }
+        cw.body()
+        cw.visitEnd()
+
+        return try {
+            classLoaders.getOrPut(parent) { CarpenterClassLoader(parent) }.load(name, cw.toByteArray())
+        } catch (e: LinkageError) {
+            logger.debug { "Falling back to reflection for ${target.name}: $e" }
+            null
+        }
+    }
+
+    /**
+     * Whether a generated class in another classloader can refer to this type.
+     */
+    private val Class<*>.isReachable: Boolean get() {
+        if (isPrimitive) return true
+        if (isArray) return componentType.isReachable
+        var type: Class<*>? = this
+        while (type != null) {
+            if (!Modifier.isPublic(type.modifiers)) return false
+            type = type.enclosingClass
+        }
+        return true
+    }
+
+    private fun MethodVisitor.box(type: Class<*>) {
+        if (type.isPrimitive) {
+            val boxed = Type.getInternalName(type.kotlin.javaObjectType)
+            visitMethodInsn(INVOKESTATIC, boxed, "valueOf", "(${Type.getDescriptor(type)})L$boxed;", false)
+        }
+    }
+
+    private fun MethodVisitor.unbox(type: Class<*>) {
+        if (type.isPrimitive) {
+            val boxed = Type.getInternalName(type.kotlin.javaObjectType)
+            visitTypeInsn(CHECKCAST, boxed)
+            visitMethodInsn(INVOKEVIRTUAL, boxed, "${type.name}Value", "()${Type.getDescriptor(type)}", false)
+        } else if (type != Any::class.java) {
+            visitTypeInsn(CHECKCAST, Type.getInternalName(type))
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.serialization.internal.NullEncodingWhitelist
+import net.corda.serialization.internal.amqp.testutils.deserialize
+import net.corda.serialization.internal.amqp.testutils.serialize
+import net.corda.serialization.internal.amqp.testutils.testDefaultFactoryNoEvolution
+import org.apache.qpid.proton.amqp.*
+import org.apache.qpid.proton.codec.Data
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.util.*
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class AMQPStreamCodecTests {
+    data class Foo(val bar: Int, val baz: String, val bytes: ByteArray, val items: List<Long>, val lookup: Map<String, Date>)
+
+    private val values: List<Any?> = listOf(
+            null, true, false,
+            UnsignedByte.valueOf(0), UnsignedByte.valueOf(255.toByte()), 0.toByte(), (-1).toByte(),
+            UnsignedShort.valueOf(65535.toShort()), 0.toShort(), Short.MIN_VALUE,
+            UnsignedInteger.ZERO, UnsignedInteger.ONE, UnsignedInteger.valueOf(255), UnsignedInteger.valueOf(256), UnsignedInteger.MAX_VALUE,
+            0, 127, 128, -128, -129, Int.MAX_VALUE, Int.MIN_VALUE,
+            'c', '€',
+            UnsignedLong.ZERO, UnsignedLong.valueOf(255), UnsignedLong.valueOf(256), UnsignedLong.valueOf(-1L),
+            0L, 127L, 128L, -128L, -129L, Long.MAX_VALUE, Long.MIN_VALUE,
+            Date(1234567890L), 1.5f, Float.NaN, -2.25, Double.MAX_VALUE,
+            Decimal32(7), Decimal64(-7L), Decimal128(1L, 2L), UUID.randomUUID(),
+            Binary(ByteArray(0)), Binary(ByteArray(255) { it.toByte() }), Binary(ByteArray(256) { it.toByte() }), Binary(ByteArray(10), 2, 5),
+            "", "a".repeat(255), "b".repeat(256), "été",
+            Symbol.valueOf("s"), Symbol.valueOf("t".repeat(255)),
+            emptyList<Any>(), listOf(1, "two", null), List(255) { 0 }, List(256) { 0 }, List(127) { 1000 }, List(300) { listOf(it) },
+            emptyMap<Any, Any>(), mapOf("a" to 1, 2 to listOf("b")), (0 until 128).associate { it to it }, (0 until 200).associate { it to "x$it" },
+            describedType(Symbol.valueOf("foo"), listOf(1, 2)),
+            describedType(UnsignedLong.valueOf(100), describedType(UnsignedLong.ZERO, null)),
+            listOf(describedType(null, emptyList<Any>()), mapOf(Symbol.valueOf("k") to describedType("d", List(60) { "abcd" })))
+    )
+
+    @Test
+    fun `streamed encoding is identical to proton's`() {
+        values.forEach { value ->
+            assertEquals(protonEncode(value).toList(), streamEncode(value).toList(), "Encoding of $value")
+        }
+        assertEquals(protonEncode(values).toList(), streamEncode(values).toList())
+    }
+
+    @Test
+    fun `containers written through the enter and exit API are identical to proton's`() {
+        fun write(data: AMQPWriter) {
+            data.withDescribed(Envelope.DESCRIPTOR_OBJECT) {
+                withList {
+                    putMap()
+                    enter()
+                    putString("key")
+                    withList { }
+                    exit()
+                    putList()
+                    putInt(1)
+                    withList {
+                        repeat(100) { putLong(it * 1000L) }
+                    }
+                }
+            }
+        }
+        val proton = ProtonDataWriter(Data.Factory.create()).apply(::write)
+        val streamed = AMQPStreamEncoder().apply(::write)
+        assertEquals(proton.data.encode(), streamed.encode())
+    }
+
+    @Test
+    fun `symbol arrays are written as proton writes them`() {
+        val arrays = listOf(
+                emptyArray(),
+                arrayOf(Symbol.valueOf("a"), Symbol.valueOf("bc")),
+                Array(255) { Symbol.valueOf("s$it") },
+                Array(256) { Symbol.valueOf("s") },
+                Array(100) { Symbol.valueOf("abc") },
+                arrayOf(Symbol.valueOf("a"), Symbol.valueOf("t".repeat(300)))
+        )
+        arrays.forEach { array ->
+            assertEquals(protonEncode(array).toList(), streamEncode(array).toList(), "Encoding of ${array.size} symbols")
+        }
+        assertEquals(protonEncode(listOf(1, arrays[1])).toList(), streamEncode(listOf(1, arrays[1])).toList())
+        assertFailsWith<IllegalArgumentException> { streamEncode(arrayOf("a")) }
+    }
+
+    @Test
+    fun `streamed decoding gives the same objects as proton`() {
+        values.forEach { value ->
+            val bytes = protonEncode(value)
+            val expected = Data.Factory.create().apply { decode(ByteBuffer.wrap(bytes)) }.`object`
+            assertEquals(expected, AMQPStreamDecoder.decode(ByteBuffer.wrap(bytes)), "Decoding of $value")
+        }
+    }
+
+    @Test
+    fun `long symbols are written with their full size`() {
+        // Proton writes only the low byte of the size here, which it cannot read back itself.
+        val symbol = Symbol.valueOf("t".repeat(300))
+        val bytes = streamEncode(symbol)
+        assertEquals(symbol, Data.Factory.create().apply { decode(ByteBuffer.wrap(bytes)) }.`object`)
+        assertEquals(symbol, AMQPStreamDecoder.decode(ByteBuffer.wrap(bytes)))
+    }
+
+    @Test
+    fun `arrays are decoded by proton`() {
+        val bytes = protonEncode(arrayOf(Symbol.valueOf("a"), Symbol.valueOf("b")))
+        val decoded = AMQPStreamDecoder.decode(ByteBuffer.wrap(bytes)) as Array<*>
+        assertEquals(listOf(Symbol.valueOf("a"), Symbol.valueOf("b")), decoded.toList())
+    }
+
+    @Test
+    fun `values are skipped without being decoded`() {
+        val bytes = values.map { protonEncode(it) } + protonEncode(arrayOf(Symbol.valueOf("a"), Symbol.valueOf("b")))
+        val buffer = ByteBuffer.wrap(bytes.reduce { all, value -> all + value })
+        bytes.forEach { value ->
+            val start = buffer.position()
+            AMQPStreamDecoder.skip(buffer)
+            assertEquals(value.size, buffer.position() - start)
+        }
+    }
+
+    @Test
+    fun `serialized objects can be read back by proton`() {
+        val factory = testDefaultFactoryNoEvolution()
+        val foo = Foo(1, "one", ByteArray(300) { it.toByte() }, List(50) { it * 1000L }, mapOf("now" to Date(1000)))
+        val bytes = SerializationOutput(factory).serialize(foo)
+
+        DeserializationInput.withDataBytes(bytes, NullEncodingWhitelist) { dataBytes ->
+            val encoded = ByteArray(dataBytes.remaining()).also { dataBytes.duplicate().get(it) }
+            val data = Data.Factory.create()
+            assertEquals(encoded.size.toLong(), data.decode(dataBytes))
+            assertEquals(encoded.toList(), protonEncode(data.`object`).toList())
+        }
+        assertEquals(foo.lookup, DeserializationInput(factory).deserialize(bytes).lookup)
+    }
+
+    @Test
+    fun `truncated or oversized data is rejected`() {
+        val bytes = protonEncode(listOf("a", "b", "c"))
+        assertFailsWith<AMQPNoTypeNotSerializableException> {
+            AMQPStreamDecoder.decode(ByteBuffer.wrap(bytes, 0, bytes.size - 1))
+        }
+        assertFailsWith<AMQPNoTypeNotSerializableException> {
+            AMQPStreamDecoder.decode(ByteBuffer.wrap(bytes + 0x40.toByte()))
+        }
+        // Sizes far beyond the data, or negative, must be rejected before anything is allocated for them.
+        listOf(0xb0, 0xb1, 0xb3).forEach { constructor ->
+            listOf(0x7fffffff, -1).forEach { size ->
+                val malformed = ByteBuffer.allocate(5).put(constructor.toByte()).putInt(size).array()
+                assertFailsWith<AMQPNoTypeNotSerializableException> {
+                    AMQPStreamDecoder.decode(ByteBuffer.wrap(malformed))
+                }
+                assertFailsWith<AMQPNoTypeNotSerializableException> {
+                    AMQPStreamDecoder.decode(ByteBuffer.allocateDirect(5).put(malformed).flip() as ByteBuffer)
+                }
+            }
+        }
+    }
+
+    private fun describedType(descriptor: Any?, described: Any?): DescribedType = object : DescribedType {
+        override fun getDescriptor(): Any? = descriptor
+        override fun getDescribed(): Any? = described
+        override fun toString(): String = "{$descriptor: $described}"
+    }
+
+    private fun protonEncode(value: Any?): ByteArray {
+        val data = Data.Factory.create()
+        data.putObject(value)
+        return data.encode().array
+    }
+
+    private fun streamEncode(value: Any?): ByteArray {
+        val data = AMQPStreamEncoder()
+        data.putObject(value)
+        return data.encode().array
+    }
+}
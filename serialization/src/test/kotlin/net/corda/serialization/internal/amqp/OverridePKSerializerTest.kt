@@ -3,7 +3,6 @@ package net.corda.serialization.internal.amqp
 import net.corda.core.serialization.SerializationContext
 import net.corda.serialization.internal.CordaSerializationMagic
 import net.corda.serialization.internal.AMQP_P2P_CONTEXT
-import org.apache.qpid.proton.codec.Data
 import org.assertj.core.api.Assertions
 import org.junit.Test
 import java.lang.reflect.Type
@@ -13,7 +12,7 @@ class OverridePKSerializerTest {
     class SerializerTestException(message: String) : Exception(message)
 
     class TestPublicKeySerializer : CustomSerializer.Implements<PublicKey>(PublicKey::class.java) {
-        override fun writeDescribedObject(obj: PublicKey, data: Data, type: Type, output: SerializationOutput,
+        override fun writeDescribedObject(obj: PublicKey, data: AMQPWriter, type: Type, output: SerializationOutput,
                                           context: SerializationContext
         ) {
             throw SerializerTestException("Custom write call")
@@ -0,0 +1,28 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.serialization.internal.amqp.testutils.deserialize
+import net.corda.serialization.internal.amqp.testutils.serialize
+import net.corda.serialization.internal.amqp.testutils.testDefaultFactoryNoEvolution
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class RemoteSerializerFactoryTests {
+    data class Foo(val bar: Int, val baz: String)
+    data class Qux(val foo: Foo, val quux: List<Foo>)
+
+    @Test
+    fun `repeated schemas are resolved from the registry`() {
+        val bytes = SerializationOutput(testDefaultFactoryNoEvolution()).serialize(Qux(Foo(1, "one"), listOf(Foo(2, "two"))))
+        val factory = testDefaultFactoryNoEvolution()
+
+        val misses = DefaultRemoteSerializerFactory.resolvedTypeCacheMisses
+        DeserializationInput(factory).deserialize(bytes)
+        assertEquals(misses + 1, DefaultRemoteSerializerFactory.resolvedTypeCacheMisses)
+
+        val hits = DefaultRemoteSerializerFactory.resolvedTypeCacheHits
+        assertEquals(Qux(Foo(1, "one"), listOf(Foo(2, "two"))), DeserializationInput(factory).deserialize(bytes))
+        assertEquals(misses + 1, DefaultRemoteSerializerFactory.resolvedTypeCacheMisses)
+        assertTrue(DefaultRemoteSerializerFactory.resolvedTypeCacheHits > hits)
+    }
+}
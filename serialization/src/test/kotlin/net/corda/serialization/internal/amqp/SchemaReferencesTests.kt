@@ -0,0 +1,103 @@
+package net.corda.serialization.internal.amqp
+
+import net.corda.core.crypto.SecureHash
+import net.corda.core.utilities.sequence
+import net.corda.serialization.internal.amqp.testutils.deserialize
+import net.corda.serialization.internal.amqp.testutils.testDefaultFactoryNoEvolution
+import net.corda.serialization.internal.amqp.testutils.testSerializationContext
+import org.junit.Test
+import java.io.NotSerializableException
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class SchemaReferencesTests {
+    data class Foo(val bar: Int, val baz: String)
+    data class Qux(val foo: Foo, val quux: List<String>)
+
+    private val factory = testDefaultFactoryNoEvolution()
+
+    @Test
+    fun `schemas are sent in full once and then by reference`() {
+        val writeContext = testSerializationContext.withSchemaReferences(SentSchemaCache())
+        val readContext = testSerializationContext.withSchemaReferences(ReceivedSchemaCache())
+
+        val first = SerializationOutput(factory).serialize(Foo(1, "one"), writeContext)
+        val second = SerializationOutput(factory).serialize(Foo(2, "two"), writeContext)
+        assertTrue(second.size < first.size)
+
+        assertEquals(Foo(1, "one"), DeserializationInput(factory).deserialize(first, readContext))
+        assertEquals(Foo(2, "two"), DeserializationInput(factory).deserialize(second, readContext))
+    }
+
+    @Test
+    fun `schema references cannot be read without the referenced schema`() {
+        val writeContext = testSerializationContext.withSchemaReferences(SentSchemaCache())
+        SerializationOutput(factory).serialize(Foo(1, "one"), writeContext)
+        val byReference = SerializationOutput(factory).serialize(Foo(2, "two"), writeContext)
+
+        assertFailsWith<NotSerializableException> {
+            DeserializationInput(factory).deserialize(byReference, testSerializationContext.withSchemaReferences(ReceivedSchemaCache()))
+        }
+        assertFailsWith<NotSerializableException> {
+            DeserializationInput(factory).deserialize(byReference, testSerializationContext)
+        }
+    }
+
+    @Test
+    fun `evicted schemas are sent in full again`() {
+        val writeContext = testSerializationContext.withSchemaReferences(SentSchemaCache(size = 1))
+        val readContext = testSerializationContext.withSchemaReferences(ReceivedSchemaCache(size = 1))
+        val qux = Qux(Foo(1, "one"), listOf("two"))
+
+        val first = SerializationOutput(factory).serialize(Foo(1, "one"), writeContext)
+        val second = SerializationOutput(factory).serialize(qux, writeContext)
+        val third = SerializationOutput(factory).serialize(Foo(1, "one"), writeContext)
+        assertEquals(first, third)
+
+        assertEquals(Foo(1, "one"), DeserializationInput(factory).deserialize(first, readContext))
+        assertEquals(qux, DeserializationInput(factory).deserialize(second, readContext))
+        assertEquals(Foo(1, "one"), DeserializationInput(factory).deserialize(third, readContext))
+    }
+
+    @Test
+    fun `a schema which did not arrive can be resent`() {
+        val sentSchemas = SentSchemaCache()
+        val receivedSchemas = ReceivedSchemaCache()
+        val writeContext = testSerializationContext.withSchemaReferences(sentSchemas)
+        val readContext = testSerializationContext.withSchemaReferences(receivedSchemas)
+
+        // The envelope which carries the schema in full is lost.
+        SerializationOutput(factory).serialize(Foo(1, "one"), writeContext)
+        val byReference = SerializationOutput(factory).serialize(Foo(2, "two"), writeContext)
+        val unknown = assertFailsWith<UnknownSchemaReferenceException> {
+            DeserializationInput(factory).deserialize(byReference, readContext)
+        }
+
+        receivedSchemas.receivedInFull(FingerprintedSchema.decode(sentSchemas.resend(unknown.fingerprint)!!.sequence()))
+        assertEquals(Foo(2, "two"), DeserializationInput(factory).deserialize(byReference, readContext))
+        assertNull(SentSchemaCache().resend(unknown.fingerprint))
+    }
+
+    @Test
+    fun `schema references are found without reading the envelope`() {
+        val writeContext = testSerializationContext.withSchemaReferences(SentSchemaCache())
+        val inFull = SerializationOutput(factory).serialize(Qux(Foo(1, "one"), listOf("a")), writeContext)
+        val byReference = SerializationOutput(factory).serialize(Qux(Foo(2, "two"), listOf("b")), writeContext)
+
+        val fullReference = SchemaReference.read(inFull)!!
+        val schemas = fullReference.decodeSchemas()!!
+        assertEquals(fullReference.fingerprint, schemas.fingerprint)
+        assertNull(SchemaReference(SecureHash.zeroHash, fullReference.encodedSchemas).decodeSchemas())
+        val reference = SchemaReference.read(byReference)!!
+        assertEquals(fullReference.fingerprint, reference.fingerprint)
+        assertNull(reference.encodedSchemas)
+        assertNull(SchemaReference.read(SerializationOutput(factory).serialize(Foo(1, "one"), testSerializationContext)))
+
+        val receivedSchemas = ReceivedSchemaCache()
+        receivedSchemas.receivedInFull(schemas)
+        val readContext = testSerializationContext.withSchemaReferences(receivedSchemas)
+        assertEquals(Qux(Foo(2, "two"), listOf("b")), DeserializationInput(factory).deserialize(byReference, readContext))
+    }
+}
@@ -9,7 +9,6 @@ import net.corda.serialization.internal.AllWhitelist
 import net.corda.serialization.internal.EmptyWhitelist
 import net.corda.serialization.internal.amqp.*
 import net.corda.serialization.internal.carpenter.ClassCarpenterImpl
-import org.apache.qpid.proton.codec.Data
 import org.junit.Test
 import java.io.File.separatorChar
 import java.io.NotSerializableException
@@ -61,12 +60,12 @@ class TestSerializationOutput(
         serializerFactory: SerializerFactory = testDefaultFactory())
     : SerializationOutput(serializerFactory) {
 
-    override fun writeSchema(schema: Schema, data: Data) {
+    override fun writeSchema(schema: Schema, data: AMQPWriter) {
         if (verbose) println(schema)
         super.writeSchema(schema, data)
     }
 
-    override fun writeTransformSchema(transformsSchema: TransformsSchema, data: Data) {
+    override fun writeTransformSchema(transformsSchema: TransformsSchema, data: AMQPWriter) {
         if(verbose) {
             println ("Writing Transform Schema")
             println (transformsSchema)
@@ -0,0 +1,93 @@
+package net.corda.serialization.internal.carpenter
+
+import net.corda.serialization.internal.AllWhitelist
+import net.corda.serialization.internal.amqp.DeserializationInput
+import net.corda.serialization.internal.amqp.SerializationOutput
+import net.corda.serialization.internal.amqp.SerializerFactoryBuilder
+import net.corda.serialization.internal.amqp.testutils.deserialize
+import net.corda.serialization.internal.amqp.testutils.serialize
+import net.corda.serialization.internal.amqp.testutils.testDefaultFactoryNoEvolution
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Test
+import java.io.NotSerializableException
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+
+class AccessorCarpenterTests {
+    data class Primitives(val b: Boolean, val by: Byte, val c: Char, val s: Short, val i: Int, val l: Long, val f: Float, val d: Double)
+    data class Composite(val name: String?, val primitives: Primitives, val values: List<Int>, val bytes: ByteArray?) {
+        override fun equals(other: Any?) = other is Composite && name == other.name && primitives == other.primitives
+                && values == other.values && bytes?.toList() == other.bytes?.toList()
+        override fun hashCode() = values.hashCode()
+    }
+
+    class Bean {
+        var name: String = ""
+        var count: Int = 0
+    }
+
+    data class Validated(val value: Int) {
+        companion object {
+            var failing = false
+        }
+
+        init {
+            require(!failing) { "Validation failed" }
+        }
+    }
+
+    private data class Hidden(val value: Int)
+
+    private val factory = SerializerFactoryBuilder.build(AllWhitelist, ClassCarpenterImpl(AllWhitelist), generateAccessors = true)
+
+    @Test
+    fun `objects round trip through generated accessors`() {
+        val composite = Composite("foo", Primitives(true, 1, 'c', 2, 3, 4L, 5.0f, 6.0), listOf(1, 2, 3), ByteArray(3))
+        val bytes = SerializationOutput(factory).serialize(composite)
+        assertEquals(composite, DeserializationInput(factory).deserialize(bytes))
+
+        // The generated accessors must write exactly what reflection writes.
+        assertEquals(bytes, SerializationOutput(testDefaultFactoryNoEvolution()).serialize(composite))
+        assertEquals(composite, DeserializationInput(testDefaultFactoryNoEvolution()).deserialize(bytes))
+    }
+
+    @Test
+    fun `nulls round trip through generated accessors`() {
+        val composite = Composite(null, Primitives(false, 0, ' ', 0, 0, 0L, 0.0f, 0.0), emptyList(), null)
+        assertEquals(composite, DeserializationInput(factory).deserialize(SerializationOutput(factory).serialize(composite)))
+    }
+
+    @Test
+    fun `setter based objects round trip through generated accessors`() {
+        val bean = Bean().apply { name = "bean"; count = 2 }
+        val deserialized = DeserializationInput(factory).deserialize(SerializationOutput(factory).serialize(bean))
+        assertEquals("bean", deserialized.name)
+        assertEquals(2, deserialized.count)
+    }
+
+    @Test
+    fun `exceptions thrown by generated constructor calls are reported`() {
+        val bytes = SerializationOutput(factory).serialize(Validated(1))
+        Validated.failing = true
+        try {
+            assertThatThrownBy { DeserializationInput(factory).deserialize(bytes) }
+                    .isInstanceOf(NotSerializableException::class.java)
+                    .hasMessageContaining("Validation failed")
+        } finally {
+            Validated.failing = false
+        }
+    }
+
+    @Test
+    fun `only public members of public types are generated`() {
+        val carpenter = AccessorCarpenter()
+        assertNotNull(carpenter.accessorFor(Primitives::class.java.getMethod("getI")))
+        assertNotNull(carpenter.invokerFor(Primitives::class.java.constructors.single()))
+        assertNull(carpenter.accessorFor(Hidden::class.java.getMethod("getValue")))
+        assertNull(carpenter.invokerFor(Hidden::class.java.declaredConstructors.single()))
+
+        val hidden = Hidden(1)
+        assertEquals(hidden, DeserializationInput(factory).deserialize(SerializationOutput(factory).serialize(hidden)))
+    }
+}
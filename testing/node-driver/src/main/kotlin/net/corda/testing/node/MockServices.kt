@@ -1,5 +1,6 @@
 package net.corda.testing.node
 
+import com.codahale.metrics.MetricRegistry
 import com.google.common.collect.MutableClassToInstanceMap
 import net.corda.core.contracts.Attachment
 import net.corda.core.contracts.ContractClassName
@@ -428,20 +429,27 @@ open class MockServices private constructor(
     private val mockCordappProvider: MockCordappProvider = MockCordappProvider(cordappLoader, attachments).also {
         it.start()
     }
-    override val transactionVerifierService: TransactionVerifierService get() = InMemoryTransactionVerifierService(
-        numberOfWorkers = 2,
-        cordappProvider = mockCordappProvider,
-        attachments = attachments
-    )
+    override val transactionVerifierService: TransactionVerifierService by lazy {
+        InMemoryTransactionVerifierService(
+            numberOfWorkers = 2,
+            cordappProvider = mockCordappProvider,
+            attachments = attachments,
+            metrics = MetricRegistry()
+        )
+    }
     override val cordappProvider: CordappProvider get() = mockCordappProvider
     override var networkParametersService: NetworkParametersService = MockNetworkParametersStorage(initialNetworkParameters)
     override val diagnosticsService: DiagnosticsService = NodeDiagnosticsService()
 
-    protected val servicesForResolution: ServicesForResolution
-        get() = ServicesForResolutionImpl(identityService, attachments, cordappProvider, networkParametersService, validatedTransactions)
+    // Built on first use, as subclasses may override the services it needs.
+    private val servicesForResolutionImpl by lazy {
+        ServicesForResolutionImpl(identityService, attachments, cordappProvider, networkParametersService, validatedTransactions as WritableTransactionStorage, TestingNamedCacheFactory())
+    }
+
+    protected val servicesForResolution: ServicesForResolution get() = servicesForResolutionImpl
 
     internal fun makeVaultService(schemaService: SchemaService, database: CordaPersistence, cordappLoader: CordappLoader): VaultServiceInternal {
-        return NodeVaultService(clock, keyManagementService, servicesForResolution, database, schemaService, cordappLoader.appClassLoader).apply { start() }
+        return NodeVaultService(clock, keyManagementService, servicesForResolution, database, schemaService, cordappLoader.appClassLoader, servicesForResolutionImpl).apply { start() }
     }
 
     // This needs to be internal as MutableClassToInstanceMap is a guava type and shouldn't be part of our public API
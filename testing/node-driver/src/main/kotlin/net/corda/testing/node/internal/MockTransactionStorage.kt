@@ -57,5 +57,11 @@ open class MockTransactionStorage : WritableTransactionStorage, SingletonSeriali
 
     override fun getTransactionInternal(id: SecureHash): Pair<SignedTransaction, Boolean>? = txns[id]?.let { Pair(it.stx, it.isVerified) }
 
+    override fun getTransactionsInternal(ids: Collection<SecureHash>): Map<SecureHash, Pair<SignedTransaction, Boolean>> {
+        return ids.mapNotNull { id -> getTransactionInternal(id)?.let { id to it } }.toMap()
+    }
+
+    override fun verifiedTransactionIds(ids: Collection<SecureHash>): Set<SecureHash> = ids.filterTo(HashSet()) { txns[it]?.isVerified == true }
+
     private class TxHolder(val stx: SignedTransaction, var isVerified: Boolean)
 }
\ No newline at end of file
@@ -115,6 +115,8 @@ data class TestTransactionDSLInterpreter private constructor(
                 )
             }
 
+        override val partialAttachmentStorage: PartialAttachmentStorage? get() = null
+
         override fun createTransactionsResolver(flow: ResolveTransactionsFlow): TransactionsResolver =
             DbTransactionsResolver(flow)
 
@@ -18,7 +18,11 @@ class TestingNamedCacheFactory private constructor(private val sizeOverride: Lon
 
     override fun <K, V> buildNamed(caffeine: Caffeine<in K, in V>, name: String): Cache<K, V> {
         // Does not check metricRegistry or nodeConfiguration, because for tests we don't care.
-        return caffeine.maximumSize(sizeOverride).build<K, V>()
+        val configuredCaffeine = when (name) {
+            "ServicesForResolution_states" -> caffeine.maximumWeight(1.MB)
+            else -> caffeine.maximumSize(sizeOverride)
+        }
+        return configuredCaffeine.build<K, V>()
     }
 
     override fun <K, V> buildNamed(caffeine: Caffeine<in K, in V>, name: String, loader: CacheLoader<K, V>): LoadingCache<K, V> {